@@ -30,6 +30,7 @@
 import com.shc.silenceengine.input.Keyboard;
 import com.shc.silenceengine.math.Vector2;
 import com.shc.silenceengine.math.Vector4;
+import com.shc.silenceengine.utils.Scratch;
 import org.lwjgl.glfw.*;
 import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GLCapabilities;
@@ -1010,18 +1011,19 @@ public Vector2 getFramebufferSize()
      */
     public void setFramebufferSize(Vector2 fbSize)
     {
-        Vector2 temp = Vector2.REUSABLE_STACK.pop();
-        Vector2 framebufferSize = getFramebufferSize();
-        Vector2 size = getSize();
-
-        temp.set(size).scaleSelf(1 / framebufferSize.x, 1 / framebufferSize.y);
+        try (Scratch scratch = Scratch.open())
+        {
+            Vector2 temp = scratch.vector2();
+            Vector2 framebufferSize = getFramebufferSize();
+            Vector2 size = getSize();
 
-        this.framebufferSize.set(fbSize);
-        size.set(fbSize).scaleSelf(temp.x, temp.y);
+            temp.set(size).scaleSelf(1 / framebufferSize.x, 1 / framebufferSize.y);
 
-        setSize(size);
+            this.framebufferSize.set(fbSize);
+            size.set(fbSize).scaleSelf(temp.x, temp.y);
 
-        Vector2.REUSABLE_STACK.push(temp);
+            setSize(size);
+        }
     }
 
     /**
@@ -1034,9 +1036,11 @@ public void setFramebufferSize(Vector2 fbSize)
      */
     public void setFramebufferSize(float width, float height)
     {
-        Vector2 temp = Vector2.REUSABLE_STACK.pop();
-        setFramebufferSize(temp.set(width, height));
-        Vector2.REUSABLE_STACK.push(temp);
+        try (Scratch scratch = Scratch.open())
+        {
+            Vector2 temp = scratch.vector2();
+            setFramebufferSize(temp.set(width, height));
+        }
     }
 
     public String getClipboardString()
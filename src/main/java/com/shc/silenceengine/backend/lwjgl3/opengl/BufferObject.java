@@ -24,6 +24,7 @@
 
 package com.shc.silenceengine.backend.lwjgl3.opengl;
 
+import com.shc.silenceengine.graphics.RenderStats;
 import org.lwjgl.BufferUtils;
 
 import java.nio.Buffer;
@@ -40,6 +41,7 @@
 import static org.lwjgl.opengl.GL21.*;
 import static org.lwjgl.opengl.GL30.*;
 import static org.lwjgl.opengl.GL31.*;
+import static org.lwjgl.opengl.GL44.*;
 
 /**
  * This class encapsulates OpenGL Buffer Objects nicely and cleanly allowing you to use OpenGL in an Object Oriented
@@ -118,12 +120,24 @@ else if (data instanceof ShortBuffer)
      * constructor.
      */
     public void bind()
+    {
+        bind(false);
+    }
+
+    /**
+     * Binds this VertexBufferObject to the OpenGL binding point specified by the target you specified in the
+     * constructor.
+     *
+     * @param force Force binding the object. The element array binding is a part of the VAO state, so it has to be
+     *              forced when the VAO changes.
+     */
+    public void bind(boolean force)
     {
         if (disposed)
             throw new GLException("VertexBufferObject is already disposed!");
 
         // Prevent un-necessary bindings, they are costly
-        if (current.containsKey(target.getValue()) && current.get(target.getValue()) == this)
+        if (!force && current.containsKey(target.getValue()) && current.get(target.getValue()) == this)
             return;
 
         glBindBuffer(target.getValue(), id);
@@ -149,6 +163,28 @@ public void uploadData(int capacity, Usage usage)
         GLError.check();
     }
 
+    /**
+     * Creates an immutable data store for this BufferObject by calling the <code>glBufferStorage()</code> function. The
+     * size of an immutable data store cannot be changed later, but it can be mapped persistently. This requires
+     * OpenGL 4.4 or the ARB_buffer_storage extension.
+     *
+     * @param capacity The capacity of the data store to be created
+     * @param flags    The intended usage of the data store. One or more of: MAP_READ_BIT, MAP_WRITE_BIT,
+     *                 MAP_PERSISTENT_BIT, MAP_COHERENT_BIT.
+     */
+    public void uploadStorage(int capacity, EnumSet<MapAccessFlag> flags)
+    {
+        int value = 0;
+        for (MapAccessFlag flag : flags)
+            value |= flag.getValue();
+
+        bind();
+        this.capacity = capacity;
+        glBufferStorage(target.getValue(), capacity, value);
+
+        GLError.check();
+    }
+
     /**
      * Updates a subset of data starting from the offset in the VertexBufferObject's data store with the data from a NIO
      * Buffer
@@ -262,6 +298,8 @@ public ByteBuffer map(MapAccess access, ByteBuffer pointer)
 
         GLError.check();
 
+        RenderStats.count(RenderStats.Counter.BUFFER_MAPS);
+
         return pointer;
     }
 
@@ -272,13 +310,24 @@ public ByteBuffer map(MapAccess access, ByteBuffer pointer)
      * @param length The length of the range to be mapped.
      * @param access Combination of access flags indicating the desired access to the range. One or more of:
      *               MAP_READ_BIT, MAP_WRITE_BIT, MAP_INVALIDATE_RANGE_BIT, MAP_INVALIDATE_BUFFER_BIT,
-     *               MAP_FLUSH_EXPLICIT_BIT, MAP_UNSYNCHRONIZED_BIT.
+     *               MAP_FLUSH_EXPLICIT_BIT, MAP_UNSYNCHRONIZED_BIT, MAP_PERSISTENT_BIT, MAP_COHERENT_BIT.
      *
      * @return A pointer to the buffer object's data store as a NIO ByteBuffer.
      */
     public ByteBuffer mapRange(long offset, int length, EnumSet<MapAccessFlag> access)
     {
-        return mapRange(offset, access, BufferUtils.createByteBuffer(length));
+        int value = 0;
+        for (MapAccessFlag flag : access)
+            value |= flag.getValue();
+
+        bind();
+        ByteBuffer pointer = glMapBufferRange(target.getValue(), offset, length, value);
+
+        GLError.check();
+
+        RenderStats.count(RenderStats.Counter.BUFFER_MAPS);
+
+        return pointer;
     }
 
     /**
@@ -287,7 +336,7 @@ public ByteBuffer mapRange(long offset, int length, EnumSet<MapAccessFlag> acces
      * @param offset  The starting offset within the buffer of the range to be mapped.
      * @param access  Combination of access flags indicating the desired access to the range. One or more of:
      *                MAP_READ_BIT, MAP_WRITE_BIT, MAP_INVALIDATE_RANGE_BIT, MAP_INVALIDATE_BUFFER_BIT,
-     *                MAP_FLUSH_EXPLICIT_BIT, MAP_UNSYNCHRONIZED_BIT.
+     *                MAP_FLUSH_EXPLICIT_BIT, MAP_UNSYNCHRONIZED_BIT, MAP_PERSISTENT_BIT, MAP_COHERENT_BIT.
      * @param pointer A NIO ByteBuffer used for the data store.
      *
      * @return A pointer to the buffer object's data store as a NIO ByteBuffer.
@@ -303,6 +352,8 @@ public ByteBuffer mapRange(long offset, EnumSet<MapAccessFlag> access, ByteBuffe
 
         GLError.check();
 
+        RenderStats.count(RenderStats.Counter.BUFFER_MAPS);
+
         return pointer;
     }
 
@@ -318,6 +369,8 @@ public boolean unMap()
 
         GLError.check();
 
+        RenderStats.count(RenderStats.Counter.BUFFER_UNMAPS);
+
         return unmapped;
     }
 
@@ -449,7 +502,9 @@ public int getValue()
         MAP_INVALIDATE_RANGE_BIT(GL_MAP_INVALIDATE_RANGE_BIT),
         MAP_INVALIDATE_BUFFER_BIT(GL_MAP_INVALIDATE_BUFFER_BIT),
         MAP_FLUSH_EXPLICIT_BIT(GL_MAP_FLUSH_EXPLICIT_BIT),
-        MAP_UNSYNCHRONIZED_BIT(GL_MAP_UNSYNCHRONIZED_BIT);
+        MAP_UNSYNCHRONIZED_BIT(GL_MAP_UNSYNCHRONIZED_BIT),
+        MAP_PERSISTENT_BIT(GL_MAP_PERSISTENT_BIT),
+        MAP_COHERENT_BIT(GL_MAP_COHERENT_BIT);
 
         int value;
 
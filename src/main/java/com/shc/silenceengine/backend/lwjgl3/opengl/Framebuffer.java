@@ -116,6 +116,9 @@ public void bind(boolean force)
         if (!force && CURRENT == this)
             return;
 
+        // The open batch belongs to the framebuffer that was bound when it was collected
+        GL3Context.endOpenBatch();
+
         glBindFramebuffer(target.getValue(), id);
         GLError.check();
 
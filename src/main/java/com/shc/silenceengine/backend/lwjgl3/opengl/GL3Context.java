@@ -26,10 +26,12 @@
 
 import com.shc.silenceengine.core.SilenceEngine;
 import com.shc.silenceengine.graphics.Color;
+import com.shc.silenceengine.graphics.RenderStats;
 import com.shc.silenceengine.math.geom2d.Rectangle;
 
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.*;
 
 /**
@@ -37,24 +39,62 @@
  */
 public final class GL3Context
 {
+    // The blend function that was last set, so that it can be restored after it is changed temporarily
+    private static int blendSource      = GL_ONE;
+    private static int blendDestination = GL_ZERO;
+
     private GL3Context()
     {
     }
 
+    /**
+     * Draws the batch that is kept open in the batcher, so that it is drawn with the state it was collected with, and
+     * before anything that is drawn after the state changes.
+     */
+    public static void endOpenBatch()
+    {
+        if (SilenceEngine.graphics == null || SilenceEngine.graphics.getBatcher() == null)
+            return;
+
+        SilenceEngine.graphics.getBatcher().endOpenBatch();
+    }
+
     public static void enable(int capability)
     {
+        endOpenBatch();
         glEnable(capability);
         GLError.check();
     }
 
     public static void blendFunc(int src, int dst)
     {
+        endOpenBatch();
         glBlendFunc(src, dst);
         GLError.check();
+
+        blendSource = src;
+        blendDestination = dst;
+    }
+
+    /**
+     * @return The source factor of the blend function that was last set with {@link #blendFunc(int, int)}.
+     */
+    public static int getBlendSource()
+    {
+        return blendSource;
+    }
+
+    /**
+     * @return The destination factor of the blend function that was last set with {@link #blendFunc(int, int)}.
+     */
+    public static int getBlendDestination()
+    {
+        return blendDestination;
     }
 
     public static void disable(int capability)
     {
+        endOpenBatch();
         glDisable(capability);
         GLError.check();
     }
@@ -92,6 +132,7 @@ public static void clearColor(float r, float g, float b, float a)
      */
     public static void clear(int buffers)
     {
+        endOpenBatch();
         glClear(buffers);
         GLError.check();
     }
@@ -111,6 +152,7 @@ public static void drawArrays(VertexArray vao, Primitive mode, int offset, int v
         GLError.check();
 
         SilenceEngine.graphics.renderCalls++;
+        RenderStats.count(RenderStats.Counter.DRAW_CALLS);
     }
 
     public static void drawElements(VertexArray vao, Primitive mode, int offset, int vertexCount, int type)
@@ -120,6 +162,22 @@ public static void drawElements(VertexArray vao, Primitive mode, int offset, int
         GLError.check();
 
         SilenceEngine.graphics.renderCalls++;
+        RenderStats.count(RenderStats.Counter.DRAW_CALLS);
+    }
+
+    /**
+     * Sets the constant value of a generic vertex attribute, which is used when the attribute array is not enabled.
+     *
+     * @param index The location of the attribute
+     * @param x     The first component
+     * @param y     The second component
+     * @param z     The third component
+     * @param w     The fourth component
+     */
+    public static void vertexAttribute(int index, float x, float y, float z, float w)
+    {
+        glVertexAttrib4f(index, x, y, z, w);
+        GLError.check();
     }
 
     /**
@@ -176,6 +234,7 @@ public static void viewport(Rectangle rect)
      */
     public static void viewport(float x, float y, float width, float height)
     {
+        endOpenBatch();
         glViewport((int) x, (int) y, (int) width, (int) height);
         GLError.check();
     }
@@ -187,18 +246,21 @@ public static void viewport(float x, float y, float width, float height)
      */
     public static void depthMask(boolean value)
     {
+        endOpenBatch();
         glDepthMask(value);
         GLError.check();
     }
 
     public static void depthFunc(int func)
     {
+        endOpenBatch();
         glDepthFunc(func);
         GLError.check();
     }
 
     public static void cullFace(int mode)
     {
+        endOpenBatch();
         glCullFace(mode);
         GLError.check();
     }
@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.backend.lwjgl3.opengl;
+
+import com.shc.silenceengine.graphics.IFenceProvider;
+
+import static org.lwjgl.opengl.GL32.*;
+
+/**
+ * An {@link IFenceProvider} that uses OpenGL sync objects, created with <code>glFenceSync()</code>.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class GLFenceProvider implements IFenceProvider
+{
+    // The time to wait in a single call to glClientWaitSync, in nanoseconds
+    private static final long WAIT_TIMEOUT = 1_000_000;
+
+    @Override
+    public long createFence()
+    {
+        long fence = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        GLError.check();
+
+        return fence;
+    }
+
+    @Override
+    public boolean isSignaled(long fence)
+    {
+        // A zero timeout only queries the status of the fence
+        int result = glClientWaitSync(fence, 0, 0);
+        GLError.check();
+
+        if (result == GL_WAIT_FAILED)
+            throw new GLException("Failed to query a fence");
+
+        return result == GL_ALREADY_SIGNALED || result == GL_CONDITION_SATISFIED;
+    }
+
+    @Override
+    public void waitFence(long fence)
+    {
+        int flags = GL_SYNC_FLUSH_COMMANDS_BIT;
+
+        while (true)
+        {
+            int result = glClientWaitSync(fence, flags, WAIT_TIMEOUT);
+            GLError.check();
+
+            if (result == GL_ALREADY_SIGNALED || result == GL_CONDITION_SATISFIED)
+                return;
+
+            if (result == GL_WAIT_FAILED)
+                throw new GLException("Failed to wait on a fence");
+
+            // The commands are already flushed, no need to flush again
+            flags = 0;
+        }
+    }
+
+    @Override
+    public void deleteFence(long fence)
+    {
+        glDeleteSync(fence);
+        GLError.check();
+    }
+}
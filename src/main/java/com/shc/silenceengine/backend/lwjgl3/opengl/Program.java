@@ -25,6 +25,7 @@
 package com.shc.silenceengine.backend.lwjgl3.opengl;
 
 import com.shc.silenceengine.graphics.Color;
+import com.shc.silenceengine.graphics.RenderStats;
 import com.shc.silenceengine.math.Matrix3;
 import com.shc.silenceengine.math.Matrix4;
 import com.shc.silenceengine.math.Vector2;
@@ -106,6 +107,8 @@ public void use()
         glUseProgram(id);
         GLError.check();
 
+        RenderStats.count(RenderStats.Counter.PROGRAM_SWITCHES);
+
         CURRENT = this;
 
         prepareFrame();
@@ -27,6 +27,7 @@
 import com.shc.silenceengine.core.IResource;
 import com.shc.silenceengine.core.SilenceException;
 import com.shc.silenceengine.graphics.Color;
+import com.shc.silenceengine.graphics.RenderStats;
 import com.shc.silenceengine.io.FilePath;
 import com.shc.silenceengine.math.Vector2;
 import com.shc.silenceengine.utils.FileUtils;
@@ -195,6 +196,8 @@ public void bind()
         glBindTexture(GL_TEXTURE_2D, id);
         GLError.check();
 
+        RenderStats.count(RenderStats.Counter.TEXTURE_BINDS);
+
         CURRENT = this;
     }
 
@@ -25,114 +25,661 @@
 package com.shc.silenceengine.collision;
 
 import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.geom2d.Circle;
 import com.shc.silenceengine.math.geom2d.Polygon;
-
-import java.util.List;
+import com.shc.silenceengine.math.geom2d.Rectangle;
 
 /**
  * This class contains the utilities for checking collisions in 2D. Contains helper methods to check using SAT
  * (Separating Axis Theorem) This class also calculates the response, like how much the polygons have overlapped, and in
  * what direction they overlapped.
+ * <p>
+ * The circles and the rectangles have tests of their own, which are picked from a table by the kinds of both the
+ * shapes. A circle is tested as a true circle instead of the polygon that approximates it, a rectangle that is not
+ * rotated is tested as an axis aligned box, and a rotated one only with the two axes of each box. All the other
+ * polygons, including the ellipses, are tested with the generic SAT.
+ * <p>
+ * The time of impact of two moving shapes can also be found, for the fast shapes that would pass through thin ones
+ * between two frames. The polygons are swept with the SAT, and the circles are swept as true circles.
  *
  * @author Sri Harsha CHilakapati
  */
 public final class Collision2D
 {
+    // The kinds of the shapes that have tests of their own
+    private static final int POLYGON = 0;
+    private static final int CIRCLE  = 1;
+    private static final int AABB    = 2;
+    private static final int OBB     = 3;
+
+    // The tests for every pair of kinds, by the kind of the first and then of the second shape
+    private static final Test[][] TESTS = {
+            { Collision2D::testPolygons, Collision2D::testPolygonCircle, Collision2D::testPolygons,
+              Collision2D::testPolygons },
+            { Collision2D::testCirclePolygon, Collision2D::testCircles, Collision2D::testCirclePolygon,
+              Collision2D::testCirclePolygon },
+            { Collision2D::testPolygons, Collision2D::testPolygonCircle, Collision2D::testAABBs,
+              Collision2D::testBoxes },
+            { Collision2D::testPolygons, Collision2D::testPolygonCircle, Collision2D::testBoxes,
+              Collision2D::testBoxes }
+    };
+
+    // How far a swept circle may be from a polygon and still touch it, relative to its radius, for the rounding errors
+    private static final float TOI_TOLERANCE = 1e-4f;
+
     private static Response tmpResponse = new Response();
 
     private Collision2D()
     {
     }
 
+    /**
+     * Tests whether two polygons intersect, and fills in the response. A null response uses a response that is shared by
+     * all the callers, so a response of your own should be passed to test from many threads at once. The test is
+     * picked by the kinds of the shapes, and nothing is allocated.
+     * <p>
+     * The minimum translation vector of the response is the vector to subtract from the position of the first polygon
+     * to separate it from the second one. The rectangles that are not rotated and only touch each other don't
+     * intersect, all the other shapes that only touch do, with a zero overlap.
+     *
+     * @param a        The first polygon.
+     * @param b        The second polygon.
+     * @param response The response to fill in, or null to use the shared one.
+     *
+     * @return Whether the polygons intersect.
+     */
     public static boolean testPolygonCollision(Polygon a, Polygon b, Response response)
     {
         if (response == null)
             response = tmpResponse.clear();
 
-        Vector2 tmpNormal = Vector2.REUSABLE_STACK.pop();
+        return TESTS[kindOf(a)][kindOf(b)].test(a, b, response);
+    }
+
+    /**
+     * Tests whether two polygons intersect with the generic SAT, without the tests of their own that the circles and
+     * the rectangles have. The axes are the cached edge normals of the polygons, and nothing is allocated.
+     *
+     * @param a        The first polygon.
+     * @param b        The second polygon.
+     * @param response The response to fill in, or null to use the shared one.
+     *
+     * @return Whether the polygons intersect.
+     */
+    public static boolean testPolygonCollisionSAT(Polygon a, Polygon b, Response response)
+    {
+        if (response == null)
+            response = tmpResponse.clear();
+
+        return testPolygons(a, b, response);
+    }
+
+    public static boolean isSeparatingAxis(Polygon a, Polygon b, Vector2 axis, Response response)
+    {
+        if (response == null)
+            response = tmpResponse.clear();
+
+        axis.normalizeSelf();
+
+        return isSeparatingAxis(a.getPackedVertices(), a.vertexCount(), b.getPackedVertices(), b.vertexCount(),
+                b.getPosition().x - a.getPosition().x, b.getPosition().y - a.getPosition().y, axis.x, axis.y, response);
+    }
+
+    /**
+     * Finds the time at which two polygons that move in straight lines first touch. The polygons start at their
+     * positions and move by their motions without rotating, so a fast polygon that passes through a thin one is found
+     * to hit it even though they are apart at the start and at the end of the motions. Nothing is allocated.
+     *
+     * @param a       The first polygon.
+     * @param motionA The motion of the first polygon.
+     * @param b       The second polygon.
+     * @param motionB The motion of the second polygon.
+     *
+     * @return The fraction of the motions at which the polygons first touch, 0 if they intersect at the start, or -1
+     * if they don't touch during the motions.
+     */
+    public static float timeOfImpact(Polygon a, Vector2 motionA, Polygon b, Vector2 motionB)
+    {
+        return timeOfImpact(a, a.getPosition(), motionA, b, b.getPosition(), motionB);
+    }
+
+    /**
+     * Finds the time at which two polygons that move in straight lines first touch, like {@link
+     * #timeOfImpact(Polygon, Vector2, Polygon, Vector2)}, but with the polygons starting at the given positions instead
+     * of their own. This sweeps the polygons that have already been moved without moving them back.
+     *
+     * @param a       The first polygon.
+     * @param startA  The position of the first polygon at the start of its motion.
+     * @param motionA The motion of the first polygon.
+     * @param b       The second polygon.
+     * @param startB  The position of the second polygon at the start of its motion.
+     * @param motionB The motion of the second polygon.
+     *
+     * @return The fraction of the motions at which the polygons first touch, 0 if they intersect at the start, or -1
+     * if they don't touch during the motions.
+     */
+    public static float timeOfImpact(Polygon a, Vector2 startA, Vector2 motionA, Polygon b, Vector2 startB,
+                                     Vector2 motionB)
+    {
+        // The second polygon is kept still, and the first one moves by the difference of the motions
+        float offsetX = startB.x - startA.x;
+        float offsetY = startB.y - startA.y;
+        float motionX = motionA.x - motionB.x;
+        float motionY = motionA.y - motionB.y;
 
-        for (int i = 0; i < a.vertexCount(); i++)
+        boolean circleA = kindOf(a) == CIRCLE;
+        boolean circleB = kindOf(b) == CIRCLE;
+
+        if (circleA && circleB)
+            return sweepCircles(a, b, offsetX, offsetY, motionX, motionY);
+
+        if (circleA)
+            return sweepCircle(a, b, offsetX, offsetY, motionX, motionY);
+
+        // The polygon moves the other way relative to the circle
+        if (circleB)
+            return sweepCircle(b, a, -offsetX, -offsetY, -motionX, -motionY);
+
+        return sweepPolygons(a, b, offsetX, offsetY, motionX, motionY);
+    }
+
+    private static int kindOf(Polygon polygon)
+    {
+        if (polygon instanceof Circle)
+            return CIRCLE;
+
+        if (polygon instanceof Rectangle)
+            return polygon.getRotation() == 0 ? AABB : OBB;
+
+        return POLYGON;
+    }
+
+    private static boolean testPolygons(Polygon a, Polygon b, Response response)
+    {
+        return testAxes(a, a.vertexCount(), b, b.vertexCount(), response);
+    }
+
+    /**
+     * Tests two rectangles, of which at least one is rotated. The opposite edges of a box give the same axis, so only
+     * the normals of the first two edges are tested.
+     */
+    private static boolean testBoxes(Polygon a, Polygon b, Response response)
+    {
+        return testAxes(a, 2, b, 2, response);
+    }
+
+    private static boolean testAxes(Polygon a, int axesA, Polygon b, int axesB, Response response)
+    {
+        float[] verticesA = a.getPackedVertices();
+        float[] verticesB = b.getPackedVertices();
+        float[] normalsA = a.getEdgeNormals();
+        float[] normalsB = b.getEdgeNormals();
+
+        int countA = a.vertexCount();
+        int countB = b.vertexCount();
+
+        float offsetX = b.getPosition().x - a.getPosition().x;
+        float offsetY = b.getPosition().y - a.getPosition().y;
+
+        for (int i = 0; i < axesA * 2; i += 2)
         {
-            Vector2 e1 = a.getVertex(i);
-            Vector2 e2 = a.getVertex((i + 1) % a.vertexCount());
+            if (isSeparatingAxis(verticesA, countA, verticesB, countB, offsetX, offsetY,
+                    normalsA[i], normalsA[i + 1], response))
+                return false;
+        }
+
+        for (int i = 0; i < axesB * 2; i += 2)
+        {
+            if (isSeparatingAxis(verticesA, countA, verticesB, countB, offsetX, offsetY,
+                    normalsB[i], normalsB[i + 1], response))
+                return false;
+        }
 
-            Vector2 edge = tmpNormal.set(e2).subtractSelf(e1);
-            Vector2 normal = edge.perpendicularSelf().normalizeSelf();
+        return intersection(a, b, response);
+    }
+
+    /**
+     * Tests two rectangles that are not rotated as axis aligned boxes. The boxes that only touch don't intersect.
+     */
+    private static boolean testAABBs(Polygon a, Polygon b, Response response)
+    {
+        // The first and the third vertices are the opposite corners of a rectangle
+        float[] verticesA = a.getPackedVertices();
+        float[] verticesB = b.getPackedVertices();
+
+        float minXA = a.getPosition().x + Math.min(verticesA[0], verticesA[4]);
+        float minYA = a.getPosition().y + Math.min(verticesA[1], verticesA[5]);
+        float maxXA = a.getPosition().x + Math.max(verticesA[0], verticesA[4]);
+        float maxYA = a.getPosition().y + Math.max(verticesA[1], verticesA[5]);
+
+        float minXB = b.getPosition().x + Math.min(verticesB[0], verticesB[4]);
+        float minYB = b.getPosition().y + Math.min(verticesB[1], verticesB[5]);
+        float maxXB = b.getPosition().x + Math.max(verticesB[0], verticesB[4]);
+        float maxYB = b.getPosition().y + Math.max(verticesB[1], verticesB[5]);
+
+        if (minXA >= maxXB || minXB >= maxXA || minYA >= maxYB || minYB >= maxYA)
+            return false;
+
+        // In the order of the axes of the generic SAT, which prefers the first of two equal overlaps
+        overlapAxis(-maxYA, -minYA, -maxYB, -minYB, 0, -1, response);
+        overlapAxis(minXA, maxXA, minXB, maxXB, 1, 0, response);
+
+        return intersection(a, b, response);
+    }
+
+    private static boolean testCircles(Polygon a, Polygon b, Response response)
+    {
+        // The bounds are recomputed with the vertices, so they are right for the scaled and translated circles too
+        float[] boundsA = a.getPackedBounds();
+        float[] boundsB = b.getPackedBounds();
+
+        float radiusA = (boundsA[2] - boundsA[0]) / 2;
+        float radiusB = (boundsB[2] - boundsB[0]) / 2;
+
+        float distanceX = b.getPosition().x + (boundsB[0] + boundsB[2]) / 2 -
+                          a.getPosition().x - (boundsA[0] + boundsA[2]) / 2;
+        float distanceY = b.getPosition().y + (boundsB[1] + boundsB[3]) / 2 -
+                          a.getPosition().y - (boundsA[1] + boundsA[3]) / 2;
 
-            if (isSeparatingAxis(a, b, normal, response))
+        float distanceSquared = distanceX * distanceX + distanceY * distanceY;
+        float radii = radiusA + radiusB;
+
+        if (distanceSquared > radii * radii)
+            return false;
+
+        float distance = (float) Math.sqrt(distanceSquared);
+
+        // The circles with the same center are separated along the x axis
+        float axisX = distance == 0 ? 1 : distanceX / distance;
+        float axisY = distance == 0 ? 0 : distanceY / distance;
+
+        // Both the circles projected on the line through the centers, from the center of the first one
+        overlapAxis(-radiusA, radiusA, distance - radiusB, distance + radiusB, axisX, axisY, response);
+
+        return intersection(a, b, response);
+    }
+
+    private static boolean testCirclePolygon(Polygon a, Polygon b, Response response)
+    {
+        return testCircleAndPolygon(a, b, true, response);
+    }
+
+    private static boolean testPolygonCircle(Polygon a, Polygon b, Response response)
+    {
+        return testCircleAndPolygon(b, a, false, response);
+    }
+
+    /**
+     * Tests a circle against a convex polygon with the normals of the edges of the polygon, and the axis from the
+     * vertex of the polygon that is the closest to the center of the circle.
+     */
+    private static boolean testCircleAndPolygon(Polygon circle, Polygon polygon, boolean circleFirst,
+                                                Response response)
+    {
+        float[] vertices = polygon.getPackedVertices();
+        float[] normals = polygon.getEdgeNormals();
+        int count = polygon.vertexCount();
+
+        float[] bounds = circle.getPackedBounds();
+        float radius = (bounds[2] - bounds[0]) / 2;
+
+        // The center of the circle relative to the position of the polygon
+        float centerX = circle.getPosition().x + (bounds[0] + bounds[2]) / 2 - polygon.getPosition().x;
+        float centerY = circle.getPosition().y + (bounds[1] + bounds[3]) / 2 - polygon.getPosition().y;
+
+        float closestX = 0;
+        float closestY = 0;
+        float closestDistance = Float.MAX_VALUE;
+
+        for (int i = 0; i < count * 2; i += 2)
+        {
+            float distanceX = centerX - vertices[i];
+            float distanceY = centerY - vertices[i + 1];
+            float distance = distanceX * distanceX + distanceY * distanceY;
+
+            if (distance < closestDistance)
             {
-                Vector2.REUSABLE_STACK.push(tmpNormal);
-                return false;
+                closestX = distanceX;
+                closestY = distanceY;
+                closestDistance = distance;
             }
         }
 
-        for (int i = 0; i < b.vertexCount(); i++)
+        for (int i = 0; i <= count * 2; i += 2)
         {
-            Vector2 e1 = b.getVertex(i);
-            Vector2 e2 = b.getVertex((i + 1) % b.vertexCount());
+            float axisX, axisY;
 
-            Vector2 edge = tmpNormal.set(e2).subtractSelf(e1);
-            Vector2 normal = edge.perpendicularSelf().normalizeSelf();
+            if (i < count * 2)
+            {
+                axisX = normals[i];
+                axisY = normals[i + 1];
+            }
+            else
+            {
+                // The center of the circle is on a vertex of the polygon, the normals are enough
+                if (closestDistance == 0)
+                    break;
+
+                float length = (float) Math.sqrt(closestDistance);
+
+                axisX = closestX / length;
+                axisY = closestY / length;
+            }
 
-            if (isSeparatingAxis(a, b, normal, response))
+            float min = Float.MAX_VALUE;
+            float max = -min;
+
+            for (int j = 0; j < count * 2; j += 2)
             {
-                Vector2.REUSABLE_STACK.push(tmpNormal);
+                float dot = vertices[j] * axisX + vertices[j + 1] * axisY;
+
+                if (dot < min) min = dot;
+                if (dot > max) max = dot;
+            }
+
+            float center = centerX * axisX + centerY * axisY;
+
+            boolean separated = circleFirst
+                                ? overlapAxis(center - radius, center + radius, min, max, axisX, axisY, response)
+                                : overlapAxis(min, max, center - radius, center + radius, axisX, axisY, response);
+
+            if (separated)
                 return false;
+        }
+
+        return circleFirst ? intersection(circle, polygon, response) : intersection(polygon, circle, response);
+    }
+
+    /**
+     * The number of edge normals to test for a polygon, only the first two for a rectangle.
+     */
+    private static int axesOf(Polygon polygon)
+    {
+        return polygon instanceof Rectangle ? 2 : polygon.vertexCount();
+    }
+
+    /**
+     * Sweeps the first polygon against the second one, which is at an offset from it, with the SAT. On every axis the
+     * projections overlap during an interval of the motion, and the polygons touch when they overlap on all the axes.
+     */
+    private static float sweepPolygons(Polygon a, Polygon b, float offsetX, float offsetY, float motionX,
+                                       float motionY)
+    {
+        float[] verticesA = a.getPackedVertices();
+        float[] verticesB = b.getPackedVertices();
+        float[] normalsA = a.getEdgeNormals();
+        float[] normalsB = b.getEdgeNormals();
+
+        int countA = a.vertexCount();
+        int countB = b.vertexCount();
+        int axesA = axesOf(a);
+        int axesB = axesOf(b);
+
+        float first = 0;
+        float last = 1;
+
+        for (int i = 0; i < (axesA + axesB) * 2; i += 2)
+        {
+            float[] normals = i < axesA * 2 ? normalsA : normalsB;
+            int axis = i < axesA * 2 ? i : i - axesA * 2;
+
+            float axisX = normals[axis];
+            float axisY = normals[axis + 1];
+
+            float projectedOffset = offsetX * axisX + offsetY * axisY;
+
+            float minA = project(verticesA, countA, axisX, axisY, true);
+            float maxA = project(verticesA, countA, axisX, axisY, false);
+            float minB = project(verticesB, countB, axisX, axisY, true) + projectedOffset;
+            float maxB = project(verticesB, countB, axisX, axisY, false) + projectedOffset;
+
+            float speed = motionX * axisX + motionY * axisY;
+
+            if (speed == 0)
+            {
+                // The projections never move, so they have to overlap all the time
+                if (minA > maxB || minB > maxA)
+                    return -1;
+
+                continue;
             }
+
+            first = Math.max(first, (speed > 0 ? minB - maxA : maxB - minA) / speed);
+            last = Math.min(last, (speed > 0 ? maxB - minA : minB - maxA) / speed);
+
+            if (first > last)
+                return -1;
         }
 
-        response.a = a;
-        response.b = b;
-        response.overlapV.set(response.overlapN).scaleSelf(response.overlap);
-        response.intersection = true;
+        return first;
+    }
 
-        Vector2.REUSABLE_STACK.push(tmpNormal);
+    /**
+     * Sweeps two circles, by solving for the time at which the distance between their centers is the sum of the radii.
+     */
+    private static float sweepCircles(Polygon a, Polygon b, float offsetX, float offsetY, float motionX,
+                                      float motionY)
+    {
+        float[] boundsA = a.getPackedBounds();
+        float[] boundsB = b.getPackedBounds();
 
-        return true;
+        float radii = (boundsA[2] - boundsA[0]) / 2 + (boundsB[2] - boundsB[0]) / 2;
+
+        // The center of the first circle relative to the center of the second one
+        float distanceX = (boundsA[0] + boundsA[2]) / 2 - offsetX - (boundsB[0] + boundsB[2]) / 2;
+        float distanceY = (boundsA[1] + boundsA[3]) / 2 - offsetY - (boundsB[1] + boundsB[3]) / 2;
+
+        return sweepPoint(distanceX, distanceY, motionX, motionY, radii);
     }
 
-    public static boolean isSeparatingAxis(Polygon a, Polygon b, Vector2 axis, Response response)
+    /**
+     * Sweeps a circle against a convex polygon, which is at an offset from it. The circle first touches the polygon
+     * grown by the radius on the normals of its edges, which is found with the SAT. If the center is then next to an
+     * edge the circle touches that edge, else it is in a corner of the grown polygon, and the circle touches the
+     * polygon when its center comes within the radius of a vertex.
+     */
+    private static float sweepCircle(Polygon circle, Polygon polygon, float offsetX, float offsetY, float motionX,
+                                     float motionY)
     {
-        if (response == null)
-            response = tmpResponse.clear();
+        float[] vertices = polygon.getPackedVertices();
+        float[] normals = polygon.getEdgeNormals();
+        int count = polygon.vertexCount();
+        int axes = axesOf(polygon);
+
+        float[] bounds = circle.getPackedBounds();
+        float radius = (bounds[2] - bounds[0]) / 2;
+
+        // The center of the circle relative to the position of the polygon
+        float centerX = (bounds[0] + bounds[2]) / 2 - offsetX;
+        float centerY = (bounds[1] + bounds[3]) / 2 - offsetY;
+
+        float first = 0;
+        float last = 1;
+
+        for (int i = 0; i < axes * 2; i += 2)
+        {
+            float axisX = normals[i];
+            float axisY = normals[i + 1];
 
-        Vector2 tmpOffset = Vector2.REUSABLE_STACK.pop();
-        Vector2 tmpRangeA = Vector2.REUSABLE_STACK.pop();
-        Vector2 tmpRangeB = Vector2.REUSABLE_STACK.pop();
+            float min = project(vertices, count, axisX, axisY, true);
+            float max = project(vertices, count, axisX, axisY, false);
 
-        Vector2 offset = tmpOffset.set(b.getPosition()).subtractSelf(a.getPosition());
+            float center = centerX * axisX + centerY * axisY;
+            float speed = motionX * axisX + motionY * axisY;
+
+            if (speed == 0)
+            {
+                if (center - radius > max || min > center + radius)
+                    return -1;
+
+                continue;
+            }
+
+            first = Math.max(first, (speed > 0 ? min - center - radius : max - center + radius) / speed);
+            last = Math.min(last, (speed > 0 ? max - center + radius : min - center - radius) / speed);
+
+            if (first > last)
+                return -1;
+        }
 
-        float projectedOffset = offset.dot(axis);
+        float limit = radius + TOI_TOLERANCE * (1 + radius);
 
-        Vector2 rangeA = flattenPoints(a.getVertices(), axis, tmpRangeA);
-        Vector2 rangeB = flattenPoints(b.getVertices(), axis, tmpRangeB);
+        if (distanceSquared(vertices, count, centerX + motionX * first, centerY + motionY * first) <= limit * limit)
+            return first;
 
-        rangeB.addSelf(projectedOffset, projectedOffset);
+        // The center is in a corner, the circle touches the vertex it first comes within the radius of
+        float time = -1;
 
-        if (rangeA.x > rangeB.y || rangeB.x > rangeA.y)
+        for (int i = 0; i < count * 2; i += 2)
         {
-            Vector2.REUSABLE_STACK.push(tmpOffset);
-            Vector2.REUSABLE_STACK.push(tmpRangeA);
-            Vector2.REUSABLE_STACK.push(tmpRangeB);
+            float vertexTime = sweepPoint(centerX - vertices[i], centerY - vertices[i + 1], motionX, motionY, radius);
 
-            return true;
+            if (vertexTime >= 0 && (time < 0 || vertexTime < time))
+                time = vertexTime;
         }
 
+        return time;
+    }
+
+    /**
+     * Solves for the fraction of a motion at which a point, moving from a distance to the origin, first comes within a
+     * radius of the origin.
+     */
+    private static float sweepPoint(float distanceX, float distanceY, float motionX, float motionY, float radius)
+    {
+        float c = distanceX * distanceX + distanceY * distanceY - radius * radius;
+
+        if (c <= 0)
+            return 0;
+
+        float a = motionX * motionX + motionY * motionY;
+        float b = 2 * (distanceX * motionX + distanceY * motionY);
+
+        float discriminant = b * b - 4 * a * c;
+
+        // The point doesn't move, moves away, or passes by the circle
+        if (a == 0 || b >= 0 || discriminant < 0)
+            return -1;
+
+        float time = (-b - (float) Math.sqrt(discriminant)) / (2 * a);
+
+        return time <= 1 ? time : -1;
+    }
+
+    /**
+     * The squared distance from a point to a convex polygon, zero if the point is inside it.
+     */
+    private static float distanceSquared(float[] vertices, int count, float x, float y)
+    {
+        float closest = Float.MAX_VALUE;
+        float side = 0;
+        boolean inside = true;
+
+        for (int i = 0; i < count * 2; i += 2)
+        {
+            int next = i + 2 == count * 2 ? 0 : i + 2;
+
+            float edgeX = vertices[next] - vertices[i];
+            float edgeY = vertices[next + 1] - vertices[i + 1];
+            float pointX = x - vertices[i];
+            float pointY = y - vertices[i + 1];
+
+            // The point is inside when it is on the same side of all the edges
+            float cross = edgeX * pointY - edgeY * pointX;
+
+            if (side == 0)
+                side = cross;
+            else if (cross != 0 && (cross > 0) != (side > 0))
+                inside = false;
+
+            // The closest point on the edge
+            float lengthSquared = edgeX * edgeX + edgeY * edgeY;
+            float t = lengthSquared == 0 ? 0 : (pointX * edgeX + pointY * edgeY) / lengthSquared;
+            t = Math.max(0, Math.min(1, t));
+
+            float distanceX = pointX - edgeX * t;
+            float distanceY = pointY - edgeY * t;
+
+            closest = Math.min(closest, distanceX * distanceX + distanceY * distanceY);
+        }
+
+        return inside ? 0 : closest;
+    }
+
+    /**
+     * The smallest or the largest projection of the vertices of a polygon on an axis.
+     */
+    private static float project(float[] vertices, int count, float axisX, float axisY, boolean min)
+    {
+        float result = min ? Float.MAX_VALUE : -Float.MAX_VALUE;
+
+        for (int i = 0; i < count * 2; i += 2)
+        {
+            float dot = vertices[i] * axisX + vertices[i + 1] * axisY;
+            result = min ? Math.min(result, dot) : Math.max(result, dot);
+        }
+
+        return result;
+    }
+
+    private static boolean isSeparatingAxis(float[] verticesA, int countA, float[] verticesB, int countB,
+                                            float offsetX, float offsetY, float axisX, float axisY, Response response)
+    {
+        float projectedOffset = offsetX * axisX + offsetY * axisY;
+
+        float minA = Float.MAX_VALUE;
+        float maxA = -minA;
+
+        for (int i = 0; i < countA * 2; i += 2)
+        {
+            float dot = verticesA[i] * axisX + verticesA[i + 1] * axisY;
+
+            if (dot < minA) minA = dot;
+            if (dot > maxA) maxA = dot;
+        }
+
+        float minB = Float.MAX_VALUE;
+        float maxB = -minB;
+
+        for (int i = 0; i < countB * 2; i += 2)
+        {
+            float dot = verticesB[i] * axisX + verticesB[i + 1] * axisY;
+
+            if (dot < minB) minB = dot;
+            if (dot > maxB) maxB = dot;
+        }
+
+        return overlapAxis(minA, maxA, minB + projectedOffset, maxB + projectedOffset, axisX, axisY, response);
+    }
+
+    /**
+     * Compares the projections of two shapes on an axis, and keeps the axis in the response if the shapes overlap
+     * the least on it so far.
+     *
+     * @return Whether the axis separates the shapes.
+     */
+    private static boolean overlapAxis(float minA, float maxA, float minB, float maxB, float axisX, float axisY,
+                                       Response response)
+    {
+        if (minA > maxB || minB > maxA)
+            return true;
+
+        // The overlap is negative when the first shape has to move along the axis to get out of the second one
         float overlap;
 
-        if (rangeA.x < rangeB.x)
+        if (minA < minB)
         {
             response.aInB = false;
 
-            if (rangeA.y < rangeB.y)
+            if (maxA < maxB)
             {
-                overlap = rangeA.y - rangeB.x;
+                overlap = maxA - minB;
                 response.bInA = false;
             }
             else
             {
-                float option1 = rangeA.y - rangeB.x;
-                float option2 = rangeB.y - rangeA.x;
+                float option1 = maxA - minB;
+                float option2 = maxB - minA;
                 overlap = option1 < option2 ? option1 : -option2;
             }
         }
@@ -140,51 +687,41 @@ public static boolean isSeparatingAxis(Polygon a, Polygon b, Vector2 axis, Respo
         {
             response.bInA = false;
 
-            if (rangeA.y > rangeB.y)
+            if (maxA > maxB)
             {
-                overlap = rangeA.y - rangeB.x;
+                overlap = minA - maxB;
                 response.aInB = false;
             }
             else
             {
-                float option1 = rangeA.y - rangeB.x;
-                float option2 = rangeB.y - rangeA.x;
+                float option1 = maxA - minB;
+                float option2 = maxB - minA;
                 overlap = option1 < option2 ? option1 : -option2;
             }
         }
 
-        overlap = Math.abs(overlap);
+        float absOverlap = Math.abs(overlap);
 
-        if (overlap < response.overlap)
+        if (absOverlap < response.overlap)
         {
-            response.overlap = overlap;
-            response.overlapN.set(axis.normalizeSelf());
+            response.overlap = absOverlap;
+            response.overlapN.set(axisX, axisY);
 
             if (overlap < 0)
                 response.overlapN.negateSelf();
         }
 
-        Vector2.REUSABLE_STACK.push(tmpOffset);
-        Vector2.REUSABLE_STACK.push(tmpRangeA);
-        Vector2.REUSABLE_STACK.push(tmpRangeB);
-
         return false;
     }
 
-    private static Vector2 flattenPoints(List<Vector2> vertices, Vector2 normal, Vector2 projection)
+    private static boolean intersection(Polygon a, Polygon b, Response response)
     {
-        float min = Float.MAX_VALUE;
-        float max = -min;
-
-        for (Vector2 vertex : vertices)
-        {
-            float dot = vertex.dot(normal);
-
-            if (dot < min) min = dot;
-            if (dot > max) max = dot;
-        }
+        response.a = a;
+        response.b = b;
+        response.overlapV.set(response.overlapN).scaleSelf(response.overlap);
+        response.intersection = true;
 
-        return projection.set(min, max);
+        return true;
     }
 
     public static Response getResponse()
@@ -278,4 +815,13 @@ public String toString()
                    '}';
         }
     }
+
+    /**
+     * A test for a pair of kinds of shapes.
+     */
+    @FunctionalInterface
+    private interface Test
+    {
+        boolean test(Polygon a, Polygon b, Response response);
+    }
 }
@@ -26,215 +26,1151 @@
 
 import com.shc.silenceengine.math.Vector2;
 import com.shc.silenceengine.math.Vector3;
+import com.shc.silenceengine.math.geom3d.Cuboid;
 import com.shc.silenceengine.math.geom3d.Polyhedron;
+import com.shc.silenceengine.math.geom3d.Sphere;
+import com.shc.silenceengine.utils.Scratch;
 
 import java.util.List;
 
 /**
+ * This class contains the utilities for checking collisions in 3D. The polyhedrons are tested with GJK (the
+ * Gilbert-Johnson-Keerthi algorithm), and the depth and the direction of the overlap are found with EPA (the Expanding
+ * Polytope Algorithm). Both only ask the shapes for their support points, the farthest points in a direction, so the
+ * cost of a test grows with the number of support points evaluated rather than with the number of faces.
+ * <p>
+ * A polyhedron gives the vertex that is the farthest in the direction, and a cuboid that is not rotated gives a corner
+ * of the box. A sphere is tested as its center with its radius around it, so it is the true sphere rather than its
+ * vertices. The older test with the SAT (Separating Axis Theorem) on the face normals is still available.
+ *
  * @author Sri Harsha Chilakapati
  */
 public class Collision3D
 {
     private static Response tmpResponse = new Response();
 
+    // The state of GJK and EPA for every thread, so that the tests can run on many threads at once
+    private static final ThreadLocal<ConvexSolver> SOLVERS = ThreadLocal.withInitial(ConvexSolver::new);
+
     public static boolean testPolyhedronCollision(Polyhedron a, Polyhedron b)
     {
         return testPolyhedronCollision(a, b, null);
     }
 
+    /**
+     * Tests whether two polyhedrons intersect with GJK, and fills in the response with EPA. A null response uses a
+     * response that is shared by all the callers, so a response of your own should be passed to test from many threads
+     * at once. Nothing is allocated.
+     * <p>
+     * The minimum translation vector of the response is the vector to subtract from the position of the first
+     * polyhedron to separate it from the second one. The shapes that only touch intersect, with a zero overlap. Whether
+     * a shape is inside the other is checked on the overlap axis and on the three coordinate axes.
+     *
+     * @param a        The first polyhedron.
+     * @param b        The second polyhedron.
+     * @param response The response to fill in, or null to use the shared one.
+     *
+     * @return Whether the polyhedrons intersect.
+     */
     public static boolean testPolyhedronCollision(Polyhedron a, Polyhedron b, Response response)
     {
         if (response == null)
             response = tmpResponse.clear();
 
-        Vector3 tmpAxis = Vector3.REUSABLE_STACK.pop();
-        Vector3 tmpEdge1 = Vector3.REUSABLE_STACK.pop();
-        Vector3 tmpEdge2 = Vector3.REUSABLE_STACK.pop();
+        return SOLVERS.get().test(a, b, response);
+    }
 
-        Vector3 v1, v2, v3;
+    /**
+     * Tests whether two polyhedrons intersect with the SAT, on the normals of the triangles of their triangle strips.
+     * The axes of the crossed edges are not tested, so some polyhedrons that don't intersect are reported to.
+     *
+     * @param a        The first polyhedron.
+     * @param b        The second polyhedron.
+     * @param response The response to fill in, or null to use the shared one.
+     *
+     * @return Whether the polyhedrons intersect.
+     */
+    public static boolean testPolyhedronCollisionSAT(Polyhedron a, Polyhedron b, Response response)
+    {
+        if (response == null)
+            response = tmpResponse.clear();
 
-        for (int v = 0; v < a.vertexCount() - 2; v++)
+        try (Scratch scratch = Scratch.open())
         {
-            if ((v & 1) != 0)
+            Vector3 tmpAxis = scratch.vector3();
+            Vector3 tmpEdge1 = scratch.vector3();
+            Vector3 tmpEdge2 = scratch.vector3();
+
+            Vector3 v1, v2, v3;
+
+            for (int v = 0; v < a.vertexCount() - 2; v++)
             {
-                // The Clock-Wise order
-                v1 = a.getVertex(v);
-                v2 = a.getVertex(v + 1);
-                v3 = a.getVertex(v + 2);
+                if ((v & 1) != 0)
+                {
+                    // The Clock-Wise order
+                    v1 = a.getVertex(v);
+                    v2 = a.getVertex(v + 1);
+                    v3 = a.getVertex(v + 2);
+                }
+                else
+                {
+                    // The Counter-Clock-Wise order
+                    v1 = a.getVertex(v);
+                    v2 = a.getVertex(v + 2);
+                    v3 = a.getVertex(v + 1);
+                }
+
+                tmpEdge1.set(v2).addSelf(a.getPosition()).subtractSelf(v1);
+                tmpEdge2.set(v3).addSelf(a.getPosition()).subtractSelf(v1);
+
+                tmpAxis.set(tmpEdge1).crossSelf(tmpEdge2).normalizeSelf();
+
+                // Do not test zero length axis
+                if (tmpAxis.lengthSquared() == 0)
+                    continue;
+
+                if (isSeparatingAxis(a, b, tmpAxis, response))
+                    return false;
+            }
+
+            for (int v = 0; v < b.vertexCount() - 2; v++)
+            {
+                if ((v & 1) != 0)
+                {
+                    // The Clock-Wise order
+                    v1 = b.getVertex(v);
+                    v2 = b.getVertex(v + 1);
+                    v3 = b.getVertex(v + 2);
+                }
+                else
+                {
+                    // The Counter-Clock-Wise order
+                    v1 = b.getVertex(v);
+                    v2 = b.getVertex(v + 2);
+                    v3 = b.getVertex(v + 1);
+                }
+
+                tmpEdge1.set(v2).subtractSelf(v1);
+                tmpEdge2.set(v3).subtractSelf(v1);
+
+                tmpAxis.set(tmpEdge1).crossSelf(tmpEdge2).normalizeSelf();
+
+                // Do not test zero length axis
+                if (tmpAxis.lengthSquared() == 0)
+                    continue;
+
+                if (isSeparatingAxis(a, b, tmpAxis, response))
+                    return false;
+            }
+
+            response.a = a;
+            response.b = b;
+            response.intersection = true;
+            response.overlapV.set(response.overlapN).scaleSelf(response.overlap);
+
+            return true;
+        }
+    }
+
+    public static boolean isSeparatingAxis(Polyhedron a, Polyhedron b, Vector3 axis, Response response)
+    {
+        if (response == null)
+            response = tmpResponse.clear();
+
+        try (Scratch scratch = Scratch.open())
+        {
+            Vector3 tmpOffset = scratch.vector3();
+            Vector2 tmpRangeA = scratch.vector2();
+            Vector2 tmpRangeB = scratch.vector2();
+
+            Vector3 offset = tmpOffset.set(b.getPosition()).subtractSelf(a.getPosition());
+            float projectedOffset = offset.dot(axis);
+
+            Vector2 rangeA = flattenPoints(a.getVertices(), axis, tmpRangeA);
+            Vector2 rangeB = flattenPoints(b.getVertices(), axis, tmpRangeB);
+
+            rangeB.addSelf(projectedOffset, projectedOffset);
+
+            if (rangeA.x > rangeB.y || rangeB.x > rangeA.y)
+                return true;
+
+            float overlap;
+
+            if (rangeA.x < rangeB.x)
+            {
+                response.aInB = false;
+
+                if (rangeA.y < rangeB.y)
+                {
+                    overlap = rangeA.y - rangeB.x;
+                    response.bInA = false;
+                }
+                else
+                {
+                    float option1 = rangeA.y - rangeB.x;
+                    float option2 = rangeB.y - rangeA.x;
+                    overlap = option1 < option2 ? option1 : -option2;
+                }
             }
             else
             {
-                // The Counter-Clock-Wise order
-                v1 = a.getVertex(v);
-                v2 = a.getVertex(v + 2);
-                v3 = a.getVertex(v + 1);
+                response.bInA = false;
+
+                if (rangeA.y > rangeB.y)
+                {
+                    overlap = rangeA.y - rangeB.x;
+                    response.aInB = false;
+                }
+                else
+                {
+                    float option1 = rangeA.y - rangeB.x;
+                    float option2 = rangeB.y - rangeA.x;
+                    overlap = option1 < option2 ? option1 : -option2;
+                }
+            }
+
+            overlap = Math.abs(overlap);
+
+            if (overlap < response.overlap)
+            {
+                response.overlap = overlap;
+                response.overlapN.set(axis.normalizeSelf());
+
+                if (overlap < 0)
+                    response.overlapN.negateSelf();
+            }
+
+            return false;
+        }
+    }
+
+    private static Vector2 flattenPoints(List<Vector3> vertices, Vector3 axis, Vector2 projection)
+    {
+        float min = axis.dot(vertices.get(0));
+        float max = min;
+
+        for (Vector3 v : vertices)
+        {
+            float dot = axis.dot(v);
+
+            if (dot < min) min = dot;
+            if (dot > max) max = dot;
+        }
+
+        return projection.set(min, max);
+    }
+
+    public static Response getResponse()
+    {
+        return tmpResponse;
+    }
+
+    /**
+     * GJK and EPA on the Minkowski difference of two shapes, the shape of all the points of the first shape minus all
+     * the points of the second one. The shapes intersect when the difference contains the origin, and the point on its
+     * surface that is the closest to the origin is the minimum translation vector. A sphere is its center with its
+     * radius as a margin around it, so that the distances to it are exact instead of being found on a polytope. The
+     * points are kept in arrays of doubles, which are reused by every test on the thread.
+     */
+    private static final class ConvexSolver
+    {
+        // The kinds of the shapes that have support points of their own
+        private static final int POLYHEDRON = 0;
+        private static final int SPHERE     = 1;
+        private static final int BOX        = 2;
+
+        private static final int    MAX_ITERATIONS = 64;
+        private static final int    MAX_POINTS     = 128;
+        private static final int    MAX_FACES      = MAX_POINTS * 2;
+        private static final double EPSILON        = 1e-12;
+        private static final double TOLERANCE      = 1e-5;
+
+        private Polyhedron a;
+        private Polyhedron b;
+        private int        kindA;
+        private int        kindB;
+
+        // The radii of the spheres, which are added around the difference of their centers
+        private double margin;
+
+        // Whether GJK ended with the difference apart from the origin, but within the margin
+        private boolean apart;
+
+        // The support point of a single shape, and of the difference, found last
+        private double sx, sy, sz;
+        private double px, py, pz;
+
+        // The point of the simplex of GJK that is the closest to the origin
+        private double vx, vy, vz;
+
+        // The simplex of GJK, and the copies of it used to find the closest point of a tetrahedron
+        private double[] simplex        = new double[12];
+        private double[] tetrahedron    = new double[12];
+        private double[] closestSimplex = new double[9];
+        private int      simplexSize;
+
+        // The points and the faces of the polytope of EPA, every face is three points and a plane, the unit normal
+        // pointing out of the polytope and the distance of the plane from the origin
+        private double[] points = new double[MAX_POINTS * 3];
+        private int      numPoints;
+        private int[]    faces  = new int[MAX_FACES * 3];
+        private double[] planes = new double[MAX_FACES * 4];
+        private int      numFaces;
+
+        // The edges of the hole left by the faces removed from the polytope
+        private int[] edges = new int[MAX_FACES * 3 * 2];
+        private int   numEdges;
+
+        // The normal of the face of the polytope that is the closest to the origin, and its distance
+        private double normalX, normalY, normalZ;
+        private double depth;
+
+        boolean test(Polyhedron a, Polyhedron b, Response response)
+        {
+            this.a = a;
+            this.b = b;
+
+            kindA = kindOf(a);
+            kindB = kindOf(b);
+
+            margin = 0;
+
+            if (kindA == SPHERE)
+                margin += ((Sphere) a).getRadius();
+
+            if (kindB == SPHERE)
+                margin += ((Sphere) b).getRadius();
+
+            boolean intersects = intersects();
+
+            if (intersects)
+            {
+                penetration();
+
+                response.a = a;
+                response.b = b;
+                response.intersection = true;
+                response.overlap = (float) depth;
+                response.overlapN.set((float) normalX, (float) normalY, (float) normalZ);
+                response.overlapV.set(response.overlapN).scaleSelf(response.overlap);
+
+                response.aInB = contains(b, kindB, a, kindA);
+                response.bInA = contains(a, kindA, b, kindB);
             }
 
-            tmpEdge1.set(v2).addSelf(a.getPosition()).subtractSelf(v1);
-            tmpEdge2.set(v3).addSelf(a.getPosition()).subtractSelf(v1);
+            this.a = this.b = null;
 
-            tmpAxis.set(tmpEdge1).crossSelf(tmpEdge2).normalizeSelf();
+            return intersects;
+        }
+
+        private static int kindOf(Polyhedron p)
+        {
+            if (p instanceof Sphere)
+                return SPHERE;
 
-            // Do not test zero length axis
-            if (tmpAxis.lengthSquared() == 0)
-                continue;
+            if (p instanceof Cuboid && p.getRotationX() == 0 && p.getRotationY() == 0 && p.getRotationZ() == 0)
+                return BOX;
+
+            return POLYHEDRON;
+        }
 
-            if (isSeparatingAxis(a, b, tmpAxis, response))
+        /**
+         * Finds the support point of a shape, the point of the shape that is the farthest in a direction.
+         */
+        private void support(Polyhedron p, int kind, double dx, double dy, double dz)
+        {
+            Vector3 position = p.getPosition();
+
+            switch (kind)
             {
-                Vector3.REUSABLE_STACK.push(tmpAxis);
-                Vector3.REUSABLE_STACK.push(tmpEdge1);
-                Vector3.REUSABLE_STACK.push(tmpEdge2);
+                case SPHERE:
+                {
+                    double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+                    double radius = ((Sphere) p).getRadius();
 
-                return false;
+                    if (length < EPSILON)
+                    {
+                        dx = length = 1;
+                        dy = dz = 0;
+                    }
+
+                    sx = position.x + dx * radius / length;
+                    sy = position.y + dy * radius / length;
+                    sz = position.z + dz * radius / length;
+                    return;
+                }
+
+                case BOX:
+                {
+                    // The first and the last vertices of a cuboid are opposite corners
+                    Vector3 v1 = p.getVertex(0);
+                    Vector3 v2 = p.getVertex(p.vertexCount() - 1);
+
+                    sx = position.x + (dx >= 0 ? Math.max(v1.x, v2.x) : Math.min(v1.x, v2.x));
+                    sy = position.y + (dy >= 0 ? Math.max(v1.y, v2.y) : Math.min(v1.y, v2.y));
+                    sz = position.z + (dz >= 0 ? Math.max(v1.z, v2.z) : Math.min(v1.z, v2.z));
+                    return;
+                }
+
+                default:
+                {
+                    List<Vector3> vertices = p.getVertices();
+
+                    Vector3 farthest = vertices.get(0);
+                    double max = farthest.x * dx + farthest.y * dy + farthest.z * dz;
+
+                    for (int i = 1; i < vertices.size(); i++)
+                    {
+                        Vector3 v = vertices.get(i);
+                        double dot = v.x * dx + v.y * dy + v.z * dz;
+
+                        if (dot > max)
+                        {
+                            max = dot;
+                            farthest = v;
+                        }
+                    }
+
+                    sx = position.x + farthest.x;
+                    sy = position.y + farthest.y;
+                    sz = position.z + farthest.z;
+                }
             }
         }
 
-        for (int v = 0; v < b.vertexCount() - 2; v++)
+        /**
+         * Finds the support point of the Minkowski difference in a direction, the support point of the first shape in
+         * the direction minus the support point of the second shape in the opposite direction. The spheres are only
+         * their centers here, their radii being the margin.
+         */
+        private void support(double dx, double dy, double dz)
         {
-            if ((v & 1) != 0)
+            if (kindA == SPHERE)
+            {
+                px = a.getPosition().x;
+                py = a.getPosition().y;
+                pz = a.getPosition().z;
+            }
+            else
+            {
+                support(a, kindA, dx, dy, dz);
+
+                px = sx;
+                py = sy;
+                pz = sz;
+            }
+
+            if (kindB == SPHERE)
             {
-                // The Clock-Wise order
-                v1 = b.getVertex(v);
-                v2 = b.getVertex(v + 1);
-                v3 = b.getVertex(v + 2);
+                px -= b.getPosition().x;
+                py -= b.getPosition().y;
+                pz -= b.getPosition().z;
             }
             else
             {
-                // The Counter-Clock-Wise order
-                v1 = b.getVertex(v);
-                v2 = b.getVertex(v + 2);
-                v3 = b.getVertex(v + 1);
+                support(b, kindB, -dx, -dy, -dz);
+
+                px -= sx;
+                py -= sy;
+                pz -= sz;
             }
+        }
 
-            tmpEdge1.set(v2).subtractSelf(v1);
-            tmpEdge2.set(v3).subtractSelf(v1);
+        /**
+         * Checks whether a shape is inside another shape, on the overlap axis and on the three coordinate axes.
+         */
+        private boolean contains(Polyhedron outer, int outerKind, Polyhedron inner, int innerKind)
+        {
+            return contains(outer, outerKind, inner, innerKind, normalX, normalY, normalZ) &&
+                   contains(outer, outerKind, inner, innerKind, 1, 0, 0) &&
+                   contains(outer, outerKind, inner, innerKind, 0, 1, 0) &&
+                   contains(outer, outerKind, inner, innerKind, 0, 0, 1);
+        }
+
+        /**
+         * Checks whether the projection of the inner shape on an axis is inside the projection of the outer shape.
+         */
+        private boolean contains(Polyhedron outer, int outerKind, Polyhedron inner, int innerKind,
+                                 double dx, double dy, double dz)
+        {
+            support(outer, outerKind, dx, dy, dz);
+            double maxOuter = sx * dx + sy * dy + sz * dz;
+
+            support(outer, outerKind, -dx, -dy, -dz);
+            double minOuter = sx * dx + sy * dy + sz * dz;
 
-            tmpAxis.set(tmpEdge1).crossSelf(tmpEdge2).normalizeSelf();
+            support(inner, innerKind, dx, dy, dz);
+            double maxInner = sx * dx + sy * dy + sz * dz;
 
-            // Do not test zero length axis
-            if (tmpAxis.lengthSquared() == 0)
-                continue;
+            support(inner, innerKind, -dx, -dy, -dz);
+            double minInner = sx * dx + sy * dy + sz * dz;
 
-            if (isSeparatingAxis(a, b, tmpAxis, response))
+            return minInner >= minOuter && maxInner <= maxOuter;
+        }
+
+        /**
+         * GJK, which builds simplices of the support points of the difference that get closer to the origin, until
+         * one contains the origin or a direction is found in which the difference doesn't reach the origin. The
+         * simplex is reduced to its feature that is the closest to the origin every time, and the search goes on from
+         * that point, so the distance only gets smaller. When it stops getting smaller, the difference is apart from
+         * the origin, and the shapes intersect only if the distance is within the margin.
+         */
+        private boolean intersects()
+        {
+            vx = b.getPosition().x - a.getPosition().x;
+            vy = b.getPosition().y - a.getPosition().y;
+            vz = b.getPosition().z - a.getPosition().z;
+
+            if (vx * vx + vy * vy + vz * vz < EPSILON)
             {
-                Vector3.REUSABLE_STACK.push(tmpAxis);
-                Vector3.REUSABLE_STACK.push(tmpEdge1);
-                Vector3.REUSABLE_STACK.push(tmpEdge2);
+                vx = 1;
+                vy = vz = 0;
+            }
 
-                return false;
+            simplexSize = 0;
+            apart = false;
+
+            double distance = Double.POSITIVE_INFINITY;
+
+            for (int i = 0; i < MAX_ITERATIONS; i++)
+            {
+                support(-vx, -vy, -vz);
+
+                double lengthSquared = vx * vx + vy * vy + vz * vz;
+                double dot = px * vx + py * vy + pz * vz;
+
+                // The difference doesn't reach the origin against the closest point, not even with the margin
+                if (dot > 0 && dot * dot > margin * margin * lengthSquared)
+                    return false;
+
+                // The new point is no farther along the closest point, which is then the closest of the difference
+                if (i > 0 && lengthSquared - dot <= TOLERANCE * lengthSquared)
+                    return isWithinMargin(lengthSquared);
+
+                push(px, py, pz);
+
+                // The origin is inside the tetrahedron, or on the simplex
+                if (!closestPoint())
+                    return true;
+
+                lengthSquared = vx * vx + vy * vy + vz * vz;
+
+                if (lengthSquared < EPSILON)
+                    return true;
+
+                // The closest point doesn't get any closer, the difference ends short of the origin
+                if (lengthSquared >= distance)
+                    return isWithinMargin(lengthSquared);
+
+                distance = lengthSquared;
             }
+
+            return isWithinMargin(vx * vx + vy * vy + vz * vz);
         }
 
-        response.a = a;
-        response.b = b;
-        response.intersection = true;
-        response.overlapV.set(response.overlapN).scaleSelf(response.overlap);
+        private boolean isWithinMargin(double lengthSquared)
+        {
+            apart = lengthSquared <= margin * margin;
+            return apart;
+        }
 
-        Vector3.REUSABLE_STACK.push(tmpAxis);
-        Vector3.REUSABLE_STACK.push(tmpEdge1);
-        Vector3.REUSABLE_STACK.push(tmpEdge2);
+        private void push(double x, double y, double z)
+        {
+            simplex[simplexSize * 3] = x;
+            simplex[simplexSize * 3 + 1] = y;
+            simplex[simplexSize * 3 + 2] = z;
+            simplexSize++;
+        }
 
-        return true;
-    }
+        /**
+         * Keeps the points of the simplex at the indices, in that order.
+         */
+        private void keep(int i)
+        {
+            System.arraycopy(simplex, i * 3, simplex, 0, 3);
+            simplexSize = 1;
+        }
 
-    public static boolean isSeparatingAxis(Polyhedron a, Polyhedron b, Vector3 axis, Response response)
-    {
-        if (response == null)
-            response = tmpResponse.clear();
+        private void keep(int i, int j)
+        {
+            double x = simplex[j * 3], y = simplex[j * 3 + 1], z = simplex[j * 3 + 2];
 
-        Vector3 tmpOffset = Vector3.REUSABLE_STACK.pop();
-        Vector2 tmpRangeA = Vector2.REUSABLE_STACK.pop();
-        Vector2 tmpRangeB = Vector2.REUSABLE_STACK.pop();
+            System.arraycopy(simplex, i * 3, simplex, 0, 3);
 
-        Vector3 offset = tmpOffset.set(b.getPosition()).subtractSelf(a.getPosition());
-        float projectedOffset = offset.dot(axis);
+            simplex[3] = x;
+            simplex[4] = y;
+            simplex[5] = z;
+            simplexSize = 2;
+        }
 
-        Vector2 rangeA = flattenPoints(a.getVertices(), axis, tmpRangeA);
-        Vector2 rangeB = flattenPoints(b.getVertices(), axis, tmpRangeB);
+        /**
+         * Finds the point of the simplex that is the closest to the origin, and reduces the simplex to the smallest
+         * feature that has it.
+         *
+         * @return False if the simplex is a tetrahedron that contains the origin, else true.
+         */
+        private boolean closestPoint()
+        {
+            switch (simplexSize)
+            {
+                case 1:
+                    vx = simplex[0];
+                    vy = simplex[1];
+                    vz = simplex[2];
+                    return true;
 
-        rangeB.addSelf(projectedOffset, projectedOffset);
+                case 2:
+                    closestOnSegment();
+                    return true;
 
-        if (rangeA.x > rangeB.y || rangeB.x > rangeA.y)
+                case 3:
+                    closestOnTriangle();
+                    return true;
+
+                default:
+                    return closestOnTetrahedron();
+            }
+        }
+
+        private void closestOnSegment()
         {
-            Vector3.REUSABLE_STACK.push(tmpOffset);
-            Vector2.REUSABLE_STACK.push(tmpRangeA);
-            Vector2.REUSABLE_STACK.push(tmpRangeB);
+            double ax = simplex[0], ay = simplex[1], az = simplex[2];
+            double abx = simplex[3] - ax, aby = simplex[4] - ay, abz = simplex[5] - az;
 
-            return true;
+            double t = -(ax * abx + ay * aby + az * abz);
+            double length = abx * abx + aby * aby + abz * abz;
+
+            if (t <= 0 || length < EPSILON)
+            {
+                keep(0);
+                vx = ax;
+                vy = ay;
+                vz = az;
+            }
+            else if (t >= length)
+            {
+                keep(1);
+                vx = simplex[0];
+                vy = simplex[1];
+                vz = simplex[2];
+            }
+            else
+            {
+                t /= length;
+
+                vx = ax + abx * t;
+                vy = ay + aby * t;
+                vz = az + abz * t;
+            }
         }
 
-        float overlap;
+        /**
+         * The regions of the vertices, the edges and the face of the triangle, from Real-Time Collision Detection by
+         * Christer Ericson.
+         */
+        private void closestOnTriangle()
+        {
+            double ax = simplex[0], ay = simplex[1], az = simplex[2];
+            double bx = simplex[3], by = simplex[4], bz = simplex[5];
+            double cx = simplex[6], cy = simplex[7], cz = simplex[8];
+
+            double abx = bx - ax, aby = by - ay, abz = bz - az;
+            double acx = cx - ax, acy = cy - ay, acz = cz - az;
+
+            double d1 = -(abx * ax + aby * ay + abz * az);
+            double d2 = -(acx * ax + acy * ay + acz * az);
+
+            if (d1 <= 0 && d2 <= 0)
+            {
+                keep(0);
+                vx = ax;
+                vy = ay;
+                vz = az;
+                return;
+            }
+
+            double d3 = -(abx * bx + aby * by + abz * bz);
+            double d4 = -(acx * bx + acy * by + acz * bz);
+
+            if (d3 >= 0 && d4 <= d3)
+            {
+                keep(1);
+                vx = bx;
+                vy = by;
+                vz = bz;
+                return;
+            }
+
+            double vc = d1 * d4 - d3 * d2;
+
+            if (vc <= 0 && d1 >= 0 && d3 <= 0)
+            {
+                double t = d1 / (d1 - d3);
+
+                keep(0, 1);
+                vx = ax + abx * t;
+                vy = ay + aby * t;
+                vz = az + abz * t;
+                return;
+            }
+
+            double d5 = -(abx * cx + aby * cy + abz * cz);
+            double d6 = -(acx * cx + acy * cy + acz * cz);
+
+            if (d6 >= 0 && d5 <= d6)
+            {
+                keep(2);
+                vx = cx;
+                vy = cy;
+                vz = cz;
+                return;
+            }
+
+            double vb = d5 * d2 - d1 * d6;
+
+            if (vb <= 0 && d2 >= 0 && d6 <= 0)
+            {
+                double t = d2 / (d2 - d6);
+
+                keep(0, 2);
+                vx = ax + acx * t;
+                vy = ay + acy * t;
+                vz = az + acz * t;
+                return;
+            }
+
+            double va = d3 * d6 - d5 * d4;
+
+            if (va <= 0 && d4 - d3 >= 0 && d5 - d6 >= 0)
+            {
+                double t = (d4 - d3) / ((d4 - d3) + (d5 - d6));
+
+                keep(1, 2);
+                vx = bx + (cx - bx) * t;
+                vy = by + (cy - by) * t;
+                vz = bz + (cz - bz) * t;
+                return;
+            }
+
+            double denominator = va + vb + vc;
+
+            if (denominator < EPSILON)
+            {
+                // A degenerate triangle, the closest of its edges is kept
+                keep(0, 1);
+                closestOnSegment();
+                return;
+            }
+
+            double v = vb / denominator;
+            double w = vc / denominator;
 
-        if (rangeA.x < rangeB.x)
+            vx = ax + abx * v + acx * w;
+            vy = ay + aby * v + acy * w;
+            vz = az + abz * v + acz * w;
+        }
+
+        /**
+         * Finds the closest point on the faces of the tetrahedron that the origin is outside of.
+         *
+         * @return False if the origin is inside the tetrahedron, else true.
+         */
+        private boolean closestOnTetrahedron()
         {
-            response.aInB = false;
+            System.arraycopy(simplex, 0, tetrahedron, 0, 12);
+
+            double ax = tetrahedron[0], ay = tetrahedron[1], az = tetrahedron[2];
+
+            // The tetrahedron is flat when its volume is zero, then every face is tested
+            double volume = (tetrahedron[3] - ax) * ((tetrahedron[7] - ay) * (tetrahedron[11] - az) -
+                                                     (tetrahedron[8] - az) * (tetrahedron[10] - ay)) +
+                            (tetrahedron[4] - ay) * ((tetrahedron[8] - az) * (tetrahedron[9] - ax) -
+                                                     (tetrahedron[6] - ax) * (tetrahedron[11] - az)) +
+                            (tetrahedron[5] - az) * ((tetrahedron[6] - ax) * (tetrahedron[10] - ay) -
+                                                     (tetrahedron[7] - ay) * (tetrahedron[9] - ax));
+
+            boolean flat = Math.abs(volume) < EPSILON;
+
+            double best = Double.POSITIVE_INFINITY;
+            int bestSize = 0;
+            double bestX = 0, bestY = 0, bestZ = 0;
 
-            if (rangeA.y < rangeB.y)
+            for (int face = 0; face < 4; face++)
             {
-                overlap = rangeA.y - rangeB.x;
-                response.bInA = false;
+                // The face is every point but one
+                int opposite = 3 - face;
+
+                if (!flat && !isOutside(opposite))
+                    continue;
+
+                simplexSize = 0;
+
+                for (int i = 0; i < 4; i++)
+                {
+                    if (i != opposite)
+                        push(tetrahedron[i * 3], tetrahedron[i * 3 + 1], tetrahedron[i * 3 + 2]);
+                }
+
+                closestOnTriangle();
+
+                double distance = vx * vx + vy * vy + vz * vz;
+
+                if (distance < best)
+                {
+                    best = distance;
+                    bestSize = simplexSize;
+                    bestX = vx;
+                    bestY = vy;
+                    bestZ = vz;
+
+                    System.arraycopy(simplex, 0, closestSimplex, 0, simplexSize * 3);
+                }
             }
-            else
+
+            if (bestSize == 0)
             {
-                float option1 = rangeA.y - rangeB.x;
-                float option2 = rangeB.y - rangeA.x;
-                overlap = option1 < option2 ? option1 : -option2;
+                // The origin is inside every face
+                System.arraycopy(tetrahedron, 0, simplex, 0, 12);
+                simplexSize = 4;
+                return false;
             }
+
+            System.arraycopy(closestSimplex, 0, simplex, 0, bestSize * 3);
+            simplexSize = bestSize;
+
+            vx = bestX;
+            vy = bestY;
+            vz = bestZ;
+
+            return true;
+        }
+
+        /**
+         * Checks whether the origin is outside the face of the tetrahedron that doesn't have the point at an index,
+         * that is on the other side of the face than that point.
+         */
+        private boolean isOutside(int opposite)
+        {
+            int i = opposite == 0 ? 1 : 0;
+            int j = opposite <= 1 ? 2 : 1;
+            int k = opposite <= 2 ? 3 : 2;
+
+            double ax = tetrahedron[i * 3], ay = tetrahedron[i * 3 + 1], az = tetrahedron[i * 3 + 2];
+
+            double abx = tetrahedron[j * 3] - ax, aby = tetrahedron[j * 3 + 1] - ay, abz = tetrahedron[j * 3 + 2] - az;
+            double acx = tetrahedron[k * 3] - ax, acy = tetrahedron[k * 3 + 1] - ay, acz = tetrahedron[k * 3 + 2] - az;
+
+            double nx = aby * acz - abz * acy;
+            double ny = abz * acx - abx * acz;
+            double nz = abx * acy - aby * acx;
+
+            double origin = -(nx * ax + ny * ay + nz * az);
+            double point = nx * (tetrahedron[opposite * 3] - ax) + ny * (tetrahedron[opposite * 3 + 1] - ay) +
+                           nz * (tetrahedron[opposite * 3 + 2] - az);
+
+            return origin * point < 0;
         }
-        else
+
+        /**
+         * EPA, which grows a polytope inside the difference from the simplex of GJK, towards the face of the difference
+         * that is the closest to the origin.
+         */
+        private void penetration()
         {
-            response.bInA = false;
+            depth = 0;
 
-            if (rangeA.y > rangeB.y)
+            // The difference is apart from the origin, the margin overlaps by what the distance is short of it
+            if (apart)
             {
-                overlap = rangeA.y - rangeB.x;
-                response.aInB = false;
+                double length = Math.sqrt(vx * vx + vy * vy + vz * vz);
+
+                normalX = -vx / length;
+                normalY = -vy / length;
+                normalZ = -vz / length;
+                depth = margin - length;
+
+                return;
             }
-            else
+
+            // A simplex that only touches the origin is grown to a tetrahedron first
+            if (!completeSimplex())
             {
-                float option1 = rangeA.y - rangeB.x;
-                float option2 = rangeB.y - rangeA.x;
-                overlap = option1 < option2 ? option1 : -option2;
+                // The difference is flat, so the shapes only touch, and are pushed apart along their centers
+                double x = b.getPosition().x - a.getPosition().x;
+                double y = b.getPosition().y - a.getPosition().y;
+                double z = b.getPosition().z - a.getPosition().z;
+
+                double length = Math.sqrt(x * x + y * y + z * z);
+
+                if (length < EPSILON)
+                {
+                    normalX = 1;
+                    normalY = normalZ = 0;
+                }
+                else
+                {
+                    normalX = x / length;
+                    normalY = y / length;
+                    normalZ = z / length;
+                }
+
+                depth = margin;
+                return;
             }
+
+            System.arraycopy(simplex, 0, points, 0, 12);
+            numPoints = 4;
+            numFaces = 0;
+
+            addTetrahedronFace(0, 1, 2, 3);
+            addTetrahedronFace(0, 3, 1, 2);
+            addTetrahedronFace(0, 2, 3, 1);
+            addTetrahedronFace(1, 3, 2, 0);
+
+            for (int i = 0; i < MAX_ITERATIONS; i++)
+            {
+                int closest = 0;
+
+                for (int f = 1; f < numFaces; f++)
+                {
+                    if (planes[f * 4 + 3] < planes[closest * 4 + 3])
+                        closest = f;
+                }
+
+                normalX = planes[closest * 4];
+                normalY = planes[closest * 4 + 1];
+                normalZ = planes[closest * 4 + 2];
+                depth = planes[closest * 4 + 3];
+
+                support(normalX, normalY, normalZ);
+
+                double distance = px * normalX + py * normalY + pz * normalZ;
+
+                // The face is on the surface of the difference
+                if (distance - depth <= TOLERANCE * Math.max(1, depth) || numPoints == MAX_POINTS)
+                    break;
+
+                expand();
+
+                if (numFaces == 0)
+                    break;
+            }
+
+            depth = Math.max(depth, 0) + margin;
         }
 
-        overlap = Math.abs(overlap);
+        /**
+         * Adds support points to a simplex of GJK that ended before it had four points, because the origin is on it.
+         *
+         * @return Whether the simplex could be grown to a tetrahedron that isn't flat.
+         */
+        private boolean completeSimplex()
+        {
+            if (simplexSize == 1)
+            {
+                for (int axis = 0; axis < 6 && simplexSize == 1; axis++)
+                {
+                    double sign = axis < 3 ? 1 : -1;
+                    support(axis % 3 == 0 ? sign : 0, axis % 3 == 1 ? sign : 0, axis % 3 == 2 ? sign : 0);
+
+                    double ex = px - simplex[0], ey = py - simplex[1], ez = pz - simplex[2];
+
+                    if (ex * ex + ey * ey + ez * ez > EPSILON)
+                        push(px, py, pz);
+                }
+            }
+
+            if (simplexSize == 2)
+            {
+                double ux = simplex[3] - simplex[0], uy = simplex[4] - simplex[1], uz = simplex[5] - simplex[2];
+
+                // A vector perpendicular to the line, crossed with the coordinate axis that is the least parallel to it
+                double qx, qy, qz;
+
+                if (Math.abs(ux) <= Math.abs(uy) && Math.abs(ux) <= Math.abs(uz))
+                {
+                    qx = 0;
+                    qy = uz;
+                    qz = -uy;
+                }
+                else if (Math.abs(uy) <= Math.abs(uz))
+                {
+                    qx = -uz;
+                    qy = 0;
+                    qz = ux;
+                }
+                else
+                {
+                    qx = uy;
+                    qy = -ux;
+                    qz = 0;
+                }
+
+                // Another one, perpendicular to both
+                double wx = uy * qz - uz * qy;
+                double wy = uz * qx - ux * qz;
+                double wz = ux * qy - uy * qx;
+
+                double lengthQ = Math.sqrt(qx * qx + qy * qy + qz * qz);
+                double lengthW = Math.sqrt(wx * wx + wy * wy + wz * wz);
+
+                // Search around the line, every 60 degrees
+                for (int i = 0; i < 6 && simplexSize == 2 && lengthQ > EPSILON; i++)
+                {
+                    double cos = Math.cos(i * Math.PI / 3) / lengthQ;
+                    double sin = Math.sin(i * Math.PI / 3) / lengthW;
+
+                    support(qx * cos + wx * sin, qy * cos + wy * sin, qz * cos + wz * sin);
+
+                    // The distance of the point from the line
+                    double ex = px - simplex[0], ey = py - simplex[1], ez = pz - simplex[2];
+                    double cx = ey * uz - ez * uy, cy = ez * ux - ex * uz, cz = ex * uy - ey * ux;
+
+                    if (cx * cx + cy * cy + cz * cz > EPSILON * (ux * ux + uy * uy + uz * uz))
+                        push(px, py, pz);
+                }
+            }
+
+            if (simplexSize == 3)
+            {
+                double abx = simplex[3] - simplex[0], aby = simplex[4] - simplex[1], abz = simplex[5] - simplex[2];
+                double acx = simplex[6] - simplex[0], acy = simplex[7] - simplex[1], acz = simplex[8] - simplex[2];
+
+                double nx = aby * acz - abz * acy;
+                double ny = abz * acx - abx * acz;
+                double nz = abx * acy - aby * acx;
+
+                double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+                for (int i = 0; i < 2 && simplexSize == 3 && length > EPSILON; i++)
+                {
+                    double sign = i == 0 ? 1 : -1;
+                    support(nx * sign, ny * sign, nz * sign);
+
+                    double distance = (px - simplex[0]) * nx + (py - simplex[1]) * ny + (pz - simplex[2]) * nz;
+
+                    if (Math.abs(distance) > TOLERANCE * length)
+                        push(px, py, pz);
+                }
+            }
+
+            return simplexSize == 4;
+        }
 
-        if (overlap < response.overlap)
+        private void addTetrahedronFace(int a, int b, int c, int opposite)
         {
-            response.overlap = overlap;
-            response.overlapN.set(axis.normalizeSelf());
+            double ax = points[a * 3], ay = points[a * 3 + 1], az = points[a * 3 + 2];
 
-            if (overlap < 0)
-                response.overlapN.negateSelf();
+            double nx = (points[b * 3 + 1] - ay) * (points[c * 3 + 2] - az) -
+                        (points[b * 3 + 2] - az) * (points[c * 3 + 1] - ay);
+            double ny = (points[b * 3 + 2] - az) * (points[c * 3] - ax) -
+                        (points[b * 3] - ax) * (points[c * 3 + 2] - az);
+            double nz = (points[b * 3] - ax) * (points[c * 3 + 1] - ay) -
+                        (points[b * 3 + 1] - ay) * (points[c * 3] - ax);
+
+            // The faces are wound so that their normals point away from the fourth point
+            if (nx * (points[opposite * 3] - ax) + ny * (points[opposite * 3 + 1] - ay) +
+                nz * (points[opposite * 3 + 2] - az) > 0)
+                addFace(a, c, b);
+            else
+                addFace(a, b, c);
         }
 
-        Vector3.REUSABLE_STACK.push(tmpOffset);
-        Vector2.REUSABLE_STACK.push(tmpRangeA);
-        Vector2.REUSABLE_STACK.push(tmpRangeB);
+        private void addFace(int a, int b, int c)
+        {
+            int face = numFaces++;
 
-        return false;
-    }
+            faces[face * 3] = a;
+            faces[face * 3 + 1] = b;
+            faces[face * 3 + 2] = c;
 
-    private static Vector2 flattenPoints(List<Vector3> vertices, Vector3 axis, Vector2 projection)
-    {
-        float min = axis.dot(vertices.get(0));
-        float max = min;
+            double ax = points[a * 3], ay = points[a * 3 + 1], az = points[a * 3 + 2];
 
-        for (Vector3 v : vertices)
+            double abx = points[b * 3] - ax, aby = points[b * 3 + 1] - ay, abz = points[b * 3 + 2] - az;
+            double acx = points[c * 3] - ax, acy = points[c * 3 + 1] - ay, acz = points[c * 3 + 2] - az;
+
+            double nx = aby * acz - abz * acy;
+            double ny = abz * acx - abx * acz;
+            double nz = abx * acy - aby * acx;
+
+            double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+            if (length < EPSILON)
+            {
+                // A degenerate face is never the closest one
+                planes[face * 4] = planes[face * 4 + 1] = planes[face * 4 + 2] = 0;
+                planes[face * 4 + 3] = Double.POSITIVE_INFINITY;
+                return;
+            }
+
+            planes[face * 4] = nx / length;
+            planes[face * 4 + 1] = ny / length;
+            planes[face * 4 + 2] = nz / length;
+            planes[face * 4 + 3] = (nx * ax + ny * ay + nz * az) / length;
+        }
+
+        /**
+         * Adds the last support point to the polytope, removing the faces that it can see and filling the hole with
+         * faces to the point.
+         */
+        private void expand()
         {
-            float dot = axis.dot(v);
+            int point = numPoints++;
 
-            if (dot < min) min = dot;
-            if (dot > max) max = dot;
+            points[point * 3] = px;
+            points[point * 3 + 1] = py;
+            points[point * 3 + 2] = pz;
+
+            numEdges = 0;
+
+            for (int f = numFaces - 1; f >= 0; f--)
+            {
+                int a = faces[f * 3];
+
+                double visibility = planes[f * 4] * (px - points[a * 3]) +
+                                    planes[f * 4 + 1] * (py - points[a * 3 + 1]) +
+                                    planes[f * 4 + 2] * (pz - points[a * 3 + 2]);
+
+                if (visibility <= 0)
+                    continue;
+
+                addEdge(faces[f * 3], faces[f * 3 + 1]);
+                addEdge(faces[f * 3 + 1], faces[f * 3 + 2]);
+                addEdge(faces[f * 3 + 2], faces[f * 3]);
+
+                // The last face takes the place of the removed one
+                int last = --numFaces;
+
+                System.arraycopy(faces, last * 3, faces, f * 3, 3);
+                System.arraycopy(planes, last * 4, planes, f * 4, 4);
+            }
+
+            for (int e = 0; e < numEdges && numFaces < MAX_FACES; e++)
+                addFace(edges[e * 2], edges[e * 2 + 1], point);
         }
 
-        return projection.set(min, max);
-    }
+        /**
+         * Adds an edge of a removed face to the edges of the hole. An edge shared with another removed face is inside
+         * the hole, and is removed instead.
+         */
+        private void addEdge(int a, int b)
+        {
+            for (int e = 0; e < numEdges; e++)
+            {
+                if (edges[e * 2] == b && edges[e * 2 + 1] == a)
+                {
+                    int last = --numEdges;
 
-    public static Response getResponse()
-    {
-        return tmpResponse;
+                    edges[e * 2] = edges[last * 2];
+                    edges[e * 2 + 1] = edges[last * 2 + 1];
+                    return;
+                }
+            }
+
+            edges[numEdges * 2] = a;
+            edges[numEdges * 2 + 1] = b;
+            numEdges++;
+        }
     }
 
     public static class Response
@@ -0,0 +1,1111 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.collision.broadphase;
+
+import com.shc.silenceengine.math.Frustum;
+import com.shc.silenceengine.math.Vector3;
+import com.shc.silenceengine.math.geom3d.Cuboid;
+import com.shc.silenceengine.math.geom3d.Polyhedron;
+import com.shc.silenceengine.scene.entity.Entity3D;
+import com.shc.silenceengine.utils.IntMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * A bounding volume hierarchy, for scenes where most of the entities move every frame. The tree is built from the top
+ * down with the surface area heuristic, which is evaluated on a few bins along the longest axis of the centers of the
+ * entities. The large subtrees are built in parallel on a ForkJoinPool. An entity that moves doesn't change the shape
+ * of the tree, the boxes of its leaf and of the nodes above it are only refitted. When the refitted boxes have grown
+ * too large, the tree is built again.
+ *
+ * <p> The tree is brought up to date lazily, by the first query after the entities were inserted, removed or updated.
+ * The nodes are kept in flat arrays, the left child of a node is the next node and the right child follows the nodes
+ * of the left subtree, so the subtrees can be built by different threads without sharing anything. The boxes of the
+ * entities are copied when they are inserted or updated, so an update or a query doesn't allocate once the arrays are
+ * large enough. </p>
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class BVH3D implements IBroadphase3D
+{
+    // The index used for no node and no entity
+    private static final int NULL = -1;
+
+    // The number of bins the surface area heuristic is evaluated on, and the largest number of entities in a leaf
+    private static final int NUM_BINS      = 16;
+    private static final int MAX_LEAF_SIZE = 4;
+
+    // The number of entities of a subtree that is built by a task of its own, smaller subtrees are built serially
+    private static final int ENTITIES_PER_TASK = 2048;
+
+    // The bins of the builds on every thread
+    private static final ThreadLocal<Bins> BINS = ThreadLocal.withInitial(Bins::new);
+
+    // The entities, and their boxes, six floats for every entity, the minimum x, y and z and then the maximum x, y
+    // and z
+    private Entity3D[] entities;
+    private float[]    boxes;
+    private int        numEntities;
+
+    // The index of every entity, by the ID of the entity
+    private IntMap indices;
+
+    // The centers of the boxes when the tree was built, and the order of the entities in the leaves
+    private float[] centers;
+    private int[]   order;
+
+    // The leaf of every entity
+    private int[] leaves;
+
+    // The boxes of the nodes, the right child of an inner node or the first entity of a leaf in the order, and the
+    // number of entities in a leaf, zero for the inner nodes and -1 for the nodes that are not used
+    private float[] nodeBoxes;
+    private int[]   nodeFirst;
+    private int[]   nodeCount;
+    private int[]   parents;
+
+    // The entities updated since the tree was refitted
+    private boolean[] dirty;
+    private int[]     dirtyList;
+    private int       numDirty;
+
+    private boolean needsBuild;
+
+    // The sum of the surface areas of the nodes, after the tree was built and now
+    private float builtCost;
+    private float cost;
+
+    // The factor the cost can grow by before the tree is built again
+    private float rebuildThreshold;
+
+    // The pool of the parallel builds, null when the tree is built on the calling thread
+    private ForkJoinPool buildPool;
+
+    // The stack of the nodes to visit in a query, a query started from the callback of another query uses the part of
+    // the stack above it
+    private int[] stack;
+    private int   stackSize;
+
+    private List<Entity3D>     retrieveList;
+    private Consumer<Entity3D> retrieveConsumer;
+
+    // The statistics
+    private int builds;
+    private int refits;
+
+    /**
+     * Creates a BVH3D that is built on the common pool, and is built again when its refitted boxes have grown by half.
+     */
+    public BVH3D()
+    {
+        this(ForkJoinPool.commonPool(), 1.5f);
+    }
+
+    /**
+     * Creates a BVH3D.
+     *
+     * @param buildPool        The pool to build the tree on in parallel, or null to build it on the calling thread.
+     * @param rebuildThreshold The factor the sum of the surface areas of the nodes can grow by when they are refitted,
+     *                         before the tree is built again.
+     */
+    public BVH3D(ForkJoinPool buildPool, float rebuildThreshold)
+    {
+        this.buildPool = buildPool;
+        this.rebuildThreshold = rebuildThreshold;
+
+        allocate(16);
+
+        indices = new IntMap();
+        stack = new int[64];
+        retrieveList = new ArrayList<>();
+        retrieveConsumer = retrieveList::add;
+    }
+
+    @Override
+    public void clear()
+    {
+        Arrays.fill(entities, 0, numEntities, null);
+
+        numEntities = 0;
+        indices.clear();
+
+        needsBuild = true;
+    }
+
+    @Override
+    public void insert(Entity3D e)
+    {
+        if (numEntities == entities.length)
+            allocate(entities.length * 2);
+
+        int index = numEntities++;
+
+        entities[index] = e;
+        indices.put(e.getID(), index);
+        computeBox(e, index);
+
+        needsBuild = true;
+    }
+
+    @Override
+    public void remove(Entity3D e)
+    {
+        int index = indices.remove(e.getID());
+
+        if (index == NULL)
+            return;
+
+        // The last entity takes the place of the removed one
+        int last = --numEntities;
+
+        if (index != last)
+        {
+            entities[index] = entities[last];
+            System.arraycopy(boxes, last * 6, boxes, index * 6, 6);
+
+            indices.put(entities[index].getID(), index);
+        }
+
+        entities[last] = null;
+        needsBuild = true;
+    }
+
+    /**
+     * Updates an entity that has moved. Only the box of the entity is copied, the nodes above it are refitted by the
+     * next query.
+     *
+     * @param e The entity that moved.
+     */
+    @Override
+    public void update(Entity3D e)
+    {
+        int index = indices.get(e.getID());
+
+        if (index == NULL)
+        {
+            insert(e);
+            return;
+        }
+
+        computeBox(e, index);
+
+        if (!needsBuild && !dirty[index])
+        {
+            dirty[index] = true;
+            dirtyList[numDirty++] = index;
+        }
+    }
+
+    @Override
+    public List<Entity3D> retrieve(Entity3D e)
+    {
+        return retrieve(e.getPosition(), e.getBounds());
+    }
+
+    @Override
+    public List<Entity3D> retrieve(Polyhedron bounds)
+    {
+        return retrieve(bounds.getPosition(), bounds);
+    }
+
+    /**
+     * Retrieves the entities whose boxes overlap the box of a polyhedron, which is centered on a position.
+     */
+    private List<Entity3D> retrieve(Vector3 position, Polyhedron bounds)
+    {
+        retrieveList.clear();
+        query(position, bounds, retrieveConsumer);
+
+        return retrieveList;
+    }
+
+    @Override
+    public void query(Polyhedron bounds, Consumer<Entity3D> consumer)
+    {
+        query(bounds.getPosition(), bounds, consumer);
+    }
+
+    private void query(Vector3 position, Polyhedron bounds, Consumer<Entity3D> consumer)
+    {
+        float halfWidth = bounds.getWidth() / 2;
+        float halfHeight = bounds.getHeight() / 2;
+        float halfThickness = bounds.getThickness() / 2;
+
+        query(position.x - halfWidth, position.y - halfHeight, position.z - halfThickness,
+                position.x + halfWidth, position.y + halfHeight, position.z + halfThickness, NULL, consumer, null);
+    }
+
+    @Override
+    public void query(Frustum frustum, Consumer<Entity3D> consumer)
+    {
+        if (!prepare())
+            return;
+
+        int base = stackSize;
+        push(0);
+
+        while (stackSize > base)
+        {
+            int node = stack[--stackSize];
+
+            int box = node * 6;
+
+            if (!BoxQueries.intersects(frustum, nodeBoxes[box], nodeBoxes[box + 1], nodeBoxes[box + 2],
+                    nodeBoxes[box + 3], nodeBoxes[box + 4], nodeBoxes[box + 5]))
+                continue;
+
+            if (nodeCount[node] == 0)
+            {
+                push(nodeFirst[node]);
+                push(node + 1);
+                continue;
+            }
+
+            for (int i = nodeFirst[node], end = i + nodeCount[node]; i < end; i++)
+            {
+                int index = order[i];
+                box = index * 6;
+
+                if (BoxQueries.intersects(frustum, boxes[box], boxes[box + 1], boxes[box + 2], boxes[box + 3],
+                        boxes[box + 4], boxes[box + 5]))
+                    consumer.accept(entities[index]);
+            }
+        }
+    }
+
+    /**
+     * Passes the pairs of entities whose bounds overlap to a callback. The tree is queried with the box of every
+     * entity, and a pair is only reported from the entity with the lower index.
+     */
+    @Override
+    public void forEachPair(PairCallback callback)
+    {
+        if (!prepare())
+            return;
+
+        for (int index = 0; index < numEntities; index++)
+        {
+            int box = index * 6;
+
+            query(boxes[box], boxes[box + 1], boxes[box + 2], boxes[box + 3], boxes[box + 4], boxes[box + 5], index,
+                    null, callback);
+        }
+    }
+
+    @Override
+    public void raycast(Vector3 origin, Vector3 direction, float maxDistance, RayCallback callback)
+    {
+        float length = direction.length();
+
+        if (length == 0 || !prepare())
+            return;
+
+        float ox = origin.x;
+        float oy = origin.y;
+        float oz = origin.z;
+        float dx = direction.x / length;
+        float dy = direction.y / length;
+        float dz = direction.z / length;
+
+        int base = stackSize;
+        push(0);
+
+        while (stackSize > base)
+        {
+            int node = stack[--stackSize];
+
+            int box = node * 6;
+
+            if (BoxQueries.raycast(ox, oy, oz, dx, dy, dz, maxDistance, nodeBoxes[box], nodeBoxes[box + 1],
+                    nodeBoxes[box + 2], nodeBoxes[box + 3], nodeBoxes[box + 4], nodeBoxes[box + 5]) < 0)
+                continue;
+
+            if (nodeCount[node] == 0)
+            {
+                push(nodeFirst[node]);
+                push(node + 1);
+                continue;
+            }
+
+            for (int i = nodeFirst[node], end = i + nodeCount[node]; i < end; i++)
+            {
+                int index = order[i];
+                box = index * 6;
+
+                float distance = BoxQueries.raycast(ox, oy, oz, dx, dy, dz, maxDistance, boxes[box], boxes[box + 1],
+                        boxes[box + 2], boxes[box + 3], boxes[box + 4], boxes[box + 5]);
+
+                if (distance < 0)
+                    continue;
+
+                maxDistance = Math.min(maxDistance, callback.hit(entities[index], distance));
+
+                if (maxDistance <= 0)
+                {
+                    stackSize = base;
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public Entity3D nearest(Vector3 point, float maxDistance)
+    {
+        if (!prepare())
+            return null;
+
+        float px = point.x;
+        float py = point.y;
+        float pz = point.z;
+
+        Entity3D nearest = null;
+        float nearestDistance = maxDistance * maxDistance;
+
+        int base = stackSize;
+        push(0);
+
+        while (stackSize > base)
+        {
+            int node = stack[--stackSize];
+
+            if (getDistanceSquared(nodeBoxes, node, px, py, pz) > nearestDistance)
+                continue;
+
+            if (nodeCount[node] > 0)
+            {
+                for (int i = nodeFirst[node], end = i + nodeCount[node]; i < end; i++)
+                {
+                    float distance = getDistanceSquared(boxes, order[i], px, py, pz);
+
+                    if (distance <= nearestDistance)
+                    {
+                        nearest = entities[order[i]];
+                        nearestDistance = distance;
+                    }
+                }
+
+                continue;
+            }
+
+            int a = node + 1;
+            int b = nodeFirst[node];
+
+            // The nearer child is pushed last, so that it is visited first and prunes the other one
+            if (getDistanceSquared(nodeBoxes, a, px, py, pz) < getDistanceSquared(nodeBoxes, b, px, py, pz))
+            {
+                push(b);
+                push(a);
+            }
+            else
+            {
+                push(a);
+                push(b);
+            }
+        }
+
+        return nearest;
+    }
+
+    /**
+     * @return The number of entities in the tree.
+     */
+    public int size()
+    {
+        return numEntities;
+    }
+
+    /**
+     * @return The number of times the tree was built since the statistics were reset.
+     */
+    public int getBuildCount()
+    {
+        return builds;
+    }
+
+    /**
+     * @return The number of times the tree was refitted since the statistics were reset.
+     */
+    public int getRefitCount()
+    {
+        return refits;
+    }
+
+    public void resetStats()
+    {
+        builds = 0;
+        refits = 0;
+    }
+
+    /**
+     * @return The pool that the tree is built on, or null if it is built on the calling thread.
+     */
+    public ForkJoinPool getBuildPool()
+    {
+        return buildPool;
+    }
+
+    /**
+     * Sets the pool to build the tree on in parallel. The queries wait for the build to finish.
+     *
+     * @param buildPool The pool, like {@link ForkJoinPool#commonPool()}, or null to build the tree on the calling
+     *                  thread.
+     */
+    public void setBuildPool(ForkJoinPool buildPool)
+    {
+        this.buildPool = buildPool;
+    }
+
+    public float getRebuildThreshold()
+    {
+        return rebuildThreshold;
+    }
+
+    public void setRebuildThreshold(float rebuildThreshold)
+    {
+        this.rebuildThreshold = rebuildThreshold;
+    }
+
+    private void allocate(int capacity)
+    {
+        if (entities == null)
+        {
+            entities = new Entity3D[capacity];
+            boxes = new float[capacity * 6];
+            centers = new float[capacity * 3];
+            order = new int[capacity];
+            leaves = new int[capacity];
+            dirty = new boolean[capacity];
+            dirtyList = new int[capacity];
+
+            nodeBoxes = new float[capacity * 2 * 6];
+            nodeFirst = new int[capacity * 2];
+            nodeCount = new int[capacity * 2];
+            parents = new int[capacity * 2];
+        }
+        else
+        {
+            entities = Arrays.copyOf(entities, capacity);
+            boxes = Arrays.copyOf(boxes, capacity * 6);
+            centers = Arrays.copyOf(centers, capacity * 3);
+            order = Arrays.copyOf(order, capacity);
+            leaves = Arrays.copyOf(leaves, capacity);
+            dirty = Arrays.copyOf(dirty, capacity);
+            dirtyList = Arrays.copyOf(dirtyList, capacity);
+
+            nodeBoxes = Arrays.copyOf(nodeBoxes, capacity * 2 * 6);
+            nodeFirst = Arrays.copyOf(nodeFirst, capacity * 2);
+            nodeCount = Arrays.copyOf(nodeCount, capacity * 2);
+            parents = Arrays.copyOf(parents, capacity * 2);
+        }
+    }
+
+    private void computeBox(Entity3D e, int index)
+    {
+        Vector3 position = e.getPosition();
+        Cuboid bounds = e.getBounds();
+
+        // The bounds are centered on the position
+        float halfWidth = bounds.getWidth() / 2;
+        float halfHeight = bounds.getHeight() / 2;
+        float halfThickness = bounds.getThickness() / 2;
+
+        int box = index * 6;
+
+        boxes[box] = position.x - halfWidth;
+        boxes[box + 1] = position.y - halfHeight;
+        boxes[box + 2] = position.z - halfThickness;
+        boxes[box + 3] = position.x + halfWidth;
+        boxes[box + 4] = position.y + halfHeight;
+        boxes[box + 5] = position.z + halfThickness;
+    }
+
+    /**
+     * Brings the tree up to date with the entities before a query, building it again or refitting its boxes.
+     *
+     * @return Whether there are any entities to query.
+     */
+    private boolean prepare()
+    {
+        if (needsBuild)
+            build();
+        else if (numDirty > 0)
+        {
+            refit();
+
+            if (cost > builtCost * rebuildThreshold)
+                build();
+        }
+
+        return numEntities > 0;
+    }
+
+    private void build()
+    {
+        needsBuild = false;
+        clearDirty();
+
+        if (numEntities == 0)
+            return;
+
+        builds++;
+
+        Arrays.fill(nodeCount, 0, numEntities * 2, NULL);
+
+        for (int index = 0; index < numEntities; index++)
+        {
+            int box = index * 6;
+            int center = index * 3;
+
+            centers[center] = (boxes[box] + boxes[box + 3]) / 2;
+            centers[center + 1] = (boxes[box + 1] + boxes[box + 4]) / 2;
+            centers[center + 2] = (boxes[box + 2] + boxes[box + 5]) / 2;
+
+            order[index] = index;
+        }
+
+        parents[0] = NULL;
+
+        if (buildPool != null && numEntities >= ENTITIES_PER_TASK)
+            buildPool.invoke(new BuildTask(0, 0, numEntities));
+        else
+            build(0, 0, numEntities, BINS.get());
+
+        cost = 0;
+
+        for (int node = 0; node < numEntities * 2; node++)
+        {
+            if (nodeCount[node] >= 0)
+                cost += getArea(node);
+        }
+
+        builtCost = cost;
+    }
+
+    /**
+     * Builds the subtree of the entities from start to end in the order, at a node. The smaller child is built first
+     * with a nested call, and the larger one in the loop, so that the calls don't nest deeper than the log of the
+     * number of entities.
+     */
+    private void build(int node, int start, int end, Bins bins)
+    {
+        while (true)
+        {
+            int middle = split(node, start, end, bins);
+
+            if (middle == NULL)
+                return;
+
+            int left = node + 1;
+            int right = nodeFirst[node];
+
+            if (middle - start < end - middle)
+            {
+                build(left, start, middle, bins);
+
+                node = right;
+                start = middle;
+            }
+            else
+            {
+                build(right, middle, end, bins);
+
+                node = left;
+                end = middle;
+            }
+        }
+    }
+
+    /**
+     * Computes the box of a node, and either makes it a leaf with the entities from start to end in the order, or
+     * splits the entities where the surface area heuristic is the lowest.
+     *
+     * @return The index in the order where the entities of the right child start, or NULL if the node is a leaf.
+     */
+    private int split(int node, int start, int end, Bins bins)
+    {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+
+        float minCenterX = Float.POSITIVE_INFINITY, minCenterY = Float.POSITIVE_INFINITY;
+        float minCenterZ = Float.POSITIVE_INFINITY;
+        float maxCenterX = Float.NEGATIVE_INFINITY, maxCenterY = Float.NEGATIVE_INFINITY;
+        float maxCenterZ = Float.NEGATIVE_INFINITY;
+
+        for (int i = start; i < end; i++)
+        {
+            int box = order[i] * 6;
+            int center = order[i] * 3;
+
+            minX = Math.min(minX, boxes[box]);
+            minY = Math.min(minY, boxes[box + 1]);
+            minZ = Math.min(minZ, boxes[box + 2]);
+            maxX = Math.max(maxX, boxes[box + 3]);
+            maxY = Math.max(maxY, boxes[box + 4]);
+            maxZ = Math.max(maxZ, boxes[box + 5]);
+
+            minCenterX = Math.min(minCenterX, centers[center]);
+            minCenterY = Math.min(minCenterY, centers[center + 1]);
+            minCenterZ = Math.min(minCenterZ, centers[center + 2]);
+            maxCenterX = Math.max(maxCenterX, centers[center]);
+            maxCenterY = Math.max(maxCenterY, centers[center + 1]);
+            maxCenterZ = Math.max(maxCenterZ, centers[center + 2]);
+        }
+
+        setBox(nodeBoxes, node, minX, minY, minZ, maxX, maxY, maxZ);
+
+        int count = end - start;
+
+        if (count == 1)
+            return makeLeaf(node, start, end);
+
+        // The entities are binned along the longest axis of their centers
+        float extentX = maxCenterX - minCenterX;
+        float extentY = maxCenterY - minCenterY;
+        float extentZ = maxCenterZ - minCenterZ;
+
+        int axis = extentX >= extentY && extentX >= extentZ ? 0 : extentY >= extentZ ? 1 : 2;
+        float min = axis == 0 ? minCenterX : axis == 1 ? minCenterY : minCenterZ;
+        float extent = axis == 0 ? extentX : axis == 1 ? extentY : extentZ;
+
+        int middle;
+
+        if (extent <= 0)
+        {
+            // All the centers are at the same place, so the entities are only split if there are too many
+            if (count <= MAX_LEAF_SIZE)
+                return makeLeaf(node, start, end);
+
+            middle = (start + end) >>> 1;
+        }
+        else
+        {
+            float scale = NUM_BINS / extent;
+            int split = bins.findSplit(this, start, end, axis, min, scale);
+
+            // The leaves are kept when splitting them doesn't lower the cost
+            if (count <= MAX_LEAF_SIZE && bins.cost >= count * getArea(node))
+                return makeLeaf(node, start, end);
+
+            // Partition the entities, those in the bins up to the split go to the left
+            int i = start;
+            int j = end - 1;
+
+            while (i <= j)
+            {
+                if (bins.binOf(centers[order[i] * 3 + axis], min, scale) <= split)
+                    i++;
+                else
+                {
+                    int swap = order[i];
+                    order[i] = order[j];
+                    order[j--] = swap;
+                }
+            }
+
+            middle = i;
+
+            if (middle == start || middle == end)
+                middle = (start + end) >>> 1;
+        }
+
+        int left = node + 1;
+        int right = node + 2 * (middle - start);
+
+        nodeFirst[node] = right;
+        nodeCount[node] = 0;
+
+        parents[left] = node;
+        parents[right] = node;
+
+        return middle;
+    }
+
+    private int makeLeaf(int node, int start, int end)
+    {
+        nodeFirst[node] = start;
+        nodeCount[node] = end - start;
+
+        for (int i = start; i < end; i++)
+            leaves[order[i]] = node;
+
+        return NULL;
+    }
+
+    /**
+     * Refits the boxes of the nodes to the updated entities. When only a few entities were updated, the nodes above
+     * them are refitted up to a node whose box doesn't change, else every node is refitted from the bottom.
+     */
+    private void refit()
+    {
+        refits++;
+
+        if (numDirty > numEntities / 8)
+        {
+            cost = 0;
+
+            // The children always come after their parent, so they are refitted first
+            for (int node = numEntities * 2 - 1; node >= 0; node--)
+            {
+                if (nodeCount[node] < 0)
+                    continue;
+
+                computeNodeBox(node);
+                cost += getArea(node);
+            }
+        }
+        else
+        {
+            for (int i = 0; i < numDirty; i++)
+            {
+                for (int node = leaves[dirtyList[i]]; node != NULL; node = parents[node])
+                {
+                    float area = getArea(node);
+
+                    if (!computeNodeBox(node))
+                        break;
+
+                    cost += getArea(node) - area;
+                }
+            }
+        }
+
+        clearDirty();
+    }
+
+    /**
+     * Computes the box of a node from its entities or its children.
+     *
+     * @return Whether the box has changed.
+     */
+    private boolean computeNodeBox(int node)
+    {
+        float minX, minY, minZ, maxX, maxY, maxZ;
+
+        if (nodeCount[node] == 0)
+        {
+            int a = (node + 1) * 6;
+            int b = nodeFirst[node] * 6;
+
+            minX = Math.min(nodeBoxes[a], nodeBoxes[b]);
+            minY = Math.min(nodeBoxes[a + 1], nodeBoxes[b + 1]);
+            minZ = Math.min(nodeBoxes[a + 2], nodeBoxes[b + 2]);
+            maxX = Math.max(nodeBoxes[a + 3], nodeBoxes[b + 3]);
+            maxY = Math.max(nodeBoxes[a + 4], nodeBoxes[b + 4]);
+            maxZ = Math.max(nodeBoxes[a + 5], nodeBoxes[b + 5]);
+        }
+        else
+        {
+            minX = minY = minZ = Float.POSITIVE_INFINITY;
+            maxX = maxY = maxZ = Float.NEGATIVE_INFINITY;
+
+            for (int i = nodeFirst[node], end = i + nodeCount[node]; i < end; i++)
+            {
+                int box = order[i] * 6;
+
+                minX = Math.min(minX, boxes[box]);
+                minY = Math.min(minY, boxes[box + 1]);
+                minZ = Math.min(minZ, boxes[box + 2]);
+                maxX = Math.max(maxX, boxes[box + 3]);
+                maxY = Math.max(maxY, boxes[box + 4]);
+                maxZ = Math.max(maxZ, boxes[box + 5]);
+            }
+        }
+
+        int box = node * 6;
+
+        if (nodeBoxes[box] == minX && nodeBoxes[box + 1] == minY && nodeBoxes[box + 2] == minZ &&
+            nodeBoxes[box + 3] == maxX && nodeBoxes[box + 4] == maxY && nodeBoxes[box + 5] == maxZ)
+            return false;
+
+        setBox(nodeBoxes, node, minX, minY, minZ, maxX, maxY, maxZ);
+        return true;
+    }
+
+    private void clearDirty()
+    {
+        for (int i = 0; i < numDirty; i++)
+            dirty[dirtyList[i]] = false;
+
+        numDirty = 0;
+    }
+
+    private static void setBox(float[] boxes, int index, float minX, float minY, float minZ, float maxX, float maxY,
+                               float maxZ)
+    {
+        int box = index * 6;
+
+        boxes[box] = minX;
+        boxes[box + 1] = minY;
+        boxes[box + 2] = minZ;
+        boxes[box + 3] = maxX;
+        boxes[box + 4] = maxY;
+        boxes[box + 5] = maxZ;
+    }
+
+    private float getArea(int node)
+    {
+        int box = node * 6;
+        return getArea(nodeBoxes[box + 3] - nodeBoxes[box], nodeBoxes[box + 4] - nodeBoxes[box + 1],
+                nodeBoxes[box + 5] - nodeBoxes[box + 2]);
+    }
+
+    private static float getArea(float width, float height, float thickness)
+    {
+        return 2 * (width * height + height * thickness + thickness * width);
+    }
+
+    private static float getDistanceSquared(float[] boxes, int index, float px, float py, float pz)
+    {
+        int box = index * 6;
+
+        return BoxQueries.distanceSquared(px, py, pz, boxes[box], boxes[box + 1], boxes[box + 2],
+                boxes[box + 3], boxes[box + 4], boxes[box + 5]);
+    }
+
+    /**
+     * Passes the entities whose boxes overlap a box to a consumer, or the pairs of an entity with the entities of a
+     * higher index whose boxes overlap to a callback.
+     */
+    private void query(float x1, float y1, float z1, float x2, float y2, float z2, int pairIndex,
+                       Consumer<Entity3D> consumer, PairCallback callback)
+    {
+        if (callback == null && !prepare())
+            return;
+
+        int base = stackSize;
+        push(0);
+
+        while (stackSize > base)
+        {
+            int node = stack[--stackSize];
+
+            if (!overlaps(nodeBoxes, node, x1, y1, z1, x2, y2, z2))
+                continue;
+
+            if (nodeCount[node] == 0)
+            {
+                push(nodeFirst[node]);
+                push(node + 1);
+                continue;
+            }
+
+            for (int i = nodeFirst[node], end = i + nodeCount[node]; i < end; i++)
+            {
+                int index = order[i];
+
+                if (index <= pairIndex || !overlaps(boxes, index, x1, y1, z1, x2, y2, z2))
+                    continue;
+
+                if (callback != null)
+                    callback.pair(entities[pairIndex], entities[index]);
+                else
+                    consumer.accept(entities[index]);
+            }
+        }
+    }
+
+    private static boolean overlaps(float[] boxes, int index, float x1, float y1, float z1, float x2, float y2,
+                                    float z2)
+    {
+        int box = index * 6;
+
+        return boxes[box] <= x2 && boxes[box + 3] >= x1 && boxes[box + 1] <= y2 && boxes[box + 4] >= y1 &&
+               boxes[box + 2] <= z2 && boxes[box + 5] >= z1;
+    }
+
+    /**
+     * Pushes a node on the stack, the stack is always read from the field since a nested query might have grown it.
+     */
+    private void push(int node)
+    {
+        if (stackSize == stack.length)
+            stack = Arrays.copyOf(stack, stack.length * 2);
+
+        stack[stackSize++] = node;
+    }
+
+    /**
+     * The bins of the surface area heuristic, which are reused by the builds on a thread.
+     */
+    private static final class Bins
+    {
+        private float[] boxes  = new float[NUM_BINS * 6];
+        private int[]   counts = new int[NUM_BINS];
+
+        // The surface areas of the boxes of the bins to the right of every split, and their number of entities
+        private float[] rightAreas  = new float[NUM_BINS];
+        private int[]   rightCounts = new int[NUM_BINS];
+
+        // The cost of the split found last, the number of entities on each side times the area of their box
+        private float cost;
+
+        int binOf(float center, float min, float scale)
+        {
+            return Math.min((int) ((center - min) * scale), NUM_BINS - 1);
+        }
+
+        /**
+         * Bins the entities from start to end in the order of a tree, and finds the split with the lowest cost.
+         *
+         * @return The last bin on the left of the split.
+         */
+        int findSplit(BVH3D tree, int start, int end, int axis, float min, float scale)
+        {
+            Arrays.fill(counts, 0);
+
+            for (int bin = 0; bin < NUM_BINS; bin++)
+                setBox(boxes, bin, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+                        Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+
+            for (int i = start; i < end; i++)
+            {
+                int index = tree.order[i];
+                int bin = binOf(tree.centers[index * 3 + axis], min, scale);
+
+                counts[bin]++;
+                grow(bin, tree.boxes, index);
+            }
+
+            // Sweep from the right to find the areas of the right sides
+            float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+            int count = 0;
+
+            for (int bin = NUM_BINS - 1; bin > 0; bin--)
+            {
+                int box = bin * 6;
+
+                if (counts[bin] > 0)
+                {
+                    minX = Math.min(minX, boxes[box]);
+                    minY = Math.min(minY, boxes[box + 1]);
+                    minZ = Math.min(minZ, boxes[box + 2]);
+                    maxX = Math.max(maxX, boxes[box + 3]);
+                    maxY = Math.max(maxY, boxes[box + 4]);
+                    maxZ = Math.max(maxZ, boxes[box + 5]);
+                }
+
+                count += counts[bin];
+
+                rightCounts[bin - 1] = count;
+                rightAreas[bin - 1] = count == 0 ? 0 : getArea(maxX - minX, maxY - minY, maxZ - minZ);
+            }
+
+            // Sweep from the left and find the split with the lowest cost, that has entities on both sides
+            minX = minY = minZ = Float.POSITIVE_INFINITY;
+            maxX = maxY = maxZ = Float.NEGATIVE_INFINITY;
+            count = 0;
+
+            int best = 0;
+            cost = Float.POSITIVE_INFINITY;
+
+            for (int bin = 0; bin < NUM_BINS - 1; bin++)
+            {
+                int box = bin * 6;
+
+                if (counts[bin] > 0)
+                {
+                    minX = Math.min(minX, boxes[box]);
+                    minY = Math.min(minY, boxes[box + 1]);
+                    minZ = Math.min(minZ, boxes[box + 2]);
+                    maxX = Math.max(maxX, boxes[box + 3]);
+                    maxY = Math.max(maxY, boxes[box + 4]);
+                    maxZ = Math.max(maxZ, boxes[box + 5]);
+                }
+
+                count += counts[bin];
+
+                if (count == 0 || rightCounts[bin] == 0)
+                    continue;
+
+                float splitCost = count * getArea(maxX - minX, maxY - minY, maxZ - minZ) +
+                                  rightCounts[bin] * rightAreas[bin];
+
+                if (splitCost < cost)
+                {
+                    cost = splitCost;
+                    best = bin;
+                }
+            }
+
+            return best;
+        }
+
+        private void grow(int bin, float[] entityBoxes, int index)
+        {
+            int box = bin * 6;
+            int entityBox = index * 6;
+
+            boxes[box] = Math.min(boxes[box], entityBoxes[entityBox]);
+            boxes[box + 1] = Math.min(boxes[box + 1], entityBoxes[entityBox + 1]);
+            boxes[box + 2] = Math.min(boxes[box + 2], entityBoxes[entityBox + 2]);
+            boxes[box + 3] = Math.max(boxes[box + 3], entityBoxes[entityBox + 3]);
+            boxes[box + 4] = Math.max(boxes[box + 4], entityBoxes[entityBox + 4]);
+            boxes[box + 5] = Math.max(boxes[box + 5], entityBoxes[entityBox + 5]);
+        }
+    }
+
+    /**
+     * Builds a subtree, splitting it into tasks for its children while it has enough entities.
+     */
+    private class BuildTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = -8726476176834374975L;
+
+        private int node;
+        private int start;
+        private int end;
+
+        BuildTask(int node, int start, int end)
+        {
+            this.node = node;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute()
+        {
+            Bins bins = BINS.get();
+
+            if (end - start < ENTITIES_PER_TASK)
+            {
+                build(node, start, end, bins);
+                return;
+            }
+
+            int middle = split(node, start, end, bins);
+
+            if (middle != NULL)
+                invokeAll(new BuildTask(node + 1, start, middle), new BuildTask(nodeFirst[node], middle, end));
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.collision.broadphase;
+
+import com.shc.silenceengine.math.Frustum;
+import com.shc.silenceengine.math.Plane;
+import com.shc.silenceengine.math.Vector3;
+import com.shc.silenceengine.math.geom2d.Rectangle;
+import com.shc.silenceengine.math.geom3d.Polyhedron;
+
+/**
+ * The ray and distance tests against axis aligned boxes that are shared by the broadphases. The rays are given by an
+ * origin and a unit direction, and the distances are measured along the direction.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+final class BoxQueries
+{
+    private BoxQueries()
+    {
+    }
+
+    /**
+     * @return Whether two rectangles overlap, the rectangles that only touch are also overlapping.
+     */
+    static boolean overlaps(Rectangle a, Rectangle b)
+    {
+        return a.getX() <= b.getX() + b.getWidth() && b.getX() <= a.getX() + a.getWidth() &&
+               a.getY() <= b.getY() + b.getHeight() && b.getY() <= a.getY() + a.getHeight();
+    }
+
+    /**
+     * @return Whether the boxes of two polyhedrons overlap, with the boxes centered on the given positions. The boxes
+     * that only touch are also overlapping.
+     */
+    static boolean overlaps(Vector3 positionA, Polyhedron a, Vector3 positionB, Polyhedron b)
+    {
+        return Math.abs(positionA.x - positionB.x) * 2 <= a.getWidth() + b.getWidth() &&
+               Math.abs(positionA.y - positionB.y) * 2 <= a.getHeight() + b.getHeight() &&
+               Math.abs(positionA.z - positionB.z) * 2 <= a.getThickness() + b.getThickness();
+    }
+
+    /**
+     * @return Whether a 3D box intersects a frustum. The box is only outside if it is entirely behind one of the planes
+     * of the frustum, like in {@link Frustum#intersects(Vector3, float, float, float)}, so the boxes just outside an
+     * edge or a corner of the frustum can be reported as intersecting.
+     */
+    static boolean intersects(Frustum frustum, float minX, float minY, float minZ, float maxX, float maxY, float maxZ)
+    {
+        for (int i = 0; i < 6; i++)
+        {
+            Plane plane = frustum.getPlane(i);
+            Vector3 normal = plane.normal;
+
+            // The corner of the box that is the farthest along the normal is the last one to go behind the plane
+            float x = normal.x >= 0 ? maxX : minX;
+            float y = normal.y >= 0 ? maxY : minY;
+            float z = normal.z >= 0 ? maxZ : minZ;
+
+            if (normal.x * x + normal.y * y + normal.z * z + plane.d < 0)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Finds the distance at which a ray enters a 2D box.
+     *
+     * @return The distance, which is zero if the origin is inside the box, or -1 if the ray misses the box or only
+     * reaches it beyond the maximum distance.
+     */
+    static float raycast(float ox, float oy, float dx, float dy, float maxDistance,
+                         float minX, float minY, float maxX, float maxY)
+    {
+        float near = 0;
+        float far = maxDistance;
+
+        if (dx == 0)
+        {
+            if (ox < minX || ox > maxX)
+                return -1;
+        }
+        else
+        {
+            float t1 = (minX - ox) / dx;
+            float t2 = (maxX - ox) / dx;
+
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+
+        if (dy == 0)
+        {
+            if (oy < minY || oy > maxY)
+                return -1;
+        }
+        else
+        {
+            float t1 = (minY - oy) / dy;
+            float t2 = (maxY - oy) / dy;
+
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+
+        return near <= far ? near : -1;
+    }
+
+    /**
+     * Finds the distance at which a ray enters a 3D box.
+     *
+     * @return The distance, which is zero if the origin is inside the box, or -1 if the ray misses the box or only
+     * reaches it beyond the maximum distance.
+     */
+    static float raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance,
+                         float minX, float minY, float minZ, float maxX, float maxY, float maxZ)
+    {
+        float near = 0;
+        float far = maxDistance;
+
+        if (dx == 0)
+        {
+            if (ox < minX || ox > maxX)
+                return -1;
+        }
+        else
+        {
+            float t1 = (minX - ox) / dx;
+            float t2 = (maxX - ox) / dx;
+
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+
+        if (dy == 0)
+        {
+            if (oy < minY || oy > maxY)
+                return -1;
+        }
+        else
+        {
+            float t1 = (minY - oy) / dy;
+            float t2 = (maxY - oy) / dy;
+
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+
+        if (dz == 0)
+        {
+            if (oz < minZ || oz > maxZ)
+                return -1;
+        }
+        else
+        {
+            float t1 = (minZ - oz) / dz;
+            float t2 = (maxZ - oz) / dz;
+
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+
+        return near <= far ? near : -1;
+    }
+
+    /**
+     * @return The squared distance from a point to a 2D box, which is zero if the point is inside the box.
+     */
+    static float distanceSquared(float px, float py, float minX, float minY, float maxX, float maxY)
+    {
+        float dx = Math.max(Math.max(minX - px, px - maxX), 0);
+        float dy = Math.max(Math.max(minY - py, py - maxY), 0);
+
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * @return The squared distance from a point to a 3D box, which is zero if the point is inside the box.
+     */
+    static float distanceSquared(float px, float py, float pz, float minX, float minY, float minZ,
+                                 float maxX, float maxY, float maxZ)
+    {
+        float dz = Math.max(Math.max(minZ - pz, pz - maxZ), 0);
+
+        return distanceSquared(px, py, minX, minY, maxX, maxY) + dz * dz;
+    }
+}
@@ -27,335 +27,815 @@
 import com.shc.silenceengine.math.Vector2;
 import com.shc.silenceengine.math.geom2d.Rectangle;
 import com.shc.silenceengine.scene.entity.Entity2D;
+import com.shc.silenceengine.utils.IntMap;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Consumer;
 
 /**
+ * A dynamic AABB tree, that keeps the entities in the leaves of a binary tree of bounding boxes. The boxes in the
+ * leaves are fattened by a margin, and are also extended in the direction of the velocity of the entity. An entity
+ * that moves is only inserted again when it leaves its fat box, so the slowly moving entities don't change the tree
+ * every frame. The tree is kept balanced with rotations when the leaves are inserted and removed, like an AVL tree.
+ *
+ * <p> The nodes are kept in flat arrays and are referred to by their index, the removed nodes are linked in a free
+ * list and reused. The entities are found by their IDs through an IntMap, so an update or a query doesn't allocate
+ * once the arrays are large enough. </p>
+ *
  * @author Sri Harsha Chilakapati
  * @author Josh "ShadowLordAlpha"
  */
 public class DynamicTree2D implements IBroadphase2D
 {
-    private Node root;
+    // The index used for no node
+    private static final int NULL = -1;
+
+    private int root = NULL;
+
+    // The boxes of the nodes, four floats for every node, the minimum x and y and then the maximum x and y
+    private float[] boxes;
+
+    // The links of the nodes, the parent of a free node is the next free node
+    private int[] parent;
+    private int[] left;
+    private int[] right;
+
+    // The height of the subtree of every node, zero for the leaves and -1 for the free nodes
+    private int[] height;
+
+    // The entities in the leaves
+    private Entity2D[] entities;
+
+    private int freeList;
 
-    private List<Entity2D> retrieveList;
+    // The leaf of every entity, by the ID of the entity
+    private IntMap leaves;
 
-    private Map<Integer, Node> nodeMap;
-    private Map<Integer, AABB> aabbMap;
+    // The stack of the nodes to visit in a query, a query started from the callback of another query uses the part of
+    // the stack above it
+    private int[] stack;
+    private int   stackSize;
 
-    private AABB tmpUnion = new AABB();
-    private AABB tmpU     = new AABB();
+    private List<Entity2D>     retrieveList;
+    private Consumer<Entity2D> retrieveConsumer;
+
+    // The fixed margin of the fat boxes, and the number of frames of velocity they are extended by
+    private float margin;
+    private float velocityMultiplier;
+
+    // The statistics
+    private int updates;
+    private int reinserts;
+    private int rotations;
 
     public DynamicTree2D()
     {
-        nodeMap = new HashMap<>();
-        aabbMap = new HashMap<>();
+        this(2, 2);
+    }
 
+    /**
+     * Creates a DynamicTree2D with fat boxes.
+     *
+     * @param margin             The margin to fatten the boxes by on every side.
+     * @param velocityMultiplier The number of frames of the velocity of an entity to extend its box by.
+     */
+    public DynamicTree2D(float margin, float velocityMultiplier)
+    {
+        this.margin = margin;
+        this.velocityMultiplier = velocityMultiplier;
+
+        allocate(16);
+
+        leaves = new IntMap();
+        stack = new int[64];
         retrieveList = new ArrayList<>();
+        retrieveConsumer = retrieveList::add;
     }
 
     @Override
     public void clear()
     {
-        nodeMap.clear();
-        root = null;
+        root = NULL;
+        leaves.clear();
+
+        Arrays.fill(entities, null);
+        linkFreeNodes(0);
     }
 
     @Override
     public void insert(Entity2D e)
     {
-        Node node = new Node();
-        node.entity = e;
-        node.aabb = getAABB(e);
+        int leaf = allocateNode();
 
-        nodeMap.put(e.getID(), node);
+        entities[leaf] = e;
+        height[leaf] = 0;
+        computeFatBox(e, leaf);
 
-        insert(node);
+        leaves.put(e.getID(), leaf);
+
+        insertLeaf(leaf);
     }
 
     @Override
     public void remove(Entity2D e)
     {
-        Node node = nodeMap.get(e.getID());
+        int leaf = leaves.remove(e.getID());
 
-        if (node != null)
+        if (leaf != NULL)
         {
-            remove(node);
-            nodeMap.remove(e.getID());
-            aabbMap.remove(e.getID());
+            removeLeaf(leaf);
+            freeNode(leaf);
         }
     }
 
+    /**
+     * Updates an entity that has moved. The entity is only inserted again if its bounds are no longer inside its fat
+     * box.
+     *
+     * @param e The entity that moved.
+     */
     @Override
-    public List<Entity2D> retrieve(Entity2D e)
+    public void update(Entity2D e)
     {
-        retrieveList.clear();
-        queryNode(getAABB(e), root);
-        return retrieveList;
+        int leaf = leaves.get(e.getID());
+
+        if (leaf == NULL)
+        {
+            insert(e);
+            return;
+        }
+
+        updates++;
+
+        Rectangle bounds = e.getBounds();
+
+        float x = bounds.getX();
+        float y = bounds.getY();
+
+        int box = leaf * 4;
+
+        if (boxes[box] <= x && boxes[box + 1] <= y &&
+            boxes[box + 2] >= x + bounds.getWidth() && boxes[box + 3] >= y + bounds.getHeight())
+            return;
+
+        removeLeaf(leaf);
+        computeFatBox(e, leaf);
+        insertLeaf(leaf);
+
+        reinserts++;
     }
 
     @Override
     public List<Entity2D> retrieve(Rectangle rect)
     {
         retrieveList.clear();
-        queryNode(new AABB(rect.getPosition(), rect.getWidth(), rect.getHeight()), root);
+
+        float x = rect.getX();
+        float y = rect.getY();
+
+        query(x, y, x + rect.getWidth(), y + rect.getHeight(), false, retrieveConsumer);
         return retrieveList;
     }
 
-    private void remove(Node node)
+    @Override
+    public void query(Rectangle rect, Consumer<Entity2D> consumer)
     {
-        if (root == null) return;
+        float x = rect.getX();
+        float y = rect.getY();
+
+        query(x, y, x + rect.getWidth(), y + rect.getHeight(), true, consumer);
+    }
 
-        if (node == root)
+    /**
+     * Passes the pairs of entities whose bounds overlap to a callback. The tree is queried with the fat box of every
+     * leaf, and a pair is only reported from the leaf with the lower index.
+     */
+    @Override
+    public void forEachPair(PairCallback callback)
+    {
+        for (int leaf = 0; leaf < height.length; leaf++)
         {
-            root = null;
-            return;
-        }
+            if (height[leaf] != 0)
+                continue;
 
-        Node parent = node.parent;
-        Node grandParent = parent.parent;
+            Entity2D entity = entities[leaf];
+            Rectangle bounds = entity.getBounds();
 
-        Node other = (parent.left == node) ? parent.right : parent.left;
+            int box = leaf * 4;
 
-        if (grandParent != null)
-        {
-            if (grandParent.left == parent)
-                grandParent.left = other;
-            else
-                grandParent.right = other;
+            float x1 = boxes[box];
+            float y1 = boxes[box + 1];
+            float x2 = boxes[box + 2];
+            float y2 = boxes[box + 3];
 
-            other.parent = grandParent;
+            int base = stackSize;
+            push(root);
 
-            Node n = grandParent;
-            while (n != null)
+            while (stackSize > base)
             {
-                Node left = n.left;
-                Node right = n.right;
+                int node = stack[--stackSize];
+
+                box = node * 4;
 
-                n.aabb = AABB.union(left.aabb, right.aabb, n.aabb);
+                if (node < leaf && isLeaf(node) || !overlaps(box, x1, y1, x2, y2))
+                    continue;
 
-                n = n.parent;
+                if (!isLeaf(node))
+                {
+                    push(right[node]);
+                    push(left[node]);
+                }
+                else if (node > leaf && BoxQueries.overlaps(bounds, entities[node].getBounds()))
+                    callback.pair(entity, entities[node]);
             }
         }
-        else
-        {
-            root = other;
-            other.parent = null;
-        }
     }
 
-    private AABB getAABB(Entity2D e)
+    @Override
+    public void raycast(Vector2 origin, Vector2 direction, float maxDistance, RayCallback callback)
     {
-        AABB aabb;
+        float length = direction.length();
 
-        if (aabbMap.containsKey(e.getID()))
-            aabb = aabbMap.get(e.getID());
-        else
+        if (length == 0 || root == NULL)
+            return;
+
+        float ox = origin.x;
+        float oy = origin.y;
+        float dx = direction.x / length;
+        float dy = direction.y / length;
+
+        int base = stackSize;
+        push(root);
+
+        while (stackSize > base)
         {
-            aabb = new AABB(new Vector2(), new Vector2());
-            aabbMap.put(e.getID(), aabb);
-        }
+            int node = stack[--stackSize];
+
+            int box = node * 4;
+
+            if (BoxQueries.raycast(ox, oy, dx, dy, maxDistance,
+                    boxes[box], boxes[box + 1], boxes[box + 2], boxes[box + 3]) < 0)
+                continue;
+
+            if (!isLeaf(node))
+            {
+                push(right[node]);
+                push(left[node]);
+                continue;
+            }
+
+            Entity2D entity = entities[node];
+            Rectangle bounds = entity.getBounds();
 
-        aabb.min.set(e.getBounds().getMin());
-        aabb.max.set(e.getBounds().getMax());
+            float distance = BoxQueries.raycast(ox, oy, dx, dy, maxDistance, bounds.getX(), bounds.getY(),
+                    bounds.getX() + bounds.getWidth(), bounds.getY() + bounds.getHeight());
 
-        return aabb;
+            if (distance >= 0)
+            {
+                maxDistance = Math.min(maxDistance, callback.hit(entity, distance));
+
+                if (maxDistance <= 0)
+                {
+                    stackSize = base;
+                    return;
+                }
+            }
+        }
     }
 
-    private void insert(Node item)
+    @Override
+    public Entity2D nearest(Vector2 point, float maxDistance)
     {
-        if (root == null)
-        {
-            root = item;
-            return;
-        }
+        if (root == NULL)
+            return null;
 
-        AABB itemAABB = item.aabb;
+        float px = point.x;
+        float py = point.y;
 
-        Node node = root;
+        Entity2D nearest = null;
+        float nearestDistance = maxDistance * maxDistance;
 
-        while (!node.isLeaf())
+        int base = stackSize;
+        push(root);
+
+        while (stackSize > base)
         {
-            AABB aabb = node.aabb;
+            int node = stack[--stackSize];
 
-            float perimeter = aabb.getPerimeter();
+            int box = node * 4;
 
-            AABB union = AABB.union(aabb, itemAABB, tmpUnion);
-            float unionPerimeter = union.getPerimeter();
+            if (BoxQueries.distanceSquared(px, py, boxes[box], boxes[box + 1], boxes[box + 2], boxes[box + 3]) >
+                nearestDistance)
+                continue;
 
-            float cost = 2 * unionPerimeter;
-            float descendCost = 2 * (unionPerimeter - perimeter);
+            if (isLeaf(node))
+            {
+                Rectangle bounds = entities[node].getBounds();
 
-            Node left = node.left;
-            Node right = node.right;
+                float distance = BoxQueries.distanceSquared(px, py, bounds.getX(), bounds.getY(),
+                        bounds.getX() + bounds.getWidth(), bounds.getY() + bounds.getHeight());
 
-            float costLeft;
-            if (left.isLeaf())
-            {
-                AABB u = AABB.union(left.aabb, itemAABB, tmpU);
-                costLeft = u.getPerimeter() + descendCost;
-            }
-            else
-            {
-                AABB u = AABB.union(left.aabb, itemAABB, tmpU);
-                costLeft = u.getPerimeter() - left.aabb.getPerimeter() + descendCost;
+                if (distance <= nearestDistance)
+                {
+                    nearest = entities[node];
+                    nearestDistance = distance;
+                }
+
+                continue;
             }
 
-            float costRight;
-            if (right.isLeaf())
+            int a = left[node];
+            int b = right[node];
+
+            int boxA = a * 4;
+            int boxB = b * 4;
+
+            float distanceA = BoxQueries.distanceSquared(px, py,
+                    boxes[boxA], boxes[boxA + 1], boxes[boxA + 2], boxes[boxA + 3]);
+            float distanceB = BoxQueries.distanceSquared(px, py,
+                    boxes[boxB], boxes[boxB + 1], boxes[boxB + 2], boxes[boxB + 3]);
+
+            // The nearer child is pushed last, so that it is visited first and prunes the other one
+            if (distanceA < distanceB)
             {
-                AABB u = AABB.union(right.aabb, itemAABB, tmpU);
-                costRight = u.getPerimeter() + descendCost;
+                push(b);
+                push(a);
             }
             else
             {
-                AABB u = AABB.union(right.aabb, itemAABB, tmpU);
-                costRight = u.getPerimeter() - right.aabb.getPerimeter() + descendCost;
+                push(a);
+                push(b);
             }
+        }
 
-            if (cost < costLeft && cost < costRight)
-                break;
+        return nearest;
+    }
 
-            node = (costLeft < costRight) ? left : right;
-        }
+    /**
+     * @return The height of the tree, which is zero for a tree with a single leaf or no leaves.
+     */
+    public int getHeight()
+    {
+        return root == NULL ? 0 : height[root];
+    }
 
-        Node parent = node.parent;
-        Node newParent = new Node();
-        newParent.parent = node.parent;
-        newParent.aabb = AABB.union(node.aabb, itemAABB, newParent.aabb);
+    /**
+     * @return The number of entities in the tree.
+     */
+    public int size()
+    {
+        return leaves.size();
+    }
+
+    /**
+     * @return The number of nodes that the arrays have room for.
+     */
+    public int getCapacity()
+    {
+        return parent.length;
+    }
+
+    /**
+     * @return The number of calls to update since the statistics were reset.
+     */
+    public int getUpdateCount()
+    {
+        return updates;
+    }
+
+    /**
+     * @return The number of updates that had to insert the entity again, since the statistics were reset.
+     */
+    public int getReinsertCount()
+    {
+        return reinserts;
+    }
+
+    /**
+     * @return The number of rotations done to balance the tree since the statistics were reset.
+     */
+    public int getRotationCount()
+    {
+        return rotations;
+    }
+
+    public void resetStats()
+    {
+        updates = 0;
+        reinserts = 0;
+        rotations = 0;
+    }
+
+    public float getMargin()
+    {
+        return margin;
+    }
+
+    public void setMargin(float margin)
+    {
+        this.margin = margin;
+    }
+
+    public float getVelocityMultiplier()
+    {
+        return velocityMultiplier;
+    }
+
+    public void setVelocityMultiplier(float velocityMultiplier)
+    {
+        this.velocityMultiplier = velocityMultiplier;
+    }
+
+    private void allocate(int capacity)
+    {
+        int oldCapacity = parent == null ? 0 : parent.length;
 
-        if (parent != null)
+        if (oldCapacity == 0)
         {
-            if (parent.left == node)
-                parent.left = newParent;
-            else
-                parent.right = newParent;
+            boxes = new float[capacity * 4];
 
-            newParent.left = node;
-            newParent.right = item;
+            parent = new int[capacity];
+            left = new int[capacity];
+            right = new int[capacity];
+            height = new int[capacity];
 
-            node.parent = newParent;
-            item.parent = newParent;
+            entities = new Entity2D[capacity];
         }
         else
         {
-            newParent.left = node;
-            newParent.right = item;
+            boxes = Arrays.copyOf(boxes, capacity * 4);
 
-            node.parent = newParent;
-            item.parent = newParent;
+            parent = Arrays.copyOf(parent, capacity);
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            height = Arrays.copyOf(height, capacity);
 
-            root = newParent;
+            entities = Arrays.copyOf(entities, capacity);
         }
 
-        node = item.parent;
+        linkFreeNodes(oldCapacity);
+    }
 
-        while (node != null)
+    /**
+     * Links the nodes from an index to the end of the arrays into the free list.
+     */
+    private void linkFreeNodes(int from)
+    {
+        for (int i = from; i < parent.length; i++)
         {
-            Node left = node.left;
-            Node right = node.right;
+            parent[i] = i + 1;
+            height[i] = -1;
+        }
 
-            node.aabb = AABB.union(left.aabb, right.aabb, node.aabb);
+        parent[parent.length - 1] = NULL;
+        freeList = from;
+    }
 
-            node = node.parent;
-        }
+    private int allocateNode()
+    {
+        if (freeList == NULL)
+            allocate(parent.length * 2);
+
+        int node = freeList;
+        freeList = parent[node];
+
+        parent[node] = NULL;
+        left[node] = NULL;
+        right[node] = NULL;
+        height[node] = 0;
+
+        return node;
     }
 
-    private void queryNode(AABB aabb, Node node)
+    private void freeNode(int node)
     {
-        if (node == null)
-            return;
+        entities[node] = null;
+        height[node] = -1;
 
-        if (node.aabb.intersects(aabb))
-        {
-            if (node.isLeaf())
-                retrieveList.add(node.entity);
-            else
-            {
-                queryNode(aabb, node.left);
-                queryNode(aabb, node.right);
-            }
-        }
+        parent[node] = freeList;
+        freeList = node;
+    }
+
+    private boolean isLeaf(int node)
+    {
+        return left[node] == NULL;
     }
 
-    private static class AABB
+    private void computeFatBox(Entity2D e, int leaf)
     {
-        public Vector2 min;
-        public Vector2 max;
+        Rectangle bounds = e.getBounds();
+        Vector2 velocity = e.getVelocity();
+
+        int box = leaf * 4;
+
+        boxes[box] = bounds.getX() - margin;
+        boxes[box + 1] = bounds.getY() - margin;
+        boxes[box + 2] = bounds.getX() + bounds.getWidth() + margin;
+        boxes[box + 3] = bounds.getY() + bounds.getHeight() + margin;
+
+        // Extend the box in the direction the entity is moving in
+        float dx = velocity.x * velocityMultiplier;
+        float dy = velocity.y * velocityMultiplier;
 
-        public AABB()
+        if (dx < 0)
+            boxes[box] += dx;
+        else
+            boxes[box + 2] += dx;
+
+        if (dy < 0)
+            boxes[box + 1] += dy;
+        else
+            boxes[box + 3] += dy;
+    }
+
+    private void setUnion(int node, int a, int b)
+    {
+        int box = node * 4;
+        int boxA = a * 4;
+        int boxB = b * 4;
+
+        boxes[box] = Math.min(boxes[boxA], boxes[boxB]);
+        boxes[box + 1] = Math.min(boxes[boxA + 1], boxes[boxB + 1]);
+        boxes[box + 2] = Math.max(boxes[boxA + 2], boxes[boxB + 2]);
+        boxes[box + 3] = Math.max(boxes[boxA + 3], boxes[boxB + 3]);
+    }
+
+    private float getPerimeter(int node)
+    {
+        int box = node * 4;
+        return 2 * (boxes[box + 2] - boxes[box] + boxes[box + 3] - boxes[box + 1]);
+    }
+
+    private float getUnionPerimeter(int a, int b)
+    {
+        int boxA = a * 4;
+        int boxB = b * 4;
+
+        float minX = Math.min(boxes[boxA], boxes[boxB]);
+        float minY = Math.min(boxes[boxA + 1], boxes[boxB + 1]);
+        float maxX = Math.max(boxes[boxA + 2], boxes[boxB + 2]);
+        float maxY = Math.max(boxes[boxA + 3], boxes[boxB + 3]);
+
+        return 2 * (maxX - minX + maxY - minY);
+    }
+
+    private void removeLeaf(int leaf)
+    {
+        if (leaf == root)
         {
-            min = new Vector2();
-            max = new Vector2();
+            root = NULL;
+            return;
         }
 
-        public AABB(Vector2 min, Vector2 max)
+        int parent = this.parent[leaf];
+        int grandParent = this.parent[parent];
+
+        int other = (left[parent] == leaf) ? right[parent] : left[parent];
+
+        this.parent[leaf] = NULL;
+
+        if (grandParent != NULL)
         {
-            this.min = min.copy();
-            this.max = max.copy();
-        }
+            if (left[grandParent] == parent)
+                left[grandParent] = other;
+            else
+                right[grandParent] = other;
+
+            this.parent[other] = grandParent;
+            freeNode(parent);
 
-        public AABB(Vector2 min, float width, float height)
+            refit(grandParent);
+        }
+        else
         {
-            this.min = min.copy();
-            this.max = min.add(width, height);
+            root = other;
+            this.parent[other] = NULL;
+            freeNode(parent);
         }
+    }
 
-        // Unused method should possibly delete
-        public static AABB create(Entity2D entity)
+    private void insertLeaf(int leaf)
+    {
+        if (root == NULL)
         {
-            return new AABB(entity.getBounds().getMin(), entity.getBounds().getMax());
+            root = leaf;
+            parent[leaf] = NULL;
+            return;
         }
 
-        public static AABB union(AABB aabb1, AABB aabb2, AABB store)
+        int node = root;
+
+        while (!isLeaf(node))
         {
-            if (store == null)
-                store = new AABB();
+            float perimeter = getPerimeter(node);
+            float unionPerimeter = getUnionPerimeter(node, leaf);
+
+            float cost = 2 * unionPerimeter;
+            float descendCost = 2 * (unionPerimeter - perimeter);
+
+            int left = this.left[node];
+            int right = this.right[node];
+
+            float costLeft = getUnionPerimeter(left, leaf) + descendCost;
+            if (!isLeaf(left))
+                costLeft -= getPerimeter(left);
 
-            store.min.set(aabb1.min);
-            store.max.set(aabb1.max);
+            float costRight = getUnionPerimeter(right, leaf) + descendCost;
+            if (!isLeaf(right))
+                costRight -= getPerimeter(right);
 
-            store.union(aabb2);
+            if (cost < costLeft && cost < costRight)
+                break;
 
-            return store;
+            node = (costLeft < costRight) ? left : right;
         }
 
-        public void union(AABB aabb)
+        // The arrays might grow here, so the node is allocated before they are used again
+        int newParent = allocateNode();
+        int oldParent = parent[node];
+
+        parent[newParent] = oldParent;
+        height[newParent] = height[node] + 1;
+        setUnion(newParent, node, leaf);
+
+        left[newParent] = node;
+        right[newParent] = leaf;
+
+        parent[node] = newParent;
+        parent[leaf] = newParent;
+
+        if (oldParent != NULL)
+        {
+            if (left[oldParent] == node)
+                left[oldParent] = newParent;
+            else
+                right[oldParent] = newParent;
+        }
+        else
+            root = newParent;
+
+        refit(oldParent);
+    }
+
+    /**
+     * Walks up the tree from a node to the root, balancing the nodes and updating their heights and boxes.
+     */
+    private void refit(int node)
+    {
+        while (node != NULL)
         {
-            min.x = Math.min(aabb.min.x, min.x);
-            min.y = Math.min(aabb.min.y, min.y);
+            node = balance(node);
+
+            height[node] = 1 + Math.max(height[left[node]], height[right[node]]);
+            setUnion(node, left[node], right[node]);
 
-            max.x = Math.max(aabb.max.x, max.x);
-            max.y = Math.max(aabb.max.y, max.y);
+            node = parent[node];
         }
+    }
+
+    /**
+     * Rotates a node down if one of its children is higher than the other by more than one, and moves the higher child
+     * up in its place.
+     *
+     * @return The node that is in the place of the given node after the rotation.
+     */
+    private int balance(int a)
+    {
+        if (isLeaf(a) || height[a] < 2)
+            return a;
+
+        int b = left[a];
+        int c = right[a];
 
-        public boolean intersects(AABB aabb)
+        int balance = height[c] - height[b];
+
+        if (balance > 1)
         {
-            return !(min.x > aabb.max.x || max.x < aabb.min.x) &&
-                   !(min.y > aabb.max.y || max.y < aabb.min.y);
+            rotations++;
+            return rotateUp(a, c, b, false);
         }
 
-        public float getPerimeter()
+        if (balance < -1)
         {
-            return 2 * (this.max.x - this.min.x + this.max.y - this.min.y);
+            rotations++;
+            return rotateUp(a, b, c, true);
         }
+
+        return a;
     }
 
-    private static class Node
+    /**
+     * Moves the higher child of a node up in the place of the node. The lower grandchild from the higher child is given
+     * to the node, which keeps its other child.
+     *
+     * @param a      The node to rotate down.
+     * @param high   The higher child of the node, which is moved up.
+     * @param low    The other child of the node.
+     * @param isLeft Whether the higher child is the left child of the node.
+     *
+     * @return The higher child, which is now in the place of the node.
+     */
+    private int rotateUp(int a, int high, int low, boolean isLeft)
     {
-        public Node parent;
-        public Node left;
-        public Node right;
+        int f = left[high];
+        int g = right[high];
 
-        public Entity2D entity;
-        public AABB     aabb;
+        // The higher child takes the place of the node
+        left[high] = a;
+        parent[high] = parent[a];
+        parent[a] = high;
 
-        public boolean isLeaf()
+        int grandParent = parent[high];
+
+        if (grandParent != NULL)
         {
-            return left == null;
+            if (left[grandParent] == a)
+                left[grandParent] = high;
+            else
+                right[grandParent] = high;
         }
+        else
+            root = high;
+
+        // The higher grandchild stays with the higher child, the lower one goes to the node
+        int keep = height[f] > height[g] ? f : g;
+        int give = height[f] > height[g] ? g : f;
+
+        right[high] = keep;
+
+        if (isLeft)
+            left[a] = give;
+        else
+            right[a] = give;
+
+        parent[give] = a;
+
+        setUnion(a, low, give);
+        setUnion(high, a, keep);
+
+        height[a] = 1 + Math.max(height[low], height[give]);
+        height[high] = 1 + Math.max(height[a], height[keep]);
+
+        return high;
+    }
+
+    /**
+     * Passes the entities whose boxes overlap a box to a consumer, visiting the nodes with the stack. The fat boxes of
+     * the leaves are tested, and if exact is set, the bounds of the entities are tested too.
+     */
+    private void query(float x1, float y1, float x2, float y2, boolean exact, Consumer<Entity2D> consumer)
+    {
+        if (root == NULL)
+            return;
+
+        int base = stackSize;
+        push(root);
+
+        while (stackSize > base)
+        {
+            int node = stack[--stackSize];
+
+            if (!overlaps(node * 4, x1, y1, x2, y2))
+                continue;
+
+            if (!isLeaf(node))
+            {
+                // The right child is pushed first, so that the left child is visited first
+                push(right[node]);
+                push(left[node]);
+                continue;
+            }
+
+            Entity2D entity = entities[node];
+
+            if (exact)
+            {
+                Rectangle bounds = entity.getBounds();
+
+                if (bounds.getX() > x2 || bounds.getX() + bounds.getWidth() < x1 ||
+                    bounds.getY() > y2 || bounds.getY() + bounds.getHeight() < y1)
+                    continue;
+            }
+
+            consumer.accept(entity);
+        }
+    }
+
+    private boolean overlaps(int box, float x1, float y1, float x2, float y2)
+    {
+        return boxes[box] <= x2 && boxes[box + 2] >= x1 && boxes[box + 1] <= y2 && boxes[box + 3] >= y1;
+    }
+
+    /**
+     * Pushes a node on the stack, the stack is always read from the field since a nested query might have grown it.
+     */
+    private void push(int node)
+    {
+        if (stackSize == stack.length)
+            stack = Arrays.copyOf(stack, stack.length * 2);
+
+        stack[stackSize++] = node;
     }
 }
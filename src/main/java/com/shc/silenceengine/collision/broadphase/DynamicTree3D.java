@@ -24,344 +24,922 @@
 
 package com.shc.silenceengine.collision.broadphase;
 
+import com.shc.silenceengine.math.Frustum;
 import com.shc.silenceengine.math.Vector3;
 import com.shc.silenceengine.math.geom3d.Cuboid;
 import com.shc.silenceengine.math.geom3d.Polyhedron;
 import com.shc.silenceengine.scene.entity.Entity3D;
+import com.shc.silenceengine.utils.IntMap;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Consumer;
 
 /**
+ * A dynamic AABB tree, that keeps the entities in the leaves of a binary tree of bounding boxes. The boxes in the
+ * leaves are fattened by a margin, and are also extended in the direction of the velocity of the entity. An entity
+ * that moves is only inserted again when it leaves its fat box, so the slowly moving entities don't change the tree
+ * every frame. The tree is kept balanced with rotations when the leaves are inserted and removed, like an AVL tree.
+ *
+ * <p> The nodes are kept in flat arrays and are referred to by their index, the removed nodes are linked in a free
+ * list and reused. The entities are found by their IDs through an IntMap, so an update or a query doesn't allocate
+ * once the arrays are large enough. </p>
+ *
  * @author Sri Harsha Chilakapati
  */
 public class DynamicTree3D implements IBroadphase3D
 {
-    private Node root;
+    // The index used for no node
+    private static final int NULL = -1;
+
+    private int root = NULL;
+
+    // The boxes of the nodes, six floats for every node, the minimum x, y and z and then the maximum x, y and z
+    private float[] boxes;
+
+    // The links of the nodes, the parent of a free node is the next free node
+    private int[] parent;
+    private int[] left;
+    private int[] right;
+
+    // The height of the subtree of every node, zero for the leaves and -1 for the free nodes
+    private int[] height;
+
+    // The entities in the leaves
+    private Entity3D[] entities;
+
+    private int freeList;
+
+    // The leaf of every entity, by the ID of the entity
+    private IntMap leaves;
 
-    private List<Entity3D> retrieveList;
+    // The stack of the nodes to visit in a query, a query started from the callback of another query uses the part of
+    // the stack above it
+    private int[] stack;
+    private int   stackSize;
 
-    private Map<Integer, Node> nodeMap;
-    private Map<Integer, AABB> aabbMap;
+    private List<Entity3D>     retrieveList;
+    private Consumer<Entity3D> retrieveConsumer;
 
-    private AABB tmpUnion = new AABB();
-    private AABB tmpU     = new AABB();
+    // The fixed margin of the fat boxes, and the number of frames of velocity they are extended by
+    private float margin;
+    private float velocityMultiplier;
+
+    // The statistics
+    private int updates;
+    private int reinserts;
+    private int rotations;
 
     public DynamicTree3D()
     {
-        nodeMap = new HashMap<>();
-        aabbMap = new HashMap<>();
+        this(2, 2);
+    }
+
+    /**
+     * Creates a DynamicTree3D with fat boxes.
+     *
+     * @param margin             The margin to fatten the boxes by on every side.
+     * @param velocityMultiplier The number of frames of the velocity of an entity to extend its box by.
+     */
+    public DynamicTree3D(float margin, float velocityMultiplier)
+    {
+        this.margin = margin;
+        this.velocityMultiplier = velocityMultiplier;
 
+        allocate(16);
+
+        leaves = new IntMap();
+        stack = new int[64];
         retrieveList = new ArrayList<>();
+        retrieveConsumer = retrieveList::add;
     }
 
     @Override
     public void clear()
     {
-        nodeMap.clear();
-        root = null;
+        root = NULL;
+        leaves.clear();
+
+        Arrays.fill(entities, null);
+        linkFreeNodes(0);
     }
 
     @Override
     public void insert(Entity3D e)
     {
-        Node node = new Node();
-        node.entity = e;
-        node.aabb = getAABB(e);
+        int leaf = allocateNode();
 
-        nodeMap.put(e.getID(), node);
+        entities[leaf] = e;
+        height[leaf] = 0;
+        computeFatBox(e, leaf);
 
-        insert(node);
+        leaves.put(e.getID(), leaf);
+
+        insertLeaf(leaf);
     }
 
     @Override
     public void remove(Entity3D e)
     {
-        Node node = nodeMap.get(e.getID());
+        int leaf = leaves.remove(e.getID());
+
+        if (leaf != NULL)
+        {
+            removeLeaf(leaf);
+            freeNode(leaf);
+        }
+    }
+
+    /**
+     * Updates an entity that has moved. The entity is only inserted again if its bounds are no longer inside its fat
+     * box.
+     *
+     * @param e The entity that moved.
+     */
+    @Override
+    public void update(Entity3D e)
+    {
+        int leaf = leaves.get(e.getID());
 
-        if (node != null)
+        if (leaf == NULL)
         {
-            remove(node);
-            nodeMap.remove(e.getID());
-            aabbMap.remove(e.getID());
+            insert(e);
+            return;
         }
+
+        updates++;
+
+        Vector3 position = e.getPosition();
+        Cuboid bounds = e.getBounds();
+
+        float halfWidth = bounds.getWidth() / 2;
+        float halfHeight = bounds.getHeight() / 2;
+        float halfThickness = bounds.getThickness() / 2;
+
+        int box = leaf * 6;
+
+        if (boxes[box] <= position.x - halfWidth && boxes[box + 3] >= position.x + halfWidth &&
+            boxes[box + 1] <= position.y - halfHeight && boxes[box + 4] >= position.y + halfHeight &&
+            boxes[box + 2] <= position.z - halfThickness && boxes[box + 5] >= position.z + halfThickness)
+            return;
+
+        removeLeaf(leaf);
+        computeFatBox(e, leaf);
+        insertLeaf(leaf);
+
+        reinserts++;
     }
 
     @Override
     public List<Entity3D> retrieve(Entity3D e)
     {
-        retrieveList.clear();
-        queryNode(getAABB(e), root);
-        return retrieveList;
+        return retrieve(e.getPosition(), e.getBounds());
     }
 
     @Override
     public List<Entity3D> retrieve(Polyhedron bounds)
+    {
+        return retrieve(bounds.getPosition(), bounds);
+    }
+
+    /**
+     * Retrieves the entities whose boxes overlap the box of a polyhedron, which is centered on a position.
+     */
+    private List<Entity3D> retrieve(Vector3 position, Polyhedron bounds)
     {
         retrieveList.clear();
 
-        AABB aabb = new AABB();
-        aabb.min.set(bounds.getPosition()).subtractSelf(bounds.getWidth() / 2, bounds.getHeight() / 2, bounds.getThickness() / 2);
-        aabb.max.set(bounds.getPosition()).addSelf(bounds.getWidth() / 2, bounds.getHeight() / 2, bounds.getThickness() / 2);
+        float halfWidth = bounds.getWidth() / 2;
+        float halfHeight = bounds.getHeight() / 2;
+        float halfThickness = bounds.getThickness() / 2;
+
+        query(position.x - halfWidth, position.y - halfHeight, position.z - halfThickness,
+                position.x + halfWidth, position.y + halfHeight, position.z + halfThickness, false, retrieveConsumer);
 
-        queryNode(aabb, root);
         return retrieveList;
     }
 
-    private void remove(Node node)
+    @Override
+    public void query(Polyhedron bounds, Consumer<Entity3D> consumer)
     {
-        if (root == null) return;
+        Vector3 position = bounds.getPosition();
 
-        if (node == root)
-        {
-            root = null;
-            return;
-        }
+        float halfWidth = bounds.getWidth() / 2;
+        float halfHeight = bounds.getHeight() / 2;
+        float halfThickness = bounds.getThickness() / 2;
 
-        Node parent = node.parent;
-        Node grandParent = parent.parent;
+        query(position.x - halfWidth, position.y - halfHeight, position.z - halfThickness,
+                position.x + halfWidth, position.y + halfHeight, position.z + halfThickness, true, consumer);
+    }
+
+    @Override
+    public void query(Frustum frustum, Consumer<Entity3D> consumer)
+    {
+        if (root == NULL)
+            return;
 
-        Node other = (parent.left == node) ? parent.right : parent.left;
+        int base = stackSize;
+        push(root);
 
-        if (grandParent != null)
+        while (stackSize > base)
         {
-            if (grandParent.left == parent)
-                grandParent.left = other;
-            else
-                grandParent.right = other;
+            int node = stack[--stackSize];
 
-            other.parent = grandParent;
+            int box = node * 6;
 
-            Node n = grandParent;
-            while (n != null)
+            if (!BoxQueries.intersects(frustum, boxes[box], boxes[box + 1], boxes[box + 2], boxes[box + 3],
+                    boxes[box + 4], boxes[box + 5]))
+                continue;
+
+            if (!isLeaf(node))
             {
-                Node left = n.left;
-                Node right = n.right;
+                push(right[node]);
+                push(left[node]);
+                continue;
+            }
 
-                n.aabb = AABB.union(left.aabb, right.aabb, n.aabb);
+            Entity3D entity = entities[node];
+            Vector3 position = entity.getPosition();
+            Cuboid bounds = entity.getBounds();
 
-                n = n.parent;
-            }
-        }
-        else
-        {
-            root = other;
-            other.parent = null;
+            float halfWidth = bounds.getWidth() / 2;
+            float halfHeight = bounds.getHeight() / 2;
+            float halfThickness = bounds.getThickness() / 2;
+
+            if (BoxQueries.intersects(frustum, position.x - halfWidth, position.y - halfHeight,
+                    position.z - halfThickness, position.x + halfWidth, position.y + halfHeight,
+                    position.z + halfThickness))
+                consumer.accept(entity);
         }
     }
 
-    private AABB getAABB(Entity3D e)
+    /**
+     * Passes the pairs of entities whose bounds overlap to a callback. The tree is queried with the fat box of every
+     * leaf, and a pair is only reported from the leaf with the lower index.
+     */
+    @Override
+    public void forEachPair(PairCallback callback)
     {
-        AABB aabb;
-
-        if (aabbMap.containsKey(e.getID()))
-            aabb = aabbMap.get(e.getID());
-        else
+        for (int leaf = 0; leaf < height.length; leaf++)
         {
-            aabb = AABB.create(e);
-            aabbMap.put(e.getID(), aabb);
-        }
+            if (height[leaf] != 0)
+                continue;
 
-        Cuboid bounds = e.getBounds();
+            Entity3D entity = entities[leaf];
 
-        aabb.min.set(e.getPosition()).subtractSelf(bounds.getWidth() / 2, bounds.getHeight() / 2, bounds.getThickness() / 2);
-        aabb.max.set(e.getPosition()).addSelf(bounds.getWidth() / 2, bounds.getHeight() / 2, bounds.getThickness() / 2);
+            int box = leaf * 6;
 
-        return aabb;
+            float x1 = boxes[box];
+            float y1 = boxes[box + 1];
+            float z1 = boxes[box + 2];
+            float x2 = boxes[box + 3];
+            float y2 = boxes[box + 4];
+            float z2 = boxes[box + 5];
+
+            int base = stackSize;
+            push(root);
+
+            while (stackSize > base)
+            {
+                int node = stack[--stackSize];
+
+                if (node < leaf && isLeaf(node) || !overlaps(node * 6, x1, y1, z1, x2, y2, z2))
+                    continue;
+
+                if (!isLeaf(node))
+                {
+                    push(right[node]);
+                    push(left[node]);
+                }
+                else if (node > leaf && BoxQueries.overlaps(entity.getPosition(), entity.getBounds(),
+                        entities[node].getPosition(), entities[node].getBounds()))
+                    callback.pair(entity, entities[node]);
+            }
+        }
     }
 
-    private void insert(Node item)
+    @Override
+    public void raycast(Vector3 origin, Vector3 direction, float maxDistance, RayCallback callback)
     {
-        if (root == null)
-        {
-            root = item;
+        float length = direction.length();
+
+        if (length == 0 || root == NULL)
             return;
-        }
 
-        AABB itemAABB = item.aabb;
+        float ox = origin.x;
+        float oy = origin.y;
+        float oz = origin.z;
+        float dx = direction.x / length;
+        float dy = direction.y / length;
+        float dz = direction.z / length;
 
-        Node node = root;
+        int base = stackSize;
+        push(root);
 
-        while (!node.isLeaf())
+        while (stackSize > base)
         {
-            AABB aabb = node.aabb;
+            int node = stack[--stackSize];
 
-            float perimeter = aabb.getPerimeter();
+            int box = node * 6;
 
-            AABB union = AABB.union(aabb, itemAABB, tmpUnion);
-            float unionPerimeter = union.getPerimeter();
+            if (BoxQueries.raycast(ox, oy, oz, dx, dy, dz, maxDistance, boxes[box], boxes[box + 1], boxes[box + 2],
+                    boxes[box + 3], boxes[box + 4], boxes[box + 5]) < 0)
+                continue;
 
-            float cost = 2 * unionPerimeter;
-            float descendCost = 2 * (unionPerimeter - perimeter);
+            if (!isLeaf(node))
+            {
+                push(right[node]);
+                push(left[node]);
+                continue;
+            }
 
-            Node left = node.left;
-            Node right = node.right;
+            Entity3D entity = entities[node];
+            Vector3 position = entity.getPosition();
+            Cuboid bounds = entity.getBounds();
+
+            float halfWidth = bounds.getWidth() / 2;
+            float halfHeight = bounds.getHeight() / 2;
+            float halfThickness = bounds.getThickness() / 2;
 
-            float costLeft;
-            if (left.isLeaf())
+            float distance = BoxQueries.raycast(ox, oy, oz, dx, dy, dz, maxDistance,
+                    position.x - halfWidth, position.y - halfHeight, position.z - halfThickness,
+                    position.x + halfWidth, position.y + halfHeight, position.z + halfThickness);
+
+            if (distance >= 0)
             {
-                AABB u = AABB.union(left.aabb, itemAABB, tmpU);
-                costLeft = u.getPerimeter() + descendCost;
+                maxDistance = Math.min(maxDistance, callback.hit(entity, distance));
+
+                if (maxDistance <= 0)
+                {
+                    stackSize = base;
+                    return;
+                }
             }
-            else
+        }
+    }
+
+    @Override
+    public Entity3D nearest(Vector3 point, float maxDistance)
+    {
+        if (root == NULL)
+            return null;
+
+        float px = point.x;
+        float py = point.y;
+        float pz = point.z;
+
+        Entity3D nearest = null;
+        float nearestDistance = maxDistance * maxDistance;
+
+        int base = stackSize;
+        push(root);
+
+        while (stackSize > base)
+        {
+            int node = stack[--stackSize];
+
+            if (getDistanceSquared(node, px, py, pz) > nearestDistance)
+                continue;
+
+            if (isLeaf(node))
             {
-                AABB u = AABB.union(left.aabb, itemAABB, tmpU);
-                costLeft = u.getPerimeter() - left.aabb.getPerimeter() + descendCost;
+                Vector3 position = entities[node].getPosition();
+                Cuboid bounds = entities[node].getBounds();
+
+                float halfWidth = bounds.getWidth() / 2;
+                float halfHeight = bounds.getHeight() / 2;
+                float halfThickness = bounds.getThickness() / 2;
+
+                float distance = BoxQueries.distanceSquared(px, py, pz,
+                        position.x - halfWidth, position.y - halfHeight, position.z - halfThickness,
+                        position.x + halfWidth, position.y + halfHeight, position.z + halfThickness);
+
+                if (distance <= nearestDistance)
+                {
+                    nearest = entities[node];
+                    nearestDistance = distance;
+                }
+
+                continue;
             }
 
-            float costRight;
-            if (right.isLeaf())
+            int a = left[node];
+            int b = right[node];
+
+            // The nearer child is pushed last, so that it is visited first and prunes the other one
+            if (getDistanceSquared(a, px, py, pz) < getDistanceSquared(b, px, py, pz))
             {
-                AABB u = AABB.union(right.aabb, itemAABB, tmpU);
-                costRight = u.getPerimeter() + descendCost;
+                push(b);
+                push(a);
             }
             else
             {
-                AABB u = AABB.union(right.aabb, itemAABB, tmpU);
-                costRight = u.getPerimeter() - right.aabb.getPerimeter() + descendCost;
+                push(a);
+                push(b);
             }
+        }
 
-            if (cost < costLeft && cost < costRight)
-                break;
+        return nearest;
+    }
 
-            node = (costLeft < costRight) ? left : right;
-        }
+    /**
+     * @return The height of the tree, which is zero for a tree with a single leaf or no leaves.
+     */
+    public int getHeight()
+    {
+        return root == NULL ? 0 : height[root];
+    }
+
+    /**
+     * @return The number of entities in the tree.
+     */
+    public int size()
+    {
+        return leaves.size();
+    }
 
-        Node parent = node.parent;
-        Node newParent = new Node();
-        newParent.parent = node.parent;
-        newParent.aabb = AABB.union(node.aabb, itemAABB, newParent.aabb);
+    /**
+     * @return The number of nodes that the arrays have room for.
+     */
+    public int getCapacity()
+    {
+        return parent.length;
+    }
+
+    /**
+     * @return The number of calls to update since the statistics were reset.
+     */
+    public int getUpdateCount()
+    {
+        return updates;
+    }
+
+    /**
+     * @return The number of updates that had to insert the entity again, since the statistics were reset.
+     */
+    public int getReinsertCount()
+    {
+        return reinserts;
+    }
 
-        if (parent != null)
+    /**
+     * @return The number of rotations done to balance the tree since the statistics were reset.
+     */
+    public int getRotationCount()
+    {
+        return rotations;
+    }
+
+    public void resetStats()
+    {
+        updates = 0;
+        reinserts = 0;
+        rotations = 0;
+    }
+
+    public float getMargin()
+    {
+        return margin;
+    }
+
+    public void setMargin(float margin)
+    {
+        this.margin = margin;
+    }
+
+    public float getVelocityMultiplier()
+    {
+        return velocityMultiplier;
+    }
+
+    public void setVelocityMultiplier(float velocityMultiplier)
+    {
+        this.velocityMultiplier = velocityMultiplier;
+    }
+
+    private void allocate(int capacity)
+    {
+        int oldCapacity = parent == null ? 0 : parent.length;
+
+        if (oldCapacity == 0)
         {
-            if (parent.left == node)
-                parent.left = newParent;
-            else
-                parent.right = newParent;
+            boxes = new float[capacity * 6];
 
-            newParent.left = node;
-            newParent.right = item;
+            parent = new int[capacity];
+            left = new int[capacity];
+            right = new int[capacity];
+            height = new int[capacity];
 
-            node.parent = newParent;
-            item.parent = newParent;
+            entities = new Entity3D[capacity];
         }
         else
         {
-            newParent.left = node;
-            newParent.right = item;
+            boxes = Arrays.copyOf(boxes, capacity * 6);
 
-            node.parent = newParent;
-            item.parent = newParent;
+            parent = Arrays.copyOf(parent, capacity);
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            height = Arrays.copyOf(height, capacity);
 
-            root = newParent;
+            entities = Arrays.copyOf(entities, capacity);
         }
 
-        node = item.parent;
+        linkFreeNodes(oldCapacity);
+    }
 
-        while (node != null)
+    /**
+     * Links the nodes from an index to the end of the arrays into the free list.
+     */
+    private void linkFreeNodes(int from)
+    {
+        for (int i = from; i < parent.length; i++)
         {
-            Node left = node.left;
-            Node right = node.right;
+            parent[i] = i + 1;
+            height[i] = -1;
+        }
 
-            node.aabb = AABB.union(left.aabb, right.aabb, node.aabb);
+        parent[parent.length - 1] = NULL;
+        freeList = from;
+    }
 
-            node = node.parent;
-        }
+    private int allocateNode()
+    {
+        if (freeList == NULL)
+            allocate(parent.length * 2);
+
+        int node = freeList;
+        freeList = parent[node];
+
+        parent[node] = NULL;
+        left[node] = NULL;
+        right[node] = NULL;
+        height[node] = 0;
+
+        return node;
+    }
+
+    private void freeNode(int node)
+    {
+        entities[node] = null;
+        height[node] = -1;
+
+        parent[node] = freeList;
+        freeList = node;
+    }
+
+    private boolean isLeaf(int node)
+    {
+        return left[node] == NULL;
+    }
+
+    private void computeFatBox(Entity3D e, int leaf)
+    {
+        Vector3 position = e.getPosition();
+        Vector3 velocity = e.getVelocity();
+        Cuboid bounds = e.getBounds();
+
+        // The bounds are centered on the position
+        float halfWidth = bounds.getWidth() / 2 + margin;
+        float halfHeight = bounds.getHeight() / 2 + margin;
+        float halfThickness = bounds.getThickness() / 2 + margin;
+
+        int box = leaf * 6;
+
+        boxes[box] = position.x - halfWidth;
+        boxes[box + 1] = position.y - halfHeight;
+        boxes[box + 2] = position.z - halfThickness;
+        boxes[box + 3] = position.x + halfWidth;
+        boxes[box + 4] = position.y + halfHeight;
+        boxes[box + 5] = position.z + halfThickness;
+
+        // Extend the box in the direction the entity is moving in
+        float dx = velocity.x * velocityMultiplier;
+        float dy = velocity.y * velocityMultiplier;
+        float dz = velocity.z * velocityMultiplier;
+
+        if (dx < 0)
+            boxes[box] += dx;
+        else
+            boxes[box + 3] += dx;
+
+        if (dy < 0)
+            boxes[box + 1] += dy;
+        else
+            boxes[box + 4] += dy;
+
+        if (dz < 0)
+            boxes[box + 2] += dz;
+        else
+            boxes[box + 5] += dz;
+    }
+
+    private void setUnion(int node, int a, int b)
+    {
+        int box = node * 6;
+        int boxA = a * 6;
+        int boxB = b * 6;
+
+        boxes[box] = Math.min(boxes[boxA], boxes[boxB]);
+        boxes[box + 1] = Math.min(boxes[boxA + 1], boxes[boxB + 1]);
+        boxes[box + 2] = Math.min(boxes[boxA + 2], boxes[boxB + 2]);
+        boxes[box + 3] = Math.max(boxes[boxA + 3], boxes[boxB + 3]);
+        boxes[box + 4] = Math.max(boxes[boxA + 4], boxes[boxB + 4]);
+        boxes[box + 5] = Math.max(boxes[boxA + 5], boxes[boxB + 5]);
+    }
+
+    private float getPerimeter(int node)
+    {
+        int box = node * 6;
+        return 2 * (boxes[box + 3] - boxes[box] + boxes[box + 4] - boxes[box + 1] + boxes[box + 5] - boxes[box + 2]);
     }
 
-    private void queryNode(AABB aabb, Node node)
+    private float getUnionPerimeter(int a, int b)
     {
-        if (node == null)
+        int boxA = a * 6;
+        int boxB = b * 6;
+
+        float minX = Math.min(boxes[boxA], boxes[boxB]);
+        float minY = Math.min(boxes[boxA + 1], boxes[boxB + 1]);
+        float minZ = Math.min(boxes[boxA + 2], boxes[boxB + 2]);
+        float maxX = Math.max(boxes[boxA + 3], boxes[boxB + 3]);
+        float maxY = Math.max(boxes[boxA + 4], boxes[boxB + 4]);
+        float maxZ = Math.max(boxes[boxA + 5], boxes[boxB + 5]);
+
+        return 2 * (maxX - minX + maxY - minY + maxZ - minZ);
+    }
+
+    private void removeLeaf(int leaf)
+    {
+        if (leaf == root)
+        {
+            root = NULL;
             return;
+        }
+
+        int parent = this.parent[leaf];
+        int grandParent = this.parent[parent];
 
-        if (node.aabb.intersects(aabb))
+        int other = (left[parent] == leaf) ? right[parent] : left[parent];
+
+        this.parent[leaf] = NULL;
+
+        if (grandParent != NULL)
         {
-            if (node.isLeaf())
-                retrieveList.add(node.entity);
+            if (left[grandParent] == parent)
+                left[grandParent] = other;
             else
-            {
-                queryNode(aabb, node.left);
-                queryNode(aabb, node.right);
-            }
-        }
-    }
+                right[grandParent] = other;
 
-    private static class AABB
-    {
-        public Vector3 min;
-        public Vector3 max;
+            this.parent[other] = grandParent;
+            freeNode(parent);
 
-        public AABB()
+            refit(grandParent);
+        }
+        else
         {
-            min = new Vector3();
-            max = new Vector3();
+            root = other;
+            this.parent[other] = NULL;
+            freeNode(parent);
         }
+    }
 
-        public AABB(Vector3 min, float width, float height, float thickness)
+    private void insertLeaf(int leaf)
+    {
+        if (root == NULL)
         {
-            this.min = min.copy();
-            this.max = min.add(width, height, thickness);
+            root = leaf;
+            parent[leaf] = NULL;
+            return;
         }
 
-        public static AABB create(Entity3D entity)
+        int node = root;
+
+        while (!isLeaf(node))
         {
-            Cuboid bounds = entity.getBounds();
+            float perimeter = getPerimeter(node);
+            float unionPerimeter = getUnionPerimeter(node, leaf);
+
+            float cost = 2 * unionPerimeter;
+            float descendCost = 2 * (unionPerimeter - perimeter);
+
+            int left = this.left[node];
+            int right = this.right[node];
+
+            float costLeft = getUnionPerimeter(left, leaf) + descendCost;
+            if (!isLeaf(left))
+                costLeft -= getPerimeter(left);
+
+            float costRight = getUnionPerimeter(right, leaf) + descendCost;
+            if (!isLeaf(right))
+                costRight -= getPerimeter(right);
 
-            return new AABB(entity.getPosition().subtract(bounds.getWidth() / 2, bounds.getHeight() / 2, bounds.getThickness() / 2),
-                    bounds.getWidth(), bounds.getHeight(), bounds.getThickness());
+            if (cost < costLeft && cost < costRight)
+                break;
+
+            node = (costLeft < costRight) ? left : right;
         }
 
-        public static AABB union(AABB aabb1, AABB aabb2, AABB store)
-        {
-            if (store == null)
-                store = new AABB();
+        // The arrays might grow here, so the node is allocated before they are used again
+        int newParent = allocateNode();
+        int oldParent = parent[node];
+
+        parent[newParent] = oldParent;
+        height[newParent] = height[node] + 1;
+        setUnion(newParent, node, leaf);
 
-            store.min.set(aabb1.min);
-            store.max.set(aabb1.max);
+        left[newParent] = node;
+        right[newParent] = leaf;
 
-            store.union(aabb2);
+        parent[node] = newParent;
+        parent[leaf] = newParent;
 
-            return store;
+        if (oldParent != NULL)
+        {
+            if (left[oldParent] == node)
+                left[oldParent] = newParent;
+            else
+                right[oldParent] = newParent;
         }
+        else
+            root = newParent;
+
+        refit(oldParent);
+    }
 
-        public void union(AABB aabb)
+    /**
+     * Walks up the tree from a node to the root, balancing the nodes and updating their heights and boxes.
+     */
+    private void refit(int node)
+    {
+        while (node != NULL)
         {
-            min.x = Math.min(aabb.min.x, min.x);
-            min.y = Math.min(aabb.min.y, min.y);
-            min.z = Math.min(aabb.min.z, min.z);
+            node = balance(node);
+
+            height[node] = 1 + Math.max(height[left[node]], height[right[node]]);
+            setUnion(node, left[node], right[node]);
+
+            node = parent[node];
+        }
+    }
+
+    /**
+     * Rotates a node down if one of its children is higher than the other by more than one, and moves the higher child
+     * up in its place.
+     *
+     * @return The node that is in the place of the given node after the rotation.
+     */
+    private int balance(int a)
+    {
+        if (isLeaf(a) || height[a] < 2)
+            return a;
+
+        int b = left[a];
+        int c = right[a];
 
-            max.x = Math.max(aabb.max.x, max.x);
-            max.y = Math.max(aabb.max.y, max.y);
-            max.z = Math.max(aabb.max.z, max.z);
+        int balance = height[c] - height[b];
+
+        if (balance > 1)
+        {
+            rotations++;
+            return rotateUp(a, c, b, false);
         }
 
-        public boolean intersects(AABB aabb)
+        if (balance < -1)
         {
-            return !(min.x > aabb.max.x || max.x < aabb.min.x) &&
-                   !(min.y > aabb.max.y || max.y < aabb.min.y) &&
-                   !(min.z > aabb.max.z || max.z < aabb.min.z);
+            rotations++;
+            return rotateUp(a, b, c, true);
         }
 
-        public float getPerimeter()
+        return a;
+    }
+
+    /**
+     * Moves the higher child of a node up in the place of the node. The lower grandchild from the higher child is given
+     * to the node, which keeps its other child.
+     *
+     * @param a      The node to rotate down.
+     * @param high   The higher child of the node, which is moved up.
+     * @param low    The other child of the node.
+     * @param isLeft Whether the higher child is the left child of the node.
+     *
+     * @return The higher child, which is now in the place of the node.
+     */
+    private int rotateUp(int a, int high, int low, boolean isLeft)
+    {
+        int f = left[high];
+        int g = right[high];
+
+        // The higher child takes the place of the node
+        left[high] = a;
+        parent[high] = parent[a];
+        parent[a] = high;
+
+        int grandParent = parent[high];
+
+        if (grandParent != NULL)
         {
-            return 2 * (max.x - min.x + max.y - min.y + max.z - min.z);
+            if (left[grandParent] == a)
+                left[grandParent] = high;
+            else
+                right[grandParent] = high;
         }
+        else
+            root = high;
+
+        // The higher grandchild stays with the higher child, the lower one goes to the node
+        int keep = height[f] > height[g] ? f : g;
+        int give = height[f] > height[g] ? g : f;
+
+        right[high] = keep;
+
+        if (isLeft)
+            left[a] = give;
+        else
+            right[a] = give;
+
+        parent[give] = a;
+
+        setUnion(a, low, give);
+        setUnion(high, a, keep);
+
+        height[a] = 1 + Math.max(height[low], height[give]);
+        height[high] = 1 + Math.max(height[a], height[keep]);
+
+        return high;
+    }
+
+    private float getDistanceSquared(int node, float px, float py, float pz)
+    {
+        int box = node * 6;
+
+        return BoxQueries.distanceSquared(px, py, pz, boxes[box], boxes[box + 1], boxes[box + 2],
+                boxes[box + 3], boxes[box + 4], boxes[box + 5]);
     }
 
-    private static class Node
+    /**
+     * Passes the entities whose boxes overlap a box to a consumer, visiting the nodes with the stack. The fat boxes of
+     * the leaves are tested, and if exact is set, the bounds of the entities are tested too.
+     */
+    private void query(float x1, float y1, float z1, float x2, float y2, float z2, boolean exact,
+                       Consumer<Entity3D> consumer)
     {
-        public Node parent;
-        public Node left;
-        public Node right;
+        if (root == NULL)
+            return;
 
-        public Entity3D entity;
-        public AABB     aabb;
+        int base = stackSize;
+        push(root);
 
-        public boolean isLeaf()
+        while (stackSize > base)
         {
-            return left == null;
+            int node = stack[--stackSize];
+
+            if (!overlaps(node * 6, x1, y1, z1, x2, y2, z2))
+                continue;
+
+            if (!isLeaf(node))
+            {
+                // The right child is pushed first, so that the left child is visited first
+                push(right[node]);
+                push(left[node]);
+                continue;
+            }
+
+            Entity3D entity = entities[node];
+
+            if (exact)
+            {
+                Vector3 position = entity.getPosition();
+                Cuboid bounds = entity.getBounds();
+
+                float halfWidth = bounds.getWidth() / 2;
+                float halfHeight = bounds.getHeight() / 2;
+                float halfThickness = bounds.getThickness() / 2;
+
+                if (position.x - halfWidth > x2 || position.x + halfWidth < x1 ||
+                    position.y - halfHeight > y2 || position.y + halfHeight < y1 ||
+                    position.z - halfThickness > z2 || position.z + halfThickness < z1)
+                    continue;
+            }
+
+            consumer.accept(entity);
         }
     }
+
+    private boolean overlaps(int box, float x1, float y1, float z1, float x2, float y2, float z2)
+    {
+        return boxes[box] <= x2 && boxes[box + 3] >= x1 && boxes[box + 1] <= y2 && boxes[box + 4] >= y1 &&
+               boxes[box + 2] <= z2 && boxes[box + 5] >= z1;
+    }
+
+    /**
+     * Pushes a node on the stack, the stack is always read from the field since a nested query might have grown it.
+     */
+    private void push(int node)
+    {
+        if (stackSize == stack.length)
+            stack = Arrays.copyOf(stack, stack.length * 2);
+
+        stack[stackSize++] = node;
+    }
 }
@@ -24,13 +24,16 @@
 
 package com.shc.silenceengine.collision.broadphase;
 
+import com.shc.silenceengine.math.Vector2;
 import com.shc.silenceengine.math.geom2d.Rectangle;
 import com.shc.silenceengine.scene.entity.Entity2D;
 import com.shc.silenceengine.utils.MathUtils;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * A Grid based collision resolver. Reduces the number of collision checks and increases performance. This class
@@ -53,6 +56,10 @@ public class Grid implements IBroadphase2D
     // A list of short-listed entities
     private List<Entity2D> retrieveList;
 
+    // The cells every entity was inserted into, and the cells of the current query
+    private Map<Entity2D, int[]> insertedCells;
+    private int[]                queryCells;
+
     /**
      * Creates and initializes the Grid
      *
@@ -82,6 +89,8 @@ public Grid(int mapWidth, int mapHeight, int cellWidth, int cellHeight)
         }
 
         retrieveList = new ArrayList<>();
+        insertedCells = new IdentityHashMap<>();
+        queryCells = new int[4];
 
         clear();
     }
@@ -96,6 +105,8 @@ public void clear()
             for (int j = 0; j < rows; j++)
                 grid.get(i).get(j).clear();
         }
+
+        insertedCells.clear();
     }
 
     /**
@@ -105,20 +116,18 @@ public void clear()
      */
     public void insert(Entity2D entity)
     {
-        Rectangle bounds = entity.getPolygon().getBounds();
+        int[] cells = new int[4];
+        computeCells(entity.getBounds(), cells);
 
-        int topLeftX = MathUtils.clamp((int) (bounds.getX()) / cellWidth, 0, cols - 1);
-        int topLeftY = MathUtils.clamp((int) (bounds.getY()) / cellHeight, 0, rows - 1);
-        int bottomRightX = MathUtils.clamp((int) (bounds.getX() + bounds.getWidth() - 1) / cellWidth, 0, cols - 1);
-        int bottomRightY = MathUtils.clamp((int) (bounds.getY() + bounds.getHeight() - 1) / cellHeight, 0, rows - 1);
-
-        for (int x = topLeftX; x <= bottomRightX; x++)
+        for (int x = cells[0]; x <= cells[2]; x++)
         {
-            for (int y = topLeftY; y <= bottomRightY; y++)
+            for (int y = cells[1]; y <= cells[3]; y++)
             {
                 grid.get(x).get(y).add(entity);
             }
         }
+
+        insertedCells.put(entity, cells);
     }
 
     /**
@@ -128,19 +137,21 @@ public void insert(Entity2D entity)
      */
     public void remove(Entity2D entity)
     {
-        Rectangle bounds = entity.getPolygon().getBounds();
+        // The entity is removed from the cells it was inserted into, it might have moved since then
+        int[] cells = insertedCells.remove(entity);
 
-        int topLeftX = MathUtils.clamp((int) (bounds.getX()) / cellWidth, 0, cols - 1);
-        int topLeftY = MathUtils.clamp((int) (bounds.getY()) / cellHeight, 0, rows - 1);
-        int bottomRightX = MathUtils.clamp((int) (bounds.getX() + bounds.getWidth() - 1) / cellWidth, 0, cols - 1);
-        int bottomRightY = MathUtils.clamp((int) (bounds.getY() + bounds.getHeight() - 1) / cellHeight, 0, rows - 1);
+        if (cells == null)
+            return;
 
-        for (int x = topLeftX; x <= bottomRightX; x++)
+        for (int x = cells[0]; x <= cells[2]; x++)
         {
-            for (int y = topLeftY; y <= bottomRightY; y++)
+            for (int y = cells[1]; y <= cells[3]; y++)
             {
-                if (grid.get(x).get(y).contains(entity))
-                    grid.get(x).get(y).remove(entity);
+                List<Entity2D> cell = grid.get(x).get(y);
+
+                for (int i = cell.size() - 1; i >= 0; i--)
+                    if (cell.get(i) == entity)
+                        cell.remove(i);
             }
         }
     }
@@ -149,25 +160,265 @@ public void remove(Entity2D entity)
     public List<Entity2D> retrieve(Rectangle bounds)
     {
         retrieveList.clear();
+        computeCells(bounds, queryCells);
 
-        int topLeftX = MathUtils.clamp((int) (bounds.getX()) / cellWidth, 0, cols - 1);
-        int topLeftY = MathUtils.clamp((int) (bounds.getY()) / cellHeight, 0, rows - 1);
-        int bottomRightX = MathUtils.clamp((int) (bounds.getX() + bounds.getWidth() - 1) / cellWidth, 0, cols - 1);
-        int bottomRightY = MathUtils.clamp((int) (bounds.getY() + bounds.getHeight() - 1) / cellHeight, 0, rows - 1);
-
-        for (int x = topLeftX; x <= bottomRightX; x++)
+        for (int x = queryCells[0]; x <= queryCells[2]; x++)
         {
-            for (int y = topLeftY; y <= bottomRightY; y++)
+            for (int y = queryCells[1]; y <= queryCells[3]; y++)
             {
                 List<Entity2D> cell = grid.get(x).get(y);
 
-                retrieveList.addAll(cell.stream().collect(Collectors.toList()));
+                for (int i = 0; i < cell.size(); i++)
+                {
+                    Entity2D entity = cell.get(i);
+                    int[] cells = insertedCells.get(entity);
+
+                    // An entity in many cells is only added from the first cell it shares with the bounds
+                    if (Math.max(cells[0], queryCells[0]) == x && Math.max(cells[1], queryCells[1]) == y)
+                        retrieveList.add(entity);
+                }
             }
         }
 
         return retrieveList;
     }
 
+    @Override
+    public void query(Rectangle rect, Consumer<Entity2D> consumer)
+    {
+        // The cells are kept in locals, so that the consumer can query the grid again
+        float x1 = rect.getX();
+        float y1 = rect.getY();
+        float x2 = x1 + rect.getWidth();
+        float y2 = y1 + rect.getHeight();
+
+        int firstColumn = getColumn(x1);
+        int firstRow = getRow(y1);
+        int lastColumn = getColumn(x2);
+        int lastRow = getRow(y2);
+
+        for (int x = firstColumn; x <= lastColumn; x++)
+        {
+            for (int y = firstRow; y <= lastRow; y++)
+            {
+                List<Entity2D> cell = grid.get(x).get(y);
+
+                for (int i = 0; i < cell.size(); i++)
+                {
+                    Entity2D entity = cell.get(i);
+                    int[] cells = insertedCells.get(entity);
+
+                    if (Math.max(cells[0], firstColumn) == x && Math.max(cells[1], firstRow) == y &&
+                        BoxQueries.overlaps(rect, entity.getBounds()))
+                        consumer.accept(entity);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void forEachPair(PairCallback callback)
+    {
+        for (int x = 0; x < cols; x++)
+        {
+            for (int y = 0; y < rows; y++)
+            {
+                List<Entity2D> cell = grid.get(x).get(y);
+
+                for (int i = 0; i < cell.size(); i++)
+                {
+                    Entity2D a = cell.get(i);
+                    int[] cellsA = insertedCells.get(a);
+
+                    for (int j = i + 1; j < cell.size(); j++)
+                    {
+                        Entity2D b = cell.get(j);
+                        int[] cellsB = insertedCells.get(b);
+
+                        // A pair that shares many cells is only found in the first cell they share
+                        if (Math.max(cellsA[0], cellsB[0]) == x && Math.max(cellsA[1], cellsB[1]) == y &&
+                            BoxQueries.overlaps(a.getBounds(), b.getBounds()))
+                            callback.pair(a, b);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Casts a ray through the grid, walking the cells it passes through in order. The cells on the edges of the grid
+     * extend beyond it, like the entities outside the grid are clamped into them.
+     */
+    @Override
+    public void raycast(Vector2 origin, Vector2 direction, float maxDistance, RayCallback callback)
+    {
+        float length = direction.length();
+
+        if (length == 0)
+            return;
+
+        float ox = origin.x;
+        float oy = origin.y;
+        float dx = direction.x / length;
+        float dy = direction.y / length;
+
+        int x = getColumn(ox);
+        int y = getRow(oy);
+
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+
+        // The distances at which the ray crosses into the next column and the next row
+        float nextX = getCrossing(ox, dx, x, cellWidth, cols);
+        float nextY = getCrossing(oy, dy, y, cellHeight, rows);
+
+        // The cell the ray came from, the path only goes one way in each axis, so an entity is only tested when the
+        // ray enters the cells that it covers
+        int previousX = -1;
+        int previousY = -1;
+
+        while (true)
+        {
+            List<Entity2D> cell = grid.get(x).get(y);
+
+            for (int i = 0; i < cell.size(); i++)
+            {
+                Entity2D entity = cell.get(i);
+                int[] cells = insertedCells.get(entity);
+
+                if (cells[0] <= previousX && previousX <= cells[2] && cells[1] <= previousY && previousY <= cells[3])
+                    continue;
+
+                Rectangle bounds = entity.getBounds();
+
+                float distance = BoxQueries.raycast(ox, oy, dx, dy, maxDistance, bounds.getX(), bounds.getY(),
+                        bounds.getX() + bounds.getWidth(), bounds.getY() + bounds.getHeight());
+
+                if (distance >= 0)
+                {
+                    maxDistance = Math.min(maxDistance, callback.hit(entity, distance));
+
+                    if (maxDistance <= 0)
+                        return;
+                }
+            }
+
+            previousX = x;
+            previousY = y;
+
+            float next = Math.min(nextX, nextY);
+
+            if (next > maxDistance || next == Float.POSITIVE_INFINITY)
+                return;
+
+            if (nextX < nextY)
+            {
+                x += stepX;
+                nextX = getCrossing(ox, dx, x, cellWidth, cols);
+            }
+            else
+            {
+                y += stepY;
+                nextY = getCrossing(oy, dy, y, cellHeight, rows);
+            }
+        }
+    }
+
+    /**
+     * Finds the nearest entity by searching the rings of cells around the cell of the point, until the rings are
+     * farther than the nearest entity found.
+     */
+    @Override
+    public Entity2D nearest(Vector2 point, float maxDistance)
+    {
+        int centerX = getColumn(point.x);
+        int centerY = getRow(point.y);
+
+        int minCellSize = Math.min(cellWidth, cellHeight);
+
+        Entity2D nearest = null;
+        float nearestDistance = maxDistance * maxDistance;
+
+        for (int r = 0; r <= Math.max(cols, rows); r++)
+        {
+            // No cell in this ring is closer than this
+            float ringDistance = (float) (r - 1) * minCellSize;
+
+            if (r > 1 && ringDistance * ringDistance > nearestDistance)
+                break;
+
+            for (int y = Math.max(centerY - r, 0); y <= Math.min(centerY + r, rows - 1); y++)
+            {
+                boolean edge = y == centerY - r || y == centerY + r;
+
+                for (int x = Math.max(centerX - r, 0); x <= Math.min(centerX + r, cols - 1); x++)
+                {
+                    // Only the cells on the edges of the ring are new
+                    if (!edge && x != centerX - r && x != centerX + r)
+                        continue;
+
+                    List<Entity2D> cell = grid.get(x).get(y);
+
+                    for (int i = 0; i < cell.size(); i++)
+                    {
+                        Entity2D entity = cell.get(i);
+                        Rectangle bounds = entity.getBounds();
+
+                        float distance = BoxQueries.distanceSquared(point.x, point.y, bounds.getX(), bounds.getY(),
+                                bounds.getX() + bounds.getWidth(), bounds.getY() + bounds.getHeight());
+
+                        if (distance <= nearestDistance)
+                        {
+                            nearest = entity;
+                            nearestDistance = distance;
+                        }
+                    }
+                }
+            }
+        }
+
+        return nearest;
+    }
+
+    private int getColumn(float x)
+    {
+        return MathUtils.clamp((int) Math.floor(x / cellWidth), 0, cols - 1);
+    }
+
+    private int getRow(float y)
+    {
+        return MathUtils.clamp((int) Math.floor(y / cellHeight), 0, rows - 1);
+    }
+
+    /**
+     * Finds the distance along a ray at which it crosses from a cell into the next one on an axis. Only the lines
+     * between the cells are crossed, so the ray never leaves the cells on the edges.
+     *
+     * @return The distance, or infinity if the ray doesn't cross into another cell on the axis.
+     */
+    private static float getCrossing(float origin, float direction, int cell, int cellSize, int cells)
+    {
+        if (direction > 0 && cell < cells - 1)
+            return ((cell + 1) * cellSize - origin) / direction;
+
+        if (direction < 0 && cell > 0)
+            return (cell * cellSize - origin) / direction;
+
+        return Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Computes the range of cells that some bounds overlap, as the first column, the first row, the last column and the
+     * last row, clamped to the grid.
+     */
+    private void computeCells(Rectangle bounds, int[] cells)
+    {
+        cells[0] = getColumn(bounds.getX());
+        cells[1] = getRow(bounds.getY());
+        cells[2] = getColumn(bounds.getX() + bounds.getWidth());
+        cells[3] = getRow(bounds.getY() + bounds.getHeight());
+    }
+
     /**
      * Simplification method to insert bulk data
      *
@@ -24,10 +24,18 @@
 
 package com.shc.silenceengine.collision.broadphase;
 
+import com.shc.silenceengine.math.Vector2;
 import com.shc.silenceengine.math.geom2d.Rectangle;
 import com.shc.silenceengine.scene.entity.Entity2D;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * @author Sri Harsha Chilakapati
@@ -40,10 +48,252 @@
 
     void remove(Entity2D e);
 
+    /**
+     * Updates the broadphase after an entity has moved. By default the entity is removed and inserted again, but the
+     * implementations can refresh it in place.
+     *
+     * @param e The entity that moved.
+     */
+    default void update(Entity2D e)
+    {
+        remove(e);
+        insert(e);
+    }
+
+    /**
+     * Finds the entities whose bounds might overlap the bounds of an entity. The list is shared by the calls to
+     * retrieve, and is only valid until the broadphase is queried again.
+     *
+     * @param e The entity.
+     *
+     * @return The entities that might overlap the entity.
+     */
     default List<Entity2D> retrieve(Entity2D e)
     {
         return retrieve(e.getBounds());
     }
 
+    /**
+     * Finds the entities whose bounds might overlap a rectangle. The list is shared by the calls to retrieve, and is
+     * only valid until the broadphase is queried again.
+     *
+     * @param rect The rectangle.
+     *
+     * @return The entities that might overlap the rectangle.
+     */
     List<Entity2D> retrieve(Rectangle rect);
+
+    /**
+     * Passes the entities whose bounds overlap a rectangle to a consumer, once. The consumer may query the broadphase
+     * again, but must not change it. By default the retrieved list is copied, the implementations query without
+     * allocating.
+     *
+     * @param rect     The rectangle.
+     * @param consumer The consumer to pass the entities to.
+     */
+    default void query(Rectangle rect, Consumer<Entity2D> consumer)
+    {
+        List<Entity2D> candidates = new ArrayList<>(retrieve(rect));
+
+        for (int i = 0; i < candidates.size(); i++)
+        {
+            Entity2D entity = candidates.get(i);
+
+            if (BoxQueries.overlaps(rect, entity.getBounds()))
+                consumer.accept(entity);
+        }
+    }
+
+    /**
+     * Passes every pair of entities in the broadphase whose bounds overlap to a callback, once. Unlike the other
+     * forEachPair, the collision layers of the entities are not checked. The callback must not change the broadphase.
+     * By default all the entities are retrieved with bounds that cover the whole plane, and the entities that might
+     * overlap each of them are retrieved again. The implementations in this package find the pairs in a single pass
+     * without allocating.
+     *
+     * @param callback The callback to pass the pairs to.
+     */
+    default void forEachPair(PairCallback callback)
+    {
+        // Half the range of a float, so that the size of the bounds doesn't overflow
+        float extent = Float.MAX_VALUE / 2;
+
+        Map<Entity2D, Integer> indices = new IdentityHashMap<>();
+        List<Entity2D> entities = new ArrayList<>();
+
+        for (Entity2D entity : retrieve(new Rectangle(-extent, -extent, extent * 2, extent * 2)))
+        {
+            if (indices.putIfAbsent(entity, entities.size()) == null)
+                entities.add(entity);
+        }
+
+        List<Entity2D> candidates = new ArrayList<>();
+        Set<Entity2D> passed = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for (int i = 0; i < entities.size(); i++)
+        {
+            Entity2D entity = entities.get(i);
+            Rectangle bounds = entity.getBounds();
+
+            candidates.clear();
+            candidates.addAll(retrieve(entity));
+            passed.clear();
+
+            for (int j = 0; j < candidates.size(); j++)
+            {
+                Entity2D other = candidates.get(j);
+                Integer index = indices.get(other);
+
+                // Every pair is passed once, by the entity that was retrieved first
+                if (index != null && index > i && passed.add(other) &&
+                    BoxQueries.overlaps(bounds, other.getBounds()))
+                    callback.pair(entity, other);
+            }
+        }
+    }
+
+    /**
+     * Casts a ray through the broadphase, and passes the entities whose bounds it hits to a callback, with the distance
+     * at which it enters their bounds. The entities are not passed in the order of the distance. The callback returns
+     * the distance to clip the ray to, the distance of the hit to only look for closer hits, or zero to stop. The
+     * callback may query the broadphase again, but must not change it. By default the entities in the bounds of the ray
+     * are retrieved, so the ray has to be of a finite length, the implementations also cast infinite rays.
+     *
+     * @param origin      The origin of the ray.
+     * @param direction   The direction of the ray, which doesn't have to be normalized.
+     * @param maxDistance The length of the ray.
+     * @param callback    The callback to pass the hits to.
+     */
+    default void raycast(Vector2 origin, Vector2 direction, float maxDistance, RayCallback callback)
+    {
+        float length = direction.length();
+
+        if (length == 0)
+            return;
+
+        float dx = direction.x / length;
+        float dy = direction.y / length;
+
+        // The candidates are the entities in the bounds of the ray
+        float endX = origin.x + dx * maxDistance;
+        float endY = origin.y + dy * maxDistance;
+
+        Rectangle rect = new Rectangle(Math.min(origin.x, endX), Math.min(origin.y, endY),
+                Math.abs(endX - origin.x), Math.abs(endY - origin.y));
+
+        List<Entity2D> candidates = new ArrayList<>(retrieve(rect));
+
+        for (int i = 0; i < candidates.size() && maxDistance > 0; i++)
+        {
+            Entity2D entity = candidates.get(i);
+            Rectangle bounds = entity.getBounds();
+
+            float distance = BoxQueries.raycast(origin.x, origin.y, dx, dy, maxDistance, bounds.getX(), bounds.getY(),
+                    bounds.getX() + bounds.getWidth(), bounds.getY() + bounds.getHeight());
+
+            if (distance >= 0)
+                maxDistance = Math.min(maxDistance, callback.hit(entity, distance));
+        }
+    }
+
+    /**
+     * Casts a ray through the broadphase and finds the entity whose bounds it hits first.
+     *
+     * @param origin      The origin of the ray.
+     * @param direction   The direction of the ray, which doesn't have to be normalized.
+     * @param maxDistance The length of the ray.
+     *
+     * @return The entity that is hit first, or null if the ray doesn't hit any entity.
+     */
+    default Entity2D raycast(Vector2 origin, Vector2 direction, float maxDistance)
+    {
+        Entity2D[] closest = new Entity2D[1];
+
+        raycast(origin, direction, maxDistance, (entity, distance) ->
+        {
+            closest[0] = entity;
+            return distance;
+        });
+
+        return closest[0];
+    }
+
+    /**
+     * Finds the entity whose bounds are the nearest to a point. By default the entities in a square around the point
+     * are retrieved, so the maximum distance has to be finite, the implementations search without allocating.
+     *
+     * @param point       The point.
+     * @param maxDistance The maximum distance to search up to.
+     *
+     * @return The nearest entity, or null if there are no entities within the maximum distance.
+     */
+    default Entity2D nearest(Vector2 point, float maxDistance)
+    {
+        Rectangle rect = new Rectangle(point.x - maxDistance, point.y - maxDistance, maxDistance * 2, maxDistance * 2);
+
+        Entity2D nearest = null;
+        float nearestDistance = maxDistance * maxDistance;
+
+        for (Entity2D entity : retrieve(rect))
+        {
+            Rectangle bounds = entity.getBounds();
+
+            float distance = BoxQueries.distanceSquared(point.x, point.y, bounds.getX(), bounds.getY(),
+                    bounds.getX() + bounds.getWidth(), bounds.getY() + bounds.getHeight());
+
+            if (distance <= nearestDistance)
+            {
+                nearest = entity;
+                nearestDistance = distance;
+            }
+        }
+
+        return nearest;
+    }
+
+    /**
+     * Finds the pairs of entities in a list whose bounds overlap, and passes each unique pair to the consumer once.
+     * The pairs with an entity that is not in the list, and the pairs whose collision layers don't allow a collision
+     * are skipped. The entities have to be inserted into the broadphase. The pairs are found with a single pass of
+     * {@link #forEachPair(PairCallback)} over all the entities in the broadphase, instead of querying the broadphase
+     * once for every entity in the list.
+     *
+     * @param entities The entities to find the pairs of.
+     * @param consumer The consumer to pass the pairs to.
+     */
+    default void forEachPair(List<Entity2D> entities, BiConsumer<Entity2D, Entity2D> consumer)
+    {
+        Set<Entity2D> members = Collections.newSetFromMap(new IdentityHashMap<>());
+        members.addAll(entities);
+
+        forEachPair((entity1, entity2) ->
+        {
+            if (members.contains(entity1) && members.contains(entity2) && entity1.canCollideWith(entity2))
+                consumer.accept(entity1, entity2);
+        });
+    }
+
+    /**
+     * Receives the pairs of entities found by {@link #forEachPair(PairCallback)}.
+     */
+    @FunctionalInterface
+    interface PairCallback
+    {
+        void pair(Entity2D entity1, Entity2D entity2);
+    }
+
+    /**
+     * Receives the entities hit by a ray.
+     */
+    @FunctionalInterface
+    interface RayCallback
+    {
+        /**
+         * @param entity   The entity that is hit.
+         * @param distance The distance at which the ray enters the bounds of the entity.
+         *
+         * @return The distance to clip the ray to, or zero to stop.
+         */
+        float hit(Entity2D entity, float distance);
+    }
 }
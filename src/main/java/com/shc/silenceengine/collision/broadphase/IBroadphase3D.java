@@ -24,10 +24,20 @@
 
 package com.shc.silenceengine.collision.broadphase;
 
+import com.shc.silenceengine.math.Frustum;
+import com.shc.silenceengine.math.Vector3;
+import com.shc.silenceengine.math.geom3d.Cuboid;
 import com.shc.silenceengine.math.geom3d.Polyhedron;
 import com.shc.silenceengine.scene.entity.Entity3D;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * @author Sri Harsha Chilakapati
@@ -40,10 +50,304 @@
 
     void remove(Entity3D e);
 
+    /**
+     * Updates the broadphase after an entity has moved. By default the entity is removed and inserted again, but the
+     * implementations can refresh it in place.
+     *
+     * @param e The entity that moved.
+     */
+    default void update(Entity3D e)
+    {
+        remove(e);
+        insert(e);
+    }
+
+    /**
+     * Finds the entities whose bounds might overlap the bounds of an entity. The list is shared by the calls to
+     * retrieve, and is only valid until the broadphase is queried again.
+     *
+     * @param e The entity.
+     *
+     * @return The entities that might overlap the entity.
+     */
     default List<Entity3D> retrieve(Entity3D e)
     {
         return retrieve(e.getBounds());
     }
 
+    /**
+     * Finds the entities whose bounds might overlap the bounds of a polyhedron. The list is shared by the calls to
+     * retrieve, and is only valid until the broadphase is queried again.
+     *
+     * @param rect The polyhedron.
+     *
+     * @return The entities that might overlap the polyhedron.
+     */
     List<Entity3D> retrieve(Polyhedron rect);
+
+    /**
+     * Passes the entities whose bounds overlap the bounds of a polyhedron to a consumer, once. The consumer may query
+     * the broadphase again, but must not change it. By default the retrieved list is copied, the implementations query
+     * without allocating.
+     *
+     * @param bounds   The polyhedron.
+     * @param consumer The consumer to pass the entities to.
+     */
+    default void query(Polyhedron bounds, Consumer<Entity3D> consumer)
+    {
+        List<Entity3D> candidates = new ArrayList<>(retrieve(bounds));
+
+        for (int i = 0; i < candidates.size(); i++)
+        {
+            Entity3D entity = candidates.get(i);
+
+            if (BoxQueries.overlaps(bounds.getPosition(), bounds, entity.getPosition(), entity.getBounds()))
+                consumer.accept(entity);
+        }
+    }
+
+    /**
+     * Passes the entities whose bounds intersect a frustum to a consumer, once. A box is only left out when it is
+     * entirely behind one of the planes of the frustum, so a few boxes just outside its edges are passed too. The
+     * consumer may query the broadphase again, but must not change it. By default the entities in the box around the
+     * corners of the frustum are retrieved, the implementations query without allocating.
+     *
+     * @param frustum  The frustum, which is up to date with the camera.
+     * @param consumer The consumer to pass the entities to.
+     */
+    default void query(Frustum frustum, Consumer<Entity3D> consumer)
+    {
+        Vector3 min = new Vector3(frustum.getCorner(0));
+        Vector3 max = new Vector3(frustum.getCorner(0));
+
+        for (int i = 1; i < 8; i++)
+        {
+            Vector3 corner = frustum.getCorner(i);
+
+            min.set(Math.min(min.x, corner.x), Math.min(min.y, corner.y), Math.min(min.z, corner.z));
+            max.set(Math.max(max.x, corner.x), Math.max(max.y, corner.y), Math.max(max.z, corner.z));
+        }
+
+        List<Entity3D> candidates = new ArrayList<>(retrieve(new Cuboid(min, max)));
+
+        for (int i = 0; i < candidates.size(); i++)
+        {
+            Entity3D entity = candidates.get(i);
+            Vector3 position = entity.getPosition();
+
+            float halfWidth = entity.getWidth() / 2;
+            float halfHeight = entity.getHeight() / 2;
+            float halfThickness = entity.getThickness() / 2;
+
+            if (BoxQueries.intersects(frustum, position.x - halfWidth, position.y - halfHeight,
+                    position.z - halfThickness, position.x + halfWidth, position.y + halfHeight,
+                    position.z + halfThickness))
+                consumer.accept(entity);
+        }
+    }
+
+    /**
+     * Passes every pair of entities in the broadphase whose bounds overlap to a callback, once. Unlike the other
+     * forEachPair, the collision layers of the entities are not checked. The callback must not change the broadphase.
+     * By default all the entities are retrieved with bounds that cover the whole space, and the entities that might
+     * overlap each of them are retrieved again. The implementations in this package find the pairs in a single pass
+     * without allocating.
+     *
+     * @param callback The callback to pass the pairs to.
+     */
+    default void forEachPair(PairCallback callback)
+    {
+        // Half the range of a float, so that the size of the bounds doesn't overflow
+        float extent = Float.MAX_VALUE / 2;
+
+        Map<Entity3D, Integer> indices = new IdentityHashMap<>();
+        List<Entity3D> entities = new ArrayList<>();
+
+        Cuboid space = new Cuboid(new Vector3(-extent, -extent, -extent), new Vector3(extent, extent, extent));
+
+        for (Entity3D entity : retrieve(space))
+        {
+            if (indices.putIfAbsent(entity, entities.size()) == null)
+                entities.add(entity);
+        }
+
+        List<Entity3D> candidates = new ArrayList<>();
+        Set<Entity3D> passed = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for (int i = 0; i < entities.size(); i++)
+        {
+            Entity3D entity = entities.get(i);
+
+            candidates.clear();
+            candidates.addAll(retrieve(entity));
+            passed.clear();
+
+            for (int j = 0; j < candidates.size(); j++)
+            {
+                Entity3D other = candidates.get(j);
+                Integer index = indices.get(other);
+
+                // Every pair is passed once, by the entity that was retrieved first
+                if (index != null && index > i && passed.add(other) && BoxQueries.overlaps(entity.getPosition(),
+                        entity.getBounds(), other.getPosition(), other.getBounds()))
+                    callback.pair(entity, other);
+            }
+        }
+    }
+
+    /**
+     * Casts a ray through the broadphase, and passes the entities whose bounds it hits to a callback, with the distance
+     * at which it enters their bounds. The entities are not passed in the order of the distance. The callback returns
+     * the distance to clip the ray to, the distance of the hit to only look for closer hits, or zero to stop. The
+     * callback may query the broadphase again, but must not change it. By default the entities in the bounds of the ray
+     * are retrieved, so the ray has to be of a finite length, the implementations also cast infinite rays.
+     *
+     * @param origin      The origin of the ray.
+     * @param direction   The direction of the ray, which doesn't have to be normalized.
+     * @param maxDistance The length of the ray.
+     * @param callback    The callback to pass the hits to.
+     */
+    default void raycast(Vector3 origin, Vector3 direction, float maxDistance, RayCallback callback)
+    {
+        float length = direction.length();
+
+        if (length == 0)
+            return;
+
+        float dx = direction.x / length;
+        float dy = direction.y / length;
+        float dz = direction.z / length;
+
+        // The candidates are the entities in the bounds of the ray
+        Vector3 end = new Vector3(dx, dy, dz).scaleSelf(maxDistance).addSelf(origin);
+
+        Vector3 min = new Vector3(Math.min(origin.x, end.x), Math.min(origin.y, end.y), Math.min(origin.z, end.z));
+        Vector3 max = new Vector3(Math.max(origin.x, end.x), Math.max(origin.y, end.y), Math.max(origin.z, end.z));
+
+        List<Entity3D> candidates = new ArrayList<>(retrieve(new Cuboid(min, max)));
+
+        for (int i = 0; i < candidates.size() && maxDistance > 0; i++)
+        {
+            Entity3D entity = candidates.get(i);
+            Vector3 position = entity.getPosition();
+
+            // The bounds are centered on the position
+            float halfWidth = entity.getWidth() / 2;
+            float halfHeight = entity.getHeight() / 2;
+            float halfThickness = entity.getThickness() / 2;
+
+            float distance = BoxQueries.raycast(origin.x, origin.y, origin.z, dx, dy, dz, maxDistance,
+                    position.x - halfWidth, position.y - halfHeight, position.z - halfThickness,
+                    position.x + halfWidth, position.y + halfHeight, position.z + halfThickness);
+
+            if (distance >= 0)
+                maxDistance = Math.min(maxDistance, callback.hit(entity, distance));
+        }
+    }
+
+    /**
+     * Casts a ray through the broadphase and finds the entity whose bounds it hits first.
+     *
+     * @param origin      The origin of the ray.
+     * @param direction   The direction of the ray, which doesn't have to be normalized.
+     * @param maxDistance The length of the ray.
+     *
+     * @return The entity that is hit first, or null if the ray doesn't hit any entity.
+     */
+    default Entity3D raycast(Vector3 origin, Vector3 direction, float maxDistance)
+    {
+        Entity3D[] closest = new Entity3D[1];
+
+        raycast(origin, direction, maxDistance, (entity, distance) ->
+        {
+            closest[0] = entity;
+            return distance;
+        });
+
+        return closest[0];
+    }
+
+    /**
+     * Finds the entity whose bounds are the nearest to a point. By default the entities in a cube around the point are
+     * retrieved, so the maximum distance has to be finite, the implementations search without allocating.
+     *
+     * @param point       The point.
+     * @param maxDistance The maximum distance to search up to.
+     *
+     * @return The nearest entity, or null if there are no entities within the maximum distance.
+     */
+    default Entity3D nearest(Vector3 point, float maxDistance)
+    {
+        Cuboid cube = new Cuboid(point, maxDistance * 2, maxDistance * 2, maxDistance * 2);
+
+        Entity3D nearest = null;
+        float nearestDistance = maxDistance * maxDistance;
+
+        for (Entity3D entity : retrieve(cube))
+        {
+            Vector3 position = entity.getPosition();
+
+            float halfWidth = entity.getWidth() / 2;
+            float halfHeight = entity.getHeight() / 2;
+            float halfThickness = entity.getThickness() / 2;
+
+            float distance = BoxQueries.distanceSquared(point.x, point.y, point.z,
+                    position.x - halfWidth, position.y - halfHeight, position.z - halfThickness,
+                    position.x + halfWidth, position.y + halfHeight, position.z + halfThickness);
+
+            if (distance <= nearestDistance)
+            {
+                nearest = entity;
+                nearestDistance = distance;
+            }
+        }
+
+        return nearest;
+    }
+
+    /**
+     * Finds the pairs of entities in a list whose bounds overlap, and passes each unique pair to the consumer once.
+     * The pairs with an entity that is not in the list, and the pairs whose collision layers don't allow a collision
+     * are skipped. The entities have to be inserted into the broadphase. The pairs are found with a single pass of
+     * {@link #forEachPair(PairCallback)} over all the entities in the broadphase, instead of querying the broadphase
+     * once for every entity in the list.
+     *
+     * @param entities The entities to find the pairs of.
+     * @param consumer The consumer to pass the pairs to.
+     */
+    default void forEachPair(List<Entity3D> entities, BiConsumer<Entity3D, Entity3D> consumer)
+    {
+        Set<Entity3D> members = Collections.newSetFromMap(new IdentityHashMap<>());
+        members.addAll(entities);
+
+        forEachPair((entity1, entity2) ->
+        {
+            if (members.contains(entity1) && members.contains(entity2) && entity1.canCollideWith(entity2))
+                consumer.accept(entity1, entity2);
+        });
+    }
+
+    /**
+     * Receives the pairs of entities found by {@link #forEachPair(PairCallback)}.
+     */
+    @FunctionalInterface
+    interface PairCallback
+    {
+        void pair(Entity3D entity1, Entity3D entity2);
+    }
+
+    /**
+     * Receives the entities hit by a ray.
+     */
+    @FunctionalInterface
+    interface RayCallback
+    {
+        /**
+         * @param entity   The entity that is hit.
+         * @param distance The distance at which the ray enters the bounds of the entity.
+         *
+         * @return The distance to clip the ray to, or zero to stop.
+         */
+        float hit(Entity3D entity, float distance);
+    }
 }
@@ -0,0 +1,741 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.collision.broadphase;
+
+import com.shc.silenceengine.math.Frustum;
+import com.shc.silenceengine.math.Vector3;
+import com.shc.silenceengine.math.geom3d.Cuboid;
+import com.shc.silenceengine.math.geom3d.Polyhedron;
+import com.shc.silenceengine.scene.entity.Entity3D;
+import com.shc.silenceengine.utils.IntMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A loose octree, for worlds with many entities that mostly stay where they are. Every node is a cube that is split
+ * into eight children, and an entity is kept in the smallest node that is at least as large as the entity and has the
+ * center of the entity in its cube. The bounds of a node are loose, twice the size of its cube, so an entity always
+ * fits in the bounds of its node and is never kept in more than one node. An entity that moves only changes its node
+ * when its center leaves the cube of its node or its size changes a lot, and the entities outside the cube of the root
+ * are kept in the root.
+ *
+ * <p> The nodes and the entities are kept in flat arrays and are referred to by their index. The entities of a node
+ * are linked in a list, and every node counts the entities in its subtree so that the empty branches are skipped. The
+ * nodes are created when an entity is first put in them, and are only freed when the octree is cleared. The boxes of
+ * the entities are copied when they are inserted or updated, so an update or a query doesn't allocate once the arrays
+ * are large enough. </p>
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class LooseOctree implements IBroadphase3D
+{
+    // The index used for no node and no entity
+    private static final int NULL = -1;
+
+    // The root is always the first node
+    private static final int ROOT = 0;
+
+    // The centers of the cubes of the nodes, three floats for every node, and the half of their size
+    private float[] centers;
+    private float[] halfSizes;
+
+    // The first of the eight children of every node, which are next to each other, or NULL for a leaf
+    private int[] children;
+    private int[] parents;
+
+    // The first entity in the list of every node, and the number of entities in the subtree of every node
+    private int[] heads;
+    private int[] counts;
+
+    private int numNodes;
+
+    // The boxes of the entities, six floats for every entity, the minimum x, y and z and then the maximum x, y and z
+    private float[] boxes;
+
+    // The entities, their nodes and the links of the lists of the nodes, the next of a free entity is the next free one
+    private Entity3D[] entities;
+    private int[]      nodes;
+    private int[]      next;
+    private int[]      previous;
+
+    private int freeList;
+
+    // The index of every entity, by the ID of the entity
+    private IntMap indices;
+
+    // The number of levels below the root
+    private int maxDepth;
+
+    // The stack of the nodes to visit in a query, a query started from the callback of another query uses the part of
+    // the stack above it
+    private int[] stack;
+    private int   stackSize;
+
+    private List<Entity3D>     retrieveList;
+    private Consumer<Entity3D> retrieveConsumer;
+
+    // The statistics
+    private int updates;
+    private int moves;
+
+    /**
+     * Creates a LooseOctree with a root cube of a size, split up to eight levels deep.
+     *
+     * @param center The center of the cube of the root.
+     * @param size   The size of the cube of the root, which should cover the world.
+     */
+    public LooseOctree(Vector3 center, float size)
+    {
+        this(center, size, 8);
+    }
+
+    /**
+     * Creates a LooseOctree with a root cube of a size.
+     *
+     * @param center   The center of the cube of the root.
+     * @param size     The size of the cube of the root, which should cover the world.
+     * @param maxDepth The number of levels the root can be split into, the smallest nodes are the size of the root
+     *                 divided by two to the power of it.
+     */
+    public LooseOctree(Vector3 center, float size, int maxDepth)
+    {
+        if (size <= 0 || maxDepth < 0)
+            throw new IllegalArgumentException("The size must be positive and the depth must not be negative");
+
+        this.maxDepth = maxDepth;
+
+        centers = new float[8 * 3 + 3];
+        halfSizes = new float[9];
+        children = new int[9];
+        parents = new int[9];
+        heads = new int[9];
+        counts = new int[9];
+
+        centers[0] = center.x;
+        centers[1] = center.y;
+        centers[2] = center.z;
+        halfSizes[ROOT] = size / 2;
+
+        allocate(16);
+
+        indices = new IntMap();
+        stack = new int[64];
+        retrieveList = new ArrayList<>();
+        retrieveConsumer = retrieveList::add;
+
+        clear();
+    }
+
+    @Override
+    public void clear()
+    {
+        numNodes = 1;
+
+        children[ROOT] = NULL;
+        parents[ROOT] = NULL;
+        heads[ROOT] = NULL;
+        counts[ROOT] = 0;
+
+        indices.clear();
+
+        Arrays.fill(entities, null);
+        linkFreeEntities(0);
+    }
+
+    @Override
+    public void insert(Entity3D e)
+    {
+        int index = allocateEntity();
+
+        entities[index] = e;
+        indices.put(e.getID(), index);
+
+        computeBox(e, index);
+        link(index, findNode(index));
+    }
+
+    @Override
+    public void remove(Entity3D e)
+    {
+        int index = indices.remove(e.getID());
+
+        if (index != NULL)
+        {
+            unlink(index);
+            freeEntity(index);
+        }
+    }
+
+    /**
+     * Updates an entity that has moved. The entity is only moved to another node if its center has left the cube of
+     * its node, or if it no longer fits in the nodes below.
+     *
+     * @param e The entity that moved.
+     */
+    @Override
+    public void update(Entity3D e)
+    {
+        int index = indices.get(e.getID());
+
+        if (index == NULL)
+        {
+            insert(e);
+            return;
+        }
+
+        updates++;
+
+        computeBox(e, index);
+
+        int node = findNode(index);
+
+        if (node != nodes[index])
+        {
+            unlink(index);
+            link(index, node);
+
+            moves++;
+        }
+    }
+
+    @Override
+    public List<Entity3D> retrieve(Entity3D e)
+    {
+        return retrieve(e.getPosition(), e.getBounds());
+    }
+
+    @Override
+    public List<Entity3D> retrieve(Polyhedron bounds)
+    {
+        return retrieve(bounds.getPosition(), bounds);
+    }
+
+    /**
+     * Retrieves the entities whose boxes overlap the box of a polyhedron, which is centered on a position.
+     */
+    private List<Entity3D> retrieve(Vector3 position, Polyhedron bounds)
+    {
+        retrieveList.clear();
+        query(position, bounds, retrieveConsumer);
+
+        return retrieveList;
+    }
+
+    @Override
+    public void query(Polyhedron bounds, Consumer<Entity3D> consumer)
+    {
+        query(bounds.getPosition(), bounds, consumer);
+    }
+
+    private void query(Vector3 position, Polyhedron bounds, Consumer<Entity3D> consumer)
+    {
+        float halfWidth = bounds.getWidth() / 2;
+        float halfHeight = bounds.getHeight() / 2;
+        float halfThickness = bounds.getThickness() / 2;
+
+        query(position.x - halfWidth, position.y - halfHeight, position.z - halfThickness,
+                position.x + halfWidth, position.y + halfHeight, position.z + halfThickness, NULL, consumer, null);
+    }
+
+    @Override
+    public void query(Frustum frustum, Consumer<Entity3D> consumer)
+    {
+        int base = stackSize;
+        push(ROOT);
+
+        while (stackSize > base)
+        {
+            int node = stack[--stackSize];
+
+            // The entities outside the cube of the root are in the root, so the root is always visited
+            if (node != ROOT && !intersectsLoose(node, frustum))
+                continue;
+
+            for (int index = heads[node]; index != NULL; index = next[index])
+            {
+                int box = index * 6;
+
+                if (BoxQueries.intersects(frustum, boxes[box], boxes[box + 1], boxes[box + 2], boxes[box + 3],
+                        boxes[box + 4], boxes[box + 5]))
+                    consumer.accept(entities[index]);
+            }
+
+            pushChildren(node);
+        }
+    }
+
+    /**
+     * Passes the pairs of entities whose bounds overlap to a callback. The octree is queried with the box of every
+     * entity, and a pair is only reported from the entity with the lower index.
+     */
+    @Override
+    public void forEachPair(PairCallback callback)
+    {
+        for (int index = 0; index < entities.length; index++)
+        {
+            if (entities[index] == null)
+                continue;
+
+            int box = index * 6;
+
+            query(boxes[box], boxes[box + 1], boxes[box + 2], boxes[box + 3], boxes[box + 4], boxes[box + 5], index,
+                    null, callback);
+        }
+    }
+
+    @Override
+    public void raycast(Vector3 origin, Vector3 direction, float maxDistance, RayCallback callback)
+    {
+        float length = direction.length();
+
+        if (length == 0)
+            return;
+
+        float ox = origin.x;
+        float oy = origin.y;
+        float oz = origin.z;
+        float dx = direction.x / length;
+        float dy = direction.y / length;
+        float dz = direction.z / length;
+
+        int base = stackSize;
+        push(ROOT);
+
+        while (stackSize > base)
+        {
+            int node = stack[--stackSize];
+
+            if (node != ROOT)
+            {
+                int center = node * 3;
+                float size = halfSizes[node] * 2;
+
+                if (BoxQueries.raycast(ox, oy, oz, dx, dy, dz, maxDistance,
+                        centers[center] - size, centers[center + 1] - size, centers[center + 2] - size,
+                        centers[center] + size, centers[center + 1] + size, centers[center + 2] + size) < 0)
+                    continue;
+            }
+
+            for (int index = heads[node]; index != NULL; index = next[index])
+            {
+                int box = index * 6;
+
+                float distance = BoxQueries.raycast(ox, oy, oz, dx, dy, dz, maxDistance, boxes[box], boxes[box + 1],
+                        boxes[box + 2], boxes[box + 3], boxes[box + 4], boxes[box + 5]);
+
+                if (distance < 0)
+                    continue;
+
+                maxDistance = Math.min(maxDistance, callback.hit(entities[index], distance));
+
+                if (maxDistance <= 0)
+                {
+                    stackSize = base;
+                    return;
+                }
+            }
+
+            pushChildren(node);
+        }
+    }
+
+    @Override
+    public Entity3D nearest(Vector3 point, float maxDistance)
+    {
+        float px = point.x;
+        float py = point.y;
+        float pz = point.z;
+
+        Entity3D nearest = null;
+        float nearestDistance = maxDistance * maxDistance;
+
+        int base = stackSize;
+        push(ROOT);
+
+        while (stackSize > base)
+        {
+            int node = stack[--stackSize];
+
+            if (node != ROOT)
+            {
+                int center = node * 3;
+                float size = halfSizes[node] * 2;
+
+                if (BoxQueries.distanceSquared(px, py, pz,
+                        centers[center] - size, centers[center + 1] - size, centers[center + 2] - size,
+                        centers[center] + size, centers[center + 1] + size, centers[center + 2] + size)
+                    > nearestDistance)
+                    continue;
+            }
+
+            for (int index = heads[node]; index != NULL; index = next[index])
+            {
+                int box = index * 6;
+
+                float distance = BoxQueries.distanceSquared(px, py, pz, boxes[box], boxes[box + 1], boxes[box + 2],
+                        boxes[box + 3], boxes[box + 4], boxes[box + 5]);
+
+                if (distance <= nearestDistance)
+                {
+                    nearest = entities[index];
+                    nearestDistance = distance;
+                }
+            }
+
+            pushChildren(node);
+        }
+
+        return nearest;
+    }
+
+    /**
+     * @return The number of entities in the octree.
+     */
+    public int size()
+    {
+        return indices.size();
+    }
+
+    /**
+     * @return The number of nodes that have been created since the octree was cleared.
+     */
+    public int getNodeCount()
+    {
+        return numNodes;
+    }
+
+    /**
+     * @return The number of calls to update since the statistics were reset.
+     */
+    public int getUpdateCount()
+    {
+        return updates;
+    }
+
+    /**
+     * @return The number of updates that moved the entity to another node, since the statistics were reset.
+     */
+    public int getMoveCount()
+    {
+        return moves;
+    }
+
+    public void resetStats()
+    {
+        updates = 0;
+        moves = 0;
+    }
+
+    public int getMaxDepth()
+    {
+        return maxDepth;
+    }
+
+    private void allocate(int capacity)
+    {
+        int oldCapacity = entities == null ? 0 : entities.length;
+
+        if (oldCapacity == 0)
+        {
+            boxes = new float[capacity * 6];
+
+            entities = new Entity3D[capacity];
+            nodes = new int[capacity];
+            next = new int[capacity];
+            previous = new int[capacity];
+        }
+        else
+        {
+            boxes = Arrays.copyOf(boxes, capacity * 6);
+
+            entities = Arrays.copyOf(entities, capacity);
+            nodes = Arrays.copyOf(nodes, capacity);
+            next = Arrays.copyOf(next, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+        }
+
+        linkFreeEntities(oldCapacity);
+    }
+
+    /**
+     * Links the entities from an index to the end of the arrays into the free list.
+     */
+    private void linkFreeEntities(int from)
+    {
+        for (int i = from; i < next.length; i++)
+        {
+            next[i] = i + 1;
+            nodes[i] = NULL;
+        }
+
+        next[next.length - 1] = NULL;
+        freeList = from;
+    }
+
+    private int allocateEntity()
+    {
+        if (freeList == NULL)
+            allocate(entities.length * 2);
+
+        int index = freeList;
+        freeList = next[index];
+
+        return index;
+    }
+
+    private void freeEntity(int index)
+    {
+        entities[index] = null;
+        nodes[index] = NULL;
+
+        next[index] = freeList;
+        freeList = index;
+    }
+
+    private void computeBox(Entity3D e, int index)
+    {
+        Vector3 position = e.getPosition();
+        Cuboid bounds = e.getBounds();
+
+        // The bounds are centered on the position
+        float halfWidth = bounds.getWidth() / 2;
+        float halfHeight = bounds.getHeight() / 2;
+        float halfThickness = bounds.getThickness() / 2;
+
+        int box = index * 6;
+
+        boxes[box] = position.x - halfWidth;
+        boxes[box + 1] = position.y - halfHeight;
+        boxes[box + 2] = position.z - halfThickness;
+        boxes[box + 3] = position.x + halfWidth;
+        boxes[box + 4] = position.y + halfHeight;
+        boxes[box + 5] = position.z + halfThickness;
+    }
+
+    /**
+     * Finds the node to keep an entity in, walking down from the root while the entity fits in the loose bounds of the
+     * child that has its center. The children are created on the way.
+     */
+    private int findNode(int index)
+    {
+        int box = index * 6;
+
+        float x = (boxes[box] + boxes[box + 3]) / 2;
+        float y = (boxes[box + 1] + boxes[box + 4]) / 2;
+        float z = (boxes[box + 2] + boxes[box + 5]) / 2;
+
+        float radius = Math.max(boxes[box + 3] - boxes[box], Math.max(boxes[box + 4] - boxes[box + 1],
+                boxes[box + 5] - boxes[box + 2])) / 2;
+
+        int node = ROOT;
+
+        // The entities whose centers are outside the cube of the root stay in the root
+        if (Math.abs(x - centers[0]) > halfSizes[ROOT] || Math.abs(y - centers[1]) > halfSizes[ROOT] ||
+            Math.abs(z - centers[2]) > halfSizes[ROOT])
+            return node;
+
+        for (int depth = 0; depth < maxDepth; depth++)
+        {
+            // An entity whose center is in the cube of a child fits in its loose bounds if it isn't larger than it
+            if (radius > halfSizes[node] / 2)
+                break;
+
+            if (children[node] == NULL)
+                split(node);
+
+            int center = node * 3;
+
+            int octant = (x >= centers[center] ? 1 : 0) | (y >= centers[center + 1] ? 2 : 0) |
+                         (z >= centers[center + 2] ? 4 : 0);
+
+            node = children[node] + octant;
+        }
+
+        return node;
+    }
+
+    /**
+     * Creates the eight children of a node, the bit 1 of the index of a child is set for the positive x side of the
+     * node, the bit 2 for the y and the bit 4 for the z.
+     */
+    private void split(int node)
+    {
+        if (numNodes + 8 > children.length)
+        {
+            int capacity = children.length * 2;
+
+            centers = Arrays.copyOf(centers, capacity * 3);
+            halfSizes = Arrays.copyOf(halfSizes, capacity);
+            children = Arrays.copyOf(children, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            heads = Arrays.copyOf(heads, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+
+        int first = numNodes;
+        numNodes += 8;
+
+        children[node] = first;
+
+        float halfSize = halfSizes[node] / 2;
+        int center = node * 3;
+
+        for (int octant = 0; octant < 8; octant++)
+        {
+            int child = first + octant;
+            int childCenter = child * 3;
+
+            centers[childCenter] = centers[center] + ((octant & 1) != 0 ? halfSize : -halfSize);
+            centers[childCenter + 1] = centers[center + 1] + ((octant & 2) != 0 ? halfSize : -halfSize);
+            centers[childCenter + 2] = centers[center + 2] + ((octant & 4) != 0 ? halfSize : -halfSize);
+            halfSizes[child] = halfSize;
+
+            children[child] = NULL;
+            parents[child] = node;
+            heads[child] = NULL;
+            counts[child] = 0;
+        }
+    }
+
+    private void link(int index, int node)
+    {
+        nodes[index] = node;
+        previous[index] = NULL;
+        next[index] = heads[node];
+
+        if (heads[node] != NULL)
+            previous[heads[node]] = index;
+
+        heads[node] = index;
+
+        for (int n = node; n != NULL; n = parents[n])
+            counts[n]++;
+    }
+
+    private void unlink(int index)
+    {
+        int node = nodes[index];
+
+        if (previous[index] != NULL)
+            next[previous[index]] = next[index];
+        else
+            heads[node] = next[index];
+
+        if (next[index] != NULL)
+            previous[next[index]] = previous[index];
+
+        for (int n = node; n != NULL; n = parents[n])
+            counts[n]--;
+    }
+
+    /**
+     * Pushes the children of a node that have entities in their subtrees.
+     */
+    private void pushChildren(int node)
+    {
+        int first = children[node];
+
+        if (first == NULL)
+            return;
+
+        for (int child = first + 7; child >= first; child--)
+        {
+            if (counts[child] > 0)
+                push(child);
+        }
+    }
+
+    /**
+     * Passes the entities whose boxes overlap a box to a consumer, or the pairs of an entity with the entities of a
+     * higher index whose boxes overlap to a callback.
+     */
+    private void query(float x1, float y1, float z1, float x2, float y2, float z2, int pairIndex,
+                       Consumer<Entity3D> consumer, PairCallback callback)
+    {
+        int base = stackSize;
+        push(ROOT);
+
+        while (stackSize > base)
+        {
+            int node = stack[--stackSize];
+
+            if (node != ROOT && !overlapsLoose(node, x1, y1, z1, x2, y2, z2))
+                continue;
+
+            for (int index = heads[node]; index != NULL; index = next[index])
+            {
+                int box = index * 6;
+
+                if (index <= pairIndex || boxes[box] > x2 || boxes[box + 3] < x1 || boxes[box + 1] > y2 ||
+                    boxes[box + 4] < y1 || boxes[box + 2] > z2 || boxes[box + 5] < z1)
+                    continue;
+
+                if (callback != null)
+                    callback.pair(entities[pairIndex], entities[index]);
+                else
+                    consumer.accept(entities[index]);
+            }
+
+            pushChildren(node);
+        }
+    }
+
+    /**
+     * @return Whether the loose bounds of a node, twice the size of its cube, overlap a box.
+     */
+    private boolean overlapsLoose(int node, float x1, float y1, float z1, float x2, float y2, float z2)
+    {
+        int center = node * 3;
+        float size = halfSizes[node] * 2;
+
+        return centers[center] - size <= x2 && centers[center] + size >= x1 &&
+               centers[center + 1] - size <= y2 && centers[center + 1] + size >= y1 &&
+               centers[center + 2] - size <= z2 && centers[center + 2] + size >= z1;
+    }
+
+    private boolean intersectsLoose(int node, Frustum frustum)
+    {
+        int center = node * 3;
+        float size = halfSizes[node] * 2;
+
+        return BoxQueries.intersects(frustum, centers[center] - size, centers[center + 1] - size,
+                centers[center + 2] - size, centers[center] + size, centers[center + 1] + size,
+                centers[center + 2] + size);
+    }
+
+    /**
+     * Pushes a node on the stack, the stack is always read from the field since a nested query might have grown it.
+     */
+    private void push(int node)
+    {
+        if (stackSize == stack.length)
+            stack = Arrays.copyOf(stack, stack.length * 2);
+
+        stack[stackSize++] = node;
+    }
+}
@@ -24,11 +24,15 @@
 
 package com.shc.silenceengine.collision.broadphase;
 
+import com.shc.silenceengine.math.Vector2;
 import com.shc.silenceengine.math.geom2d.Rectangle;
 import com.shc.silenceengine.scene.entity.Entity2D;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * A QuadTree implementation to reduce collision checks. Every level contains a maximum of 10 objects and the tree sub
@@ -53,6 +57,13 @@ public class QuadTree implements IBroadphase2D
     // Branches of this tree a.k.a the quadrants
     private QuadTree[] nodes;
 
+    // The node every entity was inserted into, shared by all the nodes of the tree
+    private Map<Entity2D, QuadTree> insertedNodes;
+
+    // The nearest entity found so far by a nearest search
+    private Entity2D nearest;
+    private float    nearestDistance;
+
     /**
      * Constructs a QuadTree that covers a rectangle [0, 0, mapWidth, mapHeight]
      *
@@ -72,6 +83,13 @@ public QuadTree(int mapWidth, int mapHeight)
      */
     public QuadTree(int l, Rectangle b)
     {
+        this(l, b, new IdentityHashMap<>());
+    }
+
+    private QuadTree(int l, Rectangle b, Map<Entity2D, QuadTree> insertedNodes)
+    {
+        this.insertedNodes = insertedNodes;
+
         level = l;
         bounds = b;
 
@@ -101,6 +119,9 @@ public void setBounds(int x, int y, int width, int height)
      */
     public void clear()
     {
+        for (int i = 0; i < objects.size(); i++)
+            insertedNodes.remove(objects.get(i));
+
         objects.clear();
         for (int i = 0; i < nodes.length; i++)
         {
@@ -128,6 +149,7 @@ public void insert(Entity2D r)
         }
 
         objects.add(r);
+        insertedNodes.put(r, this);
 
         if (objects.size() > MAX_OBJECTS)
         {
@@ -148,17 +170,11 @@ public void insert(Entity2D r)
 
     public void remove(Entity2D e)
     {
-        if (nodes[0] != null)
-        {
-            int index = getIndex(e);
-            if (index != -1)
-            {
-                nodes[index].remove(e);
-                return;
-            }
-        }
+        // The entity is removed from the node it was inserted into, it might have moved since then
+        QuadTree node = insertedNodes.remove(e);
 
-        objects.remove(e);
+        if (node != null)
+            node.objects.remove(e);
     }
 
     /**
@@ -178,6 +194,227 @@ public List<Entity2D> retrieve(Rectangle r)
         return retrieveList;
     }
 
+    /**
+     * Passes the objects whose bounds overlap a rectangle to a consumer. Unlike retrieve, the query visits all the
+     * quadrants that the rectangle overlaps.
+     */
+    @Override
+    public void query(Rectangle rect, Consumer<Entity2D> consumer)
+    {
+        float x = rect.getX();
+        float y = rect.getY();
+
+        query(x, y, x + rect.getWidth(), y + rect.getHeight(), consumer);
+    }
+
+    private void query(float x1, float y1, float x2, float y2, Consumer<Entity2D> consumer)
+    {
+        for (int i = 0; i < objects.size(); i++)
+        {
+            Entity2D entity = objects.get(i);
+
+            if (overlaps(entity.getBounds(), x1, y1, x2, y2))
+                consumer.accept(entity);
+        }
+
+        if (nodes[0] == null)
+            return;
+
+        float verticalMidpoint = bounds.getX() + (bounds.getWidth() / 2);
+        float horizontalMidpoint = bounds.getY() + (bounds.getHeight() / 2);
+
+        // The objects in the quadrants are strictly on one side of the midpoints, see getIndex
+        boolean left = x1 < verticalMidpoint;
+        boolean right = x2 > verticalMidpoint;
+        boolean top = y1 < horizontalMidpoint;
+        boolean bottom = y2 > horizontalMidpoint;
+
+        if (right && top)
+            nodes[0].query(x1, y1, x2, y2, consumer);
+        if (left && top)
+            nodes[1].query(x1, y1, x2, y2, consumer);
+        if (left && bottom)
+            nodes[2].query(x1, y1, x2, y2, consumer);
+        if (right && bottom)
+            nodes[3].query(x1, y1, x2, y2, consumer);
+    }
+
+    @Override
+    public void forEachPair(PairCallback callback)
+    {
+        for (int i = 0; i < objects.size(); i++)
+        {
+            Entity2D entity = objects.get(i);
+            Rectangle r = entity.getBounds();
+
+            for (int j = i + 1; j < objects.size(); j++)
+            {
+                Entity2D other = objects.get(j);
+
+                if (overlaps(other.getBounds(), r.getX(), r.getY(), r.getX() + r.getWidth(), r.getY() + r.getHeight()))
+                    callback.pair(entity, other);
+            }
+
+            // The objects in this node can overlap the objects in the quadrants below it
+            if (nodes[0] != null)
+                for (QuadTree node : nodes)
+                    node.pairsWith(entity, r.getX(), r.getY(), r.getX() + r.getWidth(), r.getY() + r.getHeight(),
+                            callback);
+        }
+
+        if (nodes[0] != null)
+            for (QuadTree node : nodes)
+                node.forEachPair(callback);
+    }
+
+    /**
+     * Passes the pairs of an entity with the objects in this tree that overlap its bounds to a callback.
+     */
+    private void pairsWith(Entity2D entity, float x1, float y1, float x2, float y2, PairCallback callback)
+    {
+        for (int i = 0; i < objects.size(); i++)
+        {
+            Entity2D other = objects.get(i);
+
+            if (overlaps(other.getBounds(), x1, y1, x2, y2))
+                callback.pair(entity, other);
+        }
+
+        if (nodes[0] == null)
+            return;
+
+        float verticalMidpoint = bounds.getX() + (bounds.getWidth() / 2);
+        float horizontalMidpoint = bounds.getY() + (bounds.getHeight() / 2);
+
+        boolean left = x1 < verticalMidpoint;
+        boolean right = x2 > verticalMidpoint;
+        boolean top = y1 < horizontalMidpoint;
+        boolean bottom = y2 > horizontalMidpoint;
+
+        if (right && top)
+            nodes[0].pairsWith(entity, x1, y1, x2, y2, callback);
+        if (left && top)
+            nodes[1].pairsWith(entity, x1, y1, x2, y2, callback);
+        if (left && bottom)
+            nodes[2].pairsWith(entity, x1, y1, x2, y2, callback);
+        if (right && bottom)
+            nodes[3].pairsWith(entity, x1, y1, x2, y2, callback);
+    }
+
+    @Override
+    public void raycast(Vector2 origin, Vector2 direction, float maxDistance, RayCallback callback)
+    {
+        float length = direction.length();
+
+        if (length == 0)
+            return;
+
+        // The objects of the root can be anywhere, the quadrants are bounded by the midpoints of their parents
+        raycast(origin.x, origin.y, direction.x / length, direction.y / length, maxDistance,
+                -Float.MAX_VALUE, -Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, callback);
+    }
+
+    /**
+     * Casts a ray through this tree, whose objects are all in a region.
+     *
+     * @return The distance the ray is clipped to.
+     */
+    private float raycast(float ox, float oy, float dx, float dy, float maxDistance,
+                          float minX, float minY, float maxX, float maxY, RayCallback callback)
+    {
+        if (BoxQueries.raycast(ox, oy, dx, dy, maxDistance, minX, minY, maxX, maxY) < 0)
+            return maxDistance;
+
+        for (int i = 0; i < objects.size() && maxDistance > 0; i++)
+        {
+            Entity2D entity = objects.get(i);
+            Rectangle r = entity.getBounds();
+
+            float distance = BoxQueries.raycast(ox, oy, dx, dy, maxDistance, r.getX(), r.getY(),
+                    r.getX() + r.getWidth(), r.getY() + r.getHeight());
+
+            if (distance >= 0)
+                maxDistance = Math.min(maxDistance, callback.hit(entity, distance));
+        }
+
+        if (nodes[0] == null || maxDistance <= 0)
+            return maxDistance;
+
+        float verticalMidpoint = bounds.getX() + (bounds.getWidth() / 2);
+        float horizontalMidpoint = bounds.getY() + (bounds.getHeight() / 2);
+
+        float midX = Math.max(minX, Math.min(verticalMidpoint, maxX));
+        float midY = Math.max(minY, Math.min(horizontalMidpoint, maxY));
+
+        maxDistance = nodes[0].raycast(ox, oy, dx, dy, maxDistance, midX, minY, maxX, midY, callback);
+        if (maxDistance > 0)
+            maxDistance = nodes[1].raycast(ox, oy, dx, dy, maxDistance, minX, minY, midX, midY, callback);
+        if (maxDistance > 0)
+            maxDistance = nodes[2].raycast(ox, oy, dx, dy, maxDistance, minX, midY, midX, maxY, callback);
+        if (maxDistance > 0)
+            maxDistance = nodes[3].raycast(ox, oy, dx, dy, maxDistance, midX, midY, maxX, maxY, callback);
+
+        return maxDistance;
+    }
+
+    @Override
+    public Entity2D nearest(Vector2 point, float maxDistance)
+    {
+        nearest = null;
+        nearestDistance = maxDistance * maxDistance;
+
+        findNearest(this, point.x, point.y, -Float.MAX_VALUE, -Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
+
+        Entity2D result = nearest;
+        nearest = null;
+
+        return result;
+    }
+
+    /**
+     * Searches this tree, whose objects are all in a region, for an entity nearer than the one found by the search of
+     * the root.
+     */
+    private void findNearest(QuadTree root, float px, float py, float minX, float minY, float maxX, float maxY)
+    {
+        if (BoxQueries.distanceSquared(px, py, minX, minY, maxX, maxY) > root.nearestDistance)
+            return;
+
+        for (int i = 0; i < objects.size(); i++)
+        {
+            Entity2D entity = objects.get(i);
+            Rectangle r = entity.getBounds();
+
+            float distance = BoxQueries.distanceSquared(px, py, r.getX(), r.getY(),
+                    r.getX() + r.getWidth(), r.getY() + r.getHeight());
+
+            if (distance <= root.nearestDistance)
+            {
+                root.nearest = entity;
+                root.nearestDistance = distance;
+            }
+        }
+
+        if (nodes[0] == null)
+            return;
+
+        float verticalMidpoint = bounds.getX() + (bounds.getWidth() / 2);
+        float horizontalMidpoint = bounds.getY() + (bounds.getHeight() / 2);
+
+        float midX = Math.max(minX, Math.min(verticalMidpoint, maxX));
+        float midY = Math.max(minY, Math.min(horizontalMidpoint, maxY));
+
+        nodes[0].findNearest(root, px, py, midX, minY, maxX, midY);
+        nodes[1].findNearest(root, px, py, minX, minY, midX, midY);
+        nodes[2].findNearest(root, px, py, minX, midY, midX, maxY);
+        nodes[3].findNearest(root, px, py, midX, midY, maxX, maxY);
+    }
+
+    private static boolean overlaps(Rectangle r, float x1, float y1, float x2, float y2)
+    {
+        return r.getX() <= x2 && x1 <= r.getX() + r.getWidth() && r.getY() <= y2 && y1 <= r.getY() + r.getHeight();
+    }
+
     // Split the tree into 4 quadrants
     private void split()
     {
@@ -187,16 +424,17 @@ private void split()
         int x = (int) bounds.getX();
         int y = (int) bounds.getY();
 
-        nodes[0] = new QuadTree(level + 1, new Rectangle(x + subWidth, y, subWidth, subHeight));
-        nodes[1] = new QuadTree(level + 1, new Rectangle(x, y, subWidth, subHeight));
-        nodes[2] = new QuadTree(level + 1, new Rectangle(x, y + subHeight, subWidth, subHeight));
-        nodes[3] = new QuadTree(level + 1, new Rectangle(x + subWidth, y + subHeight, subWidth, subHeight));
+        nodes[0] = new QuadTree(level + 1, new Rectangle(x + subWidth, y, subWidth, subHeight), insertedNodes);
+        nodes[1] = new QuadTree(level + 1, new Rectangle(x, y, subWidth, subHeight), insertedNodes);
+        nodes[2] = new QuadTree(level + 1, new Rectangle(x, y + subHeight, subWidth, subHeight), insertedNodes);
+        nodes[3] = new QuadTree(level + 1, new Rectangle(x + subWidth, y + subHeight, subWidth, subHeight),
+                insertedNodes);
     }
 
     // Get the index of an object
     private int getIndex(Entity2D entity)
     {
-        return getIndex(entity.getPolygon().getBounds());
+        return getIndex(entity.getBounds());
     }
 
     // Get the index of a rectangle
@@ -0,0 +1,590 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.collision.broadphase;
+
+import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.geom2d.Rectangle;
+import com.shc.silenceengine.scene.entity.Entity2D;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A sort and sweep broadphase. The entities are kept in primitive arrays sorted by the minimum x of their bounds. Since
+ * the entities move only a little between the frames, the order of the last frame is almost sorted, and an insertion
+ * sort brings it up to date in nearly linear time. The overlapping pairs are then found in a single sweep over the
+ * sorted entities, instead of querying the broadphase once for every entity.
+ * <p>
+ * Moved entities should be passed to {@link #update(Entity2D)}, which only refreshes their bounds. The sorting and the
+ * removal of the removed entities happen lazily when the broadphase is next queried.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class SweepAndPrune2D implements IBroadphase2D
+{
+    // The entities and their bounds, indexed by slot
+    private Entity2D[] entities;
+    private float[]    minX;
+    private float[]    minY;
+    private float[]    maxX;
+    private float[]    maxY;
+
+    // The number of slots used so far, the slots of the free entries, and the slot of every entity
+    private int                    numSlots;
+    private int[]                  freeSlots;
+    private int                    numFreeSlots;
+    private Map<Entity2D, Integer> slots;
+
+    // The slots of the live entities sorted by their minimum x, and a copy of the minimum x for a faster sweep
+    private int[]   order;
+    private float[] orderMinX;
+    private int     orderSize;
+
+    // Scratch keys used for a full sort when many entities are added at once
+    private long[] sortKeys;
+
+    private int     numInserted;
+    private int     numRemoved;
+    private boolean dirty;
+
+    // The widest entity, which bounds how far back a query has to look
+    private float maxWidth;
+
+    // The overlapping pairs found by the last sweep, two slots per pair
+    private int[] pairs;
+    private int   numPairs;
+
+    private List<Entity2D> retrieveList;
+
+    public SweepAndPrune2D()
+    {
+        this(64);
+    }
+
+    public SweepAndPrune2D(int initialCapacity)
+    {
+        initialCapacity = Math.max(initialCapacity, 1);
+
+        entities = new Entity2D[initialCapacity];
+        minX = new float[initialCapacity];
+        minY = new float[initialCapacity];
+        maxX = new float[initialCapacity];
+        maxY = new float[initialCapacity];
+
+        freeSlots = new int[initialCapacity];
+        slots = new IdentityHashMap<>();
+
+        order = new int[initialCapacity];
+        orderMinX = new float[initialCapacity];
+        sortKeys = new long[0];
+
+        pairs = new int[initialCapacity * 2];
+        retrieveList = new ArrayList<>();
+    }
+
+    @Override
+    public void clear()
+    {
+        Arrays.fill(entities, null);
+        slots.clear();
+
+        numSlots = 0;
+        numFreeSlots = 0;
+        orderSize = 0;
+        numInserted = 0;
+        numRemoved = 0;
+        numPairs = 0;
+        maxWidth = 0;
+        dirty = false;
+    }
+
+    @Override
+    public void insert(Entity2D e)
+    {
+        Integer slot = slots.get(e);
+
+        if (slot != null)
+        {
+            update(e);
+            return;
+        }
+
+        int newSlot;
+
+        if (numFreeSlots > 0)
+            newSlot = freeSlots[--numFreeSlots];
+        else
+        {
+            if (numSlots == entities.length)
+                grow();
+
+            newSlot = numSlots++;
+        }
+
+        entities[newSlot] = e;
+        slots.put(e, newSlot);
+        refreshBounds(newSlot);
+
+        if (orderSize == order.length)
+        {
+            order = Arrays.copyOf(order, order.length * 2);
+            orderMinX = Arrays.copyOf(orderMinX, order.length);
+        }
+
+        // New entities are appended, and sorted into place with the next sort
+        order[orderSize++] = newSlot;
+        numInserted++;
+        dirty = true;
+    }
+
+    @Override
+    public void remove(Entity2D e)
+    {
+        Integer slot = slots.remove(e);
+
+        if (slot == null)
+            return;
+
+        // The slot is freed when the order is next compacted, so that it is not reused while still in the order
+        entities[slot] = null;
+        numRemoved++;
+        dirty = true;
+    }
+
+    /**
+     * Refreshes the bounds of an entity that moved. Unlike removing and inserting it again, this keeps its place in the
+     * sorted order, which is only touched up when the broadphase is next queried.
+     *
+     * @param e The entity that moved.
+     */
+    @Override
+    public void update(Entity2D e)
+    {
+        Integer slot = slots.get(e);
+
+        if (slot == null)
+        {
+            insert(e);
+            return;
+        }
+
+        refreshBounds(slot);
+        dirty = true;
+    }
+
+    @Override
+    public List<Entity2D> retrieve(Entity2D e)
+    {
+        Integer slot = slots.get(e);
+
+        if (slot == null)
+            return retrieve(e.getBounds());
+
+        sort();
+
+        return retrieve(minX[slot], minY[slot], maxX[slot], maxY[slot]);
+    }
+
+    @Override
+    public List<Entity2D> retrieve(Rectangle rect)
+    {
+        sort();
+
+        return retrieve(rect.getX(), rect.getY(), rect.getX() + rect.getWidth(), rect.getY() + rect.getHeight());
+    }
+
+    private List<Entity2D> retrieve(float qMinX, float qMinY, float qMaxX, float qMaxY)
+    {
+        retrieveList.clear();
+
+        // No entity that starts before this can reach the query
+        int i = lowerBound(qMinX - maxWidth);
+
+        for (; i < orderSize && orderMinX[i] <= qMaxX; i++)
+        {
+            int slot = order[i];
+
+            if (maxX[slot] >= qMinX && maxY[slot] >= qMinY && minY[slot] <= qMaxY)
+                retrieveList.add(entities[slot]);
+        }
+
+        return retrieveList;
+    }
+
+    @Override
+    public void query(Rectangle rect, Consumer<Entity2D> consumer)
+    {
+        sort();
+
+        float qMinX = rect.getX();
+        float qMinY = rect.getY();
+        float qMaxX = qMinX + rect.getWidth();
+        float qMaxY = qMinY + rect.getHeight();
+
+        for (int i = lowerBound(qMinX - maxWidth); i < orderSize && orderMinX[i] <= qMaxX; i++)
+        {
+            int slot = order[i];
+
+            if (maxX[slot] >= qMinX && maxY[slot] >= qMinY && minY[slot] <= qMaxY)
+                consumer.accept(entities[slot]);
+        }
+    }
+
+    /**
+     * Casts a ray through the entities, testing the entities that start between the ends of the ray on the x axis.
+     */
+    @Override
+    public void raycast(Vector2 origin, Vector2 direction, float maxDistance, RayCallback callback)
+    {
+        float length = direction.length();
+
+        if (length == 0)
+            return;
+
+        sort();
+
+        float ox = origin.x;
+        float oy = origin.y;
+        float dx = direction.x / length;
+        float dy = direction.y / length;
+
+        // The ray doesn't move on the x axis if it is vertical, even if it is infinitely long
+        float reach = dx == 0 ? 0 : dx * maxDistance;
+
+        for (int i = lowerBound(ox + Math.min(reach, 0) - maxWidth); i < orderSize; i++)
+        {
+            if (orderMinX[i] > ox + Math.max(reach, 0))
+                break;
+
+            int slot = order[i];
+
+            float distance = BoxQueries.raycast(ox, oy, dx, dy, maxDistance, minX[slot], minY[slot], maxX[slot],
+                    maxY[slot]);
+
+            if (distance >= 0)
+            {
+                maxDistance = Math.min(maxDistance, callback.hit(entities[slot], distance));
+
+                if (maxDistance <= 0)
+                    return;
+
+                reach = dx == 0 ? 0 : dx * maxDistance;
+            }
+        }
+    }
+
+    /**
+     * Finds the nearest entity by walking the sorted entities away from the point in both directions, until they start
+     * farther away on the x axis than the nearest entity found.
+     */
+    @Override
+    public Entity2D nearest(Vector2 point, float maxDistance)
+    {
+        sort();
+
+        float px = point.x;
+        float py = point.y;
+
+        Entity2D nearest = null;
+        float nearestDistance = maxDistance * maxDistance;
+
+        int start = lowerBound(px);
+
+        for (int i = start; i < orderSize; i++)
+        {
+            float gap = orderMinX[i] - px;
+
+            if (gap * gap > nearestDistance)
+                break;
+
+            int slot = order[i];
+            float distance = BoxQueries.distanceSquared(px, py, minX[slot], minY[slot], maxX[slot], maxY[slot]);
+
+            if (distance <= nearestDistance)
+            {
+                nearest = entities[slot];
+                nearestDistance = distance;
+            }
+        }
+
+        for (int i = start - 1; i >= 0; i--)
+        {
+            // No entity is wider than the widest one
+            float gap = px - (orderMinX[i] + maxWidth);
+
+            if (gap > 0 && gap * gap > nearestDistance)
+                break;
+
+            int slot = order[i];
+            float distance = BoxQueries.distanceSquared(px, py, minX[slot], minY[slot], maxX[slot], maxY[slot]);
+
+            if (distance <= nearestDistance)
+            {
+                nearest = entities[slot];
+                nearestDistance = distance;
+            }
+        }
+
+        return nearest;
+    }
+
+    /**
+     * Passes the pairs of entities whose bounds overlap to a callback, with the same sweep as computePairs, but without
+     * keeping the pairs.
+     */
+    @Override
+    public void forEachPair(PairCallback callback)
+    {
+        sort();
+
+        for (int i = 0; i < orderSize; i++)
+        {
+            int a = order[i];
+
+            float aMaxX = maxX[a];
+            float aMinY = minY[a];
+            float aMaxY = maxY[a];
+
+            for (int j = i + 1; j < orderSize && orderMinX[j] <= aMaxX; j++)
+            {
+                int b = order[j];
+
+                if (maxY[b] >= aMinY && minY[b] <= aMaxY)
+                    callback.pair(entities[a], entities[b]);
+            }
+        }
+    }
+
+    /**
+     * Finds all the pairs of entities whose bounds overlap, with a single sweep over the sorted entities. The pairs can
+     * then be read with {@link #getPairA(int)} and {@link #getPairB(int)}.
+     *
+     * @return The number of overlapping pairs.
+     */
+    public int computePairs()
+    {
+        sort();
+
+        numPairs = 0;
+
+        for (int i = 0; i < orderSize; i++)
+        {
+            int a = order[i];
+
+            float aMaxX = maxX[a];
+            float aMinY = minY[a];
+            float aMaxY = maxY[a];
+
+            for (int j = i + 1; j < orderSize && orderMinX[j] <= aMaxX; j++)
+            {
+                int b = order[j];
+
+                if (maxY[b] >= aMinY && minY[b] <= aMaxY)
+                {
+                    if (numPairs * 2 == pairs.length)
+                        pairs = Arrays.copyOf(pairs, pairs.length * 2);
+
+                    pairs[numPairs * 2] = a;
+                    pairs[numPairs * 2 + 1] = b;
+                    numPairs++;
+                }
+            }
+        }
+
+        return numPairs;
+    }
+
+    /**
+     * @return The number of pairs found by the last call to {@link #computePairs()}.
+     */
+    public int getPairCount()
+    {
+        return numPairs;
+    }
+
+    public Entity2D getPairA(int pair)
+    {
+        return entities[pairs[pair * 2]];
+    }
+
+    public Entity2D getPairB(int pair)
+    {
+        return entities[pairs[pair * 2 + 1]];
+    }
+
+    /**
+     * @return The number of entities in this broadphase.
+     */
+    public int size()
+    {
+        return slots.size();
+    }
+
+    private void refreshBounds(int slot)
+    {
+        Rectangle bounds = entities[slot].getBounds();
+
+        minX[slot] = bounds.getX();
+        minY[slot] = bounds.getY();
+        maxX[slot] = bounds.getX() + bounds.getWidth();
+        maxY[slot] = bounds.getY() + bounds.getHeight();
+    }
+
+    /**
+     * Brings the order up to date: drops the removed entities, and sorts by the minimum x. An insertion sort is used
+     * when the order is nearly sorted from the last frame, and a full sort when many entities were added.
+     */
+    private void sort()
+    {
+        if (!dirty)
+            return;
+
+        dirty = false;
+
+        // Drop the removed entities, and free their slots
+        if (numRemoved > 0)
+        {
+            int size = 0;
+
+            for (int i = 0; i < orderSize; i++)
+            {
+                int slot = order[i];
+
+                if (entities[slot] != null)
+                    order[size++] = slot;
+                else
+                {
+                    if (numFreeSlots == freeSlots.length)
+                        freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+
+                    freeSlots[numFreeSlots++] = slot;
+                }
+            }
+
+            orderSize = size;
+            numRemoved = 0;
+        }
+
+        maxWidth = 0;
+
+        for (int i = 0; i < orderSize; i++)
+        {
+            int slot = order[i];
+
+            orderMinX[i] = minX[slot];
+            maxWidth = Math.max(maxWidth, maxX[slot] - minX[slot]);
+        }
+
+        if (numInserted > 16 && numInserted > orderSize / 8)
+            fullSort();
+        else
+            insertionSort();
+
+        numInserted = 0;
+    }
+
+    private void insertionSort()
+    {
+        for (int i = 1; i < orderSize; i++)
+        {
+            float key = orderMinX[i];
+
+            if (orderMinX[i - 1] <= key)
+                continue;
+
+            int slot = order[i];
+            int j = i - 1;
+
+            while (j >= 0 && orderMinX[j] > key)
+            {
+                orderMinX[j + 1] = orderMinX[j];
+                order[j + 1] = order[j];
+                j--;
+            }
+
+            orderMinX[j + 1] = key;
+            order[j + 1] = slot;
+        }
+    }
+
+    private void fullSort()
+    {
+        if (sortKeys.length < orderSize)
+            sortKeys = new long[order.length];
+
+        // The float is mapped to an int that sorts the same way, and the slot is kept in the low bits
+        for (int i = 0; i < orderSize; i++)
+        {
+            int bits = Float.floatToIntBits(orderMinX[i]);
+            bits ^= (bits >> 31) & 0x7FFFFFFF;
+
+            sortKeys[i] = ((long) bits << 32) | (order[i] & 0xFFFFFFFFL);
+        }
+
+        Arrays.sort(sortKeys, 0, orderSize);
+
+        for (int i = 0; i < orderSize; i++)
+        {
+            int slot = (int) sortKeys[i];
+
+            order[i] = slot;
+            orderMinX[i] = minX[slot];
+        }
+    }
+
+    private int lowerBound(float x)
+    {
+        int low = 0;
+        int high = orderSize;
+
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+
+            if (orderMinX[mid] < x)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        return low;
+    }
+
+    private void grow()
+    {
+        int capacity = entities.length * 2;
+
+        entities = Arrays.copyOf(entities, capacity);
+        minX = Arrays.copyOf(minX, capacity);
+        minY = Arrays.copyOf(minY, capacity);
+        maxX = Arrays.copyOf(maxX, capacity);
+        maxY = Arrays.copyOf(maxY, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+    }
+}
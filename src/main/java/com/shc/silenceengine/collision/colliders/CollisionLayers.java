@@ -0,0 +1,173 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.collision.colliders;
+
+import com.shc.silenceengine.core.SilenceException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles the types registered with a scene collider down to collision layers. Every registered type is given a bit,
+ * starting from the highest bit, so that the lower bits are left for the layers that are set on the entities directly.
+ * The category of a class has the bits of the types it is an instance of, and its mask has the bits of the types that
+ * those types are registered to collide with.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+final class CollisionLayers
+{
+    static final int MAX_TYPES = 32;
+
+    // The registered types, the type at index i has the bit 31 - i
+    private List<Class<?>> types = new ArrayList<>();
+
+    // The bits of all the registered types
+    private int typeBits;
+
+    // For every type, the bits of the types it is registered to collide with
+    private int[] collidesWith = new int[MAX_TYPES];
+
+    // The number of times every pair of types is registered, each registration is one collision event
+    private int[][] registrations = new int[MAX_TYPES][MAX_TYPES];
+
+    // The category and the mask of every class, computed when it is first seen
+    private Map<Class<?>, int[]> classLayers = new HashMap<>();
+
+    void register(Class<?> type1, Class<?> type2)
+    {
+        int index1 = getIndex(type1);
+        int index2 = getIndex(type2);
+
+        collidesWith[index1] |= getBit(index2);
+        registrations[index1][index2]++;
+
+        // The masks of the classes seen so far might have changed
+        classLayers.clear();
+    }
+
+    private int getIndex(Class<?> type)
+    {
+        int index = types.indexOf(type);
+
+        if (index != -1)
+            return index;
+
+        if (types.size() == MAX_TYPES)
+            throw new SilenceException("Cannot register more than " + MAX_TYPES + " types for collisions");
+
+        types.add(type);
+        typeBits |= getBit(types.size() - 1);
+
+        return types.size() - 1;
+    }
+
+    private static int getBit(int index)
+    {
+        return 1 << (31 - index);
+    }
+
+    /**
+     * @return The bits that are used by the registered types.
+     */
+    int getTypeBits()
+    {
+        return typeBits;
+    }
+
+    /**
+     * @return The bits of the registered types that the class is an instance of.
+     */
+    int getCategory(Class<?> type)
+    {
+        return getLayers(type)[0];
+    }
+
+    /**
+     * @return The bits of the types that the registered types of the class are registered to collide with.
+     */
+    int getMask(Class<?> type)
+    {
+        return getLayers(type)[1];
+    }
+
+    private int[] getLayers(Class<?> type)
+    {
+        int[] layers = classLayers.get(type);
+
+        if (layers == null)
+        {
+            layers = new int[2];
+
+            for (int i = 0; i < types.size(); i++)
+                if (types.get(i).isAssignableFrom(type))
+                {
+                    layers[0] |= getBit(i);
+                    layers[1] |= collidesWith[i];
+                }
+
+            classLayers.put(type, layers);
+        }
+
+        return layers;
+    }
+
+    /**
+     * Counts the collision events that an entity in the category1 should get when colliding with an entity in the
+     * category2, which is one for every registration between a type of the first and a type of the second. Only the
+     * bits of the registered types are counted.
+     */
+    int countEvents(int category1, int category2)
+    {
+        int events = 0;
+
+        for (int bits = category1 & typeBits; bits != 0; bits &= bits - 1)
+        {
+            int index1 = 31 - Integer.numberOfTrailingZeros(bits);
+
+            for (int others = collidesWith[index1] & category2; others != 0; others &= others - 1)
+                events += registrations[index1][31 - Integer.numberOfTrailingZeros(others)];
+        }
+
+        return events;
+    }
+
+    /**
+     * Counts the collision events that an entity should get when colliding with an other entity, one for every
+     * registration between their types, and one more if the mask of the first has one of the other bits of the category
+     * of the second.
+     */
+    int countEvents(int category1, int mask1, int category2)
+    {
+        int events = countEvents(category1, category2);
+
+        if ((mask1 & ~typeBits & category2) != 0)
+            events++;
+
+        return events;
+    }
+}
@@ -24,15 +24,22 @@
 
 package com.shc.silenceengine.collision.colliders;
 
+import com.shc.silenceengine.collision.Collision2D;
 import com.shc.silenceengine.collision.broadphase.IBroadphase2D;
 import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.geom2d.Polygon;
+import com.shc.silenceengine.scene.ISceneListener;
 import com.shc.silenceengine.scene.Scene2D;
 import com.shc.silenceengine.scene.entity.Entity2D;
+import com.shc.silenceengine.utils.Scratch;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * <p> A SceneCollider that checks collisions between 2D entities in a scene. SceneCollider2D is an object that manages
@@ -49,27 +56,96 @@
  * <p> In the above example, collisions are checked between Player-Enemy and Player-EnemyBullet, and others are just
  * ignored. </p>
  *
+ * <p> The collisions can also be filtered with the collision category and the mask of the entities, which can change
+ * at runtime. An entity is notified of a collision with an other entity when its mask has a bit of the category of the
+ * other entity. The registered types are compiled down to these layers, every type is given a bit starting from the
+ * highest bit, and these bits are combined with the category and the mask of the entities when the collisions are
+ * checked. The layers of the entities themselves are never changed by the collider. Up to 32 types can be registered,
+ * and the layers set on the entities should use the bits that are left. </p>
+ *
+ * <p> The collider listens to the children that are added to and removed from the scene, and applies these changes
+ * to the broadphase when the collisions are next checked, in the order they were made. Only the entities that are
+ * dirty, that is which moved, rotated or were resized since the last check, are refreshed in the broadphase. </p>
+ *
+ * <p> The broadphase is asked once for the unique pairs of entities whose bounds overlap, with a single pass of {@link
+ * IBroadphase2D#forEachPair(IBroadphase2D.PairCallback)}. The pairs are filtered with a single check of the layers,
+ * and the narrowphase is run only once per pair. </p>
+ *
+ * <p> The motion of the continuous entities is swept, see {@link Entity2D#setContinuous(boolean)}. Their bounds in
+ * the broadphase cover the whole motion they made in the last frame, and a pair with a continuous entity that moved
+ * collides if the entities touched at any time during their motions, which is found with {@link
+ * Collision2D#timeOfImpact(Polygon, Vector2, Vector2, Polygon, Vector2, Vector2)}. A fast bullet then hits a thin
+ * wall that it would otherwise pass through between two frames. </p>
+ *
+ * <p> The narrowphase can also be run in parallel on a ForkJoinPool, see {@link #setNarrowphasePool(ForkJoinPool)}.
+ * The pairs are then all tested first, split across the threads of the pool, and the collision events are sent
+ * afterwards on the calling thread, in the same order as the pairs. </p>
+ *
  * @author Sri Harsha Chilakapati
  */
 public class SceneCollider2D
 {
-    // The collision map, used to store registered classes
-    private Map<Class<? extends Entity2D>, List<Class<? extends Entity2D>>> collisionMap = new HashMap<>();
+    public static final int MAX_TYPES = CollisionLayers.MAX_TYPES;
+
+    // The number of pairs tested by a task of the parallel narrowphase, fewer pairs than this are tested serially
+    private static final int PAIRS_PER_TASK = 256;
+
+    // The scratch response of every thread of the parallel narrowphase, the shared one of Collision2D is not used
+    private static final ThreadLocal<Collision2D.Response> RESPONSES =
+            ThreadLocal.withInitial(Collision2D.Response::new);
+
+    // The layers of the registered types
+    private CollisionLayers layers = new CollisionLayers();
 
     // The Scene and the broadphase
     private Scene2D       scene;
     private IBroadphase2D broadphase;
 
-    // Number of children in the scene
-    private int childrenInScene;
+    // The list of entities, and their indices in it
+    private List<Entity2D>         entities;
+    private Map<Entity2D, Integer> indices;
+
+    // The layers of the entities combined with those of their registered types, by their index in the list
+    private int[] categories = new int[64];
+    private int[] masks      = new int[64];
+
+    // The children added to and removed from the scene since the last check, in order
+    private Entity2D[] changes = new Entity2D[16];
+    private boolean[]  changeAdded = new boolean[16];
+    private int        numChanges;
+
+    // Records the changes of the children of the scene
+    private ISceneListener<Entity2D> sceneListener = new ISceneListener<Entity2D>()
+    {
+        @Override
+        public void childAdded(Entity2D child)
+        {
+            addChange(child, true);
+        }
+
+        @Override
+        public void childRemoved(Entity2D child)
+        {
+            addChange(child, false);
+        }
+    };
 
-    // The list of entities
-    private List<Entity2D> entities;
+    private IBroadphase2D.PairCallback pairHandler = this::checkPair;
+
+    // The pool of the parallel narrowphase, null when the narrowphase is serial
+    private ForkJoinPool narrowphasePool;
+
+    // The indices of the entities of the pairs found in the parallel mode, and whether they intersect, in the order of
+    // the broadphase
+    private int[]     pairs = new int[64];
+    private boolean[] intersections = new boolean[32];
+    private int       numPairs;
 
     public SceneCollider2D(IBroadphase2D broadphase)
     {
         this.broadphase = broadphase;
         entities = new ArrayList<>();
+        indices = new IdentityHashMap<>();
     }
 
     /**
@@ -81,13 +157,55 @@ public Scene2D getScene()
     }
 
     /**
-     * Sets the scene that this SceneCollider2D should use to get the entities and check for collisions.
+     * Sets the scene that this SceneCollider2D should use to get the entities and check for collisions. The children
+     * of the scene are inserted into the broadphase with the next check, and the collider then follows the children
+     * that are added and removed with the methods of the scene.
      *
      * @param scene The scene to be used.
      */
     public void setScene(Scene2D scene)
     {
+        if (this.scene != null)
+            this.scene.removeListener(sceneListener);
+
         this.scene = scene;
+
+        entities.clear();
+        indices.clear();
+        broadphase.clear();
+
+        Arrays.fill(changes, 0, numChanges, null);
+        numChanges = 0;
+
+        if (scene == null)
+            return;
+
+        scene.addListener(sceneListener);
+
+        for (Entity2D entity : scene.getEntities())
+            addChange(entity, true);
+    }
+
+    /**
+     * @return The pool that the narrowphase is run on, or null if it runs on the calling thread.
+     */
+    public ForkJoinPool getNarrowphasePool()
+    {
+        return narrowphasePool;
+    }
+
+    /**
+     * Sets a pool to run the narrowphase on in parallel. All the pairs are tested before any collision event is sent,
+     * so an entity that is moved in its collision() method doesn't change the tests of the other pairs in that frame.
+     * The events are sent on the thread calling checkCollisions(), in the same order every time. The entities and their
+     * polygons must not be changed by other threads while the collisions are checked.
+     *
+     * @param pool The pool, like {@link ForkJoinPool#commonPool()}, or null to run the narrowphase on the calling
+     *             thread.
+     */
+    public void setNarrowphasePool(ForkJoinPool pool)
+    {
+        this.narrowphasePool = pool;
     }
 
     /**
@@ -100,71 +218,245 @@ public void setScene(Scene2D scene)
      */
     public void register(Class<? extends Entity2D> type1, Class<? extends Entity2D> type2)
     {
-        if (!collisionMap.containsKey(type1))
-            collisionMap.put(type1, new ArrayList<>());
-
-        collisionMap.get(type1).add(type2);
+        layers.register(type1, type2);
     }
 
     /**
      * Checks for collisions between every entity in the scene that belongs to the registered types registered using the
-     * register() method.
+     * register() method, and between the entities whose collision layers allow it.
      */
     public void checkCollisions()
     {
+        // Apply the children added and removed since the last check
+        applyChanges();
+
         // If there are no children in the scene, simply return
-        if (scene.getEntities().size() == 0)
-        {
-            childrenInScene = 0;
+        if (entities.size() == 0)
             return;
+
+        if (categories.length < entities.size())
+        {
+            categories = Arrays.copyOf(categories, Math.max(entities.size(), categories.length * 2));
+            masks = Arrays.copyOf(masks, categories.length);
         }
 
-        // Update the list of entities from the list of children in the scene
-        if (scene.getEntities().size() != childrenInScene)
+        // Update the broadphase for the dirty entities, and combine the layers of the entities with those of their
+        // registered types, leaving the entities as they are
+        for (int i = 0; i < entities.size(); i++)
         {
-            entities.clear();
-            broadphase.clear();
-            childrenInScene = 0;
+            Entity2D entity = entities.get(i);
 
-            for (Entity2D entity : scene.getEntities())
+            if (entity.isDirty())
             {
-                broadphase.insert(entity);
-                entities.add(entity);
-
-                childrenInScene++;
+                broadphase.update(entity);
+                entity.clearDirty();
             }
+
+            Class<?> type = entity.getClass();
+
+            categories[i] = entity.getCollisionCategory() | layers.getCategory(type);
+            masks[i] = entity.getCollisionMask() | layers.getMask(type);
         }
 
-        // Update the broadphase for repositioned entities
-        for (Entity2D entity : entities)
+        // Check every unique pair once, found with a single pass over the broadphase
+        numPairs = 0;
+        broadphase.forEachPair(pairHandler);
+
+        if (narrowphasePool == null)
+            return;
+
+        // Test the collected pairs in parallel, and send the events in their order
+        if (numPairs < PAIRS_PER_TASK)
+            testPairs(0, numPairs, RESPONSES.get());
+        else
+            narrowphasePool.invoke(new NarrowphaseTask(0, numPairs));
+
+        for (int i = 0; i < numPairs; i++)
+        {
+            if (intersections[i])
+                sendEvents(pairs[i * 2], pairs[i * 2 + 1]);
+        }
+    }
+
+    private void addChange(Entity2D child, boolean added)
+    {
+        if (numChanges == changes.length)
+        {
+            changes = Arrays.copyOf(changes, changes.length * 2);
+            changeAdded = Arrays.copyOf(changeAdded, changes.length);
+        }
+
+        changes[numChanges] = child;
+        changeAdded[numChanges] = added;
+        numChanges++;
+    }
+
+    /**
+     * Inserts the added children into the broadphase and removes the removed ones, in the order of the changes, so that
+     * a child which is added and removed again before a check is not left in the broadphase.
+     */
+    private void applyChanges()
+    {
+        for (int i = 0; i < numChanges; i++)
         {
-            Vector2 velocity = entity.getVelocity();
+            Entity2D entity = changes[i];
+            changes[i] = null;
 
-            if (velocity.x != 0 || velocity.y != 0)
+            if (changeAdded[i])
             {
-                broadphase.remove(entity);
+                if (indices.containsKey(entity))
+                    continue;
+
+                indices.put(entity, entities.size());
+                entities.add(entity);
+
                 broadphase.insert(entity);
+                entity.clearDirty();
+            }
+            else
+            {
+                Integer index = indices.remove(entity);
+
+                if (index == null)
+                    continue;
+
+                // The last entity takes the place of the removed one
+                Entity2D last = entities.remove(entities.size() - 1);
+
+                if (last != entity)
+                {
+                    entities.set(index, last);
+                    indices.put(last, index);
+                }
+
+                broadphase.remove(entity);
             }
         }
 
-        // Iterate and check collisions
-        for (Class<? extends Entity2D> class1 : collisionMap.keySet())
-            // Check collision
-            entities.stream().filter(class1::isInstance).forEach(entity ->
+        numChanges = 0;
+    }
+
+    private void checkPair(Entity2D entity1, Entity2D entity2)
+    {
+        if (entity1 == entity2)
+            return;
+
+        // The broadphase might hold entities that are not children of the scene of this collider
+        Integer index1 = indices.get(entity1);
+        Integer index2 = indices.get(entity2);
+
+        if (index1 == null || index2 == null)
+            return;
+
+        int slot1 = index1;
+        int slot2 = index2;
+
+        // Either of the entities should collide with a layer of the other
+        if (((categories[slot1] & masks[slot2]) | (categories[slot2] & masks[slot1])) == 0)
+            return;
+
+        if (narrowphasePool != null)
+        {
+            addPair(entity1, slot1, entity2, slot2);
+            return;
+        }
+
+        // The narrowphase, once for both the directions
+        if (intersects(entity1, entity2, null))
+            sendEvents(slot1, slot2);
+    }
+
+    private void addPair(Entity2D entity1, int slot1, Entity2D entity2, int slot2)
+    {
+        if (numPairs == intersections.length)
+        {
+            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+            intersections = Arrays.copyOf(intersections, intersections.length * 2);
+        }
+
+        pairs[numPairs * 2] = slot1;
+        pairs[numPairs * 2 + 1] = slot2;
+        numPairs++;
+
+        // The cached axes of the polygons are refreshed here, so that the threads of the narrowphase only read them
+        entity1.getPolygon().getEdgeNormals();
+        entity2.getPolygon().getEdgeNormals();
+    }
+
+    /**
+     * Runs the narrowphase on a range of the collected pairs, with a response that is only used by this thread.
+     */
+    private void testPairs(int from, int to, Collision2D.Response response)
+    {
+        for (int i = from; i < to; i++)
+            intersections[i] = intersects(entities.get(pairs[i * 2]), entities.get(pairs[i * 2 + 1]),
+                    response.clear());
+    }
+
+    /**
+     * Tests whether two entities intersect, or touched during their motions if either of them is continuous and moved.
+     */
+    private static boolean intersects(Entity2D entity1, Entity2D entity2, Collision2D.Response response)
+    {
+        Vector2 motion1 = entity1.getMotion();
+        Vector2 motion2 = entity2.getMotion();
+
+        if (motion1.x == 0 && motion1.y == 0 && motion2.x == 0 && motion2.y == 0)
+            return entity1.getPolygon().intersects(entity2.getPolygon(), response);
+
+        try (Scratch scratch = Scratch.open())
+        {
+            // The polygons are swept from where they started, without moving them back
+            Vector2 start1 = scratch.vector2().set(entity1.getPolygon().getPosition()).subtractSelf(motion1);
+            Vector2 start2 = scratch.vector2().set(entity2.getPolygon().getPosition()).subtractSelf(motion2);
+
+            return Collision2D.timeOfImpact(entity1.getPolygon(), start1, motion1, entity2.getPolygon(), start2,
+                    motion2) >= 0;
+        }
+    }
+
+    private void sendEvents(int slot1, int slot2)
+    {
+        Entity2D entity1 = entities.get(slot1);
+        Entity2D entity2 = entities.get(slot2);
+
+        int events1 = layers.countEvents(categories[slot1], masks[slot1], categories[slot2]);
+        int events2 = layers.countEvents(categories[slot2], masks[slot2], categories[slot1]);
+
+        for (int i = 0; i < events1; i++)
+            entity1.collision(entity2);
+
+        for (int i = 0; i < events2; i++)
+            entity2.collision(entity1);
+    }
+
+    /**
+     * Tests a range of the collected pairs, splitting it in halves until it is small enough.
+     */
+    private class NarrowphaseTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 8494629299069725062L;
+
+        private int from;
+        private int to;
+
+        NarrowphaseTask(int from, int to)
+        {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= PAIRS_PER_TASK)
             {
-                List<Entity2D> collidables = broadphase.retrieve(entity);
-
-                for (Entity2D entity2 : collidables)
-                    // Check collisions
-
-                    // Stream over all the mappings of class1 in the map
-                    collisionMap.get(class1).stream()
-                            // Filter all the entities which belong to class2 and not equal to entity1
-                            .filter(class2 -> class2.isInstance(entity2) && entity != entity2)
-                                    // Filter all the entities whose polygons intersects with the polygon of entity1
-                            .filter(class2 -> entity.getPolygon().intersects(entity2.getPolygon()))
-                                    // Send collision events to all the colliding entities
-                            .forEach(class2 -> entity.collision(entity2));
-            });
+                testPairs(from, to, RESPONSES.get());
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new NarrowphaseTask(from, middle), new NarrowphaseTask(middle, to));
+        }
     }
 }
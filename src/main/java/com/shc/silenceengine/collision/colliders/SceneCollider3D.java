@@ -24,15 +24,19 @@
 
 package com.shc.silenceengine.collision.colliders;
 
+import com.shc.silenceengine.collision.Collision3D;
 import com.shc.silenceengine.collision.broadphase.IBroadphase3D;
-import com.shc.silenceengine.math.Vector3;
+import com.shc.silenceengine.scene.ISceneListener;
 import com.shc.silenceengine.scene.Scene3D;
 import com.shc.silenceengine.scene.entity.Entity3D;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * <p> A SceneCollider that checks collisions between 3D entities in a scene. SceneCollider3D is an object that manages
@@ -49,27 +53,90 @@
  * <p> In the above example, collisions are checked between Player-Enemy and Player-EnemyBullet, and others are just
  * ignored. </p>
  *
+ * <p> The collisions can also be filtered with the collision category and the mask of the entities, which can change
+ * at runtime. An entity is notified of a collision with an other entity when its mask has a bit of the category of the
+ * other entity. The registered types are compiled down to these layers, every type is given a bit starting from the
+ * highest bit, and these bits are combined with the category and the mask of the entities when the collisions are
+ * checked. The layers of the entities themselves are never changed by the collider. Up to 32 types can be registered,
+ * and the layers set on the entities should use the bits that are left. </p>
+ *
+ * <p> The collider listens to the children that are added to and removed from the scene, and applies these changes
+ * to the broadphase when the collisions are next checked, in the order they were made. Only the entities that are
+ * dirty, that is which moved, rotated or were resized since the last check, are refreshed in the broadphase. </p>
+ *
+ * <p> The broadphase is asked once for the unique pairs of entities whose bounds overlap, with a single pass of {@link
+ * IBroadphase3D#forEachPair(IBroadphase3D.PairCallback)}. The pairs are filtered with a single check of the layers,
+ * and the narrowphase is run only once per pair. </p>
+ *
+ * <p> The narrowphase can also be run in parallel on a ForkJoinPool, see {@link #setNarrowphasePool(ForkJoinPool)}.
+ * The pairs are then all tested first, split across the threads of the pool, and the collision events are sent
+ * afterwards on the calling thread, in the same order as the pairs. </p>
+ *
  * @author Sri Harsha Chilakapati
  */
 public class SceneCollider3D
 {
-    // The collision map, used to store registered classes
-    private Map<Class<? extends Entity3D>, List<Class<? extends Entity3D>>> collisionMap = new HashMap<>();
+    public static final int MAX_TYPES = CollisionLayers.MAX_TYPES;
 
-    // The Scene and the grid
+    // The number of pairs tested by a task of the parallel narrowphase, fewer pairs than this are tested serially
+    private static final int PAIRS_PER_TASK = 256;
+
+    // The scratch response of every thread of the parallel narrowphase, the shared one of Collision3D is not used
+    private static final ThreadLocal<Collision3D.Response> RESPONSES =
+            ThreadLocal.withInitial(Collision3D.Response::new);
+
+    // The layers of the registered types
+    private CollisionLayers layers = new CollisionLayers();
+
+    // The Scene and the broadphase
     private Scene3D       scene;
     private IBroadphase3D broadphase;
 
-    // Number of children in the scene
-    private int childrenInScene;
+    // The list of entities, and their indices in it
+    private List<Entity3D>         entities;
+    private Map<Entity3D, Integer> indices;
+
+    // The layers of the entities combined with those of their registered types, by their index in the list
+    private int[] categories = new int[64];
+    private int[] masks      = new int[64];
+
+    // The children added to and removed from the scene since the last check, in order
+    private Entity3D[] changes = new Entity3D[16];
+    private boolean[]  changeAdded = new boolean[16];
+    private int        numChanges;
+
+    // Records the changes of the children of the scene
+    private ISceneListener<Entity3D> sceneListener = new ISceneListener<Entity3D>()
+    {
+        @Override
+        public void childAdded(Entity3D child)
+        {
+            addChange(child, true);
+        }
+
+        @Override
+        public void childRemoved(Entity3D child)
+        {
+            addChange(child, false);
+        }
+    };
+
+    private IBroadphase3D.PairCallback pairHandler = this::checkPair;
 
-    // The list of entities
-    private List<Entity3D> entities;
+    // The pool of the parallel narrowphase, null when the narrowphase is serial
+    private ForkJoinPool narrowphasePool;
+
+    // The indices of the entities of the pairs found in the parallel mode, and whether they intersect, in the order of
+    // the broadphase
+    private int[]     pairs = new int[64];
+    private boolean[] intersections = new boolean[32];
+    private int       numPairs;
 
     public SceneCollider3D(IBroadphase3D broadphase)
     {
         this.broadphase = broadphase;
         entities = new ArrayList<>();
+        indices = new IdentityHashMap<>();
     }
 
     /**
@@ -81,13 +148,55 @@ public Scene3D getScene()
     }
 
     /**
-     * Sets the scene that this SceneCollider3D should use to get the entities and check for collisions.
+     * Sets the scene that this SceneCollider3D should use to get the entities and check for collisions. The children
+     * of the scene are inserted into the broadphase with the next check, and the collider then follows the children
+     * that are added and removed with the methods of the scene.
      *
      * @param scene The scene to be used.
      */
     public void setScene(Scene3D scene)
     {
+        if (this.scene != null)
+            this.scene.removeListener(sceneListener);
+
         this.scene = scene;
+
+        entities.clear();
+        indices.clear();
+        broadphase.clear();
+
+        Arrays.fill(changes, 0, numChanges, null);
+        numChanges = 0;
+
+        if (scene == null)
+            return;
+
+        scene.addListener(sceneListener);
+
+        for (Entity3D entity : scene.getEntities())
+            addChange(entity, true);
+    }
+
+    /**
+     * @return The pool that the narrowphase is run on, or null if it runs on the calling thread.
+     */
+    public ForkJoinPool getNarrowphasePool()
+    {
+        return narrowphasePool;
+    }
+
+    /**
+     * Sets a pool to run the narrowphase on in parallel. All the pairs are tested before any collision event is sent,
+     * so an entity that is moved in its collision() method doesn't change the tests of the other pairs in that frame.
+     * The events are sent on the thread calling checkCollisions(), in the same order every time. The entities and their
+     * polyhedrons must not be changed by other threads while the collisions are checked.
+     *
+     * @param pool The pool, like {@link ForkJoinPool#commonPool()}, or null to run the narrowphase on the calling
+     *             thread.
+     */
+    public void setNarrowphasePool(ForkJoinPool pool)
+    {
+        this.narrowphasePool = pool;
     }
 
     /**
@@ -95,74 +204,224 @@ public void setScene(Scene3D scene)
      * every object of type2 in the Scene for collisions. You should not be worrying about the performance, since the
      * implementation classes will take care of Broad phase collision detection and reduce a lot of unnecessary checks.
      *
-     * @param type1 The first type of the Entity2D
-     * @param type2 The second type of the Entity2D
+     * @param type1 The first type of the Entity3D
+     * @param type2 The second type of the Entity3D
      */
     public void register(Class<? extends Entity3D> type1, Class<? extends Entity3D> type2)
     {
-        if (!collisionMap.containsKey(type1))
-            collisionMap.put(type1, new ArrayList<>());
-
-        collisionMap.get(type1).add(type2);
+        layers.register(type1, type2);
     }
 
     /**
      * Checks for collisions between every entity in the scene that belongs to the registered types registered using the
-     * register() method.
+     * register() method, and between the entities whose collision layers allow it.
      */
     public void checkCollisions()
     {
+        // Apply the children added and removed since the last check
+        applyChanges();
+
         // If there are no children in the scene, simply return
-        if (scene.getEntities().size() == 0)
-        {
-            childrenInScene = 0;
+        if (entities.size() == 0)
             return;
+
+        if (categories.length < entities.size())
+        {
+            categories = Arrays.copyOf(categories, Math.max(entities.size(), categories.length * 2));
+            masks = Arrays.copyOf(masks, categories.length);
         }
 
-        if (scene.getEntities().size() != childrenInScene)
+        // Update the broadphase for the dirty entities, and combine the layers of the entities with those of their
+        // registered types, leaving the entities as they are
+        for (int i = 0; i < entities.size(); i++)
         {
-            entities.clear();
-            broadphase.clear();
-            childrenInScene = 0;
+            Entity3D entity = entities.get(i);
 
-            for (Entity3D entity : scene.getEntities())
+            if (entity.isDirty())
             {
-                broadphase.insert(entity);
-                entities.add(entity);
-                childrenInScene++;
+                broadphase.update(entity);
+                entity.clearDirty();
             }
+
+            Class<?> type = entity.getClass();
+
+            categories[i] = entity.getCollisionCategory() | layers.getCategory(type);
+            masks[i] = entity.getCollisionMask() | layers.getMask(type);
         }
 
-        // Update the broadphase for repositioned entities
-        for (Entity3D entity : entities)
+        // Check every unique pair once, found with a single pass over the broadphase
+        numPairs = 0;
+        broadphase.forEachPair(pairHandler);
+
+        if (narrowphasePool == null)
+            return;
+
+        // Test the collected pairs in parallel, and send the events in their order
+        if (numPairs < PAIRS_PER_TASK)
+            testPairs(0, numPairs, RESPONSES.get());
+        else
+            narrowphasePool.invoke(new NarrowphaseTask(0, numPairs));
+
+        for (int i = 0; i < numPairs; i++)
         {
-            Vector3 velocity = entity.getVelocity();
+            if (intersections[i])
+                sendEvents(pairs[i * 2], pairs[i * 2 + 1]);
+        }
+    }
 
-            if (velocity.x != 0 || velocity.y != 0 || velocity.z != 0)
+    private void addChange(Entity3D child, boolean added)
+    {
+        if (numChanges == changes.length)
+        {
+            changes = Arrays.copyOf(changes, changes.length * 2);
+            changeAdded = Arrays.copyOf(changeAdded, changes.length);
+        }
+
+        changes[numChanges] = child;
+        changeAdded[numChanges] = added;
+        numChanges++;
+    }
+
+    /**
+     * Inserts the added children into the broadphase and removes the removed ones, in the order of the changes, so that
+     * a child which is added and removed again before a check is not left in the broadphase.
+     */
+    private void applyChanges()
+    {
+        for (int i = 0; i < numChanges; i++)
+        {
+            Entity3D entity = changes[i];
+            changes[i] = null;
+
+            if (changeAdded[i])
             {
-                broadphase.remove(entity);
+                if (indices.containsKey(entity))
+                    continue;
+
+                indices.put(entity, entities.size());
+                entities.add(entity);
+
                 broadphase.insert(entity);
+                entity.clearDirty();
             }
+            else
+            {
+                Integer index = indices.remove(entity);
+
+                if (index == null)
+                    continue;
+
+                // The last entity takes the place of the removed one
+                Entity3D last = entities.remove(entities.size() - 1);
+
+                if (last != entity)
+                {
+                    entities.set(index, last);
+                    indices.put(last, index);
+                }
+
+                broadphase.remove(entity);
+            }
+        }
+
+        numChanges = 0;
+    }
+
+    private void checkPair(Entity3D entity1, Entity3D entity2)
+    {
+        if (entity1 == entity2)
+            return;
+
+        // The broadphase might hold entities that are not children of the scene of this collider
+        Integer index1 = indices.get(entity1);
+        Integer index2 = indices.get(entity2);
+
+        if (index1 == null || index2 == null)
+            return;
+
+        int slot1 = index1;
+        int slot2 = index2;
+
+        // Either of the entities should collide with a layer of the other
+        if (((categories[slot1] & masks[slot2]) | (categories[slot2] & masks[slot1])) == 0)
+            return;
+
+        if (narrowphasePool != null)
+        {
+            addPair(entity1, slot1, entity2, slot2);
+            return;
         }
 
-        // Iterate and check collisions
-        for (Class<? extends Entity3D> class1 : collisionMap.keySet())
-            // Check collision
-            entities.stream().filter(class1::isInstance).forEach(entity ->
+        // The narrowphase, once for both the directions
+        if (entity1.getPolyhedron().intersects(entity2.getPolyhedron()))
+            sendEvents(slot1, slot2);
+    }
+
+    private void addPair(Entity3D entity1, int slot1, Entity3D entity2, int slot2)
+    {
+        if (numPairs == intersections.length)
+        {
+            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+            intersections = Arrays.copyOf(intersections, intersections.length * 2);
+        }
+
+        pairs[numPairs * 2] = slot1;
+        pairs[numPairs * 2 + 1] = slot2;
+        numPairs++;
+    }
+
+    /**
+     * Runs the narrowphase on a range of the collected pairs, with a response that is only used by this thread.
+     */
+    private void testPairs(int from, int to, Collision3D.Response response)
+    {
+        for (int i = from; i < to; i++)
+            intersections[i] = entities.get(pairs[i * 2]).getPolyhedron()
+                    .intersects(entities.get(pairs[i * 2 + 1]).getPolyhedron(), response.clear());
+    }
+
+    private void sendEvents(int slot1, int slot2)
+    {
+        Entity3D entity1 = entities.get(slot1);
+        Entity3D entity2 = entities.get(slot2);
+
+        int events1 = layers.countEvents(categories[slot1], masks[slot1], categories[slot2]);
+        int events2 = layers.countEvents(categories[slot2], masks[slot2], categories[slot1]);
+
+        for (int i = 0; i < events1; i++)
+            entity1.collision(entity2);
+
+        for (int i = 0; i < events2; i++)
+            entity2.collision(entity1);
+    }
+
+    /**
+     * Tests a range of the collected pairs, splitting it in halves until it is small enough.
+     */
+    private class NarrowphaseTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = -4090076415174613395L;
+
+        private int from;
+        private int to;
+
+        NarrowphaseTask(int from, int to)
+        {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= PAIRS_PER_TASK)
             {
-                List<Entity3D> collidables = broadphase.retrieve(entity);
-
-                for (Entity3D entity2 : collidables)
-                    // Check collisions
-
-                    // Stream over all the mappings of class1 in the map
-                    collisionMap.get(class1).stream()
-                            // Filter all the entities which belong to class2 and not equal to entity1
-                            .filter(class2 -> class2.isInstance(entity2) && entity != entity2)
-                                    // Filter all the entities whose polyhedrons intersects with the polyhedron of entity1
-                            .filter(class2 -> entity.getPolyhedron().intersects(entity2.getPolyhedron()))
-                                    // Send collision events to all the colliding entities
-                            .forEach(class2 -> entity.collision(entity2));
-            });
+                testPairs(from, to, RESPONSES.get());
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new NarrowphaseTask(from, middle), new NarrowphaseTask(middle, to));
+        }
     }
 }
@@ -0,0 +1,108 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+/**
+ * A set of the vertex attributes that a caller declares to supply for every vertex when it begins the {@link Batcher}.
+ * The position is always supplied, so it is not a part of the mask. The attributes which are not declared are not
+ * written per vertex, instead the Batcher sets them as constant attributes when drawing.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public final class AttributeMask
+{
+    private static final int COLOR_BIT    = 1;
+    private static final int TEXCOORD_BIT = 2;
+    private static final int NORMAL_BIT   = 4;
+
+    // All the possible masks, indexed by their bits
+    private static final AttributeMask[] MASKS = new AttributeMask[8];
+
+    static
+    {
+        for (int i = 0; i < MASKS.length; i++)
+            MASKS[i] = new AttributeMask(i);
+    }
+
+    public static final AttributeMask NONE           = MASKS[0];
+    public static final AttributeMask COLOR          = MASKS[COLOR_BIT];
+    public static final AttributeMask TEXCOORD       = MASKS[TEXCOORD_BIT];
+    public static final AttributeMask NORMAL         = MASKS[NORMAL_BIT];
+    public static final AttributeMask COLOR_TEXCOORD = MASKS[COLOR_BIT | TEXCOORD_BIT];
+    public static final AttributeMask COLOR_NORMAL   = MASKS[COLOR_BIT | NORMAL_BIT];
+    public static final AttributeMask ALL            = MASKS[COLOR_BIT | TEXCOORD_BIT | NORMAL_BIT];
+
+    private int bits;
+
+    private AttributeMask(int bits)
+    {
+        this.bits = bits;
+    }
+
+    /**
+     * @param other The other mask.
+     *
+     * @return A mask with the attributes of this mask and the other mask.
+     */
+    public AttributeMask with(AttributeMask other)
+    {
+        return MASKS[bits | other.bits];
+    }
+
+    /**
+     * @param other The other mask.
+     *
+     * @return A mask with the attributes of this mask that are not in the other mask.
+     */
+    public AttributeMask without(AttributeMask other)
+    {
+        return MASKS[bits & ~other.bits];
+    }
+
+    public boolean hasColor()
+    {
+        return (bits & COLOR_BIT) != 0;
+    }
+
+    public boolean hasTexCoord()
+    {
+        return (bits & TEXCOORD_BIT) != 0;
+    }
+
+    public boolean hasNormal()
+    {
+        return (bits & NORMAL_BIT) != 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AttributeMask{" +
+               "color=" + hasColor() +
+               ", texCoord=" + hasTexCoord() +
+               ", normal=" + hasNormal() +
+               '}';
+    }
+}
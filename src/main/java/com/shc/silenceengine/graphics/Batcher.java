@@ -26,6 +26,7 @@
 
 import com.shc.silenceengine.backend.lwjgl3.opengl.BufferObject;
 import com.shc.silenceengine.backend.lwjgl3.opengl.GL3Context;
+import com.shc.silenceengine.backend.lwjgl3.opengl.GLFenceProvider;
 import com.shc.silenceengine.backend.lwjgl3.opengl.Primitive;
 import com.shc.silenceengine.backend.lwjgl3.opengl.Program;
 import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
@@ -36,8 +37,14 @@
 import com.shc.silenceengine.math.Vector3;
 import com.shc.silenceengine.math.Vector4;
 import com.shc.silenceengine.utils.BufferUtils;
+import com.shc.silenceengine.utils.Logger;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryUtil;
 
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.EnumSet;
 
 import static org.lwjgl.opengl.GL11.*;
 
@@ -48,7 +55,10 @@
  * shapes, or even raw vertices. They get rendered whenever the end method is called. <p> A batcher can also take
  * transforms, and Cameras and render using them. To use them, either pass them to the begin method, or applySelf them
  * manually using the apply[Camera/Transform] methods. <p> After the game completes, before the termination, the dispose
- * method should be called by the user. Better place it in the dispose method of the game.
+ * method should be called by the user. Better place it in the dispose method of the game. <p> All the attributes of a
+ * vertex are interleaved in a single VBO, whose layout is described by a {@link VertexFormat}. The default format
+ * stores everything needed for 3D rendering, while lighter formats can be set with {@link #setVertexFormat} to reduce
+ * the bandwidth for 2D rendering.
  *
  * @author Sri Harsha Chilakapati
  * @author Heiko Brumme
@@ -67,6 +77,10 @@
     public static final int SIZE_OF_COLOR    = Float.BYTES * NUM_COLOR_COMPONENTS;
     public static final int SIZE_OF_TEXCOORD = Float.BYTES * NUM_TEXCOORD_COMPONENTS;
 
+    // The no. of sections in the streaming ring and the size of each section in bytes
+    public static final int NUM_RING_SECTIONS = 3;
+    public static final int RING_SECTION_SIZE = 4 * 1024 * 1024;
+
     // The maximum size of the batch, by default is 1024^2 = 10,48,576 vertices
     private int maxBatchSize = 1024 * 1024;
 
@@ -76,25 +90,32 @@
     // Active state of this batcher
     private boolean active = false;
 
-    // The original buffer addresses (These exist because JEMalloc cannot recognise
-    // the buffers once they are mapped with glMapBuffer)
-    private long vBufferAddress;
-    private long cBufferAddress;
-    private long tBufferAddress;
-    private long nBufferAddress;
+    // The layout of a single vertex in the interleaved data store
+    private VertexFormat vertexFormat = VertexFormat.DEFAULT;
+
+    // How the collected vertices are streamed to the GPU
+    private StreamMode streamMode = StreamMode.MAP;
+
+    // The ring and its persistently mapped data store, used in the PERSISTENT mode
+    private StreamingRing ring;
+    private long          ringAddress;
+
+    // The no. of vertices that fit in the part of the ring reserved for the current batch
+    private int ringVertices;
+
+    // The offset of the current batch in the VBO, in bytes
+    private int bufferOffset;
+
+    // The original buffer address (This exists because JEMalloc cannot recognise
+    // the buffer once it is mapped with glMapBuffer)
+    private long bufferAddress;
 
-    // The mapped buffers to store the collected data
-    private ByteBuffer vBuffer;
-    private ByteBuffer cBuffer;
-    private ByteBuffer tBuffer;
-    private ByteBuffer nBuffer;
+    // The mapped buffer to store the collected data
+    private ByteBuffer buffer;
 
-    // VAO and VBOs
+    // VAO and the interleaved VBO
     private VertexArray  vao;
-    private BufferObject vboVert;
-    private BufferObject vboCol;
-    private BufferObject vboTex;
-    private BufferObject vboNorm;
+    private BufferObject vbo;
 
     // VBO index locations in shader
     private int vertexLocation;
@@ -111,28 +132,57 @@
     // The rendering mode
     private Primitive beginMode;
 
+    // The attributes declared in begin, null if the undeclared attributes should be padded per vertex
+    private AttributeMask attributeMask;
+
+    // Whether every four vertices make a quad which is drawn with the shared quad indices
+    private boolean indexedQuads;
+
+    // The index buffer shared by all the quads, and the no. of quads it can currently index
+    private BufferObject quadIndices;
+    private int          numIndexedQuads;
+
     // The transform, and projection and view matrices
     private Transform transform;
 
+    // Where the transform is applied, and the copy of it used to transform the vertices on the CPU
+    private TransformMode   transformMode = TransformMode.UNIFORM;
+    private VertexTransform vertexTransform;
+
+    // Whether the vertices of the current batch are transformed on the CPU, in which case the shader gets an identity
+    private boolean transformOnCpu;
+
+    // The number of vertices transformed on the CPU with the same transform after which the batch switches to the
+    // uniform, and the number transformed since the transform last changed
+    private int cpuTransformThreshold = 16384;
+    private int cpuTransformedVertices;
+
+    private Matrix4 identity;
+
+    // Ends the batch that a client keeps open across its draws, when someone else needs the batcher
+    private Runnable openBatchEnder;
+
+    // Whether a batch is being drawn, the state set up for the draw itself must not end the open batch
+    private boolean flushing;
+
+    // The adapter to draw into this batcher as an IBatch, created when it is first needed
+    private IBatch batch;
+
     /**
      * Creates the Batcher, and initialises OpenGL
      */
     public Batcher()
     {
-        // Create the buffers
-        vBuffer = BufferUtils.createByteBuffer(batchSize * SIZE_OF_VERTEX);
-        nBuffer = BufferUtils.createByteBuffer(batchSize * SIZE_OF_NORMAL);
-        cBuffer = BufferUtils.createByteBuffer(batchSize * SIZE_OF_COLOR);
-        tBuffer = BufferUtils.createByteBuffer(batchSize * SIZE_OF_TEXCOORD);
+        // Create the buffer
+        buffer = BufferUtils.createByteBuffer(vertexFormat.getSizeInBytes(batchSize));
 
-        // Get the buffer addresses
-        vBufferAddress = BufferUtils.memAddress(vBuffer);
-        nBufferAddress = BufferUtils.memAddress(nBuffer);
-        cBufferAddress = BufferUtils.memAddress(cBuffer);
-        tBufferAddress = BufferUtils.memAddress(tBuffer);
+        // Get the buffer address
+        bufferAddress = BufferUtils.memAddress(buffer);
 
         // Create the transformations
         transform = new Transform();
+        vertexTransform = new VertexTransform();
+        identity = new Matrix4();
 
         // Initialise OpenGL handles
         initGLHandles();
@@ -145,13 +195,10 @@ public int getMaxBatchSize()
 
     public void setMaxBatchSize(int maxBatchSize)
     {
-        if (maxBatchSize > this.maxBatchSize)
+        if (maxBatchSize > this.maxBatchSize && streamMode != StreamMode.PERSISTENT)
         {
-            // Resize the VBOs data store
-            vboVert.uploadData(maxBatchSize * SIZE_OF_VERTEX, BufferObject.Usage.STREAM_DRAW);
-            vboNorm.uploadData(maxBatchSize * SIZE_OF_NORMAL, BufferObject.Usage.STREAM_DRAW);
-            vboCol.uploadData(maxBatchSize * SIZE_OF_COLOR, BufferObject.Usage.STREAM_DRAW);
-            vboTex.uploadData(maxBatchSize * SIZE_OF_TEXCOORD, BufferObject.Usage.STREAM_DRAW);
+            // Resize the VBO data store
+            vbo.uploadData((int) vertexFormat.getSizeInBytes(maxBatchSize), BufferObject.Usage.STREAM_DRAW);
         }
 
         this.maxBatchSize = maxBatchSize;
@@ -167,23 +214,25 @@ public void setBatchSize(int batchSize)
         if (batchSize == this.batchSize)
             return;
 
+        if (streamMode == StreamMode.PERSISTENT)
+        {
+            // The batches are written straight into the ring, so this is only the space reserved for a batch. The
+            // client buffer is resized when the batcher leaves the PERSISTENT mode.
+            this.batchSize = Math.min(batchSize, getMaxVertices());
+            return;
+        }
+
         if (isActive())
             unmapBuffers();
 
         // Don't increase past the max batch size
-        batchSize = Math.min(batchSize, maxBatchSize);
+        batchSize = Math.min(batchSize, getMaxVertices());
 
-        // Resize the buffers
-        vBuffer = BufferUtils.resizeBuffer(vBufferAddress, batchSize * SIZE_OF_VERTEX);
-        nBuffer = BufferUtils.resizeBuffer(nBufferAddress, batchSize * SIZE_OF_NORMAL);
-        cBuffer = BufferUtils.resizeBuffer(cBufferAddress, batchSize * SIZE_OF_COLOR);
-        tBuffer = BufferUtils.resizeBuffer(tBufferAddress, batchSize * SIZE_OF_TEXCOORD);
+        // Resize the buffer
+        buffer = BufferUtils.resizeBuffer(bufferAddress, (int) vertexFormat.getSizeInBytes(batchSize));
 
-        // Regather the addresses of the buffers
-        vBufferAddress = BufferUtils.memAddress(vBuffer);
-        nBufferAddress = BufferUtils.memAddress(nBuffer);
-        cBufferAddress = BufferUtils.memAddress(cBuffer);
-        tBufferAddress = BufferUtils.memAddress(tBuffer);
+        // Regather the address of the buffer
+        bufferAddress = BufferUtils.memAddress(buffer);
 
         if (isActive())
             mapBuffers();
@@ -191,6 +240,230 @@ public void setBatchSize(int batchSize)
         this.batchSize = batchSize;
     }
 
+    /**
+     * @return The layout of the vertices that this batcher is currently collecting.
+     */
+    public VertexFormat getVertexFormat()
+    {
+        return vertexFormat;
+    }
+
+    /**
+     * Sets the layout of the vertices that this batcher collects into its interleaved data store. If the batcher is
+     * active, the vertices collected so far are flushed first. Attributes that are not present in the format are
+     * ignored when they are submitted, so the same drawing code works with any format.
+     *
+     * @param vertexFormat The new vertex format
+     */
+    public void setVertexFormat(VertexFormat vertexFormat)
+    {
+        if (this.vertexFormat.equals(vertexFormat))
+            return;
+
+        if (isActive())
+        {
+            flush(FlushCause.FORMAT);
+            unmapBuffers();
+        }
+
+        this.vertexFormat = vertexFormat;
+
+        // Grow the client buffer and the VBO data store if they cannot hold the vertices in the new format. They
+        // are never shrunk, so that switching back and forth between formats doesn't reallocate every time.
+        batchSize = Math.min(batchSize, getMaxVertices());
+        int size = (int) vertexFormat.getSizeInBytes(batchSize);
+
+        if (streamMode != StreamMode.PERSISTENT && buffer.capacity() < size)
+        {
+            buffer = BufferUtils.resizeBuffer(bufferAddress, size);
+            bufferAddress = BufferUtils.memAddress(buffer);
+        }
+
+        if (streamMode != StreamMode.PERSISTENT && vbo.getCapacity() < vertexFormat.getSizeInBytes(maxBatchSize))
+            vbo.uploadData((int) vertexFormat.getSizeInBytes(maxBatchSize), BufferObject.Usage.STREAM_DRAW);
+
+        // The transformed positions might not fit in the new format
+        if (transformOnCpu && !vertexTransform.fits(vertexFormat.getNumPositionComponents()))
+            transformOnCpu = false;
+
+        if (isActive())
+            mapBuffers();
+    }
+
+    /**
+     * @return Where the transform of this batcher is applied to the vertices.
+     */
+    public TransformMode getTransformMode()
+    {
+        return transformMode;
+    }
+
+    /**
+     * Sets where the transform of this batcher is applied to the vertices. If the batcher is active, the vertices
+     * collected so far are flushed first, and the mode takes effect immediately.
+     *
+     * @param transformMode The new transform mode
+     */
+    public void setTransformMode(TransformMode transformMode)
+    {
+        if (this.transformMode == transformMode)
+            return;
+
+        if (isActive())
+            flush(FlushCause.TRANSFORM);
+
+        this.transformMode = transformMode;
+
+        if (isActive())
+            startTransformOnCpu();
+    }
+
+    /**
+     * @return The number of vertices transformed on the CPU with one transform, after which a batch in the CPU mode
+     * switches to the uniform.
+     */
+    public int getCpuTransformThreshold()
+    {
+        return cpuTransformThreshold;
+    }
+
+    public void setCpuTransformThreshold(int cpuTransformThreshold)
+    {
+        if (cpuTransformThreshold < 1)
+            throw new IllegalArgumentException("The threshold should be at least one vertex");
+
+        this.cpuTransformThreshold = cpuTransformThreshold;
+    }
+
+    /**
+     * @return The transform matrix that the shader should apply to the vertices that are flushed. This is the
+     * transform of the batcher, or an identity if the vertices are already transformed on the CPU.
+     */
+    public Matrix4 getShaderTransform()
+    {
+        return transformOnCpu ? identity : transform.getMatrix();
+    }
+
+    /**
+     * Starts transforming the vertices on the CPU if the mode says so, and the current transform can be applied to
+     * the vertex format.
+     */
+    private void startTransformOnCpu()
+    {
+        vertexTransform.set(transform.getMatrix());
+        cpuTransformedVertices = 0;
+
+        transformOnCpu = transformMode == TransformMode.CPU &&
+                         vertexTransform.fits(vertexFormat.getNumPositionComponents());
+    }
+
+    /**
+     * Called before the transform changes. When the vertices are transformed on the CPU, the batch carries on, else
+     * the vertices collected so far have to be flushed with the old transform.
+     */
+    private void beforeTransformChange()
+    {
+        if (!transformOnCpu)
+            flush(FlushCause.TRANSFORM);
+    }
+
+    /**
+     * Called after the transform changes, updates the transform used on the CPU. If the new transform cannot be
+     * applied on the CPU to the vertex format, the vertices so far are flushed and the batch uses the uniform.
+     */
+    private void afterTransformChange()
+    {
+        if (!transformOnCpu)
+            return;
+
+        vertexTransform.set(transform.getMatrix());
+        cpuTransformedVertices = 0;
+
+        if (!vertexTransform.fits(vertexFormat.getNumPositionComponents()))
+        {
+            flush(FlushCause.TRANSFORM);
+            transformOnCpu = false;
+        }
+    }
+
+    /**
+     * @return The mode with which the collected vertices are streamed to the GPU.
+     */
+    public StreamMode getStreamMode()
+    {
+        return streamMode;
+    }
+
+    /**
+     * Sets the mode with which the collected vertices are streamed to the GPU. If the PERSISTENT mode is requested but
+     * the buffer storage is not supported by the driver, the ORPHAN mode is used instead. The mode can only be changed
+     * when the batcher is not active.
+     *
+     * @param streamMode The new stream mode
+     */
+    public void setStreamMode(StreamMode streamMode)
+    {
+        if (active)
+            throw new IllegalStateException("Cannot change the stream mode of an active Batcher!");
+
+        if (streamMode == StreamMode.PERSISTENT)
+        {
+            GLCapabilities capabilities = GL.getCapabilities();
+
+            if (!capabilities.OpenGL44 && !capabilities.GL_ARB_buffer_storage)
+            {
+                Logger.warn("Persistent buffer mapping is not supported, falling back to buffer orphaning");
+                streamMode = StreamMode.ORPHAN;
+            }
+        }
+
+        if (streamMode == this.streamMode)
+            return;
+
+        // Immutable data stores cannot be changed, so create a new VBO
+        GL3Context.bindVertexBuffer(null);
+        vbo.dispose();
+
+        if (ring != null)
+            ring.reset();
+
+        ring = null;
+        ringAddress = BufferUtils.NULL;
+
+        this.streamMode = streamMode;
+        initVBO();
+
+        // The batch can not grow larger than a section of the ring
+        batchSize = Math.min(batchSize, getMaxVertices());
+
+        // The buffer might still point to the mapped store of the old VBO or the ring, and the batch size might have
+        // grown in the PERSISTENT mode without the client buffer
+        buffer = BufferUtils.resizeBuffer(bufferAddress, (int) vertexFormat.getSizeInBytes(batchSize));
+        bufferAddress = BufferUtils.memAddress(buffer);
+    }
+
+    /**
+     * @return The streaming ring used in the PERSISTENT mode, or null in other modes.
+     */
+    public StreamingRing getStreamingRing()
+    {
+        return ring;
+    }
+
+    /**
+     * @return The maximum number of vertices that can be collected in a single batch. This is a multiple of twelve, so
+     * that flushing a full batch never splits a line, a triangle or a quad.
+     */
+    private int getMaxVertices()
+    {
+        int maxVertices = maxBatchSize;
+
+        if (streamMode == StreamMode.PERSISTENT)
+            maxVertices = Math.min(maxBatchSize, RING_SECTION_SIZE / vertexFormat.getStride());
+
+        return maxVertices - maxVertices % 12;
+    }
+
     /**
      * Initialises VAOs and VBOs and creates the data store to store the entire batch.
      */
@@ -200,41 +473,66 @@ private void initGLHandles()
         vao = new VertexArray();
         vao.bind();
 
-        // Create VBOs
-        vboVert = new BufferObject(BufferObject.Target.ARRAY_BUFFER);
-        vboCol = new BufferObject(BufferObject.Target.ARRAY_BUFFER);
-        vboTex = new BufferObject(BufferObject.Target.ARRAY_BUFFER);
-        vboNorm = new BufferObject(BufferObject.Target.ARRAY_BUFFER);
+        initVBO();
+    }
 
-        // Initialize vertex-buffer
-        vboVert.bind();
-        vboVert.uploadData(maxBatchSize * SIZE_OF_VERTEX, BufferObject.Usage.STREAM_DRAW);
+    /**
+     * Creates the interleaved VBO and initializes its data store depending on the stream mode.
+     */
+    private void initVBO()
+    {
+        vbo = new BufferObject(BufferObject.Target.ARRAY_BUFFER);
+        vbo.bind();
 
-        // Initialize color-buffer
-        vboCol.bind();
-        vboCol.uploadData(maxBatchSize * SIZE_OF_COLOR, BufferObject.Usage.STREAM_DRAW);
+        if (streamMode == StreamMode.PERSISTENT)
+        {
+            EnumSet<BufferObject.MapAccessFlag> flags = EnumSet.of(BufferObject.MapAccessFlag.MAP_WRITE_BIT,
+                    BufferObject.MapAccessFlag.MAP_PERSISTENT_BIT, BufferObject.MapAccessFlag.MAP_COHERENT_BIT);
 
-        // Initialize texcoord-buffer
-        vboTex.bind();
-        vboTex.uploadData(maxBatchSize * SIZE_OF_TEXCOORD, BufferObject.Usage.STREAM_DRAW);
+            ring = new StreamingRing(NUM_RING_SECTIONS, RING_SECTION_SIZE, new GLFenceProvider());
 
-        // Initialize normal-buffer
-        vboNorm.bind();
-        vboNorm.uploadData(maxBatchSize * SIZE_OF_NORMAL, BufferObject.Usage.STREAM_DRAW);
+            // Map the whole ring once, it stays mapped till the VBO is disposed
+            vbo.uploadStorage(ring.getCapacity(), flags);
+            ringAddress = MemoryUtil.memAddress(vbo.mapRange(0, ring.getCapacity(), flags));
+        }
+        else
+            vbo.uploadData((int) vertexFormat.getSizeInBytes(maxBatchSize), BufferObject.Usage.STREAM_DRAW);
     }
 
     /**
-     * Begins the batcher and marks it active.
+     * Begins the batcher and marks it active. Any attribute that is not supplied for a vertex is padded with a default
+     * value when the next vertex is added.
      *
      * @param beginMode The Mode to begin rendering with
      */
     public void begin(Primitive beginMode)
     {
+        begin(beginMode, null);
+    }
+
+    /**
+     * Begins the batcher and marks it active, declaring the attributes that will be supplied for every vertex. The
+     * attributes that are not declared are not padded per vertex, instead they are set as constant attributes when the
+     * batch is drawn. The color defaults to transparent if the texture coordinates are declared, else to white. The
+     * texture coordinates and normals default to zero.
+     *
+     * @param beginMode     The Mode to begin rendering with
+     * @param attributeMask The attributes that will be supplied for every vertex. If null, the undeclared attributes
+     *                      are padded for every vertex.
+     */
+    public void begin(Primitive beginMode, AttributeMask attributeMask)
+    {
+        // A batch that is kept open by a client has to be drawn first
+        endOpenBatch();
+
         if (active)
             throw new IllegalStateException("Batcher Already Active!");
 
         active = true;
 
+        this.attributeMask = attributeMask;
+        indexedQuads = false;
+
         vertexCount = 0;
         colorCount = 0;
         texCoordCount = 0;
@@ -242,6 +540,8 @@ public void begin(Primitive beginMode)
 
         this.beginMode = beginMode;
 
+        startTransformOnCpu();
+
         mapBuffers();
     }
 
@@ -250,6 +550,20 @@ public void begin()
         begin(Primitive.TRIANGLES);
     }
 
+    /**
+     * Begins the batcher to render quads. Every four vertices make a quad, which is drawn as two triangles using an
+     * index buffer that is shared by all the quads, so only four vertices are submitted per quad instead of six. The
+     * vertices of a quad should be specified in the order top-left, top-right, bottom-left and bottom-right.
+     *
+     * @param attributeMask The attributes that will be supplied for every vertex. If null, the undeclared attributes
+     *                      are padded for every vertex.
+     */
+    public void beginQuads(AttributeMask attributeMask)
+    {
+        begin(Primitive.TRIANGLES, attributeMask);
+        indexedQuads = true;
+    }
+
     /**
      * Ends the batcher by flushing all the data to the OpenGL
      */
@@ -259,10 +573,12 @@ public void end()
             throw new IllegalStateException("Batcher not Active!");
 
         active = false;
+        openBatchEnder = null;
 
-        flush();
+        flush(FlushCause.END);
         unmapBuffers();
 
+        transformOnCpu = false;
         transform.reset();
     }
 
@@ -273,47 +589,74 @@ public void end()
      */
     public void applyTransform(Transform t)
     {
-        // Flush the data first
-        flush();
+        // The new transform is meant for the next batch, not for the one that is kept open
+        endOpenBatch();
+
+        // Flush the data first, unless it is transformed on the CPU
+        beforeTransformChange();
 
         // Apply transform
         transform.applySelf(t);
+        afterTransformChange();
     }
 
     /**
      * Flushes the data collected to the GPU.
      */
     public void flush()
+    {
+        flush(FlushCause.EXPLICIT);
+    }
+
+    /**
+     * Flushes the data collected to the GPU, counting the flush in the {@link RenderStats} under the specified cause.
+     *
+     * @param cause The reason the batch has to be drawn now.
+     */
+    public void flush(FlushCause cause)
     {
         // Avoid doing unnecessary flushes
         if (vertexCount == 0)
             return;
 
-        // Fill the buffers
+        RenderStats.count(cause.getCounter());
+        RenderStats.count(RenderStats.Counter.VERTICES, vertexCount);
+
+        // Fill the buffers, in case the last vertex misses some attributes
         fillBuffers();
 
         // Buffer unmapping
         unmapBuffers();
 
+        flushing = true;
         Program.CURRENT.prepareFrame();
 
-        // Bind the VAO
+        // Bind the VAO and point the attributes into the interleaved VBO
         vao.bind();
-        vao.enableAttributeArray(vertexLocation);
-        vao.enableAttributeArray(colorLocation);
-        vao.enableAttributeArray(texCoordLocation);
-        vao.enableAttributeArray(normalLocation);
+        enableAttributes();
 
         // Do a rendering
-        GL3Context.drawArrays(vao, beginMode, 0, vertexCount);
+        if (indexedQuads)
+        {
+            int numQuads = vertexCount / 4;
+            ensureQuadIndices(numQuads);
+
+            // The element array binding is stored in the VAO, so force it
+            quadIndices.bind(true);
+            GL3Context.drawElements(vao, beginMode, 0, numQuads * 6, GL_UNSIGNED_INT);
+        }
+        else
+            GL3Context.drawArrays(vao, beginMode, 0, vertexCount);
+
+        // The batch is already in the ring, so only the write cursor moves past it
+        if (streamMode == StreamMode.PERSISTENT)
+            ring.commit(vertexCount * vertexFormat.getStride());
 
         // Unbind the VAO
-        vao.disableAttributeArray(vertexLocation);
-        vao.disableAttributeArray(colorLocation);
-        vao.disableAttributeArray(texCoordLocation);
-        vao.disableAttributeArray(normalLocation);
+        disableAttributes();
 
         GL3Context.bindVertexArray(null);
+        flushing = false;
 
         // Clear the vertex count
         vertexCount = 0;
@@ -325,22 +668,152 @@ public void flush()
         mapBuffers();
     }
 
+    /**
+     * Makes sure that the shared quad index buffer can index the specified number of quads. The buffer is grown by
+     * doubling, so it is only reallocated a few times during the lifetime of the batcher.
+     *
+     * @param numQuads The number of quads to be drawn
+     */
+    private void ensureQuadIndices(int numQuads)
+    {
+        if (numQuads <= numIndexedQuads)
+            return;
+
+        int capacity = Math.max(numIndexedQuads, 1024);
+
+        while (capacity < numQuads)
+            capacity *= 2;
+
+        // Two triangles per quad, (0, 1, 2) and (1, 3, 2)
+        IntBuffer indices = BufferUtils.createIntBuffer(capacity * 6);
+
+        for (int i = 0; i < capacity; i++)
+        {
+            int first = i * 4;
+
+            indices.put(first).put(first + 1).put(first + 2)
+                    .put(first + 1).put(first + 3).put(first + 2);
+        }
+
+        indices.flip();
+
+        if (quadIndices == null)
+            quadIndices = new BufferObject(BufferObject.Target.ELEMENT_ARRAY_BUFFER);
+
+        quadIndices.bind(true);
+        quadIndices.uploadData(indices, BufferObject.Usage.STATIC_DRAW);
+
+        BufferUtils.freeBuffer(indices);
+
+        numIndexedQuads = capacity;
+    }
+
+    /**
+     * Points and enables the attributes that are present in the vertex format and are supplied for every vertex. The
+     * other attributes are set as constant attributes.
+     */
+    private void enableAttributes()
+    {
+        int stride = vertexFormat.getStride();
+
+        vao.pointAttribute(vertexLocation, vertexFormat.getNumPositionComponents(), GL_FLOAT, false, stride,
+                bufferOffset + vertexFormat.getPositionOffset(), vbo);
+        vao.enableAttributeArray(vertexLocation);
+
+        if (!isColorStreamed())
+        {
+            Color color = isTexCoordStreamed() ? Color.TRANSPARENT : Color.WHITE;
+            GL3Context.vertexAttribute(colorLocation, color.getR(), color.getG(), color.getB(), color.getA());
+        }
+        else
+        {
+            VertexFormat.ColorFormat colorFormat = vertexFormat.getColorFormat();
+
+            vao.pointAttribute(colorLocation, colorFormat.getNumComponents(), colorFormat.getGlType(),
+                    colorFormat == VertexFormat.ColorFormat.PACKED_RGBA8, stride,
+                    bufferOffset + vertexFormat.getColorOffset(), vbo);
+            vao.enableAttributeArray(colorLocation);
+        }
+
+        if (!isTexCoordStreamed())
+            GL3Context.vertexAttribute(texCoordLocation, 0, 0, 0, 1);
+        else
+        {
+            vao.pointAttribute(texCoordLocation, NUM_TEXCOORD_COMPONENTS, GL_FLOAT, false, stride,
+                    bufferOffset + vertexFormat.getTexCoordOffset(), vbo);
+            vao.enableAttributeArray(texCoordLocation);
+        }
+
+        if (!isNormalStreamed())
+            GL3Context.vertexAttribute(normalLocation, 0, 0, 0, 0);
+        else
+        {
+            vao.pointAttribute(normalLocation, NUM_NORMAL_COMPONENTS, GL_FLOAT, false, stride,
+                    bufferOffset + vertexFormat.getNormalOffset(), vbo);
+            vao.enableAttributeArray(normalLocation);
+        }
+    }
+
+    /**
+     * Disables the attributes that were enabled by enableAttributes.
+     */
+    private void disableAttributes()
+    {
+        vao.disableAttributeArray(vertexLocation);
+
+        if (isColorStreamed())
+            vao.disableAttributeArray(colorLocation);
+
+        if (isTexCoordStreamed())
+            vao.disableAttributeArray(texCoordLocation);
+
+        if (isNormalStreamed())
+            vao.disableAttributeArray(normalLocation);
+    }
+
+    /**
+     * @return True if the primitives being collected are independent of each other, so the batch can be split after
+     * any complete primitive.
+     */
+    private boolean isListPrimitive()
+    {
+        return beginMode == Primitive.POINTS || beginMode == Primitive.LINES || beginMode == Primitive.TRIANGLES;
+    }
+
+    private boolean isColorStreamed()
+    {
+        return vertexFormat.hasColors() && (attributeMask == null || attributeMask.hasColor());
+    }
+
+    private boolean isTexCoordStreamed()
+    {
+        return vertexFormat.hasTexCoords() && (attributeMask == null || attributeMask.hasTexCoord());
+    }
+
+    private boolean isNormalStreamed()
+    {
+        return vertexFormat.hasNormals() && (attributeMask == null || attributeMask.hasNormal());
+    }
+
     private void fillBuffers()
     {
         // Determine the fill color
         Color col = texCoordCount == vertexCount ? Color.TRANSPARENT : Color.WHITE;
 
         // Fill the color buffers
-        while (colorCount < vertexCount)
-            color(col);
+        if (isColorStreamed())
+            while (colorCount < vertexCount)
+                color(col);
 
         // Fill the texcoord buffers
-        while (texCoordCount < vertexCount)
-            texCoord(0, 0);
+        if (isTexCoordStreamed())
+            while (texCoordCount < vertexCount)
+                texCoord(0, 0);
 
         // Fill the normal buffers
-        while (normalCount < vertexCount)
-            normal(0, 0, 0, 0);
+        if (isNormalStreamed())
+            while (normalCount < vertexCount)
+                normal(0, 0, 0, 0);
     }
 
     /**
@@ -348,10 +821,9 @@ private void fillBuffers()
      */
     private void unmapBuffers()
     {
-        vboVert.unMap();
-        vboCol.unMap();
-        vboTex.unMap();
-        vboNorm.unMap();
+        // The ring stays mapped till the VBO is disposed
+        if (streamMode != StreamMode.PERSISTENT)
+            vbo.unMap();
     }
 
     /**
@@ -364,30 +836,57 @@ private void mapBuffers()
 
         vao.bind(true);
 
-        vBuffer = vboVert.map(BufferObject.MapAccess.WRITE_ONLY, vBuffer);
-        vao.pointAttribute(vertexLocation, NUM_VERTEX_COMPONENTS, GL_FLOAT, vboVert);
+        bufferOffset = 0;
+
+        if (streamMode == StreamMode.PERSISTENT)
+        {
+            mapRing();
+            return;
+        }
+
+        // Give the old data store to the driver and get a new one, so that we don't wait for the GPU. This is not
+        // done when the buffer is remapped in the middle of a batch, as that would throw away the collected vertices.
+        if (streamMode == StreamMode.ORPHAN && vertexCount == 0)
+            vbo.uploadData(vbo.getCapacity(), BufferObject.Usage.STREAM_DRAW);
+
+        buffer = vbo.map(BufferObject.MapAccess.WRITE_ONLY, buffer);
+    }
+
+    /**
+     * Reserves the rest of the current section of the ring for the next batch, and points the buffer at it so that the
+     * vertices are written straight into the ring. If the section cannot hold a batch of the current batch size, the
+     * ring moves on to the next section.
+     */
+    private void mapRing()
+    {
+        int stride = vertexFormat.getStride();
 
-        cBuffer = vboCol.map(BufferObject.MapAccess.WRITE_ONLY, cBuffer);
-        vao.pointAttribute(colorLocation, NUM_COLOR_COMPONENTS, GL_FLOAT, vboCol);
+        ring.ensureRemaining((int) vertexFormat.getSizeInBytes(batchSize));
+        bufferOffset = ring.getWriteOffset();
 
-        tBuffer = vboTex.map(BufferObject.MapAccess.WRITE_ONLY, tBuffer);
-        vao.pointAttribute(texCoordLocation, NUM_TEXCOORD_COMPONENTS, GL_FLOAT, vboTex);
+        // Keep a multiple of twelve, so that flushing a full batch never splits a primitive
+        ringVertices = ring.getRemaining() / stride;
+        ringVertices -= ringVertices % 12;
 
-        nBuffer = vboNorm.map(BufferObject.MapAccess.WRITE_ONLY, nBuffer);
-        vao.pointAttribute(normalLocation, NUM_NORMAL_COMPONENTS, GL_FLOAT, vboNorm);
+        buffer = MemoryUtil.memByteBuffer(ringAddress + bufferOffset, ringVertices * stride);
     }
 
     public void applyTransform(Matrix4 m)
     {
-        flush();
+        endOpenBatch();
+        beforeTransformChange();
 
         transform.applySelf(m);
+        afterTransformChange();
     }
 
     public void setTransform(Matrix4 m)
     {
-        flush();
+        endOpenBatch();
+        beforeTransformChange();
+
         transform.reset().applySelf(m);
+        afterTransformChange();
     }
 
     public void vertex(float x, float y)
@@ -397,22 +896,60 @@ public void vertex(float x, float y)
 
     public void vertex(float x, float y, float z, float w)
     {
-        if (vertexCount >= batchSize)
+        if (streamMode == StreamMode.PERSISTENT)
+        {
+            // The reserved part of the ring is full, the next batch goes after it
+            if (vertexCount >= ringVertices)
+                flush(FlushCause.OVERFLOW);
+        }
+        else if (vertexCount >= batchSize)
         {
-            if (batchSize >= maxBatchSize)
+            if (batchSize >= getMaxVertices())
                 // Don't resize more than the max batch size
-                flush();
+                flush(FlushCause.OVERFLOW);
             else
                 // Resize the batch by adding a block of vertices at the end
-                setBatchSize(batchSize + Math.min(4096, maxBatchSize - batchSize));
+                setBatchSize(batchSize + Math.min(4096, getMaxVertices() - batchSize));
         }
 
-        fillBuffers();
+        // Pad the attributes of the previous vertex, unless they are declared
+        if (attributeMask == null)
+            fillBuffers();
+
+        if (transformOnCpu && !vertexTransform.isIdentity())
+        {
+            // Many vertices with one transform are cheaper to transform in the shader, switch to the uniform at the
+            // end of a primitive
+            if (++cpuTransformedVertices > cpuTransformThreshold && vertexCount % 12 == 0 && isListPrimitive())
+            {
+                flush(FlushCause.TRANSFORM);
+                transformOnCpu = false;
+            }
+            else
+            {
+                float tx = vertexTransform.getX(x, y, z, w);
+                float ty = vertexTransform.getY(x, y, z, w);
+                float tz = vertexTransform.getZ(x, y, z, w);
+                float tw = vertexTransform.getW(x, y, z, w);
+
+                x = tx;
+                y = ty;
+                z = tz;
+                w = tw;
+            }
+        }
+
+        int offset = vertexCount * vertexFormat.getStride() + vertexFormat.getPositionOffset();
+
+        int numComponents = vertexFormat.getNumPositionComponents();
 
-        vBuffer.putFloat(vertexCount * NUM_VERTEX_COMPONENTS * Float.BYTES, x)
-                .putFloat(vertexCount * NUM_VERTEX_COMPONENTS * Float.BYTES + 4, y)
-                .putFloat(vertexCount * NUM_VERTEX_COMPONENTS * Float.BYTES + 8, z)
-                .putFloat(vertexCount * NUM_VERTEX_COMPONENTS * Float.BYTES + 12, w);
+        buffer.putFloat(offset, x).putFloat(offset + 4, y);
+
+        if (numComponents > 2)
+            buffer.putFloat(offset + 8, z);
+
+        if (numComponents > 3)
+            buffer.putFloat(offset + 12, w);
 
         vertexCount++;
     }
@@ -420,7 +957,7 @@ public void vertex(float x, float y, float z, float w)
     public void flushOnOverflow(int capacity)
     {
         if (vertexCount + capacity >= maxBatchSize)
-            flush();
+            flush(FlushCause.OVERFLOW);
     }
 
     public void vertex(float x, float y, float z)
@@ -455,15 +992,31 @@ public void color(Vector4 c)
 
     public void color(float r, float g, float b, float a)
     {
-        // Add the specified color
-        cBuffer.putFloat(colorCount * NUM_COLOR_COMPONENTS * Float.BYTES, r)
-                .putFloat(colorCount * NUM_COLOR_COMPONENTS * Float.BYTES + 4, g)
-                .putFloat(colorCount * NUM_COLOR_COMPONENTS * Float.BYTES + 8, b)
-                .putFloat(colorCount * NUM_COLOR_COMPONENTS * Float.BYTES + 12, a);
+        if (vertexFormat.hasColors())
+        {
+            // Add the specified color
+            int offset = colorCount * vertexFormat.getStride() + vertexFormat.getColorOffset();
+
+            if (vertexFormat.getColorFormat() == VertexFormat.ColorFormat.PACKED_RGBA8)
+                buffer.put(offset, packColorComponent(r))
+                        .put(offset + 1, packColorComponent(g))
+                        .put(offset + 2, packColorComponent(b))
+                        .put(offset + 3, packColorComponent(a));
+            else
+                buffer.putFloat(offset, r)
+                        .putFloat(offset + 4, g)
+                        .putFloat(offset + 8, b)
+                        .putFloat(offset + 12, a);
+        }
 
         colorCount++;
     }
 
+    private static byte packColorComponent(float c)
+    {
+        return (byte) (Math.min(Math.max(c, 0), 1) * 255 + 0.5f);
+    }
+
     public void texCoord(Vector2 v)
     {
         texCoord(v.getX(), v.getY());
@@ -471,9 +1024,13 @@ public void texCoord(Vector2 v)
 
     public void texCoord(float u, float v)
     {
-        // Add the specified texcoord
-        tBuffer.putFloat(texCoordCount * NUM_TEXCOORD_COMPONENTS * Float.BYTES, u)
-                .putFloat(texCoordCount * NUM_TEXCOORD_COMPONENTS * Float.BYTES + 4, v);
+        if (vertexFormat.hasTexCoords())
+        {
+            // Add the specified texcoord
+            int offset = texCoordCount * vertexFormat.getStride() + vertexFormat.getTexCoordOffset();
+
+            buffer.putFloat(offset, u).putFloat(offset + 4, v);
+        }
 
         texCoordCount++;
     }
@@ -485,10 +1042,26 @@ public void normal(float x, float y, float z)
 
     public void normal(float x, float y, float z, float w)
     {
-        nBuffer.putFloat(normalCount * NUM_NORMAL_COMPONENTS * Float.BYTES, x)
-                .putFloat(normalCount * NUM_NORMAL_COMPONENTS * Float.BYTES + 4, y)
-                .putFloat(normalCount * NUM_NORMAL_COMPONENTS * Float.BYTES + 8, z)
-                .putFloat(normalCount * NUM_NORMAL_COMPONENTS * Float.BYTES + 12, w);
+        if (vertexFormat.hasNormals())
+        {
+            if (transformOnCpu && !vertexTransform.isIdentity())
+            {
+                float nx = vertexTransform.getNormalX(x, y, z);
+                float ny = vertexTransform.getNormalY(x, y, z);
+                float nz = vertexTransform.getNormalZ(x, y, z);
+
+                x = nx;
+                y = ny;
+                z = nz;
+            }
+
+            int offset = normalCount * vertexFormat.getStride() + vertexFormat.getNormalOffset();
+
+            buffer.putFloat(offset, x)
+                    .putFloat(offset + 4, y)
+                    .putFloat(offset + 8, z)
+                    .putFloat(offset + 12, w);
+        }
 
         normalCount++;
     }
@@ -551,8 +1124,25 @@ public Transform getTransform()
 
     public void setTransform(Transform t)
     {
-        flush();
+        endOpenBatch();
+        beforeTransformChange();
+
+        transform.set(t);
+        afterTransformChange();
+    }
+
+    /**
+     * Sets the transform for the next vertices of the batch that is kept open, without ending it. Only meant for the
+     * client that keeps the batch open, the other transform setters end the open batch first.
+     *
+     * @param t The transform to use
+     */
+    public void setOpenBatchTransform(Transform t)
+    {
+        beforeTransformChange();
+
         transform.set(t);
+        afterTransformChange();
     }
 
     public void dispose()
@@ -563,15 +1153,15 @@ public void dispose()
         GL3Context.bindVertexArray(null);
         vao.dispose();
         GL3Context.bindVertexBuffer(null);
-        vboVert.dispose();
-        vboCol.dispose();
-        vboTex.dispose();
-        vboNorm.dispose();
+        vbo.dispose();
+
+        if (quadIndices != null)
+            quadIndices.dispose();
+
+        if (ring != null)
+            ring.reset();
 
-        BufferUtils.freeBuffer(vBufferAddress);
-        BufferUtils.freeBuffer(nBufferAddress);
-        BufferUtils.freeBuffer(cBufferAddress);
-        BufferUtils.freeBuffer(tBufferAddress);
+        BufferUtils.freeBuffer(bufferAddress);
     }
 
     public int getVertexLocation()
@@ -619,8 +1209,122 @@ public boolean isActive()
         return active;
     }
 
+    /**
+     * @return An IBatch that draws immediately with this batcher. The same adapter is returned every time, so that it
+     * is not created again for every frame.
+     */
+    public IBatch asBatch()
+    {
+        if (batch == null)
+            batch = IBatch.of(this);
+
+        return batch;
+    }
+
+    /**
+     * Marks the active batch as kept open by a client, which ends it lazily so that its next draws can be merged into
+     * the same batch. If anyone else begins the batcher, changes its transform, or calls {@link #endOpenBatch()}
+     * before the client ends the batch, the ender is run first to end it.
+     *
+     * @param ender The callback that ends the open batch, restoring any state that the client changed for it.
+     */
+    public void keepOpen(Runnable ender)
+    {
+        if (!active)
+            throw new IllegalStateException("Batcher not Active!");
+
+        openBatchEnder = ender;
+    }
+
+    /**
+     * Ends the batch that is kept open by a client, if there is one. Should be called before drawing without the
+     * batcher, or changing the OpenGL state, so the draws of the open batch come first and use the state they were
+     * collected with. {@link GL3Context} and {@link com.shc.silenceengine.backend.lwjgl3.opengl.Framebuffer} call it
+     * for the state they change.
+     */
+    public void endOpenBatch()
+    {
+        if (openBatchEnder == null || flushing)
+            return;
+
+        Runnable ender = openBatchEnder;
+        openBatchEnder = null;
+
+        ender.run();
+    }
+
     public Primitive getBeginMode()
     {
         return beginMode;
     }
+
+    /**
+     * Where the transform of the batcher is applied to the vertices.
+     */
+    public enum TransformMode
+    {
+        /**
+         * The transform is uploaded as a uniform, and applied in the vertex shader. Every change of the transform
+         * flushes the batch.
+         */
+        UNIFORM,
+
+        /**
+         * The transform is applied to the vertices on the CPU as they are added, so changing it doesn't flush the
+         * batch. Once more vertices than the threshold are added with the same transform, the rest of the batch uses
+         * the uniform instead, as that is cheaper for large batches.
+         */
+        CPU
+    }
+
+    /**
+     * The reasons for which the collected vertices are flushed, these are counted separately in the {@link
+     * RenderStats}.
+     */
+    public enum FlushCause
+    {
+        OVERFLOW(RenderStats.Counter.FLUSHES_OVERFLOW),
+        TEXTURE_SWITCH(RenderStats.Counter.FLUSHES_TEXTURE_SWITCH),
+        TRANSFORM(RenderStats.Counter.FLUSHES_TRANSFORM),
+        FORMAT(RenderStats.Counter.FLUSHES_FORMAT),
+        END(RenderStats.Counter.FLUSHES_END),
+        EXPLICIT(RenderStats.Counter.FLUSHES_EXPLICIT);
+
+        private RenderStats.Counter counter;
+
+        FlushCause(RenderStats.Counter counter)
+        {
+            this.counter = counter;
+        }
+
+        public RenderStats.Counter getCounter()
+        {
+            return counter;
+        }
+    }
+
+    /**
+     * The ways in which the collected vertices can be streamed to the GPU.
+     */
+    public enum StreamMode
+    {
+        /**
+         * Map the VBO while collecting, and unmap it before drawing. This makes the driver wait for the GPU to finish
+         * the previous draw call before the VBO is mapped again.
+         */
+        MAP,
+
+        /**
+         * Same as MAP, but the data store of the VBO is orphaned before it is mapped, so the driver can hand out a
+         * fresh block of memory instead of waiting for the GPU.
+         */
+        ORPHAN,
+
+        /**
+         * Map a ring of three sections once, and write the batches straight into it, so a flush only advances the write
+         * cursor. The fences inserted when leaving a section make sure that it is not overwritten while the GPU is
+         * still reading from it. Requires OpenGL 4.4 or the ARB_buffer_storage extension.
+         */
+        PERSISTENT
+    }
 }
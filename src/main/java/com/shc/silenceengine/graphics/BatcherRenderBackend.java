@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import com.shc.silenceengine.backend.lwjgl3.opengl.GL3Context;
+import com.shc.silenceengine.backend.lwjgl3.opengl.Primitive;
+import com.shc.silenceengine.backend.lwjgl3.opengl.Program;
+import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
+
+/**
+ * Plays the commands of a {@link RenderQueue} back with a {@link Batcher}. The vertices are drawn in the 2D sprite
+ * format, and the texture, the program and the blend mode which were in use before the playback are restored after it.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class BatcherRenderBackend implements IRenderBackend
+{
+    private Batcher batcher;
+
+    private Program      originalProgram;
+    private Texture      originalTexture;
+    private VertexFormat originalFormat;
+
+    private int originalBlendSource;
+    private int originalBlendDestination;
+
+    public BatcherRenderBackend(Batcher batcher)
+    {
+        this.batcher = batcher;
+    }
+
+    @Override
+    public void begin()
+    {
+        originalProgram = Program.CURRENT;
+        originalTexture = Texture.CURRENT;
+        originalFormat = batcher.getVertexFormat();
+
+        originalBlendSource = GL3Context.getBlendSource();
+        originalBlendDestination = GL3Context.getBlendDestination();
+
+        batcher.setVertexFormat(VertexFormat.SPRITE_2D);
+    }
+
+    @Override
+    public void bindProgram(Program program)
+    {
+        if (program == null)
+            program = originalProgram;
+
+        if (program != null)
+            program.use();
+    }
+
+    @Override
+    public void bindTexture(Texture texture)
+    {
+        (texture == null ? Texture.EMPTY : texture).bind();
+    }
+
+    @Override
+    public void setBlendMode(BlendMode blendMode)
+    {
+        GL3Context.blendFunc(blendMode.getSource(), blendMode.getDestination());
+    }
+
+    @Override
+    public void draw(Primitive primitive, float[] vertices, int vertexCount)
+    {
+        batcher.begin(primitive, AttributeMask.COLOR_TEXCOORD);
+        {
+            for (int i = 0; i < vertexCount; i++)
+            {
+                int offset = i * RenderQueue.VERTEX_SIZE;
+
+                batcher.vertex(vertices[offset], vertices[offset + 1]);
+                batcher.texCoord(vertices[offset + 2], vertices[offset + 3]);
+                batcher.color(vertices[offset + 4], vertices[offset + 5], vertices[offset + 6], vertices[offset + 7]);
+            }
+        }
+        batcher.end();
+    }
+
+    @Override
+    public void end()
+    {
+        batcher.setVertexFormat(originalFormat);
+
+        if (originalProgram != null)
+            originalProgram.use();
+
+        if (originalTexture != null)
+            originalTexture.bind();
+
+        GL3Context.blendFunc(originalBlendSource, originalBlendDestination);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * The ways in which the color of a fragment is blended with the color already in the framebuffer.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public enum BlendMode
+{
+    ALPHA(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA),
+    ADDITIVE(GL_SRC_ALPHA, GL_ONE),
+    MULTIPLY(GL_DST_COLOR, GL_ONE_MINUS_SRC_ALPHA),
+    PREMULTIPLIED_ALPHA(GL_ONE, GL_ONE_MINUS_SRC_ALPHA);
+
+    private int source;
+    private int destination;
+
+    BlendMode(int source, int destination)
+    {
+        this.source = source;
+        this.destination = destination;
+    }
+
+    public int getSource()
+    {
+        return source;
+    }
+
+    public int getDestination()
+    {
+        return destination;
+    }
+}
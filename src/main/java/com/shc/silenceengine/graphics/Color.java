@@ -28,6 +28,7 @@
 import com.shc.silenceengine.math.Vector4;
 import com.shc.silenceengine.utils.MathUtils;
 import com.shc.silenceengine.utils.ReusableStack;
+import com.shc.silenceengine.utils.Scratch;
 
 /**
  * A Color class with RGBA colors. Has 140 predefined colors from <a href=http://www.w3schools.com/cssref/css_colornames.asp>http://www.w3schools.com/cssref/css_colornames.asp</a>
@@ -36,6 +37,10 @@
  */
 public class Color extends Vector4
 {
+    /**
+     * @deprecated Use a {@link Scratch} scope for the temporaries, which gives all of them back when it is closed.
+     */
+    @Deprecated
     public static final ReusableStack<Color> REUSABLE_STACK = new ReusableStack<>(Color::new);
 
     // Primitive colors
@@ -358,11 +363,13 @@ public Color multiplySelf(float r, float g, float b, float a)
 
     public Color lerpSelf(Color target, float alpha)
     {
-        Color temp = Color.REUSABLE_STACK.pop();
-        scaleSelf(1f - alpha).addSelf(temp.set(target).scaleSelf(alpha));
-        Color.REUSABLE_STACK.push(temp);
+        try (Scratch scratch = Scratch.open())
+        {
+            Color temp = scratch.color();
+            scaleSelf(1f - alpha).addSelf(temp.set(target).scaleSelf(alpha));
 
-        return this;
+            return this;
+        }
     }
 
     public Color lerp(Color target, float alpha)
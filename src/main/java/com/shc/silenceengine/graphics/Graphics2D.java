@@ -29,19 +29,33 @@
 import com.shc.silenceengine.graphics.cameras.BaseCamera;
 import com.shc.silenceengine.graphics.cameras.OrthoCam;
 import com.shc.silenceengine.backend.lwjgl3.opengl.Primitive;
+import com.shc.silenceengine.backend.lwjgl3.opengl.Program;
 import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
 import com.shc.silenceengine.math.Matrix4;
 import com.shc.silenceengine.math.Transform;
 import com.shc.silenceengine.math.Vector2;
 import com.shc.silenceengine.math.Vector3;
 import com.shc.silenceengine.math.geom2d.Polygon;
-import com.shc.silenceengine.utils.MathUtils;
+import com.shc.silenceengine.utils.Scratch;
 
 /**
+ * Draws 2D shapes, textures and strings with the Batcher. The shapes are collected in one batch that is kept open
+ * across the calls, and is only drawn when the primitive, the attributes, the texture, the program or the camera
+ * changes, when anything else begins the batcher, when the OpenGL state or the framebuffer is changed through the
+ * GL3Context or the Framebuffer, at the end of the frame, or when {@link #flush()} is called. Call it before changing
+ * the OpenGL state directly. The fans and loops are drawn as lists, so that the filled shapes and the outlines each share a primitive. With the {@link
+ * Batcher.TransformMode#CPU} transform mode, shapes with different transforms are merged into one draw call too. When
+ * a RenderQueue is set with {@link #setRenderQueue(RenderQueue)}, the draws are recorded into it instead.
+ *
  * @author Sri Harsha Chilakapati
  */
 public class Graphics2D
 {
+    // The corners of a rectangle, in the order top-left, top-right, bottom-right and bottom-left, that make up the two
+    // triangles of a filled rectangle and the four lines of an outline
+    private static final int[] RECT_TRIANGLES = { 0, 1, 2, 0, 2, 3 };
+    private static final int[] RECT_LINES     = { 0, 1, 1, 2, 2, 3, 3, 0 };
+
     private static Graphics2D instance;
 
     private OrthoCam  camera;
@@ -55,6 +69,22 @@
 
     private Color color = new Color();
 
+    private TessellationCache tessellationCache;
+
+    /* The batch that is kept open across the draws, and the state it is drawn with */
+    private boolean       batchOpen;
+    private Primitive     batchPrimitive;
+    private AttributeMask batchMask;
+    private Texture       batchTexture;
+    private Program       batchProgram;
+    private Transform     batchTransform;
+    private Runnable      batchEnder;
+
+    /* The queue the shapes are recorded into instead of being drawn, and the batches the shapes are sent to */
+    private RenderQueue   renderQueue;
+    private BatcherTarget batcherTarget;
+    private QueueTarget   queueTarget;
+
     protected Graphics2D()
     {
         camera = new OrthoCam().initProjection(Display.getWidth(), Display.getHeight());
@@ -62,6 +92,14 @@ protected Graphics2D()
         paint = new Paint();
         transform = new Transform();
         font = TrueTypeFont.DEFAULT;
+
+        tessellationCache = new TessellationCache();
+
+        batchTransform = new Transform();
+        batchEnder = this::flush;
+
+        batcherTarget = new BatcherTarget();
+        queueTarget = new QueueTarget();
     }
 
     public static Graphics2D getInstance()
@@ -79,36 +117,144 @@ public void drawRect(Vector2 pos, float w, float h)
 
     public void drawRect(float x, float y, float w, float h)
     {
-        rect(x, y, w, h, Primitive.LINE_LOOP);
+        rect(x, y, w, h, Primitive.LINES, RECT_LINES);
     }
 
-    private void rect(float x, float y, float w, float h, Primitive primitive)
+    private void rect(float x, float y, float w, float h, Primitive primitive, int[] corners)
     {
-        Batcher batcher = SilenceEngine.graphics.getBatcher();
-        batcher.applyTransform(transform);
+        IBatch batch = beginShape(primitive, AttributeMask.COLOR_NORMAL, null);
 
-        startPainting();
+        for (int corner : corners)
         {
-            batcher.begin(primitive);
+            batch.vertex(corner == 1 || corner == 2 ? x + w : x, corner >= 2 ? y + h : y);
+
+            switch (corner)
             {
-                batcher.vertex(x, y);
-                batcher.color(paint.getTopLeftColor());
-                batcher.normal(Vector3.AXIS_Z);
+                case 0:
+                    batch.color(paint.getTopLeftColor());
+                    break;
 
-                batcher.vertex(x + w, y);
-                batcher.color(paint.getTopRightColor());
-                batcher.normal(Vector3.AXIS_Z);
+                case 1:
+                    batch.color(paint.getTopRightColor());
+                    break;
 
-                batcher.vertex(x + w, y + h);
-                batcher.color(paint.getBottomRightColor());
-                batcher.normal(Vector3.AXIS_Z);
+                case 2:
+                    batch.color(paint.getBottomRightColor());
+                    break;
 
-                batcher.vertex(x, y + h);
-                batcher.color(paint.getBottomLeftColor());
-                batcher.normal(Vector3.AXIS_Z);
+                default:
+                    batch.color(paint.getBottomLeftColor());
+                    break;
             }
-            batcher.end();
         }
+
+        batch.end();
+    }
+
+    /**
+     * Begins a shape. If a RenderQueue is set, the shape is recorded into it as a command of its own. Else the open
+     * batch is continued if it is drawn with the same primitive, attributes, texture, program and camera, or it is
+     * drawn and a new one is begun. The transform is only set on the batcher when it has changed since the last shape,
+     * as that flushes the batch unless the batcher transforms the vertices on the CPU.
+     *
+     * @param primitive The primitive of the shape, which should be a list so that shapes can be merged.
+     * @param mask      The attributes that are specified for every vertex of the shape.
+     * @param texture   The texture to draw the shape with, or null to draw it without a texture.
+     *
+     * @return The batch to send the vertices of the shape to, which has to be ended after the shape.
+     */
+    private IBatch beginShape(Primitive primitive, AttributeMask mask, Texture texture)
+    {
+        if (renderQueue != null)
+        {
+            queueTarget.begin(primitive, texture);
+            return queueTarget;
+        }
+
+        // The shapes without a texture are drawn with the texture that is bound, like the Batcher does
+        if (texture == null)
+            texture = Texture.CURRENT;
+
+        Batcher batcher = SilenceEngine.graphics.getBatcher();
+
+        if (batchOpen && (batchPrimitive != primitive || batchMask != mask || batchTexture != texture ||
+                          batchProgram != Program.CURRENT || BaseCamera.CURRENT != camera))
+            flush();
+
+        if (!batchOpen)
+        {
+            startPainting();
+            texture.bind();
+
+            batcher.setTransform(transform);
+            batchTransform.set(transform);
+
+            batcher.begin(primitive, mask);
+            batcher.keepOpen(batchEnder);
+
+            batchOpen = true;
+            batchPrimitive = primitive;
+            batchMask = mask;
+            batchTexture = texture;
+            batchProgram = Program.CURRENT;
+        }
+        else if (!sameMatrix(transform.getMatrix(), batchTransform.getMatrix()))
+        {
+            batcher.setOpenBatchTransform(transform);
+            batchTransform.set(transform);
+        }
+
+        batcherTarget.batcher = batcher;
+        batcherTarget.normals = mask.hasNormal();
+
+        return batcherTarget;
+    }
+
+    private static boolean sameMatrix(Matrix4 a, Matrix4 b)
+    {
+        for (int i = 0; i < 4; i++)
+            for (int j = 0; j < 4; j++)
+                if (a.get(i, j) != b.get(i, j))
+                    return false;
+
+        return true;
+    }
+
+    /**
+     * Draws the shapes that are collected in the open batch. This happens on its own when the state changes, when
+     * anything else begins the batcher, and at the end of the frame, so this only has to be called before drawing
+     * without the batcher.
+     */
+    public void flush()
+    {
+        if (!batchOpen)
+            return;
+
+        batchOpen = false;
+
+        // The state might have been changed since the last shape, but the batch is drawn with its own
+        BaseCamera currentCamera = BaseCamera.CURRENT;
+        Texture currentTexture = Texture.CURRENT;
+        Program currentProgram = Program.CURRENT;
+
+        camera.apply();
+        batchTexture.bind();
+        batchProgram.use();
+
+        Batcher batcher = SilenceEngine.graphics.getBatcher();
+
+        if (batcher.isActive())
+            batcher.end();
+
+        currentProgram.use();
+
+        // Restore the state from before the batch, unless it was changed by someone else in the meantime
+        if (currentTexture != batchTexture)
+            originalTexture = currentTexture;
+
+        if (currentCamera != camera)
+            originalCamera = currentCamera;
+
         endPainting();
     }
 
@@ -141,7 +287,7 @@ public void fillRect(Vector2 pos, float w, float h)
 
     public void fillRect(float x, float y, float w, float h)
     {
-        rect(x, y, w, h, Primitive.TRIANGLE_FAN);
+        rect(x, y, w, h, Primitive.TRIANGLES, RECT_TRIANGLES);
     }
 
     public void fillRect(Vector2 min, Vector2 max)
@@ -157,39 +303,52 @@ public void drawOval(Vector2 pos, float rx, float ry)
 
     public void drawOval(float x, float y, float rx, float ry)
     {
-        oval(x, y, rx, ry, Primitive.LINE_LOOP);
+        oval(x, y, rx, ry, Primitive.LINES);
     }
 
     private void oval(float x, float y, float rx, float ry, Primitive primitive)
     {
-        Batcher batcher = SilenceEngine.graphics.getBatcher();
-        batcher.applyTransform(transform);
-
-        Vector2 vertex = Vector2.REUSABLE_STACK.pop();
-        Color color = Color.REUSABLE_STACK.pop();
+        IBatch batch = beginShape(primitive, AttributeMask.COLOR_NORMAL, null);
 
-        startPainting();
+        try (Scratch scratch = Scratch.open())
         {
-            float width = 2 * rx;
-            float height = 2 * ry;
+            Color color = scratch.color();
 
-            batcher.begin(primitive);
+            int segments = tessellationCache.getCircleSegments(Math.max(Math.abs(rx), Math.abs(ry)));
+            float[] unitCircle = tessellationCache.getUnitCircle(segments);
+
+            if (primitive == Primitive.TRIANGLES)
             {
-                for (int i = 0; i < 360; i++)
+                // The fan around the first vertex, as triangles
+                for (int i = 1; i < segments - 1; i++)
                 {
-                    vertex.set(MathUtils.cos(i) * rx, MathUtils.sin(i) * ry);
-                    batcher.vertex(x + vertex.x, y + vertex.y);
-
-                    batcher.color(paint.getColor((rx + vertex.x) / width, (ry + vertex.y) / height, color));
-                    batcher.normal(Vector3.AXIS_Z);
+                    ovalVertex(batch, unitCircle, 0, x, y, rx, ry, color);
+                    ovalVertex(batch, unitCircle, i, x, y, rx, ry, color);
+                    ovalVertex(batch, unitCircle, i + 1, x, y, rx, ry, color);
+                }
+            }
+            else
+            {
+                // The loop, as separate lines
+                for (int i = 0; i < segments; i++)
+                {
+                    ovalVertex(batch, unitCircle, i, x, y, rx, ry, color);
+                    ovalVertex(batch, unitCircle, (i + 1) % segments, x, y, rx, ry, color);
                 }
             }
-            batcher.end();
         }
-        endPainting();
 
-        Vector2.REUSABLE_STACK.push(vertex);
-        Color.REUSABLE_STACK.push(color);
+        batch.end();
+    }
+
+    private void ovalVertex(IBatch batch, float[] unitCircle, int i, float x, float y, float rx, float ry,
+                            Color color)
+    {
+        float vx = unitCircle[2 * i] * rx;
+        float vy = unitCircle[2 * i + 1] * ry;
+
+        batch.vertex(x + vx, y + vy);
+        batch.color(paint.getColor((rx + vx) / (2 * rx), (ry + vy) / (2 * ry), color));
     }
 
     public void fillOval(Vector2 pos, float rx, float ry)
@@ -199,7 +358,7 @@ public void fillOval(Vector2 pos, float rx, float ry)
 
     public void fillOval(float x, float y, float rx, float ry)
     {
-        oval(x, y, rx, ry, Primitive.TRIANGLE_FAN);
+        oval(x, y, rx, ry, Primitive.TRIANGLES);
     }
 
     public void drawCircle(Vector2 pos, float r)
@@ -224,106 +383,115 @@ public void fillCircle(float x, float y, float r)
 
     public void drawLine(float x1, float y1, float x2, float y2)
     {
-        Batcher batcher = SilenceEngine.graphics.getBatcher();
-        batcher.applyTransform(transform);
+        IBatch batch = beginShape(Primitive.LINES, AttributeMask.COLOR_NORMAL, null);
 
-        startPainting();
-        {
-            batcher.begin(Primitive.LINES);
-            {
-                batcher.vertex(x1, y1);
-                batcher.color(paint.getTopLeftColor());
-                batcher.normal(Vector3.AXIS_Z);
+        batch.vertex(x1, y1);
+        batch.color(paint.getTopLeftColor());
 
-                batcher.vertex(x2, y2);
-                batcher.color(paint.getTopRightColor());
-                batcher.normal(Vector3.AXIS_Z);
-            }
-            batcher.end();
-        }
-        endPainting();
+        batch.vertex(x2, y2);
+        batch.color(paint.getTopRightColor());
+
+        batch.end();
     }
 
     private void polygon(Polygon polygon, Primitive primitive)
     {
-        Batcher batcher = SilenceEngine.graphics.getBatcher();
-        batcher.applyTransform(transform);
+        IBatch batch = beginShape(primitive, AttributeMask.COLOR_NORMAL, null);
 
-        startPainting();
+        try (Scratch scratch = Scratch.open())
         {
-            Vector2 tempVec2 = Vector2.REUSABLE_STACK.pop();
-            Color color = Color.REUSABLE_STACK.pop();
+            Vector2 tempVec2 = scratch.vector2();
+            Color color = scratch.color();
 
             float width = polygon.getBounds().getWidth();
             float height = polygon.getBounds().getHeight();
 
-            batcher.begin(primitive);
+            if (primitive == Primitive.TRIANGLES)
+            {
+                // The cached triangulation, which is correct for concave polygons too
+                int[] triangles = tessellationCache.getTriangles(polygon);
+
+                for (int index : triangles)
+                    polygonVertex(batch, polygon, polygon.getVertex(index), width, height, tempVec2, color);
+            }
+            else
             {
-                for (Vector2 vertex : polygon.getVertices())
+                // The loop, as separate lines
+                int vertexCount = polygon.vertexCount();
+
+                for (int i = 0; i < vertexCount; i++)
                 {
-                    batcher.vertex(tempVec2.set(vertex).addSelf(polygon.getPosition()));
-                    tempVec2.subtractSelf(polygon.getPosition());
-                    batcher.color(paint.getColor(tempVec2.x / width, tempVec2.y / height, color));
-                    batcher.normal(Vector3.AXIS_Z);
+                    polygonVertex(batch, polygon, polygon.getVertex(i), width, height, tempVec2, color);
+                    polygonVertex(batch, polygon, polygon.getVertex((i + 1) % vertexCount), width, height,
+                            tempVec2, color);
                 }
             }
-            batcher.end();
-
-            Vector2.REUSABLE_STACK.push(tempVec2);
-            Color.REUSABLE_STACK.push(color);
         }
-        endPainting();
+
+        batch.end();
+    }
+
+    private void polygonVertex(IBatch batch, Polygon polygon, Vector2 vertex, float width, float height,
+                               Vector2 tempVec2, Color color)
+    {
+        tempVec2.set(vertex).addSelf(polygon.getPosition());
+        batch.vertex(tempVec2.x, tempVec2.y);
+        tempVec2.subtractSelf(polygon.getPosition());
+        batch.color(paint.getColor(tempVec2.x / width, tempVec2.y / height, color));
     }
 
     public void drawPolygon(Polygon polygon)
     {
-        polygon(polygon, Primitive.LINE_LOOP);
+        polygon(polygon, Primitive.LINES);
     }
 
     public void fillPolygon(Polygon polygon)
     {
-        polygon(polygon, Primitive.TRIANGLE_FAN);
+        polygon(polygon, Primitive.TRIANGLES);
     }
 
     public void drawTexturedPolygon(Texture texture, Polygon polygon)
     {
-        Batcher batcher = SilenceEngine.graphics.getBatcher();
-        batcher.applyTransform(transform);
+        IBatch batch = beginShape(Primitive.TRIANGLES, AttributeMask.TEXCOORD, texture);
 
-        startPainting();
+        try (Scratch scratch = Scratch.open())
         {
-            Vector2 vertex = Vector2.REUSABLE_STACK.pop();
-            Vector2 texCoord = Vector2.REUSABLE_STACK.pop();
+            Vector2 vertex = scratch.vector2();
+            Vector2 texCoord = scratch.vector2();
 
-            texture.bind();
+            float polygonWidth = polygon.getMaxX() - polygon.getMinX();
+            float polygonHeight = polygon.getMaxY() - polygon.getMinY();
 
-            batcher.begin(Primitive.TRIANGLE_FAN);
+            // The fan around the first vertex, as triangles
+            for (int i = 1; i < polygon.vertexCount() - 1; i++)
             {
-                float polygonWidth = polygon.getMaxX() - polygon.getMinX();
-                float polygonHeight = polygon.getMaxY() - polygon.getMinY();
+                texturedPolygonVertex(batch, texture, polygon, polygon.getVertex(0), polygonWidth, polygonHeight,
+                        vertex, texCoord);
+                texturedPolygonVertex(batch, texture, polygon, polygon.getVertex(i), polygonWidth, polygonHeight,
+                        vertex, texCoord);
+                texturedPolygonVertex(batch, texture, polygon, polygon.getVertex(i + 1), polygonWidth,
+                        polygonHeight, vertex, texCoord);
+            }
+        }
 
-                polygon.getVertices().forEach(v ->
-                {
-                    vertex.set(v).addSelf(polygon.getPosition());
-                    batcher.vertex(vertex);
+        batch.end();
+    }
 
-                    // Unrotate the original vertex to calculate the correct texture coordinates
-                    texCoord.set(v)
-                            .subtractSelf(polygonWidth / 2, polygonHeight / 2)
-                            .rotateSelf(-polygon.getRotation())
-                            .addSelf(polygonWidth / 2, polygonHeight / 2);
+    private void texturedPolygonVertex(IBatch batch, Texture texture, Polygon polygon, Vector2 v,
+                                       float polygonWidth, float polygonHeight, Vector2 vertex, Vector2 texCoord)
+    {
+        vertex.set(v).addSelf(polygon.getPosition());
+        batch.vertex(vertex.x, vertex.y);
 
-                    texCoord.scaleSelf(texture.getMaxU() / polygonWidth, texture.getMaxV() / polygonHeight);
+        // Unrotate the original vertex to calculate the correct texture coordinates
+        texCoord.set(v)
+                .subtractSelf(polygonWidth / 2, polygonHeight / 2)
+                .rotateSelf(-polygon.getRotation())
+                .addSelf(polygonWidth / 2, polygonHeight / 2);
 
-                    batcher.texCoord(texCoord);
-                });
-            }
-            batcher.end();
+        texCoord.scaleSelf(texture.getMaxU() / polygonWidth, texture.getMaxV() / polygonHeight);
 
-            Vector2.REUSABLE_STACK.push(vertex);
-            Vector2.REUSABLE_STACK.push(texCoord);
-        }
-        endPainting();
+        batch.texCoord(texCoord.x, texCoord.y);
     }
 
     public void drawTexture(Texture texture, float x, float y)
@@ -338,43 +506,24 @@ public void drawTexture(Texture texture, float x, float y, float w, float h, boo
 
     public void drawTexture(Texture texture, float x, float y, float w, float h, boolean flipX, boolean flipY, Color tint)
     {
-        Batcher batcher = SilenceEngine.graphics.getBatcher();
-        batcher.applyTransform(transform);
-
-        startPainting();
-        {
-            texture.bind();
+        IBatch batch = beginShape(Primitive.TRIANGLES, AttributeMask.ALL, texture);
 
-            float minU = texture.getMinU();
-            float minV = texture.getMinV();
-            float maxU = texture.getMaxU();
-            float maxV = texture.getMaxV();
+        float minU = texture.getMinU();
+        float minV = texture.getMinV();
+        float maxU = texture.getMaxU();
+        float maxV = texture.getMaxV();
 
-            batcher.begin(Primitive.TRIANGLE_FAN);
-            {
-                batcher.vertex(x, y);
-                batcher.color(tint);
-                batcher.normal(Vector3.AXIS_Z);
-                batcher.texCoord(flipX ? maxU : minU, flipY ? maxV : minV);
-
-                batcher.vertex(x + w, y);
-                batcher.color(tint);
-                batcher.normal(Vector3.AXIS_Z);
-                batcher.texCoord(flipX ? minU : maxU, flipY ? maxV : minV);
-
-                batcher.vertex(x + w, y + h);
-                batcher.color(tint);
-                batcher.normal(Vector3.AXIS_Z);
-                batcher.texCoord(flipX ? minU : maxU, flipY ? minV : maxV);
+        for (int corner : RECT_TRIANGLES)
+        {
+            boolean right = corner == 1 || corner == 2;
+            boolean bottom = corner >= 2;
 
-                batcher.vertex(x, y + h);
-                batcher.color(tint);
-                batcher.normal(Vector3.AXIS_Z);
-                batcher.texCoord(flipX ? maxU : minU, flipY ? minV : maxV);
-            }
-            batcher.end();
+            batch.vertex(right ? x + w : x, bottom ? y + h : y);
+            batch.color(tint);
+            batch.texCoord(right != flipX ? maxU : minU, bottom != flipY ? maxV : minV);
         }
-        endPainting();
+
+        batch.end();
     }
 
     public void drawTexture(Texture texture, float x, float y, float w, float h)
@@ -394,12 +543,13 @@ public void drawTexture(Texture texture, Vector2 pos, float w, float h)
 
     public void drawTexture(Texture texture, Vector2 min, Vector2 max)
     {
-        Vector2 temp = Vector2.REUSABLE_STACK.pop();
-        Vector2 size = temp.set(max).subtractSelf(min);
-
-        drawTexture(texture, min.x, min.y, size.x, size.y, false, false);
+        try (Scratch scratch = Scratch.open())
+        {
+            Vector2 temp = scratch.vector2();
+            Vector2 size = temp.set(max).subtractSelf(min);
 
-        Vector2.REUSABLE_STACK.push(temp);
+            drawTexture(texture, min.x, min.y, size.x, size.y, false, false);
+        }
     }
 
     public void drawString(String string, Vector2 pos)
@@ -409,18 +559,33 @@ public void drawString(String string, Vector2 pos)
 
     public void drawString(String string, float x, float y)
     {
+        if (renderQueue != null)
+        {
+            try (Scratch scratch = Scratch.open())
+            {
+                Color color = scratch.color();
+                font.drawString(queueTarget, string, x, y, paint.getColor(0.5f, 0.5f, color));
+            }
+
+            return;
+        }
+
+        // The font begins the batcher on its own
+        flush();
+
         Batcher batcher = SilenceEngine.graphics.getBatcher();
         batcher.applyTransform(transform);
 
-        Color color = Color.REUSABLE_STACK.pop();
-
-        startPainting();
+        try (Scratch scratch = Scratch.open())
         {
-            font.drawString(batcher, string, x, y, paint.getColor(0.5f, 0.5f, color));
-        }
-        endPainting();
+            Color color = scratch.color();
 
-        Color.REUSABLE_STACK.push(color);
+            startPainting();
+            {
+                font.drawString(batcher, string, x, y, paint.getColor(0.5f, 0.5f, color));
+            }
+            endPainting();
+        }
     }
 
     public void rotate(float angle)
@@ -498,6 +663,14 @@ public Transform getTransform()
         return transform;
     }
 
+    /**
+     * @return The cache of the circle tables and polygon triangulations used to draw the shapes.
+     */
+    public TessellationCache getTessellationCache()
+    {
+        return tessellationCache;
+    }
+
     public void setTransform(Transform transform)
     {
         this.transform = transform;
@@ -512,4 +685,104 @@ public void setCamera(OrthoCam cam)
     {
         this.camera = cam;
     }
+
+    public RenderQueue getRenderQueue()
+    {
+        return renderQueue;
+    }
+
+    /**
+     * Sets a queue to record the shapes, the textures and the strings into, instead of drawing them with the batcher.
+     * The vertices are transformed on the CPU as they are recorded, and every draw becomes a command on the current
+     * layer and depth of the queue, so it is sorted and merged with the sprites and the maps that are recorded into
+     * the same queue. Like all the commands of the queue, the draws use the camera that is current when the queue is
+     * played back, not the camera of this Graphics2D.
+     *
+     * @param renderQueue The queue to record into, or null to draw with the batcher again.
+     */
+    public void setRenderQueue(RenderQueue renderQueue)
+    {
+        flush();
+        this.renderQueue = renderQueue;
+    }
+
+    /**
+     * Sends the vertices of the shapes into the open batch of the batcher, adding the normals if the batch declares
+     * them. The batch is begun and ended by the Graphics2D, as it is kept open across the shapes.
+     */
+    private static class BatcherTarget implements IBatch
+    {
+        private Batcher batcher;
+        private boolean normals;
+
+        @Override
+        public void begin(Primitive primitive, Texture texture)
+        {
+        }
+
+        @Override
+        public void vertex(float x, float y)
+        {
+            batcher.vertex(x, y);
+
+            if (normals)
+                batcher.normal(Vector3.AXIS_Z);
+        }
+
+        @Override
+        public void texCoord(float u, float v)
+        {
+            batcher.texCoord(u, v);
+        }
+
+        @Override
+        public void color(float r, float g, float b, float a)
+        {
+            batcher.color(r, g, b, a);
+        }
+
+        @Override
+        public void end()
+        {
+        }
+    }
+
+    /**
+     * Records the vertices of the shapes into the render queue, transformed with the transform of the Graphics2D.
+     */
+    private class QueueTarget implements IBatch
+    {
+        private VertexTransform vertexTransform = new VertexTransform();
+
+        @Override
+        public void begin(Primitive primitive, Texture texture)
+        {
+            vertexTransform.set(transform.getMatrix());
+            renderQueue.begin(primitive, texture);
+        }
+
+        @Override
+        public void vertex(float x, float y)
+        {
+            renderQueue.vertex(vertexTransform.getX(x, y, 0, 1), vertexTransform.getY(x, y, 0, 1));
+        }
+
+        @Override
+        public void texCoord(float u, float v)
+        {
+            renderQueue.texCoord(u, v);
+        }
+
+        @Override
+        public void color(float r, float g, float b, float a)
+        {
+            renderQueue.color(r, g, b, a);
+        }
+
+        @Override
+        public void end()
+        {
+            renderQueue.end();
+        }
+    }
 }
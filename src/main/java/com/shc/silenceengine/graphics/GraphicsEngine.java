@@ -64,6 +64,9 @@ public class GraphicsEngine implements IEngine
     private ModelBatch  modelBatch;
     private SpriteBatch spriteBatch;
 
+    private RenderQueue          renderQueue;
+    private BatcherRenderBackend renderBackend;
+
     public Material getCurrentMaterial()
     {
         return currentMaterial;
@@ -109,6 +112,9 @@ public void init()
         modelBatch = new ModelBatch();
         spriteBatch = new SpriteBatch();
 
+        renderQueue = new RenderQueue();
+        renderBackend = new BatcherRenderBackend(batcher);
+
         // Default font!!
         TrueTypeFont.DEFAULT = new TrueTypeFont("Verdana", TrueTypeFont.STYLE_NORMAL, 16);
 
@@ -130,11 +136,16 @@ public void beginFrame()
     @Override
     public void endFrame()
     {
+        // Draw the batch that is still open, before the buffers are swapped
+        batcher.endOpenBatch();
+
         Display.update();
 
         totalRenderCalls += renderCalls;
         renderCallsPerFrame = renderCalls;
         renderCalls = 0;
+
+        RenderStats.endFrame();
     }
 
     @Override
@@ -224,6 +235,24 @@ public SpriteBatch getSpriteBatch()
         return spriteBatch;
     }
 
+    /**
+     * @return The queue that the 2D draws of a frame can be recorded into, to be drawn with the minimum number of state
+     * changes by {@link #flushRenderQueue()}.
+     */
+    public RenderQueue getRenderQueue()
+    {
+        return renderQueue;
+    }
+
+    /**
+     * Draws all the commands recorded into the render queue, and clears it for the next frame.
+     */
+    public void flushRenderQueue()
+    {
+        renderQueue.play(renderBackend);
+        renderQueue.clear();
+    }
+
     public GLCapabilities getGLCapabilities()
     {
         return GL.getCapabilities();
@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import com.shc.silenceengine.backend.lwjgl3.opengl.Primitive;
+import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
+
+/**
+ * Something that 2D primitives can be drawn into, either directly with the {@link Batcher}, or recorded into a {@link
+ * RenderQueue} to be drawn later. Like with the Batcher, the texture coordinates and the color apply to the last vertex
+ * that was added.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public interface IBatch
+{
+    /**
+     * Begins a primitive.
+     *
+     * @param primitive The type of the primitive.
+     * @param texture   The texture to draw the primitive with, or null to draw it without a texture.
+     */
+    void begin(Primitive primitive, Texture texture);
+
+    void vertex(float x, float y);
+
+    void texCoord(float u, float v);
+
+    void color(float r, float g, float b, float a);
+
+    default void color(Color c)
+    {
+        color(c.getR(), c.getG(), c.getB(), c.getA());
+    }
+
+    /**
+     * Ends the primitive that is begun.
+     */
+    void end();
+
+    /**
+     * Wraps a Batcher so that it can be drawn into directly. The texture is bound when a primitive is begun, and the
+     * texture which was bound before is restored when it ends. A new adapter is created for every call, use {@link
+     * Batcher#asBatch()} to get the one that is cached in the batcher.
+     *
+     * @param batcher The batcher to draw with.
+     *
+     * @return An IBatch which draws immediately with the batcher.
+     */
+    static IBatch of(Batcher batcher)
+    {
+        return new IBatch()
+        {
+            private Texture originalTexture;
+
+            @Override
+            public void begin(Primitive primitive, Texture texture)
+            {
+                originalTexture = Texture.CURRENT;
+
+                if (texture != null)
+                    texture.bind();
+
+                batcher.begin(primitive);
+            }
+
+            @Override
+            public void vertex(float x, float y)
+            {
+                batcher.vertex(x, y);
+            }
+
+            @Override
+            public void texCoord(float u, float v)
+            {
+                batcher.texCoord(u, v);
+            }
+
+            @Override
+            public void color(float r, float g, float b, float a)
+            {
+                batcher.color(r, g, b, a);
+            }
+
+            @Override
+            public void end()
+            {
+                batcher.end();
+
+                if (originalTexture != null)
+                    originalTexture.bind();
+            }
+        };
+    }
+}
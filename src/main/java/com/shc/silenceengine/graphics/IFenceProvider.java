@@ -0,0 +1,65 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+/**
+ * Creates and waits on fences that signal when the GPU has finished executing all the commands that were issued before
+ * the fence was created. A fence is represented by a handle, where a handle of zero is never a valid fence. The
+ * {@link StreamingRing} uses this to know when it is safe to reuse a part of a buffer.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public interface IFenceProvider
+{
+    /**
+     * Inserts a new fence after all the commands issued so far.
+     *
+     * @return The handle of the fence, which is never zero.
+     */
+    long createFence();
+
+    /**
+     * Checks whether the commands before the fence have been completed by the GPU, without blocking.
+     *
+     * @param fence The handle of the fence to check.
+     *
+     * @return True if the fence is signaled, and waiting on it would return immediately.
+     */
+    boolean isSignaled(long fence);
+
+    /**
+     * Blocks until the commands before the fence have been completed by the GPU.
+     *
+     * @param fence The handle of the fence to wait on.
+     */
+    void waitFence(long fence);
+
+    /**
+     * Deletes a fence. The handle should no longer be used after this call.
+     *
+     * @param fence The handle of the fence to delete.
+     */
+    void deleteFence(long fence);
+}
@@ -36,6 +36,21 @@ default void drawString(Batcher b, String string, float x, float y)
         drawString(b, string, x, y, Color.WHITE);
     }
 
+    /**
+     * Draws a string into an IBatch, such as a {@link RenderQueue}. The fonts that can only draw with the Batcher do
+     * not support this.
+     *
+     * @param batch  The batch to draw the string into.
+     * @param string The string to draw.
+     * @param x      The x-coordinate of the top left corner of the string.
+     * @param y      The y-coordinate of the top left corner of the string.
+     * @param color  The color of the string.
+     */
+    default void drawString(IBatch batch, String string, float x, float y, Color color)
+    {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " can only draw with the Batcher");
+    }
+
     float getWidth(String string);
 
     float getHeight();
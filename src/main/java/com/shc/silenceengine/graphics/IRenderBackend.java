@@ -0,0 +1,69 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import com.shc.silenceengine.backend.lwjgl3.opengl.Primitive;
+import com.shc.silenceengine.backend.lwjgl3.opengl.Program;
+import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
+
+/**
+ * The state changes and draw calls that a {@link RenderQueue} plays its commands back with. The queue only calls the
+ * state changing methods when the state actually changes.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public interface IRenderBackend
+{
+    /**
+     * Called before the first command is played back.
+     */
+    void begin();
+
+    /**
+     * @param program The program to use, or null to use the program that was in use when the playback began.
+     */
+    void bindProgram(Program program);
+
+    /**
+     * @param texture The texture to bind, or null if the next draws don't use a texture.
+     */
+    void bindTexture(Texture texture);
+
+    void setBlendMode(BlendMode blendMode);
+
+    /**
+     * Draws a number of vertices with the current state.
+     *
+     * @param primitive   The primitive, one of POINTS, LINES or TRIANGLES.
+     * @param vertices    The vertices, {@link RenderQueue#VERTEX_SIZE} floats each (x, y, u, v, r, g, b, a).
+     * @param vertexCount The number of vertices to draw.
+     */
+    void draw(Primitive primitive, float[] vertices, int vertexCount);
+
+    /**
+     * Called after the last command is played back.
+     */
+    void end();
+}
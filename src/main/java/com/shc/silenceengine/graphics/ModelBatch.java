@@ -35,6 +35,7 @@
 import com.shc.silenceengine.math.Matrix4;
 import com.shc.silenceengine.math.Transform;
 import com.shc.silenceengine.math.Vector3;
+import com.shc.silenceengine.utils.Scratch;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -119,61 +120,63 @@ public void flush()
             material.getDiffuseMap().bind();
             SilenceEngine.graphics.useMaterial(material);
 
-            Vector3 temp = Vector3.REUSABLE_STACK.pop();
-
-            if (transform != null) batcher.applyTransform(transform);
-            batcher.begin();
+            try (Scratch scratch = Scratch.open())
             {
-                for (int i : indices)
-                {
-                    Mesh mesh = meshes.get(i);
-
-                    if (!mesh.getMaterial().equals(material))
-                    {
-                        batcher.end();
-
-                        material = mesh.getMaterial();
-                        material.getDiffuseMap().bind();
-                        SilenceEngine.graphics.useMaterial(material);
+                Vector3 temp = scratch.vector3();
 
-                        if (transform != null) batcher.applyTransform(transform);
-                        batcher.begin();
-                    }
-
-                    Transform transform = transforms.get(i);
-                    Color color = mesh.getMaterial().getDiffuse();
-
-                    Matrix4 modelMatrix = transform.getMatrix();
-                    Matrix4 normalMatrix = Matrix4.REUSABLE_STACK.pop();
-                    normalMatrix.set(modelMatrix).invertSelf().transposeSelf();
-
-                    for (Face face : mesh.getFaces())
+                if (transform != null) batcher.applyTransform(transform);
+                batcher.begin();
+                {
+                    for (int i : indices)
                     {
-                        batcher.vertex(temp.set(mesh.getVertices().get((int) face.vertexIndex.x)).multiplySelf(modelMatrix));
-                        batcher.normal(temp.set(mesh.getNormals().get((int) face.normalIndex.x)).multiplySelf(normalMatrix).normalizeSelf());
-                        batcher.texCoord(mesh.getTexcoords().get((int) face.texcoordIndex.x));
-                        if (mesh.getMaterial().getDiffuseMap().getID() == Texture.EMPTY.getID())
-                            batcher.color(color.x, color.y, color.z, mesh.getMaterial().getDissolve());
-
-                        batcher.vertex(temp.set(mesh.getVertices().get((int) face.vertexIndex.y)).multiplySelf(modelMatrix));
-                        batcher.normal(temp.set(mesh.getNormals().get((int) face.normalIndex.y)).multiplySelf(normalMatrix).normalizeSelf());
-                        batcher.texCoord(mesh.getTexcoords().get((int) face.texcoordIndex.y));
-                        if (mesh.getMaterial().getDiffuseMap().getID() == Texture.EMPTY.getID())
-                            batcher.color(color.x, color.y, color.z, mesh.getMaterial().getDissolve());
-
-                        batcher.vertex(temp.set(mesh.getVertices().get((int) face.vertexIndex.z)).multiplySelf(modelMatrix));
-                        batcher.normal(temp.set(mesh.getNormals().get((int) face.normalIndex.z)).multiplySelf(normalMatrix).normalizeSelf());
-                        batcher.texCoord(mesh.getTexcoords().get((int) face.texcoordIndex.z));
-                        if (mesh.getMaterial().getDiffuseMap().getID() == Texture.EMPTY.getID())
-                            batcher.color(color.x, color.y, color.z, mesh.getMaterial().getDissolve());
+                        Mesh mesh = meshes.get(i);
+
+                        if (!mesh.getMaterial().equals(material))
+                        {
+                            batcher.end();
+
+                            material = mesh.getMaterial();
+                            material.getDiffuseMap().bind();
+                            SilenceEngine.graphics.useMaterial(material);
+
+                            if (transform != null) batcher.applyTransform(transform);
+                            batcher.begin();
+                        }
+
+                        Transform transform = transforms.get(i);
+                        Color color = mesh.getMaterial().getDiffuse();
+
+                        Matrix4 modelMatrix = transform.getMatrix();
+                        try (Scratch meshScratch = Scratch.open())
+                        {
+                            Matrix4 normalMatrix = meshScratch.matrix4();
+                            normalMatrix.set(modelMatrix).invertSelf().transposeSelf();
+
+                            for (Face face : mesh.getFaces())
+                            {
+                                batcher.vertex(temp.set(mesh.getVertices().get((int) face.vertexIndex.x)).multiplySelf(modelMatrix));
+                                batcher.normal(temp.set(mesh.getNormals().get((int) face.normalIndex.x)).multiplySelf(normalMatrix).normalizeSelf());
+                                batcher.texCoord(mesh.getTexcoords().get((int) face.texcoordIndex.x));
+                                if (mesh.getMaterial().getDiffuseMap().getID() == Texture.EMPTY.getID())
+                                    batcher.color(color.x, color.y, color.z, mesh.getMaterial().getDissolve());
+
+                                batcher.vertex(temp.set(mesh.getVertices().get((int) face.vertexIndex.y)).multiplySelf(modelMatrix));
+                                batcher.normal(temp.set(mesh.getNormals().get((int) face.normalIndex.y)).multiplySelf(normalMatrix).normalizeSelf());
+                                batcher.texCoord(mesh.getTexcoords().get((int) face.texcoordIndex.y));
+                                if (mesh.getMaterial().getDiffuseMap().getID() == Texture.EMPTY.getID())
+                                    batcher.color(color.x, color.y, color.z, mesh.getMaterial().getDissolve());
+
+                                batcher.vertex(temp.set(mesh.getVertices().get((int) face.vertexIndex.z)).multiplySelf(modelMatrix));
+                                batcher.normal(temp.set(mesh.getNormals().get((int) face.normalIndex.z)).multiplySelf(normalMatrix).normalizeSelf());
+                                batcher.texCoord(mesh.getTexcoords().get((int) face.texcoordIndex.z));
+                                if (mesh.getMaterial().getDiffuseMap().getID() == Texture.EMPTY.getID())
+                                    batcher.color(color.x, color.y, color.z, mesh.getMaterial().getDissolve());
+                            }
+                        }
                     }
-
-                    Matrix4.REUSABLE_STACK.push(normalMatrix);
                 }
+                batcher.end();
             }
-            batcher.end();
-
-            Vector3.REUSABLE_STACK.push(temp);
 
             originalTexture.bind();
             SilenceEngine.graphics.useMaterial(originalMaterial);
@@ -185,17 +188,18 @@ public void flush()
 
         if (staticMeshes.size() > 0)
         {
-            Transform temp = Transform.REUSABLE_STACK.pop();
-
-            for (int i : staticMeshIndices)
+            try (Scratch scratch = Scratch.open())
             {
-                StaticMesh mesh = staticMeshes.get(i);
-                Transform transform = staticMeshTransforms.get(i);
+                Transform temp = scratch.transform();
 
-                mesh.render(this.transform == null ? transform : temp.set(transform).applySelf(this.transform));
-            }
+                for (int i : staticMeshIndices)
+                {
+                    StaticMesh mesh = staticMeshes.get(i);
+                    Transform transform = staticMeshTransforms.get(i);
 
-            Transform.REUSABLE_STACK.push(temp);
+                    mesh.render(this.transform == null ? transform : temp.set(transform).applySelf(this.transform));
+                }
+            }
         }
 
         staticMeshes.clear();
@@ -220,22 +224,22 @@ private void sortMeshes()
             Transform transformI = billboardModelTransforms.get(i);
             Transform transformJ = billboardModelTransforms.get(j);
 
-            Vector3 originI = Vector3.REUSABLE_STACK.pop().set(0, 0, 0).multiplySelf(transformI.getMatrix());
-            Vector3 originJ = Vector3.REUSABLE_STACK.pop().set(0, 0, 0).multiplySelf(transformJ.getMatrix());
-
-            float distanceI = Vector3.ZERO.distance(originI);
-            float distanceJ = Vector3.ZERO.distance(originJ);
+            try (Scratch scratch = Scratch.open())
+            {
+                Vector3 originI = scratch.vector3().set(0, 0, 0).multiplySelf(transformI.getMatrix());
+                Vector3 originJ = scratch.vector3().set(0, 0, 0).multiplySelf(transformJ.getMatrix());
 
-            Vector3.REUSABLE_STACK.push(originI);
-            Vector3.REUSABLE_STACK.push(originJ);
+                float distanceI = Vector3.ZERO.distance(originI);
+                float distanceJ = Vector3.ZERO.distance(originJ);
 
-            if (distanceI < distanceJ)
-                return -1;
+                if (distanceI < distanceJ)
+                    return -1;
 
-            if (distanceI > distanceJ)
-                return 1;
+                if (distanceI > distanceJ)
+                    return 1;
 
-            return 0;
+                return 0;
+            }
         });
     }
 
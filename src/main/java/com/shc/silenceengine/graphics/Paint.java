@@ -24,6 +24,8 @@
 
 package com.shc.silenceengine.graphics;
 
+import com.shc.silenceengine.utils.Scratch;
+
 /**
  * @author Sri Harsha Chilakapati
  */
@@ -136,18 +138,18 @@ public void setBottomRightColor(Color bottomRight)
 
     public Color getColor(float u, float v, Color dest)
     {
-        Color temp1 = Color.REUSABLE_STACK.pop();
-        Color temp2 = Color.REUSABLE_STACK.pop();
-
-        Color c1 = temp1.set(topLeft).lerpSelf(topRight, u);
-        Color c2 = temp2.set(bottomLeft).lerpSelf(bottomRight, u);
+        try (Scratch scratch = Scratch.open())
+        {
+            Color temp1 = scratch.color();
+            Color temp2 = scratch.color();
 
-        dest.set(c1).lerpSelf(c2, v);
+            Color c1 = temp1.set(topLeft).lerpSelf(topRight, u);
+            Color c2 = temp2.set(bottomLeft).lerpSelf(bottomRight, u);
 
-        Color.REUSABLE_STACK.push(temp1);
-        Color.REUSABLE_STACK.push(temp2);
+            dest.set(c1).lerpSelf(c2, v);
 
-        return dest;
+            return dest;
+        }
     }
 
     public void setColor(Color color)
@@ -0,0 +1,653 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import com.shc.silenceengine.backend.lwjgl3.opengl.Primitive;
+import com.shc.silenceengine.backend.lwjgl3.opengl.Program;
+import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
+import com.shc.silenceengine.core.SilenceException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records the 2D draws of a frame as commands, and plays them back with the minimum number of state changes. Every
+ * command is given a 64-bit sort key, made up of (from the most significant bits) the layer, the depth, the program,
+ * the texture, the blend mode and the primitive. The commands are sorted once per frame with a stable radix sort on the
+ * keys, and then the consecutive commands which share the same state are merged into a single draw call. <p> The layer
+ * and the depth decide the order in which the commands are drawn: lower layers are drawn first, and in a layer the
+ * higher depths are drawn first, which matches the order of the entities in a {@link
+ * com.shc.silenceengine.scene.Scene2D}. The commands with the same layer and depth are grouped by their state, and keep
+ * the order they are recorded in otherwise. <p> The queue doesn't use OpenGL itself, it plays the commands back
+ * through an {@link IRenderBackend}, so it can be tested with a backend that only records the calls. <p> The
+ * sprites of a {@link SpriteBatch}, the maps of a {@link com.shc.silenceengine.scene.tiled.renderers.TmxMapRenderer}
+ * and the shapes of a {@link Graphics2D} with {@link Graphics2D#setRenderQueue(RenderQueue)} are recorded into the
+ * queue, and sorted together.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class RenderQueue implements IBatch
+{
+    /**
+     * The number of floats per vertex, the position, the texture coordinates and the color.
+     */
+    public static final int VERTEX_SIZE = 8;
+
+    public static final int MAX_LAYER = 0xFF;
+    public static final int MIN_DEPTH = Short.MIN_VALUE;
+    public static final int MAX_DEPTH = Short.MAX_VALUE;
+
+    // The positions and sizes of the fields in the sort key
+    private static final int LAYER_SHIFT     = 56;
+    private static final int DEPTH_SHIFT     = 40;
+    private static final int PROGRAM_SHIFT   = 32;
+    private static final int TEXTURE_SHIFT   = 8;
+    private static final int BLEND_SHIFT     = 4;
+    private static final int PROGRAM_MASK    = 0xFF;
+    private static final int TEXTURE_MASK    = 0xFFFFFF;
+    private static final int BLEND_MASK      = 0xF;
+    private static final int PRIMITIVE_MASK  = 0xF;
+    private static final int RADIX_BITS      = 8;
+    private static final int RADIX_SIZE      = 1 << RADIX_BITS;
+    private static final int RADIX_MASK      = RADIX_SIZE - 1;
+    private static final int INITIAL_COUNT   = 256;
+
+    private static final BlendMode[] BLEND_MODES = BlendMode.values();
+    private static final Primitive[] PRIMITIVES  = Primitive.values();
+
+    // The state that the next commands are recorded with
+    private int       layer;
+    private int       depth;
+    private Program   program;
+    private BlendMode blendMode;
+
+    // The programs used in this frame, the index of a program in this list (plus one) goes into the sort key
+    private List<Program> programs;
+
+    // The vertices of all the commands
+    private float[] vertices;
+    private int     vertexCount;
+
+    // The commands
+    private int       commandCount;
+    private long[]    keys;
+    private int[]     firstVertices;
+    private int[]     vertexCounts;
+    private Texture[] textures;
+    private Program[] commandPrograms;
+
+    // The command that is being recorded
+    private boolean   recording;
+    private Primitive primitive;
+    private Texture   texture;
+    private int       firstVertex;
+
+    // The sorted order of the commands, and the scratch space used to sort them and to convert the primitives
+    private int[]   order;
+    private int[]   sortBuffer;
+    private int[]   buckets;
+    private float[] scratch;
+
+    // The vertices of the merged commands which are drawn at once
+    private float[] staging;
+
+    // The statistics of the last playback
+    private int drawCalls;
+    private int textureBinds;
+    private int programBinds;
+    private int blendModeChanges;
+
+    public RenderQueue()
+    {
+        programs = new ArrayList<>();
+
+        vertices = new float[INITIAL_COUNT * 6 * VERTEX_SIZE];
+        staging = new float[INITIAL_COUNT * 6 * VERTEX_SIZE];
+        scratch = new float[INITIAL_COUNT * VERTEX_SIZE];
+
+        keys = new long[INITIAL_COUNT];
+        firstVertices = new int[INITIAL_COUNT];
+        vertexCounts = new int[INITIAL_COUNT];
+        textures = new Texture[INITIAL_COUNT];
+        commandPrograms = new Program[INITIAL_COUNT];
+
+        order = new int[INITIAL_COUNT];
+        sortBuffer = new int[INITIAL_COUNT];
+        buckets = new int[RADIX_SIZE];
+
+        clear();
+    }
+
+    /**
+     * Creates the sort key of a command.
+     *
+     * @param layer        The layer, between 0 and {@link #MAX_LAYER}.
+     * @param depth        The depth, between {@link #MIN_DEPTH} and {@link #MAX_DEPTH}.
+     * @param programIndex The index of the program, between 0 and 255.
+     * @param textureID    The ID of the texture. Only the lower 24 bits are used, which only affects the grouping of
+     *                     the commands, the textures are still compared when the commands are played back.
+     * @param blendMode    The blend mode.
+     * @param primitive    The primitive.
+     *
+     * @return The sort key of the command.
+     */
+    public static long createKey(int layer, int depth, int programIndex, int textureID, BlendMode blendMode,
+                                 Primitive primitive)
+    {
+        // Higher depths are drawn first, so invert the depth
+        long depthBits = MAX_DEPTH - Math.max(MIN_DEPTH, Math.min(MAX_DEPTH, depth));
+
+        return ((long) (layer & MAX_LAYER) << LAYER_SHIFT)
+               | (depthBits << DEPTH_SHIFT)
+               | ((long) (programIndex & PROGRAM_MASK) << PROGRAM_SHIFT)
+               | ((long) (textureID & TEXTURE_MASK) << TEXTURE_SHIFT)
+               | ((long) (blendMode.ordinal() & BLEND_MASK) << BLEND_SHIFT)
+               | (primitive.ordinal() & PRIMITIVE_MASK);
+    }
+
+    /**
+     * Removes all the commands, and resets the state to the layer 0, the depth 0, the default program and the alpha
+     * blend mode.
+     */
+    public void clear()
+    {
+        if (recording)
+            throw new SilenceException("Cannot clear the RenderQueue while recording a command");
+
+        // Don't hold on to the textures and programs of the last frame
+        Arrays.fill(textures, 0, commandCount, null);
+        Arrays.fill(commandPrograms, 0, commandCount, null);
+        programs.clear();
+
+        commandCount = 0;
+        vertexCount = 0;
+
+        layer = 0;
+        depth = 0;
+        program = null;
+        blendMode = BlendMode.ALPHA;
+    }
+
+    @Override
+    public void begin(Primitive primitive, Texture texture)
+    {
+        if (recording)
+            throw new SilenceException("RenderQueue is already recording a command");
+
+        recording = true;
+
+        this.primitive = primitive;
+        this.texture = texture;
+
+        firstVertex = vertexCount;
+    }
+
+    @Override
+    public void vertex(float x, float y)
+    {
+        if (!recording)
+            throw new SilenceException("RenderQueue is not recording a command");
+
+        if ((vertexCount + 1) * VERTEX_SIZE > vertices.length)
+            vertices = Arrays.copyOf(vertices, vertices.length * 2);
+
+        int offset = vertexCount * VERTEX_SIZE;
+
+        vertices[offset] = x;
+        vertices[offset + 1] = y;
+        vertices[offset + 2] = 0;
+        vertices[offset + 3] = 0;
+
+        // Same defaults as the Batcher, textured vertices are not tinted
+        Color color = texture == null ? Color.WHITE : Color.TRANSPARENT;
+
+        vertices[offset + 4] = color.getR();
+        vertices[offset + 5] = color.getG();
+        vertices[offset + 6] = color.getB();
+        vertices[offset + 7] = color.getA();
+
+        vertexCount++;
+    }
+
+    @Override
+    public void texCoord(float u, float v)
+    {
+        int offset = lastVertexOffset();
+
+        vertices[offset + 2] = u;
+        vertices[offset + 3] = v;
+    }
+
+    @Override
+    public void color(float r, float g, float b, float a)
+    {
+        int offset = lastVertexOffset();
+
+        vertices[offset + 4] = r;
+        vertices[offset + 5] = g;
+        vertices[offset + 6] = b;
+        vertices[offset + 7] = a;
+    }
+
+    private int lastVertexOffset()
+    {
+        if (!recording || vertexCount == firstVertex)
+            throw new SilenceException("There is no vertex to set the attributes of");
+
+        return (vertexCount - 1) * VERTEX_SIZE;
+    }
+
+    @Override
+    public void end()
+    {
+        if (!recording)
+            throw new SilenceException("RenderQueue is not recording a command");
+
+        recording = false;
+
+        // Convert the strips, fans and loops into lists, so that consecutive commands can be merged
+        Primitive listPrimitive = convertToList();
+
+        int count = vertexCount - firstVertex;
+
+        if (count == 0)
+            return;
+
+        if (commandCount == keys.length)
+            growCommands();
+
+        int programIndex = program == null ? 0 : programs.indexOf(program) + 1;
+        int textureID = texture == null ? 0 : texture.getID();
+
+        keys[commandCount] = createKey(layer, depth, programIndex, textureID, blendMode, listPrimitive);
+        firstVertices[commandCount] = firstVertex;
+        vertexCounts[commandCount] = count;
+        textures[commandCount] = texture;
+        commandPrograms[commandCount] = program;
+
+        commandCount++;
+    }
+
+    private Primitive convertToList()
+    {
+        int count = vertexCount - firstVertex;
+
+        switch (primitive)
+        {
+            case POINTS:
+            case LINES:
+            case TRIANGLES:
+                return primitive;
+
+            case LINE_STRIP:
+            case LINE_LOOP:
+                copyToScratch(count);
+
+                for (int i = 0; i + 1 < count; i++)
+                {
+                    appendFromScratch(i);
+                    appendFromScratch(i + 1);
+                }
+
+                if (primitive == Primitive.LINE_LOOP && count > 2)
+                {
+                    appendFromScratch(count - 1);
+                    appendFromScratch(0);
+                }
+
+                return Primitive.LINES;
+
+            case TRIANGLE_FAN:
+                copyToScratch(count);
+
+                for (int i = 1; i + 1 < count; i++)
+                {
+                    appendFromScratch(0);
+                    appendFromScratch(i);
+                    appendFromScratch(i + 1);
+                }
+
+                return Primitive.TRIANGLES;
+
+            case TRIANGLE_STRIP:
+                copyToScratch(count);
+
+                for (int i = 0; i + 2 < count; i++)
+                {
+                    // Every other triangle of a strip is wound the other way
+                    appendFromScratch(i % 2 == 0 ? i : i + 1);
+                    appendFromScratch(i % 2 == 0 ? i + 1 : i);
+                    appendFromScratch(i + 2);
+                }
+
+                return Primitive.TRIANGLES;
+        }
+
+        return primitive;
+    }
+
+    private void copyToScratch(int count)
+    {
+        if (count * VERTEX_SIZE > scratch.length)
+            scratch = new float[count * VERTEX_SIZE * 2];
+
+        System.arraycopy(vertices, firstVertex * VERTEX_SIZE, scratch, 0, count * VERTEX_SIZE);
+        vertexCount = firstVertex;
+    }
+
+    private void appendFromScratch(int index)
+    {
+        if ((vertexCount + 1) * VERTEX_SIZE > vertices.length)
+            vertices = Arrays.copyOf(vertices, vertices.length * 2);
+
+        System.arraycopy(scratch, index * VERTEX_SIZE, vertices, vertexCount * VERTEX_SIZE, VERTEX_SIZE);
+        vertexCount++;
+    }
+
+    private void growCommands()
+    {
+        int capacity = keys.length * 2;
+
+        keys = Arrays.copyOf(keys, capacity);
+        firstVertices = Arrays.copyOf(firstVertices, capacity);
+        vertexCounts = Arrays.copyOf(vertexCounts, capacity);
+        textures = Arrays.copyOf(textures, capacity);
+        commandPrograms = Arrays.copyOf(commandPrograms, capacity);
+
+        order = new int[capacity];
+        sortBuffer = new int[capacity];
+    }
+
+    /**
+     * Sorts the commands by their keys. The sort is stable, so the commands with the same key stay in the order they
+     * are recorded in.
+     */
+    private void sort()
+    {
+        for (int i = 0; i < commandCount; i++)
+            order[i] = i;
+
+        if (commandCount < 2)
+            return;
+
+        int[] source = order;
+        int[] destination = sortBuffer;
+
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS)
+        {
+            Arrays.fill(buckets, 0);
+
+            for (int i = 0; i < commandCount; i++)
+                buckets[(int) (keys[source[i]] >>> shift) & RADIX_MASK]++;
+
+            // All the keys have the same digit, this pass wouldn't change anything
+            if (buckets[(int) (keys[source[0]] >>> shift) & RADIX_MASK] == commandCount)
+                continue;
+
+            int offset = 0;
+
+            for (int i = 0; i < RADIX_SIZE; i++)
+            {
+                int bucketSize = buckets[i];
+                buckets[i] = offset;
+                offset += bucketSize;
+            }
+
+            for (int i = 0; i < commandCount; i++)
+            {
+                int index = source[i];
+                destination[buckets[(int) (keys[index] >>> shift) & RADIX_MASK]++] = index;
+            }
+
+            int[] temp = source;
+            source = destination;
+            destination = temp;
+        }
+
+        order = source;
+        sortBuffer = destination;
+    }
+
+    /**
+     * Sorts the commands and plays them back through a backend. The consecutive commands that share the same program,
+     * texture, blend mode and primitive are drawn with a single draw call, and the state is only changed when it is
+     * different from the state of the previous draw. The commands are retained, call {@link #clear()} to start the
+     * next frame.
+     *
+     * @param backend The backend to play the commands back with.
+     */
+    public void play(IRenderBackend backend)
+    {
+        if (recording)
+            throw new SilenceException("Cannot play the RenderQueue while recording a command");
+
+        sort();
+
+        drawCalls = 0;
+        textureBinds = 0;
+        programBinds = 0;
+        blendModeChanges = 0;
+
+        backend.begin();
+
+        Program currentProgram = null;
+        Texture currentTexture = null;
+        BlendMode currentBlendMode = null;
+        Primitive currentPrimitive = null;
+
+        int stagedVertices = 0;
+
+        for (int n = 0; n < commandCount; n++)
+        {
+            int i = order[n];
+
+            Program commandProgram = commandPrograms[i];
+            Texture commandTexture = textures[i];
+            BlendMode commandBlendMode = BLEND_MODES[(int) (keys[i] >>> BLEND_SHIFT) & BLEND_MASK];
+            Primitive commandPrimitive = PRIMITIVES[(int) keys[i] & PRIMITIVE_MASK];
+
+            boolean programChanged = n == 0 || commandProgram != currentProgram;
+            boolean textureChanged = n == 0 || !isSameTexture(commandTexture, currentTexture);
+            boolean blendModeChanged = commandBlendMode != currentBlendMode;
+
+            if (programChanged || textureChanged || blendModeChanged || commandPrimitive != currentPrimitive)
+            {
+                if (stagedVertices > 0)
+                    draw(backend, currentPrimitive, stagedVertices);
+
+                stagedVertices = 0;
+            }
+
+            if (programChanged)
+            {
+                backend.bindProgram(commandProgram);
+                currentProgram = commandProgram;
+                programBinds++;
+            }
+
+            if (textureChanged)
+            {
+                backend.bindTexture(commandTexture);
+                currentTexture = commandTexture;
+                textureBinds++;
+            }
+
+            if (blendModeChanged)
+            {
+                backend.setBlendMode(commandBlendMode);
+                currentBlendMode = commandBlendMode;
+                blendModeChanges++;
+            }
+
+            currentPrimitive = commandPrimitive;
+
+            // Append the vertices of this command to the current draw
+            int size = vertexCounts[i] * VERTEX_SIZE;
+
+            if (stagedVertices * VERTEX_SIZE + size > staging.length)
+                staging = Arrays.copyOf(staging, Math.max(staging.length * 2, stagedVertices * VERTEX_SIZE + size));
+
+            System.arraycopy(vertices, firstVertices[i] * VERTEX_SIZE, staging, stagedVertices * VERTEX_SIZE, size);
+            stagedVertices += vertexCounts[i];
+        }
+
+        if (stagedVertices > 0)
+            draw(backend, currentPrimitive, stagedVertices);
+
+        backend.end();
+    }
+
+    private void draw(IRenderBackend backend, Primitive primitive, int count)
+    {
+        backend.draw(primitive, staging, count);
+        drawCalls++;
+    }
+
+    private static boolean isSameTexture(Texture a, Texture b)
+    {
+        // Sub textures share the ID of their parent, so they don't need a bind
+        if (a == null || b == null)
+            return a == b;
+
+        return a.getID() == b.getID();
+    }
+
+    public int getLayer()
+    {
+        return layer;
+    }
+
+    /**
+     * @param layer The layer of the commands recorded next, between 0 and {@link #MAX_LAYER}. Lower layers are drawn
+     *              first.
+     */
+    public void setLayer(int layer)
+    {
+        if (layer < 0 || layer > MAX_LAYER)
+            throw new IllegalArgumentException("The layer should be between 0 and " + MAX_LAYER);
+
+        this.layer = layer;
+    }
+
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @param depth The depth of the commands recorded next. In a layer, higher depths are drawn first. Depths outside
+     *              the range of a short are clamped.
+     */
+    public void setDepth(int depth)
+    {
+        this.depth = depth;
+    }
+
+    public Program getProgram()
+    {
+        return program;
+    }
+
+    /**
+     * @param program The program of the commands recorded next, or null to use the program which is in use when the
+     *                queue is played back.
+     */
+    public void setProgram(Program program)
+    {
+        if (program != null && !programs.contains(program))
+        {
+            if (programs.size() == PROGRAM_MASK)
+                throw new SilenceException("A RenderQueue cannot use more than " + PROGRAM_MASK + " programs in a frame");
+
+            programs.add(program);
+        }
+
+        this.program = program;
+    }
+
+    public BlendMode getBlendMode()
+    {
+        return blendMode;
+    }
+
+    public void setBlendMode(BlendMode blendMode)
+    {
+        this.blendMode = blendMode;
+    }
+
+    public boolean isRecording()
+    {
+        return recording;
+    }
+
+    /**
+     * @return The number of commands recorded since the last clear.
+     */
+    public int getCommandCount()
+    {
+        return commandCount;
+    }
+
+    /**
+     * @return The number of vertices recorded since the last clear.
+     */
+    public int getVertexCount()
+    {
+        return vertexCount;
+    }
+
+    /**
+     * @return The number of draw calls made by the last playback.
+     */
+    public int getDrawCalls()
+    {
+        return drawCalls;
+    }
+
+    /**
+     * @return The number of textures bound by the last playback.
+     */
+    public int getTextureBinds()
+    {
+        return textureBinds;
+    }
+
+    /**
+     * @return The number of programs bound by the last playback.
+     */
+    public int getProgramBinds()
+    {
+        return programBinds;
+    }
+
+    /**
+     * @return The number of times the blend mode was changed by the last playback.
+     */
+    public int getBlendModeChanges()
+    {
+        return blendModeChanges;
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import java.util.Arrays;
+
+/**
+ * Counts the work done by the renderer in every frame: the draw calls, the vertices submitted, the flushes of the
+ * {@link Batcher} by their cause, the texture binds, the program switches and the buffer map and unmap calls. The
+ * counts of the last few frames are kept, so that the minimum, average and maximum over them can be queried.
+ * <p>
+ * The stats are disabled by default. While disabled, counting is a single check of a static flag and nothing is
+ * recorded, so the calls can stay in the hot paths of the renderer.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public final class RenderStats
+{
+    public static final int DEFAULT_WINDOW_SIZE = 60;
+
+    private static final int NUM_COUNTERS = Counter.values().length;
+
+    private static boolean enabled;
+
+    // The counts of the frame in progress
+    private static long[] current = new long[NUM_COUNTERS];
+
+    // The counts of the last frames, used as a ring
+    private static long[][] history = new long[DEFAULT_WINDOW_SIZE][NUM_COUNTERS];
+
+    private static int historyIndex;
+    private static int numFrames;
+
+    /**
+     * Prevent instantiation
+     */
+    private RenderStats()
+    {
+    }
+
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables the stats. The counts collected so far are cleared in either case.
+     *
+     * @param enabled Whether the work done in the frames should be counted.
+     */
+    public static void setEnabled(boolean enabled)
+    {
+        RenderStats.enabled = enabled;
+        reset();
+    }
+
+    /**
+     * @return The number of frames the minimum, average and maximum are taken over.
+     */
+    public static int getWindowSize()
+    {
+        return history.length;
+    }
+
+    public static void setWindowSize(int frames)
+    {
+        if (frames < 1)
+            throw new IllegalArgumentException("The window should be at least one frame");
+
+        history = new long[frames][NUM_COUNTERS];
+        reset();
+    }
+
+    public static void count(Counter counter)
+    {
+        if (enabled)
+            current[counter.ordinal()]++;
+    }
+
+    public static void count(Counter counter, int amount)
+    {
+        if (enabled)
+            current[counter.ordinal()] += amount;
+    }
+
+    /**
+     * Ends the frame in progress, moving its counts into the window. Called by the {@link GraphicsEngine} at the end
+     * of every frame.
+     */
+    public static void endFrame()
+    {
+        if (!enabled)
+            return;
+
+        System.arraycopy(current, 0, history[historyIndex], 0, NUM_COUNTERS);
+        Arrays.fill(current, 0);
+
+        historyIndex = (historyIndex + 1) % history.length;
+        numFrames = Math.min(numFrames + 1, history.length);
+    }
+
+    /**
+     * Clears the counts of the frame in progress and of the window.
+     */
+    public static void reset()
+    {
+        Arrays.fill(current, 0);
+
+        for (long[] frame : history)
+            Arrays.fill(frame, 0);
+
+        historyIndex = 0;
+        numFrames = 0;
+    }
+
+    /**
+     * @return The number of frames in the window, which is less than the window size till enough frames are ended.
+     */
+    public static int getFrameCount()
+    {
+        return numFrames;
+    }
+
+    /**
+     * @return The count in the frame in progress.
+     */
+    public static long getCurrent(Counter counter)
+    {
+        return current[counter.ordinal()];
+    }
+
+    /**
+     * @return The count in the last frame that ended, or zero if no frame ended yet.
+     */
+    public static long getLast(Counter counter)
+    {
+        if (numFrames == 0)
+            return 0;
+
+        return history[(historyIndex - 1 + history.length) % history.length][counter.ordinal()];
+    }
+
+    public static long getMin(Counter counter)
+    {
+        if (numFrames == 0)
+            return 0;
+
+        long min = Long.MAX_VALUE;
+
+        for (int i = 0; i < numFrames; i++)
+            min = Math.min(min, history[i][counter.ordinal()]);
+
+        return min;
+    }
+
+    public static long getMax(Counter counter)
+    {
+        long max = 0;
+
+        for (int i = 0; i < numFrames; i++)
+            max = Math.max(max, history[i][counter.ordinal()]);
+
+        return max;
+    }
+
+    public static float getAverage(Counter counter)
+    {
+        if (numFrames == 0)
+            return 0;
+
+        long total = 0;
+
+        for (int i = 0; i < numFrames; i++)
+            total += history[i][counter.ordinal()];
+
+        return (float) total / numFrames;
+    }
+
+    /**
+     * @return A line with the average, minimum and maximum of every counter over the window.
+     */
+    public static String getSummary()
+    {
+        StringBuilder summary = new StringBuilder();
+
+        for (Counter counter : Counter.values())
+        {
+            if (summary.length() > 0)
+                summary.append(" | ");
+
+            summary.append(counter.getLabel()).append(": ")
+                    .append(String.format("%.1f", getAverage(counter)))
+                    .append(" [").append(getMin(counter)).append(", ").append(getMax(counter)).append("]");
+        }
+
+        return summary.toString();
+    }
+
+    /**
+     * The things that are counted in every frame.
+     */
+    public enum Counter
+    {
+        DRAW_CALLS("Draws"),
+
+        /**
+         * The vertices submitted to the GPU by the {@link Batcher}.
+         */
+        VERTICES("Vertices"),
+
+        /**
+         * Flushes of the Batcher because the batch was full.
+         */
+        FLUSHES_OVERFLOW("Overflow flushes"),
+
+        /**
+         * Flushes of the Batcher because a different texture had to be bound.
+         */
+        FLUSHES_TEXTURE_SWITCH("Texture flushes"),
+
+        /**
+         * Flushes of the Batcher because its transform or transform mode changed.
+         */
+        FLUSHES_TRANSFORM("Transform flushes"),
+
+        /**
+         * Flushes of the Batcher because its vertex format changed.
+         */
+        FLUSHES_FORMAT("Format flushes"),
+
+        /**
+         * Flushes of the Batcher because a batch ended.
+         */
+        FLUSHES_END("End flushes"),
+
+        /**
+         * Flushes of the Batcher requested by the user.
+         */
+        FLUSHES_EXPLICIT("Explicit flushes"),
+
+        TEXTURE_BINDS("Texture binds"),
+        PROGRAM_SWITCHES("Program switches"),
+        BUFFER_MAPS("Maps"),
+        BUFFER_UNMAPS("Unmaps");
+
+        private String label;
+
+        Counter(String label)
+        {
+            this.label = label;
+        }
+
+        public String getLabel()
+        {
+            return label;
+        }
+    }
+}
@@ -29,26 +29,23 @@
 import com.shc.silenceengine.backend.lwjgl3.opengl.Primitive;
 import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
 import com.shc.silenceengine.math.Vector2;
-
-import java.util.ArrayList;
-import java.util.List;
+import com.shc.silenceengine.utils.MathUtils;
 
 /**
  * @author Sri Harsha Chilakapati
  */
 public class SpriteBatch
 {
-    private List<Sprite>  sprites;
-    private List<Integer> indices;
-    private List<Vector2> positions;
+    private SpriteQueue queue;
+
+    // The corners of the current sprite, top-left, top-right, bottom-left and bottom-right
+    private float[] corners = new float[8];
 
     private boolean active;
 
     public SpriteBatch()
     {
-        sprites = new ArrayList<>();
-        indices = new ArrayList<>();
-        positions = new ArrayList<>();
+        queue = new SpriteQueue();
 
         active = false;
     }
@@ -58,105 +55,171 @@ public void begin()
         if (active)
             throw new SilenceException("SpriteBatch already active");
 
-        sprites.clear();
-        indices.clear();
-
-        positions.forEach(Vector2.REUSABLE_STACK::push);
-        positions.clear();
+        queue.clear();
 
         active = true;
     }
 
     public void flush()
     {
-        if (sprites.size() == 0)
+        if (queue.size() == 0)
             return;
 
-        sortSprites();
+        queue.sort();
 
         Batcher batcher = SilenceEngine.graphics.getBatcher();
 
         Texture originalTexture = Texture.CURRENT;
 
-        Texture texture = sprites.get(indices.get(0)).getTexture();
+        Texture texture = queue.getTexture(queue.getIndex(0));
         texture.bind();
 
-        Vector2 temp = Vector2.REUSABLE_STACK.pop();
+        // Sprites only need a 2D position, a texcoord and a tint
+        VertexFormat originalFormat = batcher.getVertexFormat();
+        batcher.setVertexFormat(VertexFormat.SPRITE_2D);
 
-        batcher.begin(Primitive.TRIANGLES);
+        batcher.beginQuads(AttributeMask.COLOR_TEXCOORD);
         {
-            for (int i : indices)
+            for (int n = 0; n < queue.size(); n++)
             {
-                Sprite sprite = sprites.get(i);
-                Vector2 position = positions.get(i);
+                int i = queue.getIndex(n);
 
-                Texture t = sprite.getTexture();
+                Texture t = queue.getTexture(i);
 
-                if (t.getID() != texture.getID())
+                if (queue.getTextureID(i) != texture.getID())
                 {
-                    batcher.end();
+                    batcher.flush(Batcher.FlushCause.TEXTURE_SWITCH);
 
                     texture = t;
                     t.bind();
-
-                    batcher.begin(Primitive.TRIANGLES);
                 }
 
-                float width = t.getWidth() * sprite.getScaleX();
-                float height = t.getHeight() * sprite.getScaleY();
+                computeCorners(i, t);
+
+                float r = queue.getTintR(i);
+                float g = queue.getTintG(i);
+                float b = queue.getTintB(i);
+                float a = queue.getTintA(i);
 
-                // Triangle 1
-                batcher.vertex(temp.set(-t.getWidth() / 2, -t.getHeight() / 2)  // Top-left
-                        .rotateSelf(sprite.getRotation())
-                        .scaleSelf(sprite.getScaleX(), sprite.getScaleY())
-                        .addSelf(position).addSelf(width / 2, height / 2));
+                batcher.vertex(corners[0], corners[1]);  // Top-left
                 batcher.texCoord(t.getMinU(), t.getMinV());
-                batcher.color(sprite.getTint());
-                batcher.vertex(temp.set(t.getWidth() / 2, -t.getHeight() / 2)   // Top-right
-                        .rotateSelf(sprite.getRotation())
-                        .scaleSelf(sprite.getScaleX(), sprite.getScaleY())
-                        .addSelf(position).addSelf(width / 2, height / 2));
+                batcher.color(r, g, b, a);
+                batcher.vertex(corners[2], corners[3]);  // Top-right
                 batcher.texCoord(t.getMaxU(), t.getMinV());
-                batcher.color(sprite.getTint());
-                batcher.vertex(temp.set(-t.getWidth() / 2, t.getHeight() / 2)   // Bottom-left
-                        .rotateSelf(sprite.getRotation())
-                        .scaleSelf(sprite.getScaleX(), sprite.getScaleY())
-                        .addSelf(position).addSelf(width / 2, height / 2));
+                batcher.color(r, g, b, a);
+                batcher.vertex(corners[4], corners[5]);  // Bottom-left
                 batcher.texCoord(t.getMinU(), t.getMaxV());
-                batcher.color(sprite.getTint());
-
-                // Triangle 2
-                batcher.vertex(temp.set(t.getWidth() / 2, -t.getHeight() / 2)   // Top-right
-                        .rotateSelf(sprite.getRotation())
-                        .scaleSelf(sprite.getScaleX(), sprite.getScaleY())
-                        .addSelf(position).addSelf(width / 2, height / 2));
-                batcher.texCoord(t.getMaxU(), t.getMinV());
-                batcher.color(sprite.getTint());
-                batcher.vertex(temp.set(t.getWidth() / 2, t.getHeight() / 2)   // Bottom-right
-                        .rotateSelf(sprite.getRotation())
-                        .scaleSelf(sprite.getScaleX(), sprite.getScaleY())
-                        .addSelf(position).addSelf(width / 2, height / 2));
+                batcher.color(r, g, b, a);
+                batcher.vertex(corners[6], corners[7]);  // Bottom-right
                 batcher.texCoord(t.getMaxU(), t.getMaxV());
-                batcher.color(sprite.getTint());
-                batcher.vertex(temp.set(-t.getWidth() / 2, t.getHeight() / 2)   // Bottom-left
-                        .rotateSelf(sprite.getRotation())
-                        .scaleSelf(sprite.getScaleX(), sprite.getScaleY())
-                        .addSelf(position).addSelf(width / 2, height / 2));
-                batcher.texCoord(t.getMinU(), t.getMaxV());
-                batcher.color(sprite.getTint());
+                batcher.color(r, g, b, a);
             }
         }
         batcher.end();
+        batcher.setVertexFormat(originalFormat);
 
-        Vector2.REUSABLE_STACK.push(temp);
+        queue.clear();
 
-        sprites.clear();
-        indices.clear();
+        originalTexture.bind();
+    }
 
-        positions.forEach(Vector2.REUSABLE_STACK::push);
-        positions.clear();
+    /**
+     * Records the sprites submitted so far into a RenderQueue as textured triangles, with the current layer and depth
+     * of the queue, instead of drawing them.
+     *
+     * @param renderQueue The queue to record the sprites into.
+     */
+    public void flush(RenderQueue renderQueue)
+    {
+        if (queue.size() == 0)
+            return;
 
-        originalTexture.bind();
+        queue.sort();
+
+        Texture texture = null;
+
+        for (int n = 0; n < queue.size(); n++)
+        {
+            int i = queue.getIndex(n);
+
+            Texture t = queue.getTexture(i);
+
+            if (texture == null || queue.getTextureID(i) != texture.getID())
+            {
+                if (texture != null)
+                    renderQueue.end();
+
+                texture = t;
+                renderQueue.begin(Primitive.TRIANGLES, t);
+            }
+
+            computeCorners(i, t);
+
+            float r = queue.getTintR(i);
+            float g = queue.getTintG(i);
+            float b = queue.getTintB(i);
+            float a = queue.getTintA(i);
+
+            // Triangle 1
+            renderQueue.vertex(corners[0], corners[1]);
+            renderQueue.texCoord(t.getMinU(), t.getMinV());
+            renderQueue.color(r, g, b, a);
+            renderQueue.vertex(corners[2], corners[3]);
+            renderQueue.texCoord(t.getMaxU(), t.getMinV());
+            renderQueue.color(r, g, b, a);
+            renderQueue.vertex(corners[4], corners[5]);
+            renderQueue.texCoord(t.getMinU(), t.getMaxV());
+            renderQueue.color(r, g, b, a);
+
+            // Triangle 2
+            renderQueue.vertex(corners[2], corners[3]);
+            renderQueue.texCoord(t.getMaxU(), t.getMinV());
+            renderQueue.color(r, g, b, a);
+            renderQueue.vertex(corners[6], corners[7]);
+            renderQueue.texCoord(t.getMaxU(), t.getMaxV());
+            renderQueue.color(r, g, b, a);
+            renderQueue.vertex(corners[4], corners[5]);
+            renderQueue.texCoord(t.getMinU(), t.getMaxV());
+            renderQueue.color(r, g, b, a);
+        }
+
+        renderQueue.end();
+        queue.clear();
+    }
+
+    /**
+     * Computes the corners of a sprite in the queue, rotated and scaled around its center.
+     */
+    private void computeCorners(int i, Texture t)
+    {
+        float scaleX = queue.getScaleX(i);
+        float scaleY = queue.getScaleY(i);
+
+        // The rotation is only computed once per sprite
+        float sin = MathUtils.sin(queue.getRotation(i));
+        float cos = MathUtils.cos(queue.getRotation(i));
+
+        // The corners are at (±halfWidth, ±halfHeight) around the center, rotated and then scaled
+        float halfWidth = t.getWidth() / 2;
+        float halfHeight = t.getHeight() / 2;
+
+        float wCos = halfWidth * cos;
+        float wSin = halfWidth * sin;
+        float hCos = halfHeight * cos;
+        float hSin = halfHeight * sin;
+
+        // The center of the sprite
+        float x = queue.getX(i) + halfWidth * scaleX;
+        float y = queue.getY(i) + halfHeight * scaleY;
+
+        corners[0] = x + (-wCos + hSin) * scaleX;
+        corners[1] = y + (-wSin - hCos) * scaleY;
+        corners[2] = x + (wCos + hSin) * scaleX;
+        corners[3] = y + (wSin - hCos) * scaleY;
+        corners[4] = x + (-wCos - hSin) * scaleX;
+        corners[5] = y + (-wSin + hCos) * scaleY;
+        corners[6] = x + (wCos - hSin) * scaleX;
+        corners[7] = y + (wSin + hCos) * scaleY;
     }
 
     public void end()
@@ -168,16 +231,27 @@ public void end()
         active = false;
     }
 
-    private void sortSprites()
+    /**
+     * Ends the batch by recording the sprites into a RenderQueue instead of drawing them.
+     *
+     * @param renderQueue The queue to record the sprites into.
+     */
+    public void end(RenderQueue renderQueue)
     {
-        // Only sort the indices
-        indices.sort((i, j) -> sprites.get(i).getTexture().getID() - sprites.get(j).getTexture().getID());
+        if (!active)
+            throw new SilenceException("SpriteBatch is not active");
+
+        flush(renderQueue);
+        active = false;
     }
 
     public void addSprite(Sprite sprite, Vector2 position)
     {
-        sprites.add(sprite);
-        positions.add(Vector2.REUSABLE_STACK.pop().set(position));
-        indices.add(sprites.size() - 1);
+        addSprite(sprite, position.getX(), position.getY());
+    }
+
+    public void addSprite(Sprite sprite, float x, float y)
+    {
+        queue.add(sprite, x, y);
     }
 }
@@ -0,0 +1,268 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
+
+import java.util.Arrays;
+
+/**
+ * The queue of sprites that are submitted to a {@link SpriteBatch} in a frame. The state of every sprite is copied into
+ * primitive arrays when it is added, and the arrays are only grown when a frame has more sprites than any frame before,
+ * so submitting the sprites doesn't allocate anything in the steady state. <p> The sprites are sorted by the ID of
+ * their texture with a stable radix sort on the primitive keys, which skips the passes in which all the keys have the
+ * same digit. Usually the texture IDs are small, and only one pass is done. This class doesn't use OpenGL, so it can be
+ * benchmarked without a window.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class SpriteQueue
+{
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX_SIZE = 1 << RADIX_BITS;
+    private static final int RADIX_MASK = RADIX_SIZE - 1;
+
+    private int count;
+
+    // The state of the sprites, indexed in the order they are added
+    private Texture[] textures;
+    private int[]     textureIds;
+    private float[]   x;
+    private float[]   y;
+    private float[]   rotations;
+    private float[]   scaleX;
+    private float[]   scaleY;
+    private float[]   tints;
+
+    // The indices of the sprites in the sorted order, and the scratch space for the radix sort
+    private int[] order;
+    private int[] sortBuffer;
+    private int[] buckets;
+
+    public SpriteQueue()
+    {
+        this(1024);
+    }
+
+    public SpriteQueue(int capacity)
+    {
+        capacity = Math.max(capacity, 1);
+
+        textures = new Texture[capacity];
+        textureIds = new int[capacity];
+        x = new float[capacity];
+        y = new float[capacity];
+        rotations = new float[capacity];
+        scaleX = new float[capacity];
+        scaleY = new float[capacity];
+        tints = new float[capacity * 4];
+
+        order = new int[capacity];
+        sortBuffer = new int[capacity];
+        buckets = new int[RADIX_SIZE];
+    }
+
+    /**
+     * Adds a sprite to this queue, copying its current texture, rotation, scale and tint.
+     *
+     * @param sprite The sprite to add
+     * @param x      The x-coordinate of the top-left corner of the sprite
+     * @param y      The y-coordinate of the top-left corner of the sprite
+     */
+    public void add(Sprite sprite, float x, float y)
+    {
+        if (count == textureIds.length)
+            grow();
+
+        Texture texture = sprite.getTexture();
+        Color tint = sprite.getTint();
+
+        textures[count] = texture;
+        textureIds[count] = texture.getID();
+
+        this.x[count] = x;
+        this.y[count] = y;
+        rotations[count] = sprite.getRotation();
+        scaleX[count] = sprite.getScaleX();
+        scaleY[count] = sprite.getScaleY();
+
+        int tintOffset = count * 4;
+        tints[tintOffset] = tint.getR();
+        tints[tintOffset + 1] = tint.getG();
+        tints[tintOffset + 2] = tint.getB();
+        tints[tintOffset + 3] = tint.getA();
+
+        order[count] = count;
+        count++;
+    }
+
+    private void grow()
+    {
+        int capacity = textureIds.length * 2;
+
+        textures = Arrays.copyOf(textures, capacity);
+        textureIds = Arrays.copyOf(textureIds, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        rotations = Arrays.copyOf(rotations, capacity);
+        scaleX = Arrays.copyOf(scaleX, capacity);
+        scaleY = Arrays.copyOf(scaleY, capacity);
+        tints = Arrays.copyOf(tints, capacity * 4);
+
+        order = Arrays.copyOf(order, capacity);
+        sortBuffer = new int[capacity];
+    }
+
+    /**
+     * Sorts the sprites by the ID of their texture. The sort is stable, so the sprites with the same texture stay in
+     * the order they are added.
+     */
+    public void sort()
+    {
+        for (int i = 0; i < count; i++)
+            order[i] = i;
+
+        if (count < 2)
+            return;
+
+        int[] source = order;
+        int[] destination = sortBuffer;
+
+        for (int shift = 0; shift < Integer.SIZE; shift += RADIX_BITS)
+        {
+            Arrays.fill(buckets, 0);
+
+            for (int i = 0; i < count; i++)
+                buckets[(textureIds[source[i]] >>> shift) & RADIX_MASK]++;
+
+            // All the keys have the same digit, this pass wouldn't change anything
+            if (buckets[(textureIds[source[0]] >>> shift) & RADIX_MASK] == count)
+                continue;
+
+            // Turn the counts into the starting offsets of the buckets
+            int offset = 0;
+
+            for (int i = 0; i < RADIX_SIZE; i++)
+            {
+                int bucketSize = buckets[i];
+                buckets[i] = offset;
+                offset += bucketSize;
+            }
+
+            for (int i = 0; i < count; i++)
+            {
+                int index = source[i];
+                destination[buckets[(textureIds[index] >>> shift) & RADIX_MASK]++] = index;
+            }
+
+            int[] temp = source;
+            source = destination;
+            destination = temp;
+        }
+
+        order = source;
+        sortBuffer = destination;
+    }
+
+    /**
+     * Removes all the sprites from this queue, keeping its capacity. The textures are released, so that the queue
+     * doesn't keep them alive after they are disposed.
+     */
+    public void clear()
+    {
+        Arrays.fill(textures, 0, count, null);
+        count = 0;
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * @param i The position of the sprite in the sorted order
+     *
+     * @return The index of the sprite in the order it is added, to be passed to the getters.
+     */
+    public int getIndex(int i)
+    {
+        return order[i];
+    }
+
+    public Texture getTexture(int index)
+    {
+        return textures[index];
+    }
+
+    public int getTextureID(int index)
+    {
+        return textureIds[index];
+    }
+
+    public float getX(int index)
+    {
+        return x[index];
+    }
+
+    public float getY(int index)
+    {
+        return y[index];
+    }
+
+    public float getRotation(int index)
+    {
+        return rotations[index];
+    }
+
+    public float getScaleX(int index)
+    {
+        return scaleX[index];
+    }
+
+    public float getScaleY(int index)
+    {
+        return scaleY[index];
+    }
+
+    public float getTintR(int index)
+    {
+        return tints[index * 4];
+    }
+
+    public float getTintG(int index)
+    {
+        return tints[index * 4 + 1];
+    }
+
+    public float getTintB(int index)
+    {
+        return tints[index * 4 + 2];
+    }
+
+    public float getTintA(int index)
+    {
+        return tints[index * 4 + 3];
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+/**
+ * Keeps track of the space in a buffer that is split into a number of equally sized sections, which are written to one
+ * after the other in a ring. Data is appended at the write cursor in the current section, and when a section is full, a
+ * fence is inserted and the ring moves on to the next section. Before a section is written again, the ring checks the
+ * fence that was inserted when it was left, and waits on it only if it is not signaled yet, so the data in it is never
+ * overwritten while the GPU is still reading from it. <p> This class only does the bookkeeping, it doesn't own any
+ * memory. This allows it to be used with any kind of buffer, and to be tested without a GPU by using a fake {@link
+ * IFenceProvider}.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class StreamingRing
+{
+    private IFenceProvider fenceProvider;
+
+    // The fences that guard every section, zero if the section is free
+    private long[] fences;
+
+    private int numSections;
+    private int sectionSize;
+
+    // The current section and the write cursor inside it (relative to the start of the section)
+    private int section;
+    private int cursor;
+
+    // The no. of times we had to wait on a fence, and the no. of times we moved to the next section
+    private int waits;
+    private int wraps;
+
+    /**
+     * Creates a new StreamingRing.
+     *
+     * @param numSections   The number of sections in the ring, three is usually enough to never wait on the GPU.
+     * @param sectionSize   The size of each section in bytes.
+     * @param fenceProvider The provider used to create and wait on fences.
+     */
+    public StreamingRing(int numSections, int sectionSize, IFenceProvider fenceProvider)
+    {
+        if (numSections < 2)
+            throw new IllegalArgumentException("A StreamingRing needs at least two sections");
+
+        if (sectionSize <= 0)
+            throw new IllegalArgumentException("The size of a section should be positive");
+
+        this.numSections = numSections;
+        this.sectionSize = sectionSize;
+        this.fenceProvider = fenceProvider;
+
+        fences = new long[numSections];
+    }
+
+    /**
+     * Makes sure that there is enough space in the current section to write a number of bytes, by moving to the next
+     * section if there is not.
+     *
+     * @param bytes The number of bytes that are about to be written.
+     *
+     * @return True if the ring had to move to a new section.
+     */
+    public boolean ensureRemaining(int bytes)
+    {
+        if (bytes > sectionSize)
+            throw new IllegalArgumentException("Cannot allocate " + bytes + " bytes in a section of " + sectionSize);
+
+        if (getRemaining() >= bytes)
+            return false;
+
+        nextSection();
+        return true;
+    }
+
+    /**
+     * Marks a number of bytes at the write cursor as used. This should be called after the data is written and the
+     * draw commands reading it are issued.
+     *
+     * @param bytes The number of bytes used.
+     */
+    public void commit(int bytes)
+    {
+        if (bytes > getRemaining())
+            throw new IllegalArgumentException("Cannot commit more bytes than what is remaining in the section");
+
+        cursor += bytes;
+    }
+
+    /**
+     * Aligns the write cursor to a multiple of some number of bytes, moving to the next section if the aligned cursor
+     * falls off the current section.
+     *
+     * @param alignment The alignment in bytes.
+     */
+    public void align(int alignment)
+    {
+        int aligned = ((cursor + alignment - 1) / alignment) * alignment;
+
+        if (aligned >= sectionSize)
+            nextSection();
+        else
+            cursor = aligned;
+    }
+
+    /**
+     * Fences the current section and moves to the next one, waiting on the GPU only if that section is still in use.
+     */
+    public void nextSection()
+    {
+        fences[section] = fenceProvider.createFence();
+
+        section = (section + 1) % numSections;
+        cursor = 0;
+        wraps++;
+
+        if (fences[section] != 0)
+        {
+            // Only block if the GPU is still reading from the section, usually it is done by now
+            if (!fenceProvider.isSignaled(fences[section]))
+            {
+                fenceProvider.waitFence(fences[section]);
+                waits++;
+            }
+
+            fenceProvider.deleteFence(fences[section]);
+
+            fences[section] = 0;
+        }
+    }
+
+    /**
+     * Deletes all the fences that are still pending, and moves the cursor to the start of the first section.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < numSections; i++)
+        {
+            if (fences[i] != 0)
+                fenceProvider.deleteFence(fences[i]);
+
+            fences[i] = 0;
+        }
+
+        section = 0;
+        cursor = 0;
+    }
+
+    /**
+     * @return The offset of the write cursor from the start of the buffer, in bytes.
+     */
+    public int getWriteOffset()
+    {
+        return section * sectionSize + cursor;
+    }
+
+    /**
+     * @return The number of bytes that can still be written to the current section.
+     */
+    public int getRemaining()
+    {
+        return sectionSize - cursor;
+    }
+
+    /**
+     * @return Whether a section is still guarded by a fence that was not waited on.
+     */
+    public boolean isPending(int section)
+    {
+        return fences[section] != 0;
+    }
+
+    public int getSection()
+    {
+        return section;
+    }
+
+    public int getNumSections()
+    {
+        return numSections;
+    }
+
+    public int getSectionSize()
+    {
+        return sectionSize;
+    }
+
+    /**
+     * @return The total size of the buffer that this ring manages, in bytes.
+     */
+    public int getCapacity()
+    {
+        return numSections * sectionSize;
+    }
+
+    /**
+     * @return The number of times the ring had to block on a fence that was not yet signaled before reusing a section.
+     */
+    public int getWaitCount()
+    {
+        return waits;
+    }
+
+    /**
+     * @return The number of times the ring moved to the next section.
+     */
+    public int getWrapCount()
+    {
+        return wraps;
+    }
+}
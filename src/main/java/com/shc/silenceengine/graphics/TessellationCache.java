@@ -0,0 +1,510 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.geom2d.Polygon;
+import com.shc.silenceengine.utils.MathUtils;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the tessellation of the shapes drawn by {@link Graphics2D}, so that drawing them every frame doesn't recompute
+ * them. Circles and ovals share tables of points on the unit circle, one per segment count, and the segment count is
+ * picked from the bucket of the radius. Polygons are triangulated once per topology into lists of triangle indices,
+ * so moving, rotating and scaling them reuses their triangles.
+ * <p>
+ * The entries are evicted in the least recently used order when the memory they take exceeds the budget. The polygons
+ * are only weakly referenced, the entries of the polygons that are no longer used are removed by the next lookup. A
+ * lookup that finds its entry allocates nothing.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class TessellationCache
+{
+    public static final long DEFAULT_MEMORY_BUDGET = 1024 * 1024;
+
+    public static final int MIN_CIRCLE_SEGMENTS = 16;
+    public static final int MAX_CIRCLE_SEGMENTS = 360;
+
+    // The approximate bytes taken by an entry besides its array, and by an array besides its elements
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final int ARRAY_OVERHEAD = 16;
+
+    // The unit circle tables, indexed by the segment count
+    private Entry[] circles = new Entry[MAX_CIRCLE_SEGMENTS + 1];
+
+    // The entries of the polygons, by the identity of the polygon. The polygons are looked up with the lookup key, so
+    // that a lookup doesn't allocate a weak reference
+    private Map<Object, Entry>      polygons = new HashMap<>();
+    private ReferenceQueue<Polygon> released = new ReferenceQueue<>();
+    private LookupKey               lookup   = new LookupKey();
+
+    // The least recently used list, the head is the most recently used entry
+    private Entry head;
+    private Entry tail;
+
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+    private long memoryUsed;
+
+    private int hits;
+    private int misses;
+    private int evictions;
+
+    /**
+     * Picks the number of segments to draw a circle of a radius with. The radius is bucketed to the next power of two,
+     * so that circles of similar sizes share the same table, and the segments are no longer than about three pixels.
+     *
+     * @param radius The radius of the circle, the larger radius for an oval.
+     *
+     * @return The number of segments, between {@link #MIN_CIRCLE_SEGMENTS} and {@link #MAX_CIRCLE_SEGMENTS}.
+     */
+    public int getCircleSegments(float radius)
+    {
+        if (!(radius > 1))
+            return MIN_CIRCLE_SEGMENTS;
+
+        int bucket = radius >= (1 << 30) ? (1 << 30) : Integer.highestOneBit((int) Math.ceil(radius) - 1) << 1;
+
+        return Math.min(MAX_CIRCLE_SEGMENTS, Math.max(MIN_CIRCLE_SEGMENTS, bucket * 2));
+    }
+
+    /**
+     * Returns the points on the unit circle for a number of segments, as cos and sin pairs starting at zero degrees
+     * and going counter clockwise.
+     *
+     * @param segments The number of segments, between 3 and {@link #MAX_CIRCLE_SEGMENTS}.
+     *
+     * @return The table of 2 * segments floats. It is shared, and should not be modified.
+     */
+    public float[] getUnitCircle(int segments)
+    {
+        if (segments < 3 || segments > MAX_CIRCLE_SEGMENTS)
+            throw new IllegalArgumentException("The segments should be between 3 and " + MAX_CIRCLE_SEGMENTS);
+
+        Entry entry = circles[segments];
+
+        if (entry != null)
+        {
+            hit(entry);
+            return entry.table;
+        }
+
+        misses++;
+
+        float[] table = new float[segments * 2];
+
+        for (int i = 0; i < segments; i++)
+        {
+            float angle = 360f * i / segments;
+
+            table[2 * i] = MathUtils.cos(angle);
+            table[2 * i + 1] = MathUtils.sin(angle);
+        }
+
+        entry = new Entry();
+        entry.segments = segments;
+        entry.table = table;
+        entry.bytes = ENTRY_OVERHEAD + ARRAY_OVERHEAD + table.length * Float.BYTES;
+
+        circles[segments] = entry;
+        insert(entry);
+
+        return table;
+    }
+
+    /**
+     * Returns the triangulation of a polygon, as indices into its vertices, three per triangle. The triangulation is
+     * computed again when the number of vertices or the topology version of the polygon changes, and not when it is
+     * only transformed. Concave polygons are triangulated correctly, unlike with a triangle fan.
+     *
+     * @param polygon The polygon to triangulate.
+     *
+     * @return The triangle indices. They are shared, and should not be modified.
+     */
+    public int[] getTriangles(Polygon polygon)
+    {
+        expunge();
+
+        lookup.polygon = polygon;
+        lookup.hash = System.identityHashCode(polygon);
+
+        Entry entry = polygons.get(lookup);
+        lookup.polygon = null;
+
+        if (entry != null)
+        {
+            if (entry.vertexCount == polygon.getVertices().size() && entry.topology == polygon.getTopologyVersion())
+            {
+                hit(entry);
+                return entry.indices;
+            }
+
+            remove(entry);
+        }
+
+        misses++;
+
+        int[] indices = triangulate(polygon.getVertices());
+
+        entry = new Entry();
+        entry.key = new PolygonKey(polygon, entry, released);
+        entry.vertexCount = polygon.getVertices().size();
+        entry.topology = polygon.getTopologyVersion();
+        entry.indices = indices;
+        entry.bytes = ENTRY_OVERHEAD + ARRAY_OVERHEAD + indices.length * Integer.BYTES;
+
+        polygons.put(entry.key, entry);
+        insert(entry);
+
+        return indices;
+    }
+
+    /**
+     * Triangulates a simple polygon by clipping its ears. Falls back to a fan of triangles for the part that is left
+     * if no ear can be found, which only happens with self intersecting or degenerate polygons.
+     *
+     * @param vertices The vertices of the polygon, in either winding.
+     *
+     * @return The triangle indices, three per triangle.
+     */
+    public static int[] triangulate(List<Vector2> vertices)
+    {
+        int n = vertices.size();
+
+        if (n < 3)
+            return new int[0];
+
+        int[] indices = new int[(n - 2) * 3];
+        int[] remaining = new int[n];
+
+        // Clip the ears in the winding of the polygon, so that the convex corners are known
+        float area = 0;
+
+        for (int i = 0, j = n - 1; i < n; j = i++)
+            area += vertices.get(j).x * vertices.get(i).y - vertices.get(i).x * vertices.get(j).y;
+
+        for (int i = 0; i < n; i++)
+            remaining[i] = area >= 0 ? i : n - 1 - i;
+
+        int count = n;
+        int index = 0;
+        int current = 0;
+        int tries = 0;
+
+        while (count > 3 && tries < count)
+        {
+            int previous = remaining[(current + count - 1) % count];
+            int ear = remaining[current];
+            int next = remaining[(current + 1) % count];
+
+            if (isEar(vertices, remaining, count, previous, ear, next))
+            {
+                indices[index++] = previous;
+                indices[index++] = ear;
+                indices[index++] = next;
+
+                System.arraycopy(remaining, current + 1, remaining, current, count - current - 1);
+                count--;
+
+                current = current % count;
+                tries = 0;
+            }
+            else
+            {
+                current = (current + 1) % count;
+                tries++;
+            }
+        }
+
+        // The last triangle, or a fan over what is left of a degenerate polygon
+        for (int i = 1; i < count - 1; i++)
+        {
+            indices[index++] = remaining[0];
+            indices[index++] = remaining[i];
+            indices[index++] = remaining[i + 1];
+        }
+
+        return indices;
+    }
+
+    private static boolean isEar(List<Vector2> vertices, int[] remaining, int count, int a, int b, int c)
+    {
+        Vector2 va = vertices.get(a);
+        Vector2 vb = vertices.get(b);
+        Vector2 vc = vertices.get(c);
+
+        // The corner should be convex in the counter clockwise winding
+        if (cross(va, vb, vc) <= 0)
+            return false;
+
+        // And no other vertex should be inside the triangle
+        for (int i = 0; i < count; i++)
+        {
+            int p = remaining[i];
+
+            if (p == a || p == b || p == c)
+                continue;
+
+            Vector2 vp = vertices.get(p);
+
+            if (cross(va, vb, vp) >= 0 && cross(vb, vc, vp) >= 0 && cross(vc, va, vp) >= 0)
+                return false;
+        }
+
+        return true;
+    }
+
+    private static float cross(Vector2 a, Vector2 b, Vector2 c)
+    {
+        return (b.x - a.x) * (c.y - a.y) - (b.y - a.y) * (c.x - a.x);
+    }
+
+    public long getMemoryBudget()
+    {
+        return memoryBudget;
+    }
+
+    /**
+     * Sets the number of bytes the cached tessellations can take, evicting the least recently used ones if they take
+     * more. The most recently used entry is always kept, even if it alone is larger than the budget.
+     *
+     * @param memoryBudget The budget in bytes.
+     */
+    public void setMemoryBudget(long memoryBudget)
+    {
+        if (memoryBudget < 0)
+            throw new IllegalArgumentException("The memory budget cannot be negative");
+
+        this.memoryBudget = memoryBudget;
+        evict();
+    }
+
+    /**
+     * @return The approximate number of bytes the cached tessellations take.
+     */
+    public long getMemoryUsed()
+    {
+        expunge();
+        return memoryUsed;
+    }
+
+    public int getHits()
+    {
+        return hits;
+    }
+
+    public int getMisses()
+    {
+        return misses;
+    }
+
+    public int getEvictions()
+    {
+        return evictions;
+    }
+
+    /**
+     * @return The number of cached tessellations.
+     */
+    public int size()
+    {
+        expunge();
+
+        int size = polygons.size();
+
+        for (Entry circle : circles)
+            if (circle != null)
+                size++;
+
+        return size;
+    }
+
+    public void clear()
+    {
+        while (tail != null)
+            remove(tail);
+
+        hits = misses = evictions = 0;
+    }
+
+    private void hit(Entry entry)
+    {
+        hits++;
+
+        if (entry == head)
+            return;
+
+        unlink(entry);
+        linkFirst(entry);
+    }
+
+    private void insert(Entry entry)
+    {
+        linkFirst(entry);
+        memoryUsed += entry.bytes;
+
+        evict();
+    }
+
+    private void evict()
+    {
+        while (memoryUsed > memoryBudget && tail != head)
+        {
+            remove(tail);
+            evictions++;
+        }
+    }
+
+    private void expunge()
+    {
+        PolygonKey key;
+
+        while ((key = (PolygonKey) released.poll()) != null)
+        {
+            // The entry may have been evicted or replaced before the polygon was collected
+            if (polygons.get(key) == key.entry)
+                remove(key.entry);
+        }
+    }
+
+    private void remove(Entry entry)
+    {
+        unlink(entry);
+        memoryUsed -= entry.bytes;
+
+        if (entry.key != null)
+            polygons.remove(entry.key);
+        else
+            circles[entry.segments] = null;
+    }
+
+    private void linkFirst(Entry entry)
+    {
+        entry.previous = null;
+        entry.next = head;
+
+        if (head != null)
+            head.previous = entry;
+
+        head = entry;
+
+        if (tail == null)
+            tail = entry;
+    }
+
+    private void unlink(Entry entry)
+    {
+        if (entry.previous != null)
+            entry.previous.next = entry.next;
+        else
+            head = entry.next;
+
+        if (entry.next != null)
+            entry.next.previous = entry.previous;
+        else
+            tail = entry.previous;
+
+        entry.previous = entry.next = null;
+    }
+
+    /**
+     * A cached tessellation, either a unit circle table or the triangles of a polygon.
+     */
+    private static class Entry
+    {
+        private PolygonKey key;
+        private int        vertexCount;
+        private int        topology;
+        private int[]      indices;
+
+        private int     segments;
+        private float[] table;
+
+        private int bytes;
+
+        private Entry previous;
+        private Entry next;
+    }
+
+    /**
+     * A weak reference to a polygon that is equal to the keys of the same polygon, even after it is cleared, so that
+     * the entry can still be removed.
+     */
+    private static class PolygonKey extends WeakReference<Polygon>
+    {
+        private final int   hash;
+        private final Entry entry;
+
+        private PolygonKey(Polygon polygon, Entry entry, ReferenceQueue<Polygon> queue)
+        {
+            super(polygon, queue);
+
+            this.hash = System.identityHashCode(polygon);
+            this.entry = entry;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (!(o instanceof PolygonKey)) return false;
+
+            Polygon polygon = get();
+            return polygon != null && polygon == ((PolygonKey) o).get();
+        }
+    }
+
+    /**
+     * The key a polygon is looked up with, equal to the weak key of the same polygon.
+     */
+    private static class LookupKey
+    {
+        private Polygon polygon;
+        private int     hash;
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof PolygonKey && ((PolygonKey) o).get() == polygon;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import com.shc.silenceengine.backend.lwjgl3.opengl.SubTexture;
+import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
+import com.shc.silenceengine.core.SilenceException;
+import org.lwjgl.BufferUtils;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * Packs a number of images into one or more large textures at runtime, so that the sprites using them can be drawn
+ * together. The images are added with a name, and once the atlas is built, every name gives a {@link SubTexture} of the
+ * page the image is packed in. Since all the sub textures of a page share its texture ID, the {@link SpriteBatch} draws
+ * them in a single batch instead of switching the texture for every image. <p> The images are laid out by a {@link
+ * TexturePacker}, so the same images added in the same order always give the same atlas.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class TextureAtlas
+{
+    private int pageWidth;
+    private int pageHeight;
+    private int padding;
+
+    // The images that are added, in the order they are added. They are released once the atlas is built.
+    private Map<String, Image> images;
+
+    private Map<String, SubTexture> regions;
+    private List<Texture>           pages;
+
+    private boolean built;
+
+    /**
+     * Creates a new TextureAtlas, which keeps two pixels of padding between the images.
+     *
+     * @param pageWidth  The width of every page in pixels.
+     * @param pageHeight The height of every page in pixels.
+     */
+    public TextureAtlas(int pageWidth, int pageHeight)
+    {
+        this(pageWidth, pageHeight, 2);
+    }
+
+    /**
+     * Creates a new TextureAtlas.
+     *
+     * @param pageWidth  The width of every page in pixels.
+     * @param pageHeight The height of every page in pixels.
+     * @param padding    The number of transparent pixels between the images, which prevents the neighbouring images
+     *                   from bleeding in when the textures are filtered.
+     */
+    public TextureAtlas(int pageWidth, int pageHeight, int padding)
+    {
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+        this.padding = padding;
+
+        images = new LinkedHashMap<>();
+        regions = new HashMap<>();
+        pages = new ArrayList<>();
+    }
+
+    /**
+     * Adds an image to this atlas.
+     *
+     * @param name  The name to get the sub texture of this image with.
+     * @param image The image to add.
+     *
+     * @return This atlas, so that calls can be chained.
+     */
+    public TextureAtlas add(String name, BufferedImage image)
+    {
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        byte[] pixels = new byte[width * height * 4];
+
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                int pixel = image.getRGB(x, y);
+                int offset = (y * width + x) * 4;
+
+                pixels[offset] = (byte) ((pixel >> 16) & 0xFF);
+                pixels[offset + 1] = (byte) ((pixel >> 8) & 0xFF);
+                pixels[offset + 2] = (byte) (pixel & 0xFF);
+                pixels[offset + 3] = (byte) ((pixel >> 24) & 0xFF);
+            }
+        }
+
+        return add(name, new Image(pixels, width, height));
+    }
+
+    /**
+     * Adds an image to this atlas. The pixels are copied, so the buffer can be reused after this method returns.
+     *
+     * @param name   The name to get the sub texture of this image with.
+     * @param pixels The pixels of the image in the RGBA format, with one byte per component, starting at the current
+     *               position of the buffer.
+     * @param width  The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     *
+     * @return This atlas, so that calls can be chained.
+     */
+    public TextureAtlas add(String name, ByteBuffer pixels, int width, int height)
+    {
+        byte[] copy = new byte[width * height * 4];
+
+        for (int i = 0; i < copy.length; i++)
+            copy[i] = pixels.get(pixels.position() + i);
+
+        return add(name, new Image(copy, width, height));
+    }
+
+    private TextureAtlas add(String name, Image image)
+    {
+        if (built)
+            throw new SilenceException("Cannot add images to a TextureAtlas that is already built");
+
+        if (images.containsKey(name))
+            throw new SilenceException("An image named " + name + " is already added to the TextureAtlas");
+
+        images.put(name, image);
+        return this;
+    }
+
+    /**
+     * Packs all the added images into the pages, and uploads the pages to the GPU.
+     *
+     * @return This atlas, so that calls can be chained.
+     */
+    public TextureAtlas build()
+    {
+        if (built)
+            throw new SilenceException("TextureAtlas is already built");
+
+        List<String> names = new ArrayList<>(images.keySet());
+
+        int[] widths = new int[names.size()];
+        int[] heights = new int[names.size()];
+
+        for (int i = 0; i < names.size(); i++)
+        {
+            Image image = images.get(names.get(i));
+
+            widths[i] = image.width;
+            heights[i] = image.height;
+        }
+
+        TexturePacker packer = new TexturePacker(pageWidth, pageHeight, padding);
+        List<TexturePacker.Region> packed = packer.pack(widths, heights);
+
+        // Copy the images into the pages
+        List<ByteBuffer> pageData = new ArrayList<>();
+
+        for (int i = 0; i < packer.getNumPages(); i++)
+            pageData.add(BufferUtils.createByteBuffer(pageWidth * pageHeight * 4));
+
+        for (int i = 0; i < names.size(); i++)
+        {
+            Image image = images.get(names.get(i));
+            TexturePacker.Region region = packed.get(i);
+
+            ByteBuffer data = pageData.get(region.getPage());
+
+            for (int row = 0; row < image.height; row++)
+            {
+                data.position(((region.getY() + row) * pageWidth + region.getX()) * 4);
+                data.put(image.pixels, row * image.width * 4, image.width * 4);
+            }
+        }
+
+        Texture originalTexture = Texture.CURRENT;
+
+        for (ByteBuffer data : pageData)
+        {
+            data.clear();
+
+            // Mipmaps of a page mix up the neighbouring images, so use plain linear filtering
+            Texture page = Texture.fromByteBuffer(data, pageWidth, pageHeight, 4);
+            page.setFilter(GL_LINEAR, GL_LINEAR);
+
+            pages.add(page);
+        }
+
+        if (originalTexture != null)
+            originalTexture.bind();
+
+        for (int i = 0; i < names.size(); i++)
+        {
+            TexturePacker.Region region = packed.get(i);
+
+            float minU = region.getX() / (float) pageWidth;
+            float minV = region.getY() / (float) pageHeight;
+            float maxU = (region.getX() + region.getWidth()) / (float) pageWidth;
+            float maxV = (region.getY() + region.getHeight()) / (float) pageHeight;
+
+            regions.put(names.get(i), pages.get(region.getPage())
+                    .getSubTexture(minU, minV, maxU, maxV, region.getWidth(), region.getHeight()));
+        }
+
+        images.clear();
+        built = true;
+
+        return this;
+    }
+
+    /**
+     * @param name The name of the image.
+     *
+     * @return The sub texture of the page that the image is packed in.
+     */
+    public SubTexture get(String name)
+    {
+        if (!built)
+            throw new SilenceException("TextureAtlas is not built yet");
+
+        SubTexture region = regions.get(name);
+
+        if (region == null)
+            throw new SilenceException("No image named " + name + " in the TextureAtlas");
+
+        return region;
+    }
+
+    public boolean contains(String name)
+    {
+        return regions.containsKey(name) || images.containsKey(name);
+    }
+
+    /**
+     * @return The textures of the pages of this atlas, empty if it is not built yet.
+     */
+    public List<Texture> getPages()
+    {
+        return Collections.unmodifiableList(pages);
+    }
+
+    public boolean isBuilt()
+    {
+        return built;
+    }
+
+    public int getPageWidth()
+    {
+        return pageWidth;
+    }
+
+    public int getPageHeight()
+    {
+        return pageHeight;
+    }
+
+    public int getPadding()
+    {
+        return padding;
+    }
+
+    public void dispose()
+    {
+        pages.forEach(Texture::dispose);
+        pages.clear();
+        regions.clear();
+    }
+
+    private static class Image
+    {
+        private byte[] pixels;
+        private int    width;
+        private int    height;
+
+        Image(byte[] pixels, int width, int height)
+        {
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+        }
+    }
+}
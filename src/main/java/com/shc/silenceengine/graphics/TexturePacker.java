@@ -0,0 +1,406 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Packs a number of rectangles into one or more pages of a fixed size using the MaxRects algorithm with the best short
+ * side fit heuristic. Every page keeps a list of the maximal free rectangles, and a rectangle is placed in the free
+ * rectangle that leaves the smallest leftover on its shorter side. <p> The rectangles are placed from the largest to the
+ * smallest, and ties are always broken in the same way, so the same input always gives the same output. This class
+ * doesn't use OpenGL, and is used by the {@link TextureAtlas} to lay out the images in its pages.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class TexturePacker
+{
+    private int pageWidth;
+    private int pageHeight;
+    private int padding;
+
+    // The free rectangles and the used area of every page
+    private List<List<Rect>> freeRects;
+    private List<Long>       usedArea;
+
+    /**
+     * Creates a new TexturePacker.
+     *
+     * @param pageWidth  The width of every page in pixels.
+     * @param pageHeight The height of every page in pixels.
+     * @param padding    The number of empty pixels between two rectangles, and between a rectangle and the edge of
+     *                   the page.
+     */
+    public TexturePacker(int pageWidth, int pageHeight, int padding)
+    {
+        if (pageWidth <= 0 || pageHeight <= 0)
+            throw new IllegalArgumentException("The size of a page should be positive");
+
+        if (padding < 0)
+            throw new IllegalArgumentException("The padding cannot be negative");
+
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+        this.padding = padding;
+
+        freeRects = new ArrayList<>();
+        usedArea = new ArrayList<>();
+    }
+
+    /**
+     * Packs the rectangles with the specified sizes. Any rectangles packed before are discarded.
+     *
+     * @param widths  The widths of the rectangles.
+     * @param heights The heights of the rectangles.
+     *
+     * @return The regions of the rectangles, in the same order as the sizes.
+     */
+    public List<Region> pack(int[] widths, int[] heights)
+    {
+        if (widths.length != heights.length)
+            throw new IllegalArgumentException("There should be a height for every width");
+
+        Integer[] order = new Integer[widths.length];
+
+        for (int i = 0; i < order.length; i++)
+        {
+            if (widths[i] <= 0 || heights[i] <= 0)
+                throw new IllegalArgumentException("The size of rectangle " + i + " should be positive");
+
+            if (widths[i] + 2 * padding > pageWidth || heights[i] + 2 * padding > pageHeight)
+                throw new IllegalArgumentException("Rectangle " + i + " (" + widths[i] + "x" + heights[i] +
+                                                   ") is too large for a page of " + pageWidth + "x" + pageHeight);
+
+            order[i] = i;
+        }
+
+        freeRects.clear();
+        usedArea.clear();
+
+        // Place the largest rectangles first, they are the hardest to fit in
+        Arrays.sort(order, (i, j) ->
+        {
+            int result = Integer.compare(Math.max(widths[j], heights[j]), Math.max(widths[i], heights[i]));
+
+            if (result == 0)
+                result = Integer.compare(Math.min(widths[j], heights[j]), Math.min(widths[i], heights[i]));
+
+            if (result == 0)
+                result = Integer.compare(i, j);
+
+            return result;
+        });
+
+        Region[] regions = new Region[widths.length];
+
+        for (int i : order)
+            regions[i] = place(widths[i], heights[i]);
+
+        return Arrays.asList(regions);
+    }
+
+    private Region place(int width, int height)
+    {
+        // Every rectangle takes the padding on its right and bottom, and the page keeps the padding on its left and top
+        int paddedWidth = width + padding;
+        int paddedHeight = height + padding;
+
+        for (int page = 0; page < freeRects.size(); page++)
+        {
+            Rect node = findPosition(freeRects.get(page), paddedWidth, paddedHeight);
+
+            if (node != null)
+                return placeInPage(page, node, width, height);
+        }
+
+        // Nothing fits in the existing pages, start a new one
+        List<Rect> free = new ArrayList<>();
+        free.add(new Rect(0, 0, pageWidth - padding, pageHeight - padding));
+
+        freeRects.add(free);
+        usedArea.add(0L);
+
+        int page = freeRects.size() - 1;
+        return placeInPage(page, findPosition(free, paddedWidth, paddedHeight), width, height);
+    }
+
+    private Region placeInPage(int page, Rect node, int width, int height)
+    {
+        splitFreeRects(freeRects.get(page), node);
+        usedArea.set(page, usedArea.get(page) + (long) width * height);
+
+        return new Region(page, node.x + padding, node.y + padding, width, height);
+    }
+
+    /**
+     * Finds the free rectangle that leaves the smallest leftover on its shorter side, using the longer side leftover
+     * and then the order of the free rectangles to break ties.
+     */
+    private Rect findPosition(List<Rect> free, int width, int height)
+    {
+        Rect best = null;
+
+        int bestShortSide = Integer.MAX_VALUE;
+        int bestLongSide = Integer.MAX_VALUE;
+
+        for (Rect rect : free)
+        {
+            if (rect.width < width || rect.height < height)
+                continue;
+
+            int leftoverX = rect.width - width;
+            int leftoverY = rect.height - height;
+
+            int shortSide = Math.min(leftoverX, leftoverY);
+            int longSide = Math.max(leftoverX, leftoverY);
+
+            if (shortSide < bestShortSide || (shortSide == bestShortSide && longSide < bestLongSide))
+            {
+                best = new Rect(rect.x, rect.y, width, height);
+                bestShortSide = shortSide;
+                bestLongSide = longSide;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Removes the space taken by the used rectangle from the free rectangles. Every free rectangle that intersects it
+     * is replaced by the maximal rectangles that are left on its four sides, and then the free rectangles that are
+     * contained in others are removed.
+     */
+    private void splitFreeRects(List<Rect> free, Rect used)
+    {
+        int count = free.size();
+
+        for (int i = 0; i < count; i++)
+        {
+            Rect rect = free.get(i);
+
+            if (!rect.intersects(used))
+                continue;
+
+            if (used.x > rect.x)
+                free.add(new Rect(rect.x, rect.y, used.x - rect.x, rect.height));
+
+            if (used.right() < rect.right())
+                free.add(new Rect(used.right(), rect.y, rect.right() - used.right(), rect.height));
+
+            if (used.y > rect.y)
+                free.add(new Rect(rect.x, rect.y, rect.width, used.y - rect.y));
+
+            if (used.bottom() < rect.bottom())
+                free.add(new Rect(rect.x, used.bottom(), rect.width, rect.bottom() - used.bottom()));
+
+            free.remove(i);
+            i--;
+            count--;
+        }
+
+        pruneFreeRects(free);
+    }
+
+    private void pruneFreeRects(List<Rect> free)
+    {
+        for (int i = 0; i < free.size(); i++)
+        {
+            for (int j = i + 1; j < free.size(); j++)
+            {
+                if (free.get(j).contains(free.get(i)))
+                {
+                    free.remove(i);
+                    i--;
+                    break;
+                }
+
+                if (free.get(i).contains(free.get(j)))
+                {
+                    free.remove(j);
+                    j--;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of pages used by the last call to pack.
+     */
+    public int getNumPages()
+    {
+        return freeRects.size();
+    }
+
+    /**
+     * @param page The index of the page.
+     *
+     * @return The fraction of the area of the page which is covered by the rectangles, between zero and one.
+     */
+    public float getOccupancy(int page)
+    {
+        return usedArea.get(page) / (float) ((long) pageWidth * pageHeight);
+    }
+
+    public int getPageWidth()
+    {
+        return pageWidth;
+    }
+
+    public int getPageHeight()
+    {
+        return pageHeight;
+    }
+
+    public int getPadding()
+    {
+        return padding;
+    }
+
+    /**
+     * The place of a rectangle in the pages of the packer, in pixels from the top-left corner of the page.
+     */
+    public static class Region
+    {
+        private int page;
+        private int x;
+        private int y;
+        private int width;
+        private int height;
+
+        public Region(int page, int x, int y, int width, int height)
+        {
+            this.page = page;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        public boolean intersects(Region other, int padding)
+        {
+            return page == other.page &&
+                   x < other.x + other.width + padding && other.x < x + width + padding &&
+                   y < other.y + other.height + padding && other.y < y + height + padding;
+        }
+
+        public int getPage()
+        {
+            return page;
+        }
+
+        public int getX()
+        {
+            return x;
+        }
+
+        public int getY()
+        {
+            return y;
+        }
+
+        public int getWidth()
+        {
+            return width;
+        }
+
+        public int getHeight()
+        {
+            return height;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Region region = (Region) o;
+
+            return page == region.page && x == region.x && y == region.y &&
+                   width == region.width && height == region.height;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int result = page;
+            result = 31 * result + x;
+            result = 31 * result + y;
+            result = 31 * result + width;
+            result = 31 * result + height;
+            return result;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Region{" +
+                   "page=" + page +
+                   ", x=" + x +
+                   ", y=" + y +
+                   ", width=" + width +
+                   ", height=" + height +
+                   '}';
+        }
+    }
+
+    private static class Rect
+    {
+        private int x;
+        private int y;
+        private int width;
+        private int height;
+
+        Rect(int x, int y, int width, int height)
+        {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        int right()
+        {
+            return x + width;
+        }
+
+        int bottom()
+        {
+            return y + height;
+        }
+
+        boolean intersects(Rect other)
+        {
+            return x < other.right() && other.x < right() && y < other.bottom() && other.y < bottom();
+        }
+
+        boolean contains(Rect other)
+        {
+            return other.x >= x && other.y >= y && other.right() <= right() && other.bottom() <= bottom();
+        }
+    }
+}
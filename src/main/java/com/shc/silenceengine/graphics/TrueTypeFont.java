@@ -226,7 +226,7 @@ public void drawString(Batcher b, String text, float x, float y, Color col)
 
         Texture current = Texture.CURRENT;
 
-        b.begin(Primitive.TRIANGLES);
+        b.begin(Primitive.TRIANGLES, AttributeMask.COLOR_TEXCOORD);
         {
             float startX = x;
 
@@ -248,7 +248,7 @@ public void drawString(Batcher b, String text, float x, float y, Color col)
 
                 if (page == null || page != charPage)
                 {
-                    b.flush();
+                    b.flush(Batcher.FlushCause.TEXTURE_SWITCH);
 
                     page = charPage;
                     page.bind();
@@ -291,6 +291,77 @@ public void drawString(Batcher b, String text, float x, float y, Color col)
         current.bind();
     }
 
+    @Override
+    public void drawString(IBatch batch, String text, float x, float y, Color col)
+    {
+        // Don't draw anything if the string is null or is empty. Also removes all trailing whitespace
+        if (text == null || (text = text.replace(TRAILING_WHITESPACE, "")).equals(""))
+            return;
+
+        float startX = x;
+
+        Texture page = null;
+
+        for (char ch : text.toCharArray())
+        {
+            FontChar c = chars[(int) ch];
+
+            if (ch == '\n')
+            {
+                y += fontMetrics.getHeight();
+                x = startX;
+
+                continue;
+            }
+
+            Texture charPage = fontTexture[chars[ch].page];
+
+            // Every page is a primitive of its own, as it is drawn with another texture
+            if (page != charPage)
+            {
+                if (page != null)
+                    batch.end();
+
+                page = charPage;
+                batch.begin(Primitive.TRIANGLES, page);
+            }
+
+            float minU = c.x / page.getWidth();
+            float maxU = (c.x + c.w) / page.getWidth();
+            float minV = c.y / page.getHeight();
+            float maxV = (c.y + c.h) / page.getHeight();
+
+            batch.vertex(x - c.padding, y);
+            batch.color(col);
+            batch.texCoord(minU, minV);
+
+            batch.vertex(x + chars[ch].w - c.padding, y);
+            batch.color(col);
+            batch.texCoord(maxU, minV);
+
+            batch.vertex(x - c.padding, y + chars[ch].h);
+            batch.color(col);
+            batch.texCoord(minU, maxV);
+
+            batch.vertex(x + chars[ch].w - c.padding, y);
+            batch.color(col);
+            batch.texCoord(maxU, minV);
+
+            batch.vertex(x - c.padding, y + chars[ch].h);
+            batch.color(col);
+            batch.texCoord(minU, maxV);
+
+            batch.vertex(x + chars[ch].w - c.padding, y + chars[ch].h);
+            batch.color(col);
+            batch.texCoord(maxU, maxV);
+
+            x += c.advance;
+        }
+
+        if (page != null)
+            batch.end();
+    }
+
     public float getWidth(String str)
     {
         float width = 0;
@@ -0,0 +1,232 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * Describes the layout of a single interleaved vertex in the data store of the {@link Batcher}. Every vertex is made
+ * up of a position, and optionally a color, a texture coordinate and a normal, all packed one after the other in a
+ * single buffer. The stride of the vertex is the sum of the sizes of all the attributes present in the format. <p> The
+ * {@link #DEFAULT} format is the same layout the Batcher always used, and is required for 3D rendering. The {@link
+ * #SPRITE_2D} format drops the normal, uses only two position components and packs the color into four unsigned bytes,
+ * which is enough for 2D sprites and cuts the size of a vertex from 56 bytes to 20 bytes.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class VertexFormat
+{
+    /**
+     * Four component position, float color, texture coordinates and four component normals. (56 bytes per vertex)
+     */
+    public static final VertexFormat DEFAULT = new VertexFormat(4, ColorFormat.FLOAT, true, true);
+
+    /**
+     * Two component position, packed RGBA8 color and texture coordinates. (20 bytes per vertex)
+     */
+    public static final VertexFormat SPRITE_2D = new VertexFormat(2, ColorFormat.PACKED_RGBA8, true, false);
+
+    private int         numPositionComponents;
+    private ColorFormat colorFormat;
+
+    private boolean texCoords;
+    private boolean normals;
+
+    // The offsets of the attributes in a vertex, -1 if not present
+    private int positionOffset;
+    private int colorOffset;
+    private int texCoordOffset;
+    private int normalOffset;
+
+    private int stride;
+
+    /**
+     * Creates a new VertexFormat.
+     *
+     * @param numPositionComponents The number of components in the position, can be 2, 3 or 4.
+     * @param colorFormat           The format to store the colors in.
+     * @param texCoords             Whether this format stores texture coordinates.
+     * @param normals               Whether this format stores normals.
+     */
+    public VertexFormat(int numPositionComponents, ColorFormat colorFormat, boolean texCoords, boolean normals)
+    {
+        if (numPositionComponents < 2 || numPositionComponents > 4)
+            throw new IllegalArgumentException("A position can only have 2, 3 or 4 components");
+
+        this.numPositionComponents = numPositionComponents;
+        this.colorFormat = colorFormat;
+        this.texCoords = texCoords;
+        this.normals = normals;
+
+        positionOffset = 0;
+        stride = numPositionComponents * Float.BYTES;
+
+        colorOffset = colorFormat == ColorFormat.NONE ? -1 : stride;
+        stride += colorFormat.getSize();
+
+        texCoordOffset = texCoords ? stride : -1;
+        stride += texCoords ? Batcher.SIZE_OF_TEXCOORD : 0;
+
+        normalOffset = normals ? stride : -1;
+        stride += normals ? Batcher.SIZE_OF_NORMAL : 0;
+    }
+
+    /**
+     * Returns the number of bytes that are needed to store a number of vertices in this format.
+     *
+     * @param numVertices The number of vertices.
+     *
+     * @return The size in bytes.
+     */
+    public long getSizeInBytes(long numVertices)
+    {
+        return numVertices * stride;
+    }
+
+    public int getNumPositionComponents()
+    {
+        return numPositionComponents;
+    }
+
+    public ColorFormat getColorFormat()
+    {
+        return colorFormat;
+    }
+
+    public boolean hasColors()
+    {
+        return colorFormat != ColorFormat.NONE;
+    }
+
+    public boolean hasTexCoords()
+    {
+        return texCoords;
+    }
+
+    public boolean hasNormals()
+    {
+        return normals;
+    }
+
+    public int getPositionOffset()
+    {
+        return positionOffset;
+    }
+
+    public int getColorOffset()
+    {
+        return colorOffset;
+    }
+
+    public int getTexCoordOffset()
+    {
+        return texCoordOffset;
+    }
+
+    public int getNormalOffset()
+    {
+        return normalOffset;
+    }
+
+    /**
+     * @return The number of bytes between the start of two consecutive vertices.
+     */
+    public int getStride()
+    {
+        return stride;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = numPositionComponents;
+        result = 31 * result + colorFormat.hashCode();
+        result = 31 * result + (texCoords ? 1 : 0);
+        result = 31 * result + (normals ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        VertexFormat that = (VertexFormat) o;
+
+        return numPositionComponents == that.numPositionComponents &&
+               texCoords == that.texCoords &&
+               normals == that.normals &&
+               colorFormat == that.colorFormat;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "VertexFormat{" +
+               "numPositionComponents=" + numPositionComponents +
+               ", colorFormat=" + colorFormat +
+               ", texCoords=" + texCoords +
+               ", normals=" + normals +
+               ", stride=" + stride +
+               '}';
+    }
+
+    /**
+     * The formats in which a color can be stored in a vertex.
+     */
+    public enum ColorFormat
+    {
+        NONE(0, 0, GL_FLOAT),
+        FLOAT(4, 4 * Float.BYTES, GL_FLOAT),
+        PACKED_RGBA8(4, 4, GL_UNSIGNED_BYTE);
+
+        private int numComponents;
+        private int size;
+        private int glType;
+
+        ColorFormat(int numComponents, int size, int glType)
+        {
+            this.numComponents = numComponents;
+            this.size = size;
+            this.glType = glType;
+        }
+
+        public int getNumComponents()
+        {
+            return numComponents;
+        }
+
+        public int getSize()
+        {
+            return size;
+        }
+
+        public int getGlType()
+        {
+            return glType;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import com.shc.silenceengine.math.Matrix4;
+
+/**
+ * A copy of a transformation matrix in plain fields, used by the {@link Batcher} to transform vertices on the CPU. The
+ * results are the same as the vertex shaders of the engine give, which compute {@code mTransform * pos} with the matrix
+ * uploaded in column major order, and transform normals with the inverse transpose of its upper 3x3 part.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class VertexTransform
+{
+    // The elements of the matrix, mCR is the element in column C and row R
+    private float m00, m01, m02, m03;
+    private float m10, m11, m12, m13;
+    private float m20, m21, m22, m23;
+    private float m30, m31, m32, m33;
+
+    // The normal matrix, the inverse transpose of the upper 3x3 part, computed when it is first needed
+    private float n00, n01, n02;
+    private float n10, n11, n12;
+    private float n20, n21, n22;
+
+    private boolean normalMatrixDirty;
+    private boolean identity;
+
+    public VertexTransform()
+    {
+        set(new Matrix4());
+    }
+
+    public VertexTransform set(Matrix4 m)
+    {
+        m00 = m.get(0, 0); m01 = m.get(0, 1); m02 = m.get(0, 2); m03 = m.get(0, 3);
+        m10 = m.get(1, 0); m11 = m.get(1, 1); m12 = m.get(1, 2); m13 = m.get(1, 3);
+        m20 = m.get(2, 0); m21 = m.get(2, 1); m22 = m.get(2, 2); m23 = m.get(2, 3);
+        m30 = m.get(3, 0); m31 = m.get(3, 1); m32 = m.get(3, 2); m33 = m.get(3, 3);
+
+        identity = m00 == 1 && m01 == 0 && m02 == 0 && m03 == 0 &&
+                   m10 == 0 && m11 == 1 && m12 == 0 && m13 == 0 &&
+                   m20 == 0 && m21 == 0 && m22 == 1 && m23 == 0 &&
+                   m30 == 0 && m31 == 0 && m32 == 0 && m33 == 1;
+
+        normalMatrixDirty = true;
+
+        return this;
+    }
+
+    public boolean isIdentity()
+    {
+        return identity;
+    }
+
+    /**
+     * Checks whether the transformed positions can be stored in a vertex format with fewer than four position
+     * components. The missing components default to z = 0 and w = 1 in the shader, so the transform should keep them
+     * that way for the vertices to come out the same as with the uniform.
+     *
+     * @param numPositionComponents The number of position components stored per vertex, 2, 3 or 4.
+     *
+     * @return True if the positions transformed on the CPU can be stored without losing anything.
+     */
+    public boolean fits(int numPositionComponents)
+    {
+        boolean keepsW = m03 == 0 && m13 == 0 && m23 == 0 && m33 == 1;
+        boolean keepsZ = m02 == 0 && m12 == 0 && m32 == 0;
+
+        switch (numPositionComponents)
+        {
+            case 4:
+                return true;
+            case 3:
+                return keepsW;
+            default:
+                return keepsW && keepsZ;
+        }
+    }
+
+    public float getX(float x, float y, float z, float w)
+    {
+        return m00 * x + m10 * y + m20 * z + m30 * w;
+    }
+
+    public float getY(float x, float y, float z, float w)
+    {
+        return m01 * x + m11 * y + m21 * z + m31 * w;
+    }
+
+    public float getZ(float x, float y, float z, float w)
+    {
+        return m02 * x + m12 * y + m22 * z + m32 * w;
+    }
+
+    public float getW(float x, float y, float z, float w)
+    {
+        return m03 * x + m13 * y + m23 * z + m33 * w;
+    }
+
+    public float getNormalX(float x, float y, float z)
+    {
+        updateNormalMatrix();
+        return n00 * x + n10 * y + n20 * z;
+    }
+
+    public float getNormalY(float x, float y, float z)
+    {
+        updateNormalMatrix();
+        return n01 * x + n11 * y + n21 * z;
+    }
+
+    public float getNormalZ(float x, float y, float z)
+    {
+        updateNormalMatrix();
+        return n02 * x + n12 * y + n22 * z;
+    }
+
+    private void updateNormalMatrix()
+    {
+        if (!normalMatrixDirty)
+            return;
+
+        normalMatrixDirty = false;
+
+        // The cofactors of the upper 3x3 part, divided by the determinant give the inverse transpose
+        float c00 = m11 * m22 - m21 * m12;
+        float c01 = m20 * m12 - m10 * m22;
+        float c02 = m10 * m21 - m20 * m11;
+
+        float det = m00 * c00 + m01 * c01 + m02 * c02;
+
+        // A degenerate transform flattens everything, keep the normals as they are like an identity would
+        if (det == 0)
+        {
+            n00 = n11 = n22 = 1;
+            n01 = n02 = n10 = n12 = n20 = n21 = 0;
+            return;
+        }
+
+        float invDet = 1 / det;
+
+        n00 = c00 * invDet;
+        n01 = c01 * invDet;
+        n02 = c02 * invDet;
+        n10 = (m21 * m02 - m01 * m22) * invDet;
+        n11 = (m00 * m22 - m20 * m02) * invDet;
+        n12 = (m20 * m01 - m00 * m21) * invDet;
+        n20 = (m01 * m12 - m11 * m02) * invDet;
+        n21 = (m10 * m02 - m00 * m12) * invDet;
+        n22 = (m00 * m11 - m10 * m01) * invDet;
+    }
+}
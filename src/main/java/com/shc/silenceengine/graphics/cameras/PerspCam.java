@@ -30,6 +30,7 @@
 import com.shc.silenceengine.math.Quaternion;
 import com.shc.silenceengine.math.Transforms;
 import com.shc.silenceengine.math.Vector3;
+import com.shc.silenceengine.utils.Scratch;
 import org.lwjgl.opengl.GL11;
 
 /**
@@ -134,26 +135,28 @@ public PerspCam moveDown(float amount)
 
     public PerspCam rotateX(float angle)
     {
-        Quaternion tempQuat = Quaternion.REUSABLE_STACK.pop();
+        try (Scratch scratch = Scratch.open())
+        {
+            Quaternion tempQuat = scratch.quaternion();
 
-        Quaternion xRot = tempQuat.set(Vector3.AXIS_X, angle);
-        rotation.multiplySelf(xRot);
+            Quaternion xRot = tempQuat.set(Vector3.AXIS_X, angle);
+            rotation.multiplySelf(xRot);
 
-        Quaternion.REUSABLE_STACK.push(tempQuat);
-
-        return this;
+            return this;
+        }
     }
 
     public PerspCam rotateY(float angle)
     {
-        Quaternion tempQuat = Quaternion.REUSABLE_STACK.pop();
-
-        Quaternion yRot = tempQuat.set(Vector3.AXIS_Y, angle);
-        rotation.set(yRot.multiplySelf(rotation));
+        try (Scratch scratch = Scratch.open())
+        {
+            Quaternion tempQuat = scratch.quaternion();
 
-        Quaternion.REUSABLE_STACK.push(tempQuat);
+            Quaternion yRot = tempQuat.set(Vector3.AXIS_Y, angle);
+            rotation.set(yRot.multiplySelf(rotation));
 
-        return this;
+            return this;
+        }
     }
 
     public PerspCam lerp(PerspCam p, float alpha)
@@ -193,22 +196,20 @@ public void apply()
     {
         super.apply();
 
-        Vector3 tempVec3 = Vector3.REUSABLE_STACK.pop();
-        Matrix4 tempMat4 = Matrix4.REUSABLE_STACK.pop();
-
-        Quaternion tempQuat = Quaternion.REUSABLE_STACK.pop();
-
-        mView.initIdentity()
-                .multiplySelf(Transforms.createRotation(tempQuat.set(rotation).invertSelf(), tempMat4))
-                .multiplySelf(Transforms.createTranslation(tempVec3.set(position).negateSelf(), tempMat4));
+        try (Scratch scratch = Scratch.open())
+        {
+            Vector3 tempVec3 = scratch.vector3();
+            Matrix4 tempMat4 = scratch.matrix4();
 
-        Vector3.REUSABLE_STACK.push(tempVec3);
-        Matrix4.REUSABLE_STACK.push(tempMat4);
+            Quaternion tempQuat = scratch.quaternion();
 
-        Quaternion.REUSABLE_STACK.push(tempQuat);
+            mView.initIdentity()
+                    .multiplySelf(Transforms.createRotation(tempQuat.set(rotation).invertSelf(), tempMat4))
+                    .multiplySelf(Transforms.createTranslation(tempVec3.set(position).negateSelf(), tempMat4));
 
-        // Enable Depth Testing
-        GL3Context.enable(GL11.GL_DEPTH_TEST);
+            // Enable Depth Testing
+            GL3Context.enable(GL11.GL_DEPTH_TEST);
+        }
     }
 
     @Override
@@ -157,6 +157,9 @@ public void render(Transform transform)
         // Get the batcher to know the program locations
         Batcher batcher = SilenceEngine.graphics.getBatcher();
 
+        // Draw the batch that is still open before this mesh
+        batcher.endOpenBatch();
+
         // Validate the VAO
         if (!vao.isValid())
         {
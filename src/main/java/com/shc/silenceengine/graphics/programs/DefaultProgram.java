@@ -83,7 +83,7 @@ public void prepareFrame()
 
         // Uniforms
         setUniform("textureID", Texture.getActiveUnit());
-        setUniform("mTransform", batcher.getTransform().getMatrix());
+        setUniform("mTransform", batcher.getShaderTransform());
         setUniform("camProj", BaseCamera.CURRENT.getProjection());
         setUniform("camView", BaseCamera.CURRENT.getView());
         setUniform("ambient", SilenceEngine.graphics.getCurrentMaterial().getAmbient());
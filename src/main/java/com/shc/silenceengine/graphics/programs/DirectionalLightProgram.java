@@ -76,7 +76,7 @@ public void prepareFrame()
 
         // Standard Uniforms
         setUniform("textureID", Texture.getActiveUnit());
-        setUniform("mTransform", batcher.getTransform().getMatrix());
+        setUniform("mTransform", batcher.getShaderTransform());
         setUniform("camProj", BaseCamera.CURRENT.getProjection());
         setUniform("camView", BaseCamera.CURRENT.getView());
 
@@ -28,6 +28,7 @@
 import com.shc.silenceengine.math.geom2d.Polygon;
 import com.shc.silenceengine.math.geom3d.Polyhedron;
 import com.shc.silenceengine.math.geom3d.Sphere;
+import com.shc.silenceengine.utils.Scratch;
 
 /**
  * This class represents the Frustum, the volume of the camera view. Contains useful functions to check whether a shape
@@ -219,18 +220,20 @@ public boolean isInside(Polygon polygon)
 
         boolean inside = false;
 
-        Vector3 temp = Vector3.REUSABLE_STACK.pop();
-        for (Vector2 v : polygon.getVertices())
+        try (Scratch scratch = Scratch.open())
         {
-            temp.set(v.x, v.y, planes[NEAR].d).addSelf(polygon.getPosition(), 0);
-            inside = isInside(temp);
+            Vector3 temp = scratch.vector3();
+            for (Vector2 v : polygon.getVertices())
+            {
+                temp.set(v.x, v.y, planes[NEAR].d).addSelf(polygon.getPosition(), 0);
+                inside = isInside(temp);
 
-            if (!inside)
-                break;
-        }
-        Vector3.REUSABLE_STACK.push(temp);
+                if (!inside)
+                    break;
+            }
 
-        return inside;
+            return inside;
+        }
     }
 
     public boolean intersects(Polyhedron polyhedron)
@@ -310,18 +313,20 @@ public boolean isInside(Polyhedron polyhedron)
 
         boolean inside = false;
 
-        Vector3 temp = Vector3.REUSABLE_STACK.pop();
-        for (Vector3 v : polyhedron.getVertices())
+        try (Scratch scratch = Scratch.open())
         {
-            temp.set(v).addSelf(polyhedron.getPosition());
-            inside = isInside(temp);
+            Vector3 temp = scratch.vector3();
+            for (Vector3 v : polyhedron.getVertices())
+            {
+                temp.set(v).addSelf(polyhedron.getPosition());
+                inside = isInside(temp);
 
-            if (!inside)
-                break;
-        }
-        Vector3.REUSABLE_STACK.push(temp);
+                if (!inside)
+                    break;
+            }
 
-        return inside;
+            return inside;
+        }
     }
 
     public boolean isInside(Vector3 point, float width, float height, float thickness)
@@ -25,6 +25,7 @@
 package com.shc.silenceengine.math;
 
 import com.shc.silenceengine.utils.ReusableStack;
+import com.shc.silenceengine.utils.Scratch;
 import org.lwjgl.BufferUtils;
 
 import java.nio.FloatBuffer;
@@ -38,6 +39,10 @@
  */
 public class Matrix3
 {
+    /**
+     * @deprecated Use a {@link Scratch} scope for the temporaries, which gives all of them back when it is closed.
+     */
+    @Deprecated
     public static final ReusableStack<Matrix3> REUSABLE_STACK = new ReusableStack<>(Matrix3::new);
 
     private float[][] m;
@@ -206,23 +211,25 @@ public Matrix3 multiply(Matrix3 m)
 
     public Matrix3 multiplySelf(Matrix3 m)
     {
-        // Use a temporary matrix from the matrix stack instead of
+        // Use a temporary matrix from the scratch arena instead of
         // creating a temporary float array every frame.
-        Matrix3 temp = Matrix3.REUSABLE_STACK.pop().initZero();
-
-        for (int r = 0; r < 3; r++)
+        try (Scratch scratch = Scratch.open())
         {
-            for (int c = 0; c < 3; c++)
+            Matrix3 temp = scratch.matrix3().initZero();
+
+            for (int r = 0; r < 3; r++)
             {
-                for (int k = 0; k < 3; k++)
-                    temp.set(c, r, temp.get(c, r) + this.m[k][r] * m.get(c, k));
+                for (int c = 0; c < 3; c++)
+                {
+                    for (int k = 0; k < 3; k++)
+                        temp.set(c, r, temp.get(c, r) + this.m[k][r] * m.get(c, k));
+                }
             }
-        }
 
-        this.set(temp);
-        Matrix3.REUSABLE_STACK.push(temp);
+            this.set(temp);
 
-        return this;
+            return this;
+        }
     }
 
     /**
@@ -259,20 +266,22 @@ public Matrix3 transpose()
 
     public Matrix3 transposeSelf()
     {
-        Matrix3 temp = Matrix3.REUSABLE_STACK.pop();
-
-        for (int i = 0; i < 3; i++)
+        try (Scratch scratch = Scratch.open())
         {
-            for (int j = 0; j < 3; j++)
+            Matrix3 temp = scratch.matrix3();
+
+            for (int i = 0; i < 3; i++)
             {
-                temp.set(i, j, m[j][i]);
+                for (int j = 0; j < 3; j++)
+                {
+                    temp.set(i, j, m[j][i]);
+                }
             }
-        }
 
-        this.set(temp);
-        Matrix3.REUSABLE_STACK.push(temp);
+            this.set(temp);
 
-        return this;
+            return this;
+        }
     }
 
     public Vector3 multiply(Vector3 v)
@@ -299,22 +308,24 @@ public Matrix3 invertSelf()
 
         s = 1f / s;
 
-        Matrix3 dest = Matrix3.REUSABLE_STACK.pop();
+        try (Scratch scratch = Scratch.open())
+        {
+            Matrix3 dest = scratch.matrix3();
 
-        dest.m[0][0] = +((m[1][1] * m[2][2]) - (m[2][1] * m[1][2])) * s;
-        dest.m[0][1] = -((m[0][1] * m[2][2]) - (m[2][1] * m[0][2])) * s;
-        dest.m[0][2] = +((m[0][1] * m[1][2]) - (m[1][1] * m[0][2])) * s;
-        dest.m[1][0] = -((m[1][0] * m[2][2]) - (m[2][0] * m[1][2])) * s;
-        dest.m[1][1] = +((m[0][0] * m[2][2]) - (m[2][0] * m[0][2])) * s;
-        dest.m[1][2] = -((m[0][0] * m[1][2]) - (m[1][0] * m[0][2])) * s;
-        dest.m[2][0] = +((m[1][0] * m[2][1]) - (m[2][0] * m[1][1])) * s;
-        dest.m[2][1] = -((m[0][0] * m[2][1]) - (m[2][0] * m[0][1])) * s;
-        dest.m[2][2] = +((m[0][0] * m[1][1]) - (m[1][0] * m[0][1])) * s;
+            dest.m[0][0] = +((m[1][1] * m[2][2]) - (m[2][1] * m[1][2])) * s;
+            dest.m[0][1] = -((m[0][1] * m[2][2]) - (m[2][1] * m[0][2])) * s;
+            dest.m[0][2] = +((m[0][1] * m[1][2]) - (m[1][1] * m[0][2])) * s;
+            dest.m[1][0] = -((m[1][0] * m[2][2]) - (m[2][0] * m[1][2])) * s;
+            dest.m[1][1] = +((m[0][0] * m[2][2]) - (m[2][0] * m[0][2])) * s;
+            dest.m[1][2] = -((m[0][0] * m[1][2]) - (m[1][0] * m[0][2])) * s;
+            dest.m[2][0] = +((m[1][0] * m[2][1]) - (m[2][0] * m[1][1])) * s;
+            dest.m[2][1] = -((m[0][0] * m[2][1]) - (m[2][0] * m[0][1])) * s;
+            dest.m[2][2] = +((m[0][0] * m[1][1]) - (m[1][0] * m[0][1])) * s;
 
-        set(dest);
+            set(dest);
 
-        Matrix3.REUSABLE_STACK.push(dest);
-        return this;
+            return this;
+        }
     }
 
     public Matrix3 copy()
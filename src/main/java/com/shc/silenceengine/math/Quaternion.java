@@ -26,12 +26,17 @@
 
 import com.shc.silenceengine.utils.MathUtils;
 import com.shc.silenceengine.utils.ReusableStack;
+import com.shc.silenceengine.utils.Scratch;
 
 /**
  * @author Sri Harsha Chilakapati
  */
 public class Quaternion
 {
+    /**
+     * @deprecated Use a {@link Scratch} scope for the temporaries, which gives all of them back when it is closed.
+     */
+    @Deprecated
     public static final ReusableStack<Quaternion> REUSABLE_STACK = new ReusableStack<>(Quaternion::new);
 
     public float x;
@@ -216,32 +221,29 @@ public Vector3 multiply(Vector3 v)
 
     public Vector3 multiply(Vector3 v, Vector3 dest)
     {
-        Vector3 temp = Vector3.REUSABLE_STACK.pop();
-
-        Quaternion temp1 = Quaternion.REUSABLE_STACK.pop();
-        Quaternion temp2 = Quaternion.REUSABLE_STACK.pop();
-        Quaternion temp3 = Quaternion.REUSABLE_STACK.pop();
-
-        float length = v.length();
-        v = temp.set(v).normalizeSelf();
+        try (Scratch scratch = Scratch.open())
+        {
+            Vector3 temp = scratch.vector3();
 
-        Quaternion q1 = temp1.set(this).conjugateSelf().normalizeSelf();
-        Quaternion qv = temp2.set(v.x, v.y, v.z, 0);
-        Quaternion q = this;
+            Quaternion temp1 = scratch.quaternion();
+            Quaternion temp2 = scratch.quaternion();
+            Quaternion temp3 = scratch.quaternion();
 
-        Quaternion res = temp3.set(q).normalizeSelf().multiplySelf(qv.multiplySelf(q1).normalizeSelf());
+            float length = v.length();
+            v = temp.set(v).normalizeSelf();
 
-        dest.x = res.x;
-        dest.y = res.y;
-        dest.z = res.z;
+            Quaternion q1 = temp1.set(this).conjugateSelf().normalizeSelf();
+            Quaternion qv = temp2.set(v.x, v.y, v.z, 0);
+            Quaternion q = this;
 
-        Vector3.REUSABLE_STACK.push(temp);
+            Quaternion res = temp3.set(q).normalizeSelf().multiplySelf(qv.multiplySelf(q1).normalizeSelf());
 
-        Quaternion.REUSABLE_STACK.push(temp1);
-        Quaternion.REUSABLE_STACK.push(temp2);
-        Quaternion.REUSABLE_STACK.push(temp3);
+            dest.x = res.x;
+            dest.y = res.y;
+            dest.z = res.z;
 
-        return dest.normalizeSelf().scaleSelf(length);
+            return dest.normalizeSelf().scaleSelf(length);
+        }
     }
 
     public Quaternion invert()
@@ -276,19 +278,19 @@ public Quaternion lerp(Quaternion target, float alpha)
 
     public Quaternion lerpSelf(Quaternion target, float alpha)
     {
-        Vector4 temp1 = Vector4.REUSABLE_STACK.pop();
-        Vector4 temp2 = Vector4.REUSABLE_STACK.pop();
-
-        Vector4 start = temp1.set(x, y, z, w);
-        Vector4 end = temp2.set(target.x, target.y, target.z, target.w);
-        Vector4 lerp = start.lerpSelf(end, alpha).normalizeSelf();
+        try (Scratch scratch = Scratch.open())
+        {
+            Vector4 temp1 = scratch.vector4();
+            Vector4 temp2 = scratch.vector4();
 
-        set(lerp.x, lerp.y, lerp.z, lerp.w);
+            Vector4 start = temp1.set(x, y, z, w);
+            Vector4 end = temp2.set(target.x, target.y, target.z, target.w);
+            Vector4 lerp = start.lerpSelf(end, alpha).normalizeSelf();
 
-        Vector4.REUSABLE_STACK.push(temp1);
-        Vector4.REUSABLE_STACK.push(temp2);
+            set(lerp.x, lerp.y, lerp.z, lerp.w);
 
-        return this;
+            return this;
+        }
     }
 
     public Quaternion slerp(Quaternion target, float alpha)
@@ -303,17 +305,19 @@ public Quaternion slerpSelf(Quaternion target, float alpha)
 
         if ((1 - dot) > 0.1)
         {
-            Quaternion temp = REUSABLE_STACK.pop();
+            try (Scratch scratch = Scratch.open())
+            {
+                Quaternion temp = scratch.quaternion();
 
-            if (dot < 0.0f)
-                temp.set(-target.x, -target.y, -target.z, -target.w);
-            else
-                temp.set(target);
+                if (dot < 0.0f)
+                    temp.set(-target.x, -target.y, -target.z, -target.w);
+                else
+                    temp.set(target);
 
-            lerpSelf(temp, alpha);
-            REUSABLE_STACK.push(temp);
+                lerpSelf(temp, alpha);
 
-            return this;
+                return this;
+            }
         }
 
         scale1 = 1f - alpha;
@@ -25,12 +25,17 @@
 package com.shc.silenceengine.math;
 
 import com.shc.silenceengine.utils.ReusableStack;
+import com.shc.silenceengine.utils.Scratch;
 
 /**
  * @author Sri Harsha Chilakapati
  */
 public class Transform
 {
+    /**
+     * @deprecated Use a {@link Scratch} scope for the temporaries, which gives all of them back when it is closed.
+     */
+    @Deprecated
     public static final ReusableStack<Transform> REUSABLE_STACK = new ReusableStack<>(Transform::new);
 
     // The transformation matrix
@@ -58,19 +63,23 @@ public Transform copy()
 
     public Transform translateSelf(Vector3 v)
     {
-        Matrix4 temp = Matrix4.REUSABLE_STACK.pop();
-        tMatrix.set(Transforms.createTranslation(v, temp).multiplySelf(tMatrix));
-        Matrix4.REUSABLE_STACK.push(temp);
+        try (Scratch scratch = Scratch.open())
+        {
+            Matrix4 temp = scratch.matrix4();
+            tMatrix.set(Transforms.createTranslation(v, temp).multiplySelf(tMatrix));
 
-        return this;
+            return this;
+        }
     }
 
     public Transform applySelf(Matrix4 matrix)
     {
-        Matrix4 temp = Matrix4.REUSABLE_STACK.pop();
-        tMatrix.set(temp.set(matrix).multiplySelf(tMatrix));
-        Matrix4.REUSABLE_STACK.push(temp);
-        return this;
+        try (Scratch scratch = Scratch.open())
+        {
+            Matrix4 temp = scratch.matrix4();
+            tMatrix.set(temp.set(matrix).multiplySelf(tMatrix));
+            return this;
+        }
     }
 
     public Transform translate(Vector3 v)
@@ -85,11 +94,13 @@ public Transform rotate(Vector3 axis, float angle)
 
     public Transform rotateSelf(Vector3 axis, float angle)
     {
-        Matrix4 temp = Matrix4.REUSABLE_STACK.pop();
-        tMatrix.set(Transforms.createRotation(axis, angle, temp).multiplySelf(tMatrix));
-        Matrix4.REUSABLE_STACK.push(temp);
+        try (Scratch scratch = Scratch.open())
+        {
+            Matrix4 temp = scratch.matrix4();
+            tMatrix.set(Transforms.createRotation(axis, angle, temp).multiplySelf(tMatrix));
 
-        return this;
+            return this;
+        }
     }
 
     public Transform rotate(float rx, float ry, float rz)
@@ -99,15 +110,16 @@ public Transform rotate(float rx, float ry, float rz)
 
     public Transform rotateSelf(float rx, float ry, float rz)
     {
-        Quaternion temp = Quaternion.REUSABLE_STACK.pop();
-        temp.set(rx, ry, rz);
+        try (Scratch scratch = Scratch.open())
+        {
+            Quaternion temp = scratch.quaternion();
+            temp.set(rx, ry, rz);
 
-        Matrix4 tMat = Matrix4.REUSABLE_STACK.pop();
-        tMatrix.set(Transforms.createRotation(temp, tMat).multiplySelf(tMatrix));
-        Matrix4.REUSABLE_STACK.push(tMat);
+            Matrix4 tMat = scratch.matrix4();
+            tMatrix.set(Transforms.createRotation(temp, tMat).multiplySelf(tMatrix));
 
-        Quaternion.REUSABLE_STACK.push(temp);
-        return this;
+            return this;
+        }
     }
 
     public Transform scale(Vector2 scale)
@@ -117,20 +129,24 @@ public Transform scale(Vector2 scale)
 
     public Transform scaleSelf(Vector2 scale)
     {
-        Vector3 temp = Vector3.REUSABLE_STACK.pop();
-        scaleSelf(temp.set(scale.x, scale.y, 0));
-        Vector3.REUSABLE_STACK.push(temp);
+        try (Scratch scratch = Scratch.open())
+        {
+            Vector3 temp = scratch.vector3();
+            scaleSelf(temp.set(scale.x, scale.y, 0));
 
-        return this;
+            return this;
+        }
     }
 
     public Transform scaleSelf(Vector3 scale)
     {
-        Matrix4 temp = Matrix4.REUSABLE_STACK.pop();
-        tMatrix.set(Transforms.createScaling(scale, temp).multiplySelf(tMatrix));
-        Matrix4.REUSABLE_STACK.push(temp);
+        try (Scratch scratch = Scratch.open())
+        {
+            Matrix4 temp = scratch.matrix4();
+            tMatrix.set(Transforms.createScaling(scale, temp).multiplySelf(tMatrix));
 
-        return this;
+            return this;
+        }
     }
 
     public Transform scale(Vector3 scale)
@@ -165,13 +181,15 @@ public Transform applyInverse(Matrix4 matrix)
 
     public Transform applyInverseSelf(Matrix4 matrix)
     {
-        Matrix4 temp = Matrix4.REUSABLE_STACK.pop();
+        try (Scratch scratch = Scratch.open())
+        {
+            Matrix4 temp = scratch.matrix4();
 
-        temp.set(matrix).invertSelf();
-        applySelf(temp);
-        Matrix4.REUSABLE_STACK.push(temp);
+            temp.set(matrix).invertSelf();
+            applySelf(temp);
 
-        return this;
+            return this;
+        }
     }
 
     public Transform apply(Quaternion q)
@@ -181,11 +199,13 @@ public Transform apply(Quaternion q)
 
     public Transform applySelf(Quaternion q)
     {
-        Matrix4 temp = Matrix4.REUSABLE_STACK.pop();
-        applySelf(Transforms.createRotation(q, temp));
+        try (Scratch scratch = Scratch.open())
+        {
+            Matrix4 temp = scratch.matrix4();
+            applySelf(Transforms.createRotation(q, temp));
 
-        Matrix4.REUSABLE_STACK.push(temp);
-        return this;
+            return this;
+        }
     }
 
     public Transform applyInverse(Quaternion q)
@@ -195,11 +215,13 @@ public Transform applyInverse(Quaternion q)
 
     public Transform applyInverseSelf(Quaternion q)
     {
-        Matrix4 temp = Matrix4.REUSABLE_STACK.pop();
-        applyInverseSelf(Transforms.createRotation(q, temp));
+        try (Scratch scratch = Scratch.open())
+        {
+            Matrix4 temp = scratch.matrix4();
+            applyInverseSelf(Transforms.createRotation(q, temp));
 
-        Matrix4.REUSABLE_STACK.push(temp);
-        return this;
+            return this;
+        }
     }
 
     public Transform set(Transform t)
@@ -25,6 +25,7 @@
 package com.shc.silenceengine.math;
 
 import com.shc.silenceengine.utils.MathUtils;
+import com.shc.silenceengine.utils.Scratch;
 
 /**
  * <p> This class is the core of the SilenceEngine's GraphicsEngine, and does the job of creating transformation
@@ -37,20 +38,17 @@
  *
  * <p> The second type of functions doesn't accept any extra parameters, and just call the first above mentioned methods
  * with a new matrix or quaternion. Keep in mind, though, that using these methods often will cause a memory issue due
- * to GC pauses to collect large amounts of garbage. The work-around, is to use the <code>REUSABLE_STACK</code> of that
- * required class to generate a temporary instance. </p>
+ * to GC pauses to collect large amounts of garbage. The work-around, is to use a {@link Scratch} scope to get the
+ * temporary instances. </p>
  *
  * <pre>
- *     Matrix4 temp1 = Matrix4.REUSABLE_STACK.pop();
- *     Matrix4 temp2 = Matrix4.REUSABLE_STACK.pop();
+ *     try (Scratch scratch = Scratch.open())
+ *     {
+ *         Matrix4 scalingMatrix     = Transforms.createScaling(scale, scratch.matrix4());
+ *         Matrix4 translationMatrix = Transforms.createTranslation(translation, scratch.matrix4());
  *
- *     Matrix4 scalingMatrix     = Transforms.createScaling(scale, temp1);
- *     Matrix4 translationMatrix = Transforms.createTranslation(translation, temp2);
- *
- *     // Use the temporary matrices here until they are pushed to the stack again.
- *
- *     Matrix4.REUSABLE_STACK.push(temp1);
- *     Matrix4.REUSABLE_STACK.push(temp2);
+ *         // Use the temporary matrices here until the scope is closed.
+ *     }
  * </pre>
  *
  * <p> It is always encouraged to use the above work-around as you can get full control on the result matrices and the
@@ -127,25 +125,25 @@ public static Matrix4 createRotation(Vector3 axis, float angle, Matrix4 dest)
         float c = MathUtils.cos(angle);
         float s = MathUtils.sin(angle);
 
-        Vector3 nAxis = Vector3.REUSABLE_STACK.pop().set(axis).normalizeSelf();
-        Vector3 tempV = Vector3.REUSABLE_STACK.pop().set(nAxis).scaleSelf(1f - c);
-
-        result.set(0, 0, c + tempV.x * nAxis.x)
-                .set(0, 1, tempV.x * nAxis.y + s * nAxis.z)
-                .set(0, 2, tempV.x * nAxis.z - s * nAxis.y);
+        try (Scratch scratch = Scratch.open())
+        {
+            Vector3 nAxis = scratch.vector3().set(axis).normalizeSelf();
+            Vector3 tempV = scratch.vector3().set(nAxis).scaleSelf(1f - c);
 
-        result.set(1, 0, tempV.y * nAxis.x - s * nAxis.z)
-                .set(1, 1, c + tempV.y * nAxis.y)
-                .set(1, 2, tempV.y * nAxis.z + s * nAxis.x);
+            result.set(0, 0, c + tempV.x * nAxis.x)
+                    .set(0, 1, tempV.x * nAxis.y + s * nAxis.z)
+                    .set(0, 2, tempV.x * nAxis.z - s * nAxis.y);
 
-        result.set(2, 0, tempV.z * nAxis.x + s * nAxis.y)
-                .set(2, 1, tempV.z * nAxis.y - s * nAxis.x)
-                .set(2, 2, c + tempV.z * nAxis.z);
+            result.set(1, 0, tempV.y * nAxis.x - s * nAxis.z)
+                    .set(1, 1, c + tempV.y * nAxis.y)
+                    .set(1, 2, tempV.y * nAxis.z + s * nAxis.x);
 
-        Vector3.REUSABLE_STACK.push(nAxis);
-        Vector3.REUSABLE_STACK.push(tempV);
+            result.set(2, 0, tempV.z * nAxis.x + s * nAxis.y)
+                    .set(2, 1, tempV.z * nAxis.y - s * nAxis.x)
+                    .set(2, 2, c + tempV.z * nAxis.z);
 
-        return result;
+            return result;
+        }
     }
 
     public static Matrix4 createOrtho2d(float left, float right, float bottom, float top, float zNear, float zFar)
@@ -231,35 +229,34 @@ public static Matrix4 createLookAtMatrix(Vector3 eye, Vector3 center, Vector3 up
 
         Matrix4 result = dest.initIdentity();
 
-        Vector3 f = Vector3.REUSABLE_STACK.pop();
-        Vector3 s = Vector3.REUSABLE_STACK.pop();
-        Vector3 u = Vector3.REUSABLE_STACK.pop();
-
-        f.set(center).subtractSelf(eye).normalizeSelf();
-        s.set(f).crossSelf(up).normalizeSelf();
-        u.set(s).crossSelf(f);
+        try (Scratch scratch = Scratch.open())
+        {
+            Vector3 f = scratch.vector3();
+            Vector3 s = scratch.vector3();
+            Vector3 u = scratch.vector3();
 
-        result.set(0, 0, s.x)
-                .set(1, 0, s.y)
-                .set(2, 0, s.z);
+            f.set(center).subtractSelf(eye).normalizeSelf();
+            s.set(f).crossSelf(up).normalizeSelf();
+            u.set(s).crossSelf(f);
 
-        result.set(0, 1, u.x)
-                .set(1, 1, u.y)
-                .set(2, 1, u.z);
+            result.set(0, 0, s.x)
+                    .set(1, 0, s.y)
+                    .set(2, 0, s.z);
 
-        result.set(0, 2, -f.x)
-                .set(1, 2, -f.y)
-                .set(2, 2, -f.z);
+            result.set(0, 1, u.x)
+                    .set(1, 1, u.y)
+                    .set(2, 1, u.z);
 
-        result.set(3, 0, -s.dot(eye))
-                .set(3, 1, -u.dot(eye))
-                .set(3, 2, f.dot(eye));
+            result.set(0, 2, -f.x)
+                    .set(1, 2, -f.y)
+                    .set(2, 2, -f.z);
 
-        Vector3.REUSABLE_STACK.push(f);
-        Vector3.REUSABLE_STACK.push(s);
-        Vector3.REUSABLE_STACK.push(u);
+            result.set(3, 0, -s.dot(eye))
+                    .set(3, 1, -u.dot(eye))
+                    .set(3, 2, f.dot(eye));
 
-        return result;
+            return result;
+        }
     }
 
     public static Quaternion createLookAtQuaternion(Vector3 eye, Vector3 center, Vector3 up)
@@ -272,39 +269,29 @@ public static Quaternion createLookAtQuaternion(Vector3 eye, Vector3 center, Vec
         if (dest == null)
             dest = new Quaternion();
 
-        Vector3 temp1 = Vector3.REUSABLE_STACK.pop();
-        Vector3 temp2 = Vector3.REUSABLE_STACK.pop();
-
-        Vector3 forward = temp1.set(center).subtractSelf(eye).normalizeSelf();
-        Vector3 negativeZ = temp2.set(Vector3.AXIS_Z).negateSelf();
-
-        float dot = negativeZ.dot(forward);
-
-        if (Math.abs(dot + 1) < 0.000001f)
+        try (Scratch scratch = Scratch.open())
         {
-            Vector3.REUSABLE_STACK.push(temp1);
-            Vector3.REUSABLE_STACK.push(temp2);
+            Vector3 temp1 = scratch.vector3();
+            Vector3 temp2 = scratch.vector3();
 
-            return dest.set(up.x, up.y, up.z, (float) Math.PI);
-        }
+            Vector3 forward = temp1.set(center).subtractSelf(eye).normalizeSelf();
+            Vector3 negativeZ = temp2.set(Vector3.AXIS_Z).negateSelf();
 
-        if (Math.abs(dot - 1) < 0.000001f)
-        {
-            Vector3.REUSABLE_STACK.push(temp1);
-            Vector3.REUSABLE_STACK.push(temp2);
+            float dot = negativeZ.dot(forward);
 
-            return dest.set();
-        }
+            if (Math.abs(dot + 1) < 0.000001f)
+                return dest.set(up.x, up.y, up.z, (float) Math.PI);
 
-        float rotAngle = MathUtils.acos(dot);
-        Vector3 rotAxis = negativeZ.crossSelf(forward).normalizeSelf();
+            if (Math.abs(dot - 1) < 0.000001f)
+                return dest.set();
 
-        dest.set(rotAxis, rotAngle);
+            float rotAngle = MathUtils.acos(dot);
+            Vector3 rotAxis = negativeZ.crossSelf(forward).normalizeSelf();
 
-        Vector3.REUSABLE_STACK.push(temp1);
-        Vector3.REUSABLE_STACK.push(temp2);
+            dest.set(rotAxis, rotAngle);
 
-        return dest;
+            return dest;
+        }
     }
 
     public static Matrix4 createRotation(Quaternion q)
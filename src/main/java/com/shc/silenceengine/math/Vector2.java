@@ -36,6 +36,11 @@
     public static final Vector2 AXIS_X = new Vector2(1, 0);
     public static final Vector2 AXIS_Y = new Vector2(0, 1);
 
+    /**
+     * @deprecated Use a {@link com.shc.silenceengine.utils.Scratch} scope for the temporaries, which gives all of them
+     * back when it is closed.
+     */
+    @Deprecated
     public static final ReusableStack<Vector2> REUSABLE_STACK = new ReusableStack<>(Vector2::new);
 
     public float x, y;
@@ -209,7 +214,7 @@ public Vector2 perpendicular()
 
     public Vector2 perpendicularSelf()
     {
-        return set(y, x);
+        return set(y, -x);
     }
 
     public Vector2 projectSelf(Vector2 v)
@@ -26,6 +26,7 @@
 
 import com.shc.silenceengine.utils.MathUtils;
 import com.shc.silenceengine.utils.ReusableStack;
+import com.shc.silenceengine.utils.Scratch;
 
 /**
  * @author Sri Harsha Chilakapati
@@ -37,6 +38,10 @@
     public static final Vector3 AXIS_Y = new Vector3(0, 1, 0);
     public static final Vector3 AXIS_Z = new Vector3(0, 0, 1);
 
+    /**
+     * @deprecated Use a {@link Scratch} scope for the temporaries, which gives all of them back when it is closed.
+     */
+    @Deprecated
     public static final ReusableStack<Vector3> REUSABLE_STACK = new ReusableStack<>(Vector3::new);
 
     public float x, y, z;
@@ -217,7 +222,7 @@ public Vector3 cross(float vx, float vy, float vz)
 
     public Vector3 crossSelf(float vx, float vy, float vz)
     {
-        float x = this.x * vz - this.z * vy;
+        float x = this.y * vz - this.z * vy;
         float y = this.z * vx - this.x * vz;
         float z = this.x * vy - this.y * vx;
 
@@ -320,14 +325,15 @@ public Vector3 rotate(Vector3 axis, float angle)
 
     public Vector3 rotateSelf(Vector3 axis, float angle)
     {
-        Quaternion temp = Quaternion.REUSABLE_STACK.pop();
+        try (Scratch scratch = Scratch.open())
+        {
+            Quaternion temp = scratch.quaternion();
 
-        temp.set(axis, angle);
-        temp.multiply(this, this);
+            temp.set(axis, angle);
+            temp.multiply(this, this);
 
-        Quaternion.REUSABLE_STACK.push(temp);
-
-        return this;
+            return this;
+        }
     }
 
     public Vector3 lerp(Vector3 target, float alpha)
@@ -337,11 +343,13 @@ public Vector3 lerp(Vector3 target, float alpha)
 
     public Vector3 lerpSelf(Vector3 target, float alpha)
     {
-        Vector3 temp = Vector3.REUSABLE_STACK.pop();
-        scaleSelf(1f - alpha).addSelf(temp.set(target).scaleSelf(alpha));
-        Vector3.REUSABLE_STACK.push(temp);
+        try (Scratch scratch = Scratch.open())
+        {
+            Vector3 temp = scratch.vector3();
+            scaleSelf(1f - alpha).addSelf(temp.set(target).scaleSelf(alpha));
 
-        return this;
+            return this;
+        }
     }
 
     public Vector3 addSelf(Vector3 v)
@@ -25,6 +25,7 @@
 package com.shc.silenceengine.math;
 
 import com.shc.silenceengine.utils.ReusableStack;
+import com.shc.silenceengine.utils.Scratch;
 
 /**
  * @author Sri Harsha Chilakapati
@@ -33,6 +34,10 @@
 {
     public static final Vector4 ZERO = new Vector4(0, 0, 0, 0);
 
+    /**
+     * @deprecated Use a {@link Scratch} scope for the temporaries, which gives all of them back when it is closed.
+     */
+    @Deprecated
     public static final ReusableStack<Vector4> REUSABLE_STACK = new ReusableStack<>(Vector4::new);
 
     public float x, y, z, w;
@@ -319,11 +324,13 @@ public Vector4 lerp(Vector4 target, float alpha)
 
     public Vector4 lerpSelf(Vector4 target, float alpha)
     {
-        Vector4 temp = Vector4.REUSABLE_STACK.pop();
-        scaleSelf(1f - alpha).addSelf(temp.set(target).scaleSelf(alpha));
-        Vector4.REUSABLE_STACK.push(temp);
+        try (Scratch scratch = Scratch.open())
+        {
+            Vector4 temp = scratch.vector4();
+            scaleSelf(1f - alpha).addSelf(temp.set(target).scaleSelf(alpha));
 
-        return this;
+            return this;
+        }
     }
 
     public Vector4 addSelf(Vector4 v)
@@ -26,6 +26,7 @@
 
 import com.shc.silenceengine.collision.Collision2D;
 import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.utils.Scratch;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -47,6 +48,19 @@
 
     private Rectangle bounds;
 
+    // Incremented whenever the vertices change, so that anything derived from them can be recomputed
+    private int version;
+
+    // Incremented only when vertices are added or cleared, the transforms keep the triangulation valid
+    private int topologyVersion;
+
+    // The vertices packed as x, y pairs, the unit normals of the edges, and the bounds of the vertices as min x, min y,
+    // max x and max y, as of the version in packedVersion
+    private float[] packedVertices = new float[8];
+    private float[] edgeNormals    = new float[8];
+    private float[] packedBounds   = new float[4];
+    private int     packedVersion  = -1;
+
     public Polygon()
     {
         this.vertices = new ArrayList<>();
@@ -59,6 +73,8 @@ public Polygon()
     public void clearVertices()
     {
         vertices.clear();
+        version++;
+        topologyVersion++;
 
         minX = minY = Float.POSITIVE_INFINITY;
         maxX = maxY = Float.NEGATIVE_INFINITY;
@@ -74,6 +90,8 @@ public void addVertex(float x, float y)
     public void addVertex(Vector2 v)
     {
         vertices.add(v);
+        version++;
+        topologyVersion++;
 
         minX = Math.min(v.x, minX);
         minY = Math.min(v.y, minY);
@@ -90,11 +108,26 @@ public void scale(float s)
     public void scale(float sx, float sy)
     {
         vertices.forEach(v -> v.scaleSelf(sx, sy));
+        version++;
     }
 
     public boolean intersects(Polygon other)
     {
-        return Collision2D.testPolygonCollision(this, other, null);
+        return intersects(other, null);
+    }
+
+    /**
+     * Tests whether this polygon intersects another polygon, with a response of its own. See
+     * {@link Collision2D#testPolygonCollision(Polygon, Polygon, Collision2D.Response)}.
+     *
+     * @param other    The other polygon.
+     * @param response The response to fill in, or null to use the shared one.
+     *
+     * @return Whether the polygons intersect.
+     */
+    public boolean intersects(Polygon other, Collision2D.Response response)
+    {
+        return Collision2D.testPolygonCollision(this, other, response);
     }
 
     public boolean contains(Vector2 p)
@@ -102,24 +135,24 @@ public boolean contains(Vector2 p)
         int i, j = getVertices().size() - 1;
         boolean oddNodes = false;
 
-        Vector2 vi = Vector2.REUSABLE_STACK.pop();
-        Vector2 vj = Vector2.REUSABLE_STACK.pop();
-
-        for (i = 0; i < getVertices().size(); j = i++)
+        try (Scratch scratch = Scratch.open())
         {
-            vi.set(getVertex(i)).addSelf(position);
-            vj.set(getVertex(j)).addSelf(position);
+            Vector2 vi = scratch.vector2();
+            Vector2 vj = scratch.vector2();
 
-            if ((((vi.getY() <= p.getY()) && (p.getY() < vj.getY())) ||
-                 ((vj.getY() <= p.getY()) && (p.getY() < vi.getY()))) &&
-                (p.getX() < (vj.getX() - vi.getX()) * (p.getY() - vi.getY()) / (vj.getY() - vi.getY()) + vi.getX()))
-                oddNodes = !oddNodes;
-        }
+            for (i = 0; i < getVertices().size(); j = i++)
+            {
+                vi.set(getVertex(i)).addSelf(position);
+                vj.set(getVertex(j)).addSelf(position);
 
-        Vector2.REUSABLE_STACK.push(vi);
-        Vector2.REUSABLE_STACK.push(vj);
+                if ((((vi.getY() <= p.getY()) && (p.getY() < vj.getY())) ||
+                     ((vj.getY() <= p.getY()) && (p.getY() < vi.getY()))) &&
+                    (p.getX() < (vj.getX() - vi.getX()) * (p.getY() - vi.getY()) / (vj.getY() - vi.getY()) + vi.getX()))
+                    oddNodes = !oddNodes;
+            }
 
-        return oddNodes;
+            return oddNodes;
+        }
     }
 
     public List<Vector2> getVertices()
@@ -132,11 +165,108 @@ public Vector2 getVertex(int index)
         return vertices.get(index);
     }
 
+    /**
+     * Returns the vertices of this polygon packed in an array as x, y pairs, which is recomputed only after the vertices
+     * change. Only the first {@code 2 * vertexCount()} floats are used, and the array must not be modified.
+     *
+     * @return The packed vertices.
+     */
+    public float[] getPackedVertices()
+    {
+        updatePacked();
+        return packedVertices;
+    }
+
+    /**
+     * Returns the unit normals of the edges of this polygon packed in an array as x, y pairs, which is recomputed only
+     * after the vertices change. The normal of the edge from the vertex i to the next vertex is at {@code 2 * i}. Only
+     * the first {@code 2 * vertexCount()} floats are used, and the array must not be modified. The cache is refreshed
+     * lazily, so a polygon that is tested from many threads should have it refreshed before.
+     *
+     * @return The packed edge normals.
+     */
+    public float[] getEdgeNormals()
+    {
+        updatePacked();
+        return edgeNormals;
+    }
+
+    /**
+     * Returns the bounds of the vertices of this polygon, relative to its position, packed in an array as min x, min y,
+     * max x and max y. Unlike {@link #getMinX()} and the others, which are only updated when a vertex is added, these
+     * are recomputed after the vertices are scaled, rotated or translated. The array must not be modified.
+     *
+     * @return The packed bounds of the vertices.
+     */
+    public float[] getPackedBounds()
+    {
+        updatePacked();
+        return packedBounds;
+    }
+
+    private void updatePacked()
+    {
+        if (packedVersion == version)
+            return;
+
+        int count = vertices.size();
+
+        if (packedVertices.length < count * 2)
+        {
+            packedVertices = new float[count * 2];
+            edgeNormals = new float[count * 2];
+        }
+
+        float minX, minY, maxX, maxY;
+
+        minX = minY = Float.POSITIVE_INFINITY;
+        maxX = maxY = Float.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < count; i++)
+        {
+            Vector2 vertex = vertices.get(i);
+
+            packedVertices[i * 2] = vertex.x;
+            packedVertices[i * 2 + 1] = vertex.y;
+
+            minX = Math.min(minX, vertex.x);
+            minY = Math.min(minY, vertex.y);
+            maxX = Math.max(maxX, vertex.x);
+            maxY = Math.max(maxY, vertex.y);
+        }
+
+        packedBounds[0] = minX;
+        packedBounds[1] = minY;
+        packedBounds[2] = maxX;
+        packedBounds[3] = maxY;
+
+        for (int i = 0; i < count; i++)
+        {
+            int next = i + 1 == count ? 0 : i + 1;
+
+            float edgeX = packedVertices[next * 2] - packedVertices[i * 2];
+            float edgeY = packedVertices[next * 2 + 1] - packedVertices[i * 2 + 1];
+
+            // The perpendicular of the edge, a degenerate edge gives a zero normal
+            float length = (float) Math.sqrt(edgeX * edgeX + edgeY * edgeY);
+
+            if (length == 0)
+                length = 1;
+
+            edgeNormals[i * 2] = edgeY / length;
+            edgeNormals[i * 2 + 1] = -edgeX / length;
+        }
+
+        packedVersion = version;
+    }
+
     public Polygon copy()
     {
         Polygon p = new Polygon();
         p.setPosition(getPosition());
-        vertices.forEach(p::addVertex);
+
+        // The vertices are copied, a rotation of the copy must not change the vertices of this polygon
+        vertices.forEach(v -> p.addVertex(v.copy()));
 
         return p;
     }
@@ -244,11 +374,47 @@ public void rotate(float angle, float originX, float originY)
 
         for (Vector2 vertex : vertices)
             vertex.subtractSelf(originX, originY).rotateSelf(angle).addSelf(originX, originY);
+
+        version++;
     }
 
     public void translate(float x, float y)
     {
         vertices.forEach(v -> v.addSelf(x, y));
+        version++;
+    }
+
+    /**
+     * Returns the version of the vertices of this polygon, which changes every time the vertices are added, cleared,
+     * scaled, rotated or translated. Caches of data derived from the vertices compare it to know when to recompute.
+     * If the vertices returned by {@link #getVertices()} are modified directly, {@link #invalidate()} should be called.
+     *
+     * @return The version of the vertices.
+     */
+    public int getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Returns the version of the topology of this polygon, which only changes when the vertices are added or cleared,
+     * or when {@link #invalidate()} is called. Scaling, rotating and translating the polygon keep it, as they don't
+     * change which vertices make up the triangles of the polygon.
+     *
+     * @return The version of the topology.
+     */
+    public int getTopologyVersion()
+    {
+        return topologyVersion;
+    }
+
+    /**
+     * Marks the vertices of this polygon as changed, after they are modified directly.
+     */
+    public void invalidate()
+    {
+        version++;
+        topologyVersion++;
     }
 
     @Override
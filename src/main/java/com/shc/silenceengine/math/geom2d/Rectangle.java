@@ -84,24 +84,6 @@ private void updateVertices()
         addVertex(v4.set(0, height));
     }
 
-    public boolean intersects(Polygon p)
-    {
-        if (p instanceof Rectangle && p.getRotation() == 0 && getRotation() == 0)
-        {
-            Rectangle r = (Rectangle) p;
-
-            float x = getPosition().getX();
-            float y = getPosition().getY();
-
-            float rx = r.getX();
-            float ry = r.getY();
-
-            return (x < rx + r.width) && (rx < x + width) && (y < ry + r.height) && (ry < y + height);
-        }
-        else
-            return super.intersects(p);
-    }
-
     @Override
     public Rectangle copy()
     {
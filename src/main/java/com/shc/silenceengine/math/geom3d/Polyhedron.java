@@ -27,6 +27,7 @@
 import com.shc.silenceengine.collision.Collision3D;
 import com.shc.silenceengine.math.Quaternion;
 import com.shc.silenceengine.math.Vector3;
+import com.shc.silenceengine.utils.Scratch;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -173,7 +174,21 @@ public void translate(float x, float y, float z)
 
     public boolean intersects(Polyhedron other)
     {
-        return Collision3D.testPolyhedronCollision(this, other);
+        return intersects(other, null);
+    }
+
+    /**
+     * Tests whether this polyhedron intersects another polyhedron, with a response of its own. See
+     * {@link Collision3D#testPolyhedronCollision(Polyhedron, Polyhedron, Collision3D.Response)}.
+     *
+     * @param other    The other polyhedron.
+     * @param response The response to fill in, or null to use the shared one.
+     *
+     * @return Whether the polyhedrons intersect.
+     */
+    public boolean intersects(Polyhedron other, Collision3D.Response response)
+    {
+        return Collision3D.testPolyhedronCollision(this, other, response);
     }
 
     public boolean contains(Vector3 p)
@@ -181,25 +196,25 @@ public boolean contains(Vector3 p)
         int i, j = getVertices().size() - 1;
         boolean oddNodes = false;
 
-        Vector3 vi = Vector3.REUSABLE_STACK.pop();
-        Vector3 vj = Vector3.REUSABLE_STACK.pop();
-
-        for (i = 0; i < getVertices().size(); j = i++)
+        try (Scratch scratch = Scratch.open())
         {
-            vi.set(getVertex(i)).addSelf(position);
-            vj.set(getVertex(j)).addSelf(position);
-
-            if ((((vi.getY() <= p.getY()) && (p.getY() < vj.getY())) ||
-                 ((vj.getY() <= p.getY()) && (p.getY() < vi.getY())) ||
-                 ((vj.getZ() <= p.getZ()) && (p.getZ() < vi.getZ()))) &&
-                (p.getX() < (vj.getX() - vi.getX()) * (p.getY() - vi.getY()) / (vj.getY() - vi.getY()) + vi.getX()))
-                oddNodes = !oddNodes;
+            Vector3 vi = scratch.vector3();
+            Vector3 vj = scratch.vector3();
+
+            for (i = 0; i < getVertices().size(); j = i++)
+            {
+                vi.set(getVertex(i)).addSelf(position);
+                vj.set(getVertex(j)).addSelf(position);
+
+                if ((((vi.getY() <= p.getY()) && (p.getY() < vj.getY())) ||
+                     ((vj.getY() <= p.getY()) && (p.getY() < vi.getY())) ||
+                     ((vj.getZ() <= p.getZ()) && (p.getZ() < vi.getZ()))) &&
+                    (p.getX() < (vj.getX() - vi.getX()) * (p.getY() - vi.getY()) / (vj.getY() - vi.getY()) + vi.getX()))
+                    oddNodes = !oddNodes;
+            }
+
+            return oddNodes;
         }
-
-        Vector3.REUSABLE_STACK.push(vi);
-        Vector3.REUSABLE_STACK.push(vj);
-
-        return oddNodes;
     }
 
     public List<Vector3> getVertices()
@@ -0,0 +1,50 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.scene;
+
+/**
+ * A listener that is notified when the children of a scene are added and removed. The SceneColliders use this to keep
+ * their broadphase in sync with the scene, instead of inserting all the children again when the scene changes.
+ *
+ * @param <E> The type of the children of the scene.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public interface ISceneListener<E>
+{
+    /**
+     * Called after a child is added to the scene.
+     *
+     * @param child The child that is added.
+     */
+    void childAdded(E child);
+
+    /**
+     * Called after a child is removed from the scene, either with removeChild() or because it is destroyed.
+     *
+     * @param child The child that is removed.
+     */
+    void childRemoved(E child);
+}
@@ -24,39 +24,174 @@
 
 package com.shc.silenceengine.scene;
 
+import com.shc.silenceengine.collision.broadphase.DynamicTree2D;
+import com.shc.silenceengine.collision.broadphase.IBroadphase2D;
 import com.shc.silenceengine.core.IUpdatable;
 import com.shc.silenceengine.core.SilenceEngine;
+import com.shc.silenceengine.graphics.RenderQueue;
 import com.shc.silenceengine.graphics.SpriteBatch;
 import com.shc.silenceengine.graphics.cameras.BaseCamera;
 import com.shc.silenceengine.math.Frustum;
+import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.geom2d.Rectangle;
 import com.shc.silenceengine.scene.entity.Entity2D;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
+ * <p> A scene of 2D entities, which updates and renders its children. </p>
+ *
+ * <p> The children are kept in buckets by their depth, which are ordered once, the higher depths first, so they are
+ * not sorted every frame. A child is only moved to another bucket when its depth changes. The children are also kept
+ * in a spatial index, and the visible ones are found with a query of the view of the camera, so the cost of preparing
+ * a frame grows with the number of the visible children and not with the size of the scene. A child notifies the scene
+ * when it moves, and only those children are refreshed in the index before the next render. The children of the same
+ * depth are rendered in the order they were added. </p>
+ *
  * @author Sri Harsha Chilakapati
  */
 public class Scene2D implements IUpdatable
 {
+    // The visible children of a depth are rendered in the order they were added
+    private static final Comparator<Child> BY_ORDER = (c1, c2) -> Integer.compare(c1.order, c2.order);
+
     private List<Entity2D> entities;
 
+    // The listeners notified of the added and removed children
+    private List<ISceneListener<Entity2D>> listeners;
+
+    // The records of the children, the buckets of their depths with the higher depths first, and the next order
+    private Map<Entity2D, Child> children;
+    private List<Bucket>         buckets;
+    private int                  nextOrder;
+
+    // The spatial index of the children, and the children that changed since it was last refreshed
+    private IBroadphase2D spatialIndex;
+    private Child[]       changes = new Child[16];
+    private int           numChanges;
+
+    // The bounds of the view of the camera, and the consumer that collects the visible children
+    private Rectangle          viewBounds     = new Rectangle();
+    private Consumer<Entity2D> visibleHandler = this::addVisible;
+
     private boolean frustumCulling;
 
     public Scene2D()
     {
+        this(new DynamicTree2D());
+    }
+
+    /**
+     * Constructs a Scene2D that keeps its children in a spatial index, which is queried for the visible children. The
+     * index must be able to update the children that moved, like the DynamicTree2D, the Grid or the SweepAndPrune2D.
+     *
+     * @param spatialIndex The spatial index of the children.
+     */
+    public Scene2D(IBroadphase2D spatialIndex)
+    {
+        this.spatialIndex = spatialIndex;
+
         entities = new ArrayList<>();
+        listeners = new ArrayList<>();
+        children = new IdentityHashMap<>();
+        buckets = new ArrayList<>();
+
         setFrustumCulling(true);
     }
 
+    /**
+     * Adds a child to this scene. A child that is already in this scene is not added again.
+     *
+     * @param e The child to add.
+     */
     public void addChild(Entity2D e)
     {
+        if (children.containsKey(e))
+            return;
+
         entities.add(e);
+
+        Child child = new Child(e, nextOrder++);
+        children.put(e, child);
+        addToBucket(child, e.getDepth());
+
+        spatialIndex.insert(e);
+        e.setScene(this);
+
+        for (int i = 0; i < listeners.size(); i++)
+            listeners.get(i).childAdded(e);
     }
 
     public void removeChild(Entity2D e)
     {
+        Child child = children.remove(e);
+
+        if (child == null)
+            return;
+
         entities.remove(e);
+        removeFromBucket(child);
+
+        spatialIndex.remove(e);
+
+        if (e.getScene() == this)
+            e.setScene(null);
+
+        for (int i = 0; i < listeners.size(); i++)
+            listeners.get(i).childRemoved(e);
+    }
+
+    /**
+     * Called by a child of this scene when it moves, rotates, is resized or changes its depth. This method is not meant
+     * to be called by the user. A child whose depth changed is moved to the bucket of its new depth right away, and the
+     * child is refreshed in the spatial index before the next render.
+     *
+     * @param e The child that changed.
+     */
+    public void childChanged(Entity2D e)
+    {
+        Child child = children.get(e);
+
+        if (child == null)
+            return;
+
+        if (child.bucket.depth != e.getDepth())
+        {
+            removeFromBucket(child);
+            addToBucket(child, e.getDepth());
+        }
+
+        if (child.changed)
+            return;
+
+        if (numChanges == changes.length)
+            changes = Arrays.copyOf(changes, changes.length * 2);
+
+        child.changed = true;
+        changes[numChanges++] = child;
+    }
+
+    /**
+     * Adds a listener to be notified when the children are added to and removed from this scene. Only the children
+     * added with addChild() and removed with removeChild(), destroy() or because they are destroyed are notified, not
+     * the changes made to the list returned by getEntities().
+     *
+     * @param listener The listener to add.
+     */
+    public void addListener(ISceneListener<Entity2D> listener)
+    {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ISceneListener<Entity2D> listener)
+    {
+        listeners.remove(listener);
     }
 
     public void update(float delta)
@@ -80,40 +215,255 @@ public void render(float delta)
         if (entities.size() == 0)
             return;
 
-        // Sort the entities based on depth
-        entities.sort((e1, e2) -> Integer.compare(e2.getDepth(), e1.getDepth()));
-
-        // Render the entities in batches of depths
-        int depth = entities.get(0).getDepth();
-
-        // Get the Frustum once to prevent unnecessary calculations
-        Frustum frustum = BaseCamera.CURRENT.getFrustum();
+        findVisible(getView());
 
         SpriteBatch batch = SilenceEngine.graphics.getSpriteBatch();
         batch.begin();
         {
-            for (Entity2D entity : entities)
+            boolean first = true;
+
+            // Render the entities in batches of depths
+            for (int i = 0; i < buckets.size(); i++)
             {
-                if (frustumCulling && !frustum.intersects(entity.getPolygon()))
+                List<Child> visible = buckets.get(i).visible;
+
+                if (visible.isEmpty())
                     continue;
 
-                if (entity.getDepth() != depth)
+                if (!first)
                 {
                     batch.end();
-                    depth = entity.getDepth();
                     batch.begin();
                 }
 
-                entity.render(delta, batch);
+                first = false;
+
+                for (int j = 0; j < visible.size(); j++)
+                    visible.get(j).entity.render(delta, batch);
+
+                visible.clear();
             }
         }
         batch.end();
     }
 
+    /**
+     * Records the entities into a RenderQueue instead of drawing them. Every entity is recorded with its own depth, and
+     * the queue sorts them along with the other commands of the frame. The depth of the queue is restored afterwards.
+     *
+     * @param delta The delta time
+     * @param queue The queue to record the entities into
+     */
+    public void render(float delta, RenderQueue queue)
+    {
+        if (entities.size() == 0)
+            return;
+
+        int originalDepth = queue.getDepth();
+
+        findVisible(getView());
+
+        SpriteBatch batch = SilenceEngine.graphics.getSpriteBatch();
+        batch.begin();
+        {
+            for (int i = 0; i < buckets.size(); i++)
+            {
+                Bucket bucket = buckets.get(i);
+
+                if (bucket.visible.isEmpty())
+                    continue;
+
+                if (bucket.depth != queue.getDepth())
+                {
+                    batch.flush(queue);
+                    queue.setDepth(bucket.depth);
+                }
+
+                for (int j = 0; j < bucket.visible.size(); j++)
+                    bucket.visible.get(j).entity.render(delta, batch);
+
+                bucket.visible.clear();
+            }
+        }
+        batch.end(queue);
+
+        queue.setDepth(originalDepth);
+    }
+
+    /**
+     * Passes the children whose bounds overlap a rectangle to a consumer, in the order they are rendered. The higher
+     * depths come first, and the children of the same depth come in the order they were added. This finds the children
+     * the same way the render methods do, with a query of the spatial index. The consumer must not change the scene.
+     *
+     * @param view     The rectangle, or null to pass all the children.
+     * @param consumer The consumer to pass the children to.
+     */
+    public void query(Rectangle view, Consumer<Entity2D> consumer)
+    {
+        findVisible(view);
+
+        for (int i = 0; i < buckets.size(); i++)
+        {
+            List<Child> visible = buckets.get(i).visible;
+
+            for (int j = 0; j < visible.size(); j++)
+                consumer.accept(visible.get(j).entity);
+
+            visible.clear();
+        }
+    }
+
+    /**
+     * @return The bounds of the view of the current camera, or null if the frustum culling is disabled.
+     */
+    private Rectangle getView()
+    {
+        if (!frustumCulling)
+            return null;
+
+        Frustum frustum = BaseCamera.CURRENT.getFrustum();
+
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < 4; i++)
+        {
+            Vector2 corner = frustum.getCorner2D(i);
+
+            minX = Math.min(minX, corner.x);
+            minY = Math.min(minY, corner.y);
+            maxX = Math.max(maxX, corner.x);
+            maxY = Math.max(maxY, corner.y);
+        }
+
+        viewBounds.set(minX, minY, maxX - minX, maxY - minY);
+
+        return viewBounds;
+    }
+
+    /**
+     * Collects the children whose bounds overlap a rectangle into the buckets of their depths, in their order.
+     */
+    private void findVisible(Rectangle view)
+    {
+        refreshIndex();
+
+        if (view == null)
+        {
+            for (int i = 0; i < entities.size(); i++)
+                addVisible(entities.get(i));
+        }
+        else
+            spatialIndex.query(view, visibleHandler);
+
+        for (int i = 0; i < buckets.size(); i++)
+        {
+            List<Child> visible = buckets.get(i).visible;
+
+            if (visible.size() > 1)
+                visible.sort(BY_ORDER);
+        }
+    }
+
+    private void addVisible(Entity2D e)
+    {
+        Child child = children.get(e);
+
+        if (child != null)
+            child.bucket.visible.add(child);
+    }
+
+    /**
+     * Refreshes the children that changed since the last refresh in the spatial index.
+     */
+    private void refreshIndex()
+    {
+        for (int i = 0; i < numChanges; i++)
+        {
+            Child child = changes[i];
+            changes[i] = null;
+
+            child.changed = false;
+
+            // The children that were removed since they changed are not in the index
+            if (children.get(child.entity) == child)
+                spatialIndex.update(child.entity);
+        }
+
+        numChanges = 0;
+    }
+
+    private void addToBucket(Child child, int depth)
+    {
+        int index = findBucket(depth);
+
+        if (index < 0)
+        {
+            index = -index - 1;
+            buckets.add(index, new Bucket(depth));
+        }
+
+        child.bucket = buckets.get(index);
+        child.bucket.size++;
+    }
+
+    private void removeFromBucket(Child child)
+    {
+        Bucket bucket = child.bucket;
+        child.bucket = null;
+
+        if (--bucket.size == 0)
+            buckets.remove(findBucket(bucket.depth));
+    }
+
+    /**
+     * Searches the buckets, which are ordered by their depths from the highest, for a depth.
+     *
+     * @return The index of the bucket, or {@code -(insertion point) - 1} if there is no bucket of the depth.
+     */
+    private int findBucket(int depth)
+    {
+        int low = 0;
+        int high = buckets.size() - 1;
+
+        while (low <= high)
+        {
+            int middle = (low + high) >>> 1;
+            int middleDepth = buckets.get(middle).depth;
+
+            if (middleDepth > depth)
+                low = middle + 1;
+            else if (middleDepth < depth)
+                high = middle - 1;
+            else
+                return middle;
+        }
+
+        return -(low + 1);
+    }
+
     public void destroy()
     {
         entities.forEach(Entity2D::destroy);
+
+        for (Entity2D entity : entities)
+        {
+            if (entity.getScene() == this)
+                entity.setScene(null);
+
+            for (int i = 0; i < listeners.size(); i++)
+                listeners.get(i).childRemoved(entity);
+        }
+
         entities.clear();
+        children.clear();
+        buckets.clear();
+        spatialIndex.clear();
+
+        Arrays.fill(changes, 0, numChanges, null);
+        numChanges = 0;
     }
 
     public List<Entity2D> getEntities()
@@ -121,6 +471,18 @@ public List<Entity2D> getEntities()
         return entities;
     }
 
+    /**
+     * Returns the spatial index of the children, which can be queried for the children in a region. The children that
+     * changed are refreshed in it first. The index must not be changed, the scene keeps it up to date.
+     *
+     * @return The spatial index of the children.
+     */
+    public IBroadphase2D getSpatialIndex()
+    {
+        refreshIndex();
+        return spatialIndex;
+    }
+
     public boolean isFrustumCullingEnabled()
     {
         return frustumCulling;
@@ -130,4 +492,38 @@ public void setFrustumCulling(boolean frustumCulling)
     {
         this.frustumCulling = frustumCulling;
     }
+
+    /**
+     * The record of a child, with the bucket of its depth, the order it was added in, and whether it changed.
+     */
+    private static class Child
+    {
+        private final Entity2D entity;
+        private final int      order;
+
+        private Bucket  bucket;
+        private boolean changed;
+
+        private Child(Entity2D entity, int order)
+        {
+            this.entity = entity;
+            this.order = order;
+        }
+    }
+
+    /**
+     * The children of a depth, counted, and the visible ones of the frame being prepared.
+     */
+    private static class Bucket
+    {
+        private final int         depth;
+        private final List<Child> visible = new ArrayList<>();
+
+        private int size;
+
+        private Bucket(int depth)
+        {
+            this.depth = depth;
+        }
+    }
 }
@@ -45,6 +45,9 @@ public class Scene3D implements IUpdatable
     private List<SceneComponent> components;
     private List<Entity3D>       entities;
 
+    // The listeners notified of the added and removed children
+    private List<ISceneListener<Entity3D>> listeners;
+
     private Transform transform;
 
     private boolean frustumCulling;
@@ -53,6 +56,7 @@ public Scene3D()
     {
         components = new ArrayList<>();
         entities = new ArrayList<>();
+        listeners = new ArrayList<>();
         transform = new Transform();
 
         setFrustumCulling(true);
@@ -66,7 +70,7 @@ public void update(float delta)
 
             if (entity.isDestroyed())
             {
-                entities.remove(entity);
+                removeChild(entity);
                 i--;
                 continue;
             }
@@ -125,6 +129,9 @@ private void doRender(float delta, Frustum frustum)
     public void addChild(Entity3D e)
     {
         entities.add(e);
+
+        for (int i = 0; i < listeners.size(); i++)
+            listeners.get(i).childAdded(e);
     }
 
     public void addComponent(SceneComponent c)
@@ -134,7 +141,28 @@ public void addComponent(SceneComponent c)
 
     public void removeChild(Entity3D e)
     {
-        entities.remove(e);
+        if (!entities.remove(e))
+            return;
+
+        for (int i = 0; i < listeners.size(); i++)
+            listeners.get(i).childRemoved(e);
+    }
+
+    /**
+     * Adds a listener to be notified when the children are added to and removed from this scene. Only the children
+     * added with addChild() and removed with removeChild(), destroy() or because they are destroyed are notified, not
+     * the changes made to the list returned by getEntities().
+     *
+     * @param listener The listener to add.
+     */
+    public void addListener(ISceneListener<Entity3D> listener)
+    {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ISceneListener<Entity3D> listener)
+    {
+        listeners.remove(listener);
     }
 
     public void removeComponent(SceneComponent component)
@@ -147,6 +175,12 @@ public void destroy()
         entities.forEach(Entity3D::destroy);
         components.forEach(SceneComponent::dispose);
 
+        for (Entity3D entity : entities)
+        {
+            for (int i = 0; i < listeners.size(); i++)
+                listeners.get(i).childRemoved(entity);
+        }
+
         entities.clear();
         components.clear();
     }
@@ -31,7 +31,9 @@
 import com.shc.silenceengine.math.Vector2;
 import com.shc.silenceengine.math.geom2d.Polygon;
 import com.shc.silenceengine.math.geom2d.Rectangle;
+import com.shc.silenceengine.scene.Scene2D;
 import com.shc.silenceengine.utils.IDGenerator;
+import com.shc.silenceengine.utils.Scratch;
 
 /**
  * <p> This class represents all the 2D Entities in a Scene. Any entity which is 2D and wants to be in a Scene must
@@ -61,6 +63,10 @@
  * <p> Note that the collisions will only be notified if you are using a SceneCollider2D and registered a collision
  * check.</p>
  *
+ * <p> An entity moves by its velocity in a single step every frame, so a fast entity can pass through a thin one
+ * without ever intersecting it. Such entities can be made continuous, see {@link #setContinuous(boolean)}, and their
+ * motion is then swept when the collisions are checked.</p>
+ *
  * @author Sri Harsha Chilakapati
  */
 public class Entity2D implements IUpdatable
@@ -85,6 +91,22 @@ public class Entity2D implements IUpdatable
     // Whether this entity is destroyed
     private boolean destroyed;
 
+    // Whether this entity moved, rotated or was resized since it was last cleaned, and the version of the polygon then
+    private boolean dirty;
+    private int     cleanVersion;
+
+    // The collision layers this entity belongs to, and the layers it collides with
+    private int collisionCategory;
+    private int collisionMask;
+
+    // Whether the motion of this entity is swept, the motion by the velocity in the last frame, and the bounds of it
+    private boolean   continuous;
+    private Vector2   motion;
+    private Rectangle sweptBounds;
+
+    // The scene this entity is a child of, which is notified when this entity changes
+    private Scene2D scene;
+
     /**
      * Constructs an Entity2D to use a polygon that can be used to perform collisions.
      *
@@ -108,9 +130,12 @@ public Entity2D(Sprite sprite, Polygon polygon)
 
         position = new Vector2().set(polygon.getPosition());
         velocity = new Vector2();
+        motion = new Vector2();
 
         depth = 0;
         id = IDGenerator.generate();
+
+        dirty = true;
     }
 
     /**
@@ -127,18 +152,26 @@ public void preUpdate(float delta)
 
         update(delta);
 
+        // The bounds of a continuous entity change with its motion, even when it stops
+        if (continuous && (motion.x != velocity.x || motion.y != velocity.y))
+        {
+            motion.set(velocity);
+            changed();
+        }
+
         if (velocity == Vector2.ZERO)
             return;
 
-        Vector2 tempVec2 = Vector2.REUSABLE_STACK.pop();
+        try (Scratch scratch = Scratch.open())
+        {
+            Vector2 tempVec2 = scratch.vector2();
 
-        // Calculate the new position
-        setPosition(tempVec2.set(position).addSelf(velocity));
+            // Calculate the new position
+            setPosition(tempVec2.set(position).addSelf(velocity));
 
-        Vector2.REUSABLE_STACK.push(tempVec2);
-
-        sprite.update(delta);
-        sprite.setRotation(getRotation());
+            sprite.update(delta);
+            sprite.setRotation(getRotation());
+        }
     }
 
     public void update(float delta)
@@ -160,6 +193,9 @@ public Vector2 getPosition()
      */
     public void setPosition(Vector2 position)
     {
+        if (this.position.x != position.x || this.position.y != position.y)
+            changed();
+
         this.position.set(position);
         polygon.setPosition(position);
     }
@@ -183,9 +219,7 @@ public void setCenter(Vector2 center)
         polygon.setCenter(center);
         position.set(polygon.getPosition());
 
-        Vector2 tempVec2 = Vector2.REUSABLE_STACK.pop();
-
-        Vector2.REUSABLE_STACK.push(tempVec2);
+        changed();
     }
 
     /**
@@ -264,6 +298,7 @@ else if (y < ny)
         position.y = y;
 
         polygon.setPosition(position);
+        changed();
 
         return (_x && _y);
     }
@@ -321,8 +356,8 @@ else if (y < ny)
      */
     public void bounce(Entity2D other)
     {
-        float xd = getBounds().getIntersectionWidth(other.getBounds());
-        float yd = getBounds().getIntersectionHeight(other.getBounds());
+        float xd = polygon.getBounds().getIntersectionWidth(other.getPolygon().getBounds());
+        float yd = polygon.getBounds().getIntersectionHeight(other.getPolygon().getBounds());
 
         float dx = velocity.x;
         float dy = velocity.y;
@@ -348,13 +383,15 @@ public void bounce(Entity2D other)
      */
     public void render(float delta, SpriteBatch batch)
     {
-        Vector2 temp = Vector2.REUSABLE_STACK.pop();
+        try (Scratch scratch = Scratch.open())
+        {
+            Vector2 temp = scratch.vector2();
 
-        // The correct position is 'originalPos + (norm(velocity) * delta)' to get smooth movement.
-        temp.set(getVelocity()).normalizeSelf().scaleSelf(delta).addSelf(getPosition());
+            // The correct position is 'originalPos + (norm(velocity) * delta)' to get smooth movement.
+            temp.set(getVelocity()).normalizeSelf().scaleSelf(delta).addSelf(getPosition());
 
-        batch.addSprite(sprite, temp);
-        Vector2.REUSABLE_STACK.push(temp);
+            batch.addSprite(sprite, temp);
+        }
     }
 
     /**
@@ -382,22 +419,22 @@ public float getHeight()
      */
     public void alignNextTo(Entity2D other)
     {
-        Vector2 tempVec2 = Vector2.REUSABLE_STACK.pop();
-        Vector2 direction = Vector2.REUSABLE_STACK.pop();
+        try (Scratch scratch = Scratch.open())
+        {
+            Vector2 tempVec2 = scratch.vector2();
+            Vector2 direction = scratch.vector2();
 
-        Vector2 tCenter = getCenter();
-        Vector2 oCenter = other.getCenter();
+            Vector2 tCenter = getCenter();
+            Vector2 oCenter = other.getCenter();
 
-        direction.set(tCenter).subtractSelf(oCenter).normalizeSelf();
-        setCenter(direction.addSelf(getCenter()));
+            direction.set(tCenter).subtractSelf(oCenter).normalizeSelf();
+            setCenter(direction.addSelf(getCenter()));
 
-        Collision2D.Response response = new Collision2D.Response();
-        Collision2D.testPolygonCollision(polygon, other.getPolygon(), response);
+            Collision2D.Response response = new Collision2D.Response();
+            Collision2D.testPolygonCollision(polygon, other.getPolygon(), response);
 
-        setPosition(tempVec2.set(position).subtractSelf(response.getMinimumTranslationVector()));
-
-        Vector2.REUSABLE_STACK.push(tempVec2);
-        Vector2.REUSABLE_STACK.push(direction);
+            setPosition(tempVec2.set(position).subtractSelf(response.getMinimumTranslationVector()));
+        }
     }
 
     /**
@@ -416,6 +453,7 @@ public Polygon getPolygon()
     public void setPolygon(Polygon polygon)
     {
         this.polygon = polygon;
+        changed();
     }
 
     /**
@@ -426,6 +464,7 @@ public void setPolygon(Polygon polygon)
     public void rotate(float angle)
     {
         polygon.rotate(angle);
+        changed();
     }
 
     /**
@@ -445,7 +484,13 @@ public int getDepth()
      */
     public void setDepth(int depth)
     {
+        if (this.depth == depth)
+            return;
+
         this.depth = depth;
+
+        if (scene != null)
+            scene.childChanged(this);
     }
 
     /**
@@ -466,6 +511,8 @@ public void setRotation(float rotation)
     {
         polygon.setRotation(rotation);
         sprite.setRotation(rotation);
+
+        changed();
     }
 
     /**
@@ -479,11 +526,26 @@ public int getID()
     }
 
     /**
+     * Returns the Rectangle that bounds this entity. The bounds of a continuous entity that moved in the last frame
+     * cover its whole motion, from where it started to where it is now, so that the broadphases find the entities it
+     * might have passed through.
+     *
      * @return The Rectangle that bounds this entity
      */
     public Rectangle getBounds()
     {
-        return polygon.getBounds();
+        Rectangle bounds = polygon.getBounds();
+
+        if (motion.x == 0 && motion.y == 0)
+            return bounds;
+
+        if (sweptBounds == null)
+            sweptBounds = new Rectangle();
+
+        sweptBounds.set(bounds.getX() - Math.max(motion.x, 0), bounds.getY() - Math.max(motion.y, 0),
+                bounds.getWidth() + Math.abs(motion.x), bounds.getHeight() + Math.abs(motion.y));
+
+        return sweptBounds;
     }
 
     /**
@@ -503,6 +565,8 @@ public void setX(float x)
     {
         position.setX(x);
         polygon.setPosition(position);
+
+        changed();
     }
 
     /**
@@ -522,6 +586,8 @@ public void setY(float y)
     {
         position.setY(y);
         polygon.setPosition(position);
+
+        changed();
     }
 
     /**
@@ -592,6 +658,153 @@ public void setSprite(Sprite sprite)
         this.sprite.set(sprite);
     }
 
+    /**
+     * Returns whether this entity moved, rotated or was resized since it was last cleaned. The SceneCollider2D only
+     * refreshes the dirty entities in its broadphase, and cleans them. The changes made to the vertices of the polygon
+     * are also noticed, but a position set on the polygon directly is not, it should be set on the entity.
+     *
+     * @return True if this entity is dirty, else false.
+     */
+    public boolean isDirty()
+    {
+        return dirty || polygon.getVersion() != cleanVersion;
+    }
+
+    /**
+     * Marks this entity as dirty, for the changes to its polygon that are not noticed otherwise. The scene is also
+     * notified, so that it refreshes this entity in its spatial index.
+     */
+    public void markDirty()
+    {
+        changed();
+    }
+
+    /**
+     * Marks this entity as dirty, and notifies the scene it is a child of that it changed.
+     */
+    private void changed()
+    {
+        dirty = true;
+
+        if (scene != null)
+            scene.childChanged(this);
+    }
+
+    /**
+     * Cleans this entity, after it is refreshed in the broadphase.
+     */
+    public void clearDirty()
+    {
+        dirty = false;
+        cleanVersion = polygon.getVersion();
+    }
+
+    /**
+     * @return The collision layers this entity belongs to, one bit for every layer.
+     */
+    public int getCollisionCategory()
+    {
+        return collisionCategory;
+    }
+
+    /**
+     * Sets the collision layers this entity belongs to. When checking the collisions, the SceneCollider2D combines
+     * these layers with the bits of the types that are registered with it, without changing them.
+     *
+     * @param collisionCategory The layers, one bit for every layer.
+     */
+    public void setCollisionCategory(int collisionCategory)
+    {
+        this.collisionCategory = collisionCategory;
+    }
+
+    /**
+     * @return The collision layers this entity collides with, one bit for every layer.
+     */
+    public int getCollisionMask()
+    {
+        return collisionMask;
+    }
+
+    /**
+     * Sets the collision layers this entity collides with. This entity is notified of a collision with an other entity
+     * if this mask has a bit of the category of the other entity.
+     *
+     * @param collisionMask The layers, one bit for every layer.
+     */
+    public void setCollisionMask(int collisionMask)
+    {
+        this.collisionMask = collisionMask;
+    }
+
+    /**
+     * Checks whether this entity and an other entity can collide, that is, whether either of them collides with a
+     * layer of the other. This doesn't check the intersection.
+     *
+     * @param other The other entity.
+     *
+     * @return True if the layers of the entities allow a collision, else false.
+     */
+    public boolean canCollideWith(Entity2D other)
+    {
+        return ((collisionCategory & other.collisionMask) | (other.collisionCategory & collisionMask)) != 0;
+    }
+
+    /**
+     * @return The scene this entity is a child of, or null if it is not in a scene.
+     */
+    public Scene2D getScene()
+    {
+        return scene;
+    }
+
+    /**
+     * Sets the scene this entity is a child of. This method is not meant to be called by the user and is called by the
+     * Scene2D class when this entity is added to it or removed from it. The scene is notified when this entity moves,
+     * rotates, is resized or changes its depth.
+     *
+     * @param scene The scene, or null if this entity is removed from its scene.
+     */
+    public void setScene(Scene2D scene)
+    {
+        this.scene = scene;
+    }
+
+    /**
+     * @return Whether the motion of this entity is swept when the collisions are checked.
+     */
+    public boolean isContinuous()
+    {
+        return continuous;
+    }
+
+    /**
+     * Sets whether the motion of this entity is swept when the collisions are checked. The SceneCollider2D then finds
+     * the time of impact of a continuous entity with the others along the motion it made by its velocity in the last
+     * frame, instead of only testing where it is now, so that a fast entity doesn't pass through a thin one. Only the
+     * motion by the velocity is swept, the entity is not swept when it is moved in other ways.
+     *
+     * @param continuous True to sweep the motion of this entity, false to only test where it is.
+     */
+    public void setContinuous(boolean continuous)
+    {
+        this.continuous = continuous;
+
+        if (!continuous)
+            motion.set(0, 0);
+
+        changed();
+    }
+
+    /**
+     * @return The motion of this entity by its velocity in the last frame if it is continuous, else a zero vector. The
+     * vector must not be modified.
+     */
+    public Vector2 getMotion()
+    {
+        return motion;
+    }
+
     @Override
     public int hashCode()
     {
@@ -80,6 +80,13 @@ public class Entity3D implements IUpdatable
 
     private boolean destroyed;
 
+    // Whether this entity moved, rotated or was scaled since it was last cleaned
+    private boolean dirty;
+
+    // The collision layers this entity belongs to, and the layers it collides with
+    private int collisionCategory;
+    private int collisionMask;
+
     /**
      * Constructs a Entity3D to use a Polyhedron that can be used to perform collisions.
      *
@@ -106,6 +113,8 @@ public Entity3D(Model model, Polyhedron polyhedron)
         transform = new Transform();
 
         id = IDGenerator.generate();
+
+        dirty = true;
     }
 
     /**
@@ -131,6 +140,9 @@ public void preUpdate(float delta)
         position.addSelf(velocity);
         polyhedron.setPosition(position);
 
+        if (velocity.x != 0 || velocity.y != 0 || velocity.z != 0)
+            dirty = true;
+
         // Update the transforms
         updateTransforms();
     }
@@ -164,6 +176,9 @@ public Vector3 getPosition()
      */
     public void setPosition(Vector3 position)
     {
+        if (this.position.x != position.x || this.position.y != position.y || this.position.z != position.z)
+            dirty = true;
+
         this.position.set(position);
         polyhedron.setPosition(position);
         updateTransforms();
@@ -249,6 +264,7 @@ else if (z < nz)
         position.z = z;
 
         polyhedron.setPosition(position);
+        dirty = true;
 
         return (_x && _y && _z);
     }
@@ -264,24 +280,32 @@ public void rotate(float rx, float ry, float rz)
     {
         polyhedron.rotate(rx, ry, rz);
         updateTransforms();
+
+        dirty = true;
     }
 
     public void setRotation(float rx, float ry, float rz)
     {
         polyhedron.setRotation(rx, ry, rz);
         updateTransforms();
+
+        dirty = true;
     }
 
     public void scale(float sx, float sy, float sz)
     {
         polyhedron.scale(sx, sy, sz);
         updateTransforms();
+
+        dirty = true;
     }
 
     public void setScale(float sx, float sy, float sz)
     {
         polyhedron.setScale(sx, sy, sz);
         updateTransforms();
+
+        dirty = true;
     }
 
     /**
@@ -310,6 +334,8 @@ public void setX(float x)
         position.setX(x);
         polyhedron.setPosition(position);
         updateTransforms();
+
+        dirty = true;
     }
 
     /**
@@ -330,6 +356,8 @@ public void setY(float y)
         position.setY(y);
         polyhedron.setPosition(position);
         updateTransforms();
+
+        dirty = true;
     }
 
     /**
@@ -350,6 +378,8 @@ public void setZ(float z)
         position.setZ(z);
         polyhedron.setPosition(position);
         updateTransforms();
+
+        dirty = true;
     }
 
     /**
@@ -404,6 +434,7 @@ public Polyhedron getPolyhedron()
     public void setPolyhedron(Polyhedron polyhedron)
     {
         this.polyhedron = polyhedron;
+        dirty = true;
     }
 
     /**
@@ -449,6 +480,85 @@ public void setModel(Model model)
         this.model = model;
     }
 
+    /**
+     * Returns whether this entity moved, rotated or was scaled since it was last cleaned. The SceneCollider3D only
+     * refreshes the dirty entities in its broadphase, and cleans them. The changes made to the polyhedron directly are
+     * not noticed, {@link #markDirty()} should be called after them.
+     *
+     * @return True if this entity is dirty, else false.
+     */
+    public boolean isDirty()
+    {
+        return dirty;
+    }
+
+    /**
+     * Marks this entity as dirty, for the changes to its polyhedron that are not noticed otherwise.
+     */
+    public void markDirty()
+    {
+        dirty = true;
+    }
+
+    /**
+     * Cleans this entity, after it is refreshed in the broadphase.
+     */
+    public void clearDirty()
+    {
+        dirty = false;
+    }
+
+    /**
+     * @return The collision layers this entity belongs to, one bit for every layer.
+     */
+    public int getCollisionCategory()
+    {
+        return collisionCategory;
+    }
+
+    /**
+     * Sets the collision layers this entity belongs to. When checking the collisions, the SceneCollider3D combines
+     * these layers with the bits of the types that are registered with it, without changing them.
+     *
+     * @param collisionCategory The layers, one bit for every layer.
+     */
+    public void setCollisionCategory(int collisionCategory)
+    {
+        this.collisionCategory = collisionCategory;
+    }
+
+    /**
+     * @return The collision layers this entity collides with, one bit for every layer.
+     */
+    public int getCollisionMask()
+    {
+        return collisionMask;
+    }
+
+    /**
+     * Sets the collision layers this entity collides with. This entity is notified of a collision with an other entity
+     * if this mask has a bit of the category of the other entity.
+     *
+     * @param collisionMask The layers, one bit for every layer.
+     */
+    public void setCollisionMask(int collisionMask)
+    {
+        this.collisionMask = collisionMask;
+    }
+
+    /**
+     * Checks whether this entity and an other entity can collide, that is, whether either of them collides with a
+     * layer of the other. This doesn't check the intersection.
+     *
+     * @param other The other entity.
+     *
+     * @return True if the layers of the entities allow a collision, else false.
+     */
+    public boolean canCollideWith(Entity3D other)
+    {
+        return ((collisionCategory & other.collisionMask) | (other.collisionCategory & collisionMask)) != 0;
+    }
+
     public int getID()
     {
         return id;
@@ -24,7 +24,7 @@
 
 package com.shc.silenceengine.scene.tiled.renderers;
 
-import com.shc.silenceengine.graphics.Batcher;
+import com.shc.silenceengine.graphics.IBatch;
 import com.shc.silenceengine.backend.lwjgl3.opengl.Primitive;
 import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
 import com.shc.silenceengine.math.Vector2;
@@ -55,37 +55,39 @@ private Vector2 orthoToIso(float x, float y)
         return tempVector.addSelf(map.getWidth() * map.getTileWidth() / 2, 0);
     }
 
+    private void vertex(IBatch batch, Vector2 v)
+    {
+        batch.vertex(v.x, v.y);
+    }
+
     @Override
-    protected void renderBackgroundColor(Batcher batcher)
+    protected void renderBackgroundColor(IBatch batch)
     {
         // Render the background rectangle
-        batcher.begin(Primitive.TRIANGLE_FAN);
+        batch.begin(Primitive.TRIANGLE_FAN, null);
         {
-            batcher.vertex(orthoToIso(0, 0));
-            batcher.color(map.getBackgroundColor());
+            vertex(batch, orthoToIso(0, 0));
+            batch.color(map.getBackgroundColor());
 
-            batcher.vertex(orthoToIso(map.getWidth(), 0));
-            batcher.color(map.getBackgroundColor());
+            vertex(batch, orthoToIso(map.getWidth(), 0));
+            batch.color(map.getBackgroundColor());
 
-            batcher.vertex(orthoToIso(map.getWidth(), map.getHeight()));
-            batcher.color(map.getBackgroundColor());
+            vertex(batch, orthoToIso(map.getWidth(), map.getHeight()));
+            batch.color(map.getBackgroundColor());
 
-            batcher.vertex(orthoToIso(0, map.getHeight()));
-            batcher.color(map.getBackgroundColor());
+            vertex(batch, orthoToIso(0, map.getHeight()));
+            batch.color(map.getBackgroundColor());
         }
-        batcher.end();
+        batch.end();
     }
 
     @Override
-    protected void renderImageLayer(Batcher batcher, TmxImageLayer imageLayer)
+    protected void renderImageLayer(IBatch batch, TmxImageLayer imageLayer)
     {
         if (!imageLayer.isVisible())
             return;
 
-        Texture originalTexture = Texture.CURRENT;
-
-        textureMap.get(imageLayer.getImage().getSource().getAbsolutePath()).bind();
-        batcher.begin(Primitive.TRIANGLE_FAN);
+        batch.begin(Primitive.TRIANGLE_FAN, textureMap.get(imageLayer.getImage().getSource().getAbsolutePath()));
         {
             float tileWidth = map.getTileWidth();
             float tileHeight = map.getTileHeight();
@@ -93,34 +95,30 @@ protected void renderImageLayer(Batcher batcher, TmxImageLayer imageLayer)
             float posX = (imageLayer.getY() * tileWidth / 2) + (imageLayer.getX() * tileWidth / 2);
             float posY = (imageLayer.getX() * tileHeight / 2) - (imageLayer.getY() * tileHeight / 2);
 
-            batcher.vertex(posX, posY);
-            batcher.texCoord(0, 0);
+            batch.vertex(posX, posY);
+            batch.texCoord(0, 0);
 
-            batcher.vertex(posX + imageLayer.getWidth() * map.getTileWidth(), posY);
-            batcher.texCoord(1, 0);
+            batch.vertex(posX + imageLayer.getWidth() * map.getTileWidth(), posY);
+            batch.texCoord(1, 0);
 
-            batcher.vertex(posX + imageLayer.getWidth() * map.getTileWidth(), imageLayer.getY() + imageLayer.getHeight() * map.getTileHeight());
-            batcher.texCoord(1, 1);
+            batch.vertex(posX + imageLayer.getWidth() * map.getTileWidth(), imageLayer.getY() + imageLayer.getHeight() * map.getTileHeight());
+            batch.texCoord(1, 1);
 
-            batcher.vertex(posX, imageLayer.getY() + imageLayer.getHeight() * map.getTileHeight());
-            batcher.texCoord(0, 1);
+            batch.vertex(posX, imageLayer.getY() + imageLayer.getHeight() * map.getTileHeight());
+            batch.texCoord(0, 1);
         }
-        batcher.end();
-
-        originalTexture.bind();
+        batch.end();
     }
 
     @Override
-    protected void renderTileLayer(Batcher batcher, TmxTileLayer tileLayer)
+    protected void renderTileLayer(IBatch batch, TmxTileLayer tileLayer)
     {
         if (!tileLayer.isVisible())
             return;
 
-        Texture original = Texture.CURRENT;
         Texture current = textureMap.get(map.getTileset(0).getImage().getSource().getAbsolutePath());
-        current.bind();
 
-        batcher.begin(Primitive.TRIANGLES);
+        batch.begin(Primitive.TRIANGLES, current);
         {
             for (int x = 0; x < tileLayer.getWidth(); x++)
             {
@@ -138,10 +136,9 @@ protected void renderTileLayer(Batcher batcher, TmxTileLayer tileLayer)
 
                     if (texture.getID() != current.getID())
                     {
-                        batcher.end();
+                        batch.end();
                         current = texture;
-                        texture.bind();
-                        batcher.begin(Primitive.TRIANGLES);
+                        batch.begin(Primitive.TRIANGLES, current);
                     }
 
                     int tileID = mapTile.getGID() - tileSet.getFirstGID();
@@ -195,29 +192,27 @@ protected void renderTileLayer(Batcher batcher, TmxTileLayer tileLayer)
                     float uvCorrectionY = (0.5f / tileSet.getImage().getHeight());
 
                     // Draw the tile
-                    batcher.vertex(orthoToIso(x, y).addSelf(-tileWidth / 2, 0).addSelf(0, 0));
-                    batcher.texCoord(minU + uvCorrectionX, minV + uvCorrectionY);
+                    vertex(batch, orthoToIso(x, y).addSelf(-tileWidth / 2, 0).addSelf(0, 0));
+                    batch.texCoord(minU + uvCorrectionX, minV + uvCorrectionY);
 
-                    batcher.vertex(orthoToIso(x, y).addSelf(-tileWidth / 2, 0).addSelf(flipZ ? 0 : tileWidth, flipZ ? tileHeight : 0));
-                    batcher.texCoord(maxU - uvCorrectionX, minV + uvCorrectionY);
+                    vertex(batch, orthoToIso(x, y).addSelf(-tileWidth / 2, 0).addSelf(flipZ ? 0 : tileWidth, flipZ ? tileHeight : 0));
+                    batch.texCoord(maxU - uvCorrectionX, minV + uvCorrectionY);
 
-                    batcher.vertex(orthoToIso(x, y).addSelf(-tileWidth / 2, 0).addSelf(flipZ ? tileWidth : 0, flipZ ? 0 : tileHeight));
-                    batcher.texCoord(minU + uvCorrectionX, maxV - uvCorrectionY);
+                    vertex(batch, orthoToIso(x, y).addSelf(-tileWidth / 2, 0).addSelf(flipZ ? tileWidth : 0, flipZ ? 0 : tileHeight));
+                    batch.texCoord(minU + uvCorrectionX, maxV - uvCorrectionY);
 
-                    batcher.vertex(orthoToIso(x, y).addSelf(-tileWidth / 2, 0).addSelf(flipZ ? 0 : tileWidth, flipZ ? tileHeight : 0));
-                    batcher.texCoord(maxU - uvCorrectionX, minV + uvCorrectionY);
+                    vertex(batch, orthoToIso(x, y).addSelf(-tileWidth / 2, 0).addSelf(flipZ ? 0 : tileWidth, flipZ ? tileHeight : 0));
+                    batch.texCoord(maxU - uvCorrectionX, minV + uvCorrectionY);
 
-                    batcher.vertex(orthoToIso(x, y).addSelf(-tileWidth / 2, 0).addSelf(tileWidth, tileHeight));
-                    batcher.texCoord(maxU - uvCorrectionX, maxV - uvCorrectionY);
+                    vertex(batch, orthoToIso(x, y).addSelf(-tileWidth / 2, 0).addSelf(tileWidth, tileHeight));
+                    batch.texCoord(maxU - uvCorrectionX, maxV - uvCorrectionY);
 
-                    batcher.vertex(orthoToIso(x, y).addSelf(-tileWidth / 2, 0).addSelf(flipZ ? tileWidth : 0, flipZ ? 0 : tileHeight));
-                    batcher.texCoord(minU + uvCorrectionX, maxV - uvCorrectionY);
+                    vertex(batch, orthoToIso(x, y).addSelf(-tileWidth / 2, 0).addSelf(flipZ ? tileWidth : 0, flipZ ? 0 : tileHeight));
+                    batch.texCoord(minU + uvCorrectionX, maxV - uvCorrectionY);
                 }
             }
         }
-        batcher.end();
-
-        original.bind();
+        batch.end();
     }
 
     @Override
@@ -27,6 +27,8 @@
 import com.shc.silenceengine.core.IUpdatable;
 import com.shc.silenceengine.core.SilenceException;
 import com.shc.silenceengine.graphics.Batcher;
+import com.shc.silenceengine.graphics.IBatch;
+import com.shc.silenceengine.graphics.RenderQueue;
 import com.shc.silenceengine.backend.lwjgl3.opengl.Primitive;
 import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
 import com.shc.silenceengine.io.FilePath;
@@ -106,76 +108,106 @@ public void update(float delta)
 
     public void render(Batcher batcher)
     {
-        renderBackgroundColor(batcher);
+        render(batcher.asBatch(), null);
+    }
+
+    /**
+     * Records the map into a RenderQueue. The background takes the current depth of the queue, and every layer of the
+     * map takes a depth below the previous one, so that the layers are drawn in their order even when they use
+     * different textures. The depth of the queue is restored afterwards.
+     *
+     * @param queue The queue to record the map into.
+     */
+    public void render(RenderQueue queue)
+    {
+        render(queue, queue);
+    }
+
+    private void render(IBatch batch, RenderQueue queue)
+    {
+        int depth = queue == null ? 0 : queue.getDepth();
+        int layerDepth = depth;
+
+        renderBackgroundColor(batch);
 
         // Render the image and tile layers
         for (TmxMapLayer mapLayer : map.getLayers())
         {
+            if (queue != null)
+                queue.setDepth(--layerDepth);
+
             if (mapLayer instanceof TmxTileLayer)
-                renderTileLayer(batcher, (TmxTileLayer) mapLayer);
+                renderTileLayer(batch, (TmxTileLayer) mapLayer);
 
             if (mapLayer instanceof TmxImageLayer)
-                renderImageLayer(batcher, (TmxImageLayer) mapLayer);
+                renderImageLayer(batch, (TmxImageLayer) mapLayer);
         }
+
+        if (queue != null)
+            queue.setDepth(depth);
     }
 
-    protected void renderBackgroundColor(Batcher batcher)
+    protected void renderBackgroundColor(IBatch batch)
     {
         // Render the background rectangle
-        batcher.begin(Primitive.TRIANGLE_FAN);
+        batch.begin(Primitive.TRIANGLE_FAN, null);
         {
-            batcher.vertex(0, 0);
-            batcher.color(map.getBackgroundColor());
+            batch.vertex(0, 0);
+            batch.color(map.getBackgroundColor());
 
-            batcher.vertex(map.getWidth() * map.getTileWidth(), 0);
-            batcher.color(map.getBackgroundColor());
+            batch.vertex(map.getWidth() * map.getTileWidth(), 0);
+            batch.color(map.getBackgroundColor());
 
-            batcher.vertex(map.getWidth() * map.getTileWidth(), map.getHeight() * map.getTileHeight());
-            batcher.color(map.getBackgroundColor());
+            batch.vertex(map.getWidth() * map.getTileWidth(), map.getHeight() * map.getTileHeight());
+            batch.color(map.getBackgroundColor());
 
-            batcher.vertex(0, map.getHeight() * map.getTileHeight());
-            batcher.color(map.getBackgroundColor());
+            batch.vertex(0, map.getHeight() * map.getTileHeight());
+            batch.color(map.getBackgroundColor());
         }
-        batcher.end();
+        batch.end();
     }
 
     public void renderImageLayers(Batcher batcher, int... layerIDs)
     {
+        IBatch batch = batcher.asBatch();
+
         if (layerIDs == null || layerIDs.length == 0)
         {
             for (TmxImageLayer imageLayer : map.getImageLayers())
-                renderImageLayer(batcher, imageLayer);
+                renderImageLayer(batch, imageLayer);
         }
         else
         {
             for (int layerIndex : layerIDs)
             {
                 if (layerIndex < map.getNumImageLayers())
-                    renderImageLayer(batcher, map.getImageLayer(layerIndex));
+                    renderImageLayer(batch, map.getImageLayer(layerIndex));
             }
         }
     }
 
-    protected abstract void renderImageLayer(Batcher batcher, TmxImageLayer imageLayer);
+    protected abstract void renderImageLayer(IBatch batch, TmxImageLayer imageLayer);
 
     public void renderTileLayers(Batcher batcher, int... layerIDs)
     {
+        IBatch batch = batcher.asBatch();
+
         if (layerIDs == null || layerIDs.length == 0)
         {
             for (TmxTileLayer tileLayer : map.getTileLayers())
-                renderTileLayer(batcher, tileLayer);
+                renderTileLayer(batch, tileLayer);
         }
         else
         {
             for (int layerIndex : layerIDs)
             {
                 if (layerIndex > map.getNumTileLayers())
-                    renderTileLayer(batcher, map.getTileLayer(layerIndex));
+                    renderTileLayer(batch, map.getTileLayer(layerIndex));
             }
         }
     }
 
-    protected abstract void renderTileLayer(Batcher batcher, TmxTileLayer tileLayer);
+    protected abstract void renderTileLayer(IBatch batch, TmxTileLayer tileLayer);
 
     public void dispose()
     {
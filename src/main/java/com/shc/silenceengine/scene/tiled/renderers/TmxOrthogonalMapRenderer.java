@@ -24,7 +24,7 @@
 
 package com.shc.silenceengine.scene.tiled.renderers;
 
-import com.shc.silenceengine.graphics.Batcher;
+import com.shc.silenceengine.graphics.IBatch;
 import com.shc.silenceengine.backend.lwjgl3.opengl.Primitive;
 import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
 import com.shc.silenceengine.scene.tiled.TmxMap;
@@ -44,43 +44,36 @@ public TmxOrthogonalMapRenderer(TmxMap map)
         super(map);
     }
 
-    protected void renderImageLayer(Batcher batcher, TmxImageLayer imageLayer)
+    protected void renderImageLayer(IBatch batch, TmxImageLayer imageLayer)
     {
         if (!imageLayer.isVisible())
             return;
 
-        Texture originalTexture = Texture.CURRENT;
-
-        textureMap.get(imageLayer.getImage().getSource().getAbsolutePath()).bind();
-        batcher.begin(Primitive.TRIANGLE_FAN);
+        batch.begin(Primitive.TRIANGLE_FAN, textureMap.get(imageLayer.getImage().getSource().getAbsolutePath()));
         {
-            batcher.vertex(imageLayer.getX(), imageLayer.getY());
-            batcher.texCoord(0, 0);
+            batch.vertex(imageLayer.getX(), imageLayer.getY());
+            batch.texCoord(0, 0);
 
-            batcher.vertex(imageLayer.getX() + imageLayer.getWidth() * map.getTileWidth(), imageLayer.getY());
-            batcher.texCoord(1, 0);
+            batch.vertex(imageLayer.getX() + imageLayer.getWidth() * map.getTileWidth(), imageLayer.getY());
+            batch.texCoord(1, 0);
 
-            batcher.vertex(imageLayer.getX() + imageLayer.getWidth() * map.getTileWidth(), imageLayer.getY() + imageLayer.getHeight() * map.getTileHeight());
-            batcher.texCoord(1, 1);
+            batch.vertex(imageLayer.getX() + imageLayer.getWidth() * map.getTileWidth(), imageLayer.getY() + imageLayer.getHeight() * map.getTileHeight());
+            batch.texCoord(1, 1);
 
-            batcher.vertex(imageLayer.getX(), imageLayer.getY() + imageLayer.getHeight() * map.getTileHeight());
-            batcher.texCoord(0, 1);
+            batch.vertex(imageLayer.getX(), imageLayer.getY() + imageLayer.getHeight() * map.getTileHeight());
+            batch.texCoord(0, 1);
         }
-        batcher.end();
-
-        originalTexture.bind();
+        batch.end();
     }
 
-    protected void renderTileLayer(Batcher batcher, TmxTileLayer tileLayer)
+    protected void renderTileLayer(IBatch batch, TmxTileLayer tileLayer)
     {
         if (!tileLayer.isVisible())
             return;
 
-        Texture original = Texture.CURRENT;
         Texture current = textureMap.get(map.getTileset(0).getImage().getSource().getAbsolutePath());
-        current.bind();
 
-        batcher.begin(Primitive.TRIANGLES);
+        batch.begin(Primitive.TRIANGLES, current);
         {
             for (int x = 0; x < tileLayer.getWidth(); x++)
             {
@@ -98,10 +91,9 @@ protected void renderTileLayer(Batcher batcher, TmxTileLayer tileLayer)
 
                     if (texture.getID() != current.getID())
                     {
-                        batcher.end();
+                        batch.end();
                         current = texture;
-                        texture.bind();
-                        batcher.begin(Primitive.TRIANGLES);
+                        batch.begin(Primitive.TRIANGLES, current);
                     }
 
                     int tileID = mapTile.getGID() - tileSet.getFirstGID();
@@ -159,29 +151,27 @@ protected void renderTileLayer(Batcher batcher, TmxTileLayer tileLayer)
                     float uvCorrectionY = (0.2f / tileSet.getImage().getHeight());
 
                     // Draw the tile
-                    batcher.vertex(posX, posY);
-                    batcher.texCoord(minU + uvCorrectionX, minV + uvCorrectionY);
+                    batch.vertex(posX, posY);
+                    batch.texCoord(minU + uvCorrectionX, minV + uvCorrectionY);
 
-                    batcher.vertex(flipZ ? posX : posX + tileWidth, flipZ ? posY + tileHeight : posY);
-                    batcher.texCoord(maxU - uvCorrectionX, minV + uvCorrectionY);
+                    batch.vertex(flipZ ? posX : posX + tileWidth, flipZ ? posY + tileHeight : posY);
+                    batch.texCoord(maxU - uvCorrectionX, minV + uvCorrectionY);
 
-                    batcher.vertex(flipZ ? posX + tileWidth : posX, flipZ ? posY : posY + tileHeight);
-                    batcher.texCoord(minU + uvCorrectionX, maxV - uvCorrectionY);
+                    batch.vertex(flipZ ? posX + tileWidth : posX, flipZ ? posY : posY + tileHeight);
+                    batch.texCoord(minU + uvCorrectionX, maxV - uvCorrectionY);
 
-                    batcher.vertex(flipZ ? posX : posX + tileWidth, flipZ ? posY + tileHeight : posY);
-                    batcher.texCoord(maxU - uvCorrectionX, minV + uvCorrectionY);
+                    batch.vertex(flipZ ? posX : posX + tileWidth, flipZ ? posY + tileHeight : posY);
+                    batch.texCoord(maxU - uvCorrectionX, minV + uvCorrectionY);
 
-                    batcher.vertex(posX + tileWidth, posY + tileHeight);
-                    batcher.texCoord(maxU - uvCorrectionX, maxV - uvCorrectionY);
+                    batch.vertex(posX + tileWidth, posY + tileHeight);
+                    batch.texCoord(maxU - uvCorrectionX, maxV - uvCorrectionY);
 
-                    batcher.vertex(flipZ ? posX + tileWidth : posX, flipZ ? posY : posY + tileHeight);
-                    batcher.texCoord(minU + uvCorrectionX, maxV - uvCorrectionY);
+                    batch.vertex(flipZ ? posX + tileWidth : posX, flipZ ? posY : posY + tileHeight);
+                    batch.texCoord(minU + uvCorrectionX, maxV - uvCorrectionY);
                 }
             }
         }
-        batcher.end();
-
-        original.bind();
+        batch.end();
     }
 
     public void dispose()
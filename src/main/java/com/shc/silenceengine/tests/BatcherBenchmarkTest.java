@@ -0,0 +1,109 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.backend.lwjgl3.opengl.Primitive;
+import com.shc.silenceengine.core.Display;
+import com.shc.silenceengine.core.Game;
+import com.shc.silenceengine.graphics.AttributeMask;
+import com.shc.silenceengine.graphics.Batcher;
+import com.shc.silenceengine.graphics.Color;
+import com.shc.silenceengine.graphics.cameras.OrthoCam;
+
+/**
+ * Measures the throughput of Batcher.vertex() when the undeclared attributes are padded for every vertex, and when the
+ * attributes are declared in begin. The results are printed to the console and the game ends after the first frame.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class BatcherBenchmarkTest extends Game
+{
+    private static final int VERTICES = 600_000;
+    private static final int WARMUP   = 10;
+    private static final int ROUNDS   = 30;
+
+    private OrthoCam camera;
+
+    public static void main(String[] args)
+    {
+        new BatcherBenchmarkTest().start();
+    }
+
+    @Override
+    public void init()
+    {
+        camera = new OrthoCam().initProjection(Display.getWidth(), Display.getHeight());
+    }
+
+    @Override
+    public void render(float delta, Batcher batcher)
+    {
+        camera.apply();
+
+        for (int i = 0; i < WARMUP; i++)
+        {
+            submit(batcher, null);
+            submit(batcher, AttributeMask.COLOR_TEXCOORD);
+        }
+
+        long padded = 0;
+        long declared = 0;
+
+        for (int i = 0; i < ROUNDS; i++)
+        {
+            padded += submit(batcher, null);
+            declared += submit(batcher, AttributeMask.COLOR_TEXCOORD);
+        }
+
+        print("begin(Primitive)", padded);
+        print("begin(Primitive, COLOR_TEXCOORD)", declared);
+
+        Game.end();
+    }
+
+    private long submit(Batcher batcher, AttributeMask mask)
+    {
+        long start = System.nanoTime();
+
+        batcher.begin(Primitive.TRIANGLES, mask);
+        {
+            for (int i = 0; i < VERTICES; i++)
+            {
+                batcher.vertex(i % 800, i % 600);
+                batcher.color(Color.WHITE);
+                batcher.texCoord(0, 0);
+            }
+        }
+        batcher.end();
+
+        return System.nanoTime() - start;
+    }
+
+    private void print(String name, long nanos)
+    {
+        double seconds = nanos / 1e9;
+        System.out.printf("%-35s %8.2f M vertices/s%n", name, VERTICES * (double) ROUNDS / seconds / 1e6);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.collision.broadphase.BVH3D;
+import com.shc.silenceengine.collision.broadphase.DynamicTree3D;
+import com.shc.silenceengine.collision.broadphase.IBroadphase3D;
+import com.shc.silenceengine.collision.broadphase.LooseOctree;
+import com.shc.silenceengine.math.Frustum;
+import com.shc.silenceengine.math.Matrix4;
+import com.shc.silenceengine.math.Transforms;
+import com.shc.silenceengine.math.Vector3;
+import com.shc.silenceengine.math.geom3d.Cuboid;
+import com.shc.silenceengine.scene.entity.Entity3D;
+
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Compares the 3D broadphases on 10k and 50k entities, in a static scene where nothing moves, a mixed one where a tenth
+ * of the entities move and a dynamic one where all of them move. Every frame the moving entities are updated, all the
+ * overlapping pairs are found, four frustums are queried and a few hundred rays are cast. The DynamicTree3D inserts
+ * the moved entities again when they leave their fat boxes, the LooseOctree moves them to another node when their
+ * centers leave their cubes, and the BVH3D refits its boxes and is built again on the common pool when they have grown
+ * too much. The counts of the pairs, the visible entities and the hits must be the same for all of them. No window is
+ * needed.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class Broadphase3DBenchmarkTest
+{
+    private static final int WARMUP_FRAMES  = 10;
+    private static final int MEASURE_FRAMES = 20;
+
+    private static final int NUM_RAYS     = 256;
+    private static final int NUM_FRUSTUMS = 4;
+
+    // The counts of the last frame, the callbacks are kept in fields so that they are not created every frame
+    private static long pairs;
+    private static long visible;
+    private static long hits;
+
+    private static final IBroadphase3D.PairCallback COUNT_PAIRS = (a, b) -> pairs++;
+    private static final Consumer<Entity3D>         COUNT       = e -> visible++;
+
+    // The rays are not clipped to the hits, so that all the broadphases find the same hits in any order
+    private static final IBroadphase3D.RayCallback COUNT_HITS = (e, distance) ->
+    {
+        hits++;
+        return Float.POSITIVE_INFINITY;
+    };
+
+    public static void main(String[] args)
+    {
+        for (int numEntities : new int[]{ 10_000, 50_000 })
+        {
+            // Keep the density the same, about one entity per 20x20x20 units
+            float worldSize = (float) Math.cbrt(numEntities) * 20;
+
+            for (float moving : new float[]{ 0, 0.1f, 1 })
+            {
+                System.out.printf("%d entities in %.0f^3, %.0f%% moving%n", numEntities, worldSize, moving * 100);
+
+                long[] counts = run("DynamicTree3D", numEntities, worldSize, moving, DynamicTree3D::new);
+
+                check(counts, run("LooseOctree", numEntities, worldSize, moving, () ->
+                        new LooseOctree(new Vector3(worldSize / 2, worldSize / 2, worldSize / 2), worldSize)));
+
+                check(counts, run("BVH3D", numEntities, worldSize, moving, BVH3D::new));
+            }
+        }
+
+        System.out.println("All checks passed");
+    }
+
+    /**
+     * Runs the frames of a scene on a broadphase.
+     *
+     * @return The number of pairs, visible entities and hits in the last frame.
+     */
+    private static long[] run(String name, int numEntities, float worldSize, float moving,
+                              Supplier<IBroadphase3D> supplier)
+    {
+        // The same entities, movements, frustums and rays for every broadphase
+        Random random = new Random(numEntities);
+
+        Entity3D[] entities = new Entity3D[numEntities];
+        Vector3[] velocities = new Vector3[numEntities];
+
+        for (int i = 0; i < numEntities; i++)
+        {
+            entities[i] = new Entity3D(new Cuboid(new Vector3(), 2 + random.nextInt(7), 2 + random.nextInt(7),
+                    2 + random.nextInt(7)));
+
+            entities[i].setPosition(randomPoint(random, worldSize));
+
+            // Only the first entities move
+            if (i < numEntities * moving)
+                velocities[i] = new Vector3(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1,
+                        random.nextFloat() * 2 - 1);
+        }
+
+        Frustum[] frustums = new Frustum[NUM_FRUSTUMS];
+
+        for (int i = 0; i < NUM_FRUSTUMS; i++)
+        {
+            Matrix4 projection = Transforms.createPerspective(70, 16 / 9f, 0.1f, worldSize / 2);
+            Matrix4 view = Transforms.createLookAtMatrix(randomPoint(random, worldSize),
+                    randomPoint(random, worldSize), Vector3.AXIS_Y);
+
+            frustums[i] = new Frustum().update(projection, view);
+        }
+
+        Vector3[] origins = new Vector3[NUM_RAYS];
+        Vector3[] directions = new Vector3[NUM_RAYS];
+
+        for (int i = 0; i < NUM_RAYS; i++)
+        {
+            origins[i] = randomPoint(random, worldSize);
+            directions[i] = new Vector3(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1,
+                    random.nextFloat() * 2 - 1);
+        }
+
+        IBroadphase3D broadphase = supplier.get();
+
+        for (Entity3D entity : entities)
+            broadphase.insert(entity);
+
+        Vector3 position = new Vector3();
+
+        long updateTime = 0;
+        long pairTime = 0;
+        long queryTime = 0;
+
+        for (int frame = 0; frame < WARMUP_FRAMES + MEASURE_FRAMES; frame++)
+        {
+            for (int i = 0; i < numEntities && velocities[i] != null; i++)
+            {
+                Vector3 velocity = velocities[i];
+                position.set(entities[i].getPosition()).addSelf(velocity);
+
+                // Bounce off the sides of the world
+                if (position.x < 0 || position.x > worldSize)
+                    velocity.x = -velocity.x;
+                if (position.y < 0 || position.y > worldSize)
+                    velocity.y = -velocity.y;
+                if (position.z < 0 || position.z > worldSize)
+                    velocity.z = -velocity.z;
+
+                entities[i].setPosition(position);
+            }
+
+            long start = System.nanoTime();
+
+            for (int i = 0; i < numEntities && velocities[i] != null; i++)
+                broadphase.update(entities[i]);
+
+            long updated = System.nanoTime();
+
+            pairs = 0;
+            broadphase.forEachPair(COUNT_PAIRS);
+
+            long paired = System.nanoTime();
+
+            visible = 0;
+            hits = 0;
+
+            for (Frustum frustum : frustums)
+                broadphase.query(frustum, COUNT);
+
+            for (int i = 0; i < NUM_RAYS; i++)
+                broadphase.raycast(origins[i], directions[i], worldSize / 4, COUNT_HITS);
+
+            long queried = System.nanoTime();
+
+            if (frame >= WARMUP_FRAMES)
+            {
+                updateTime += updated - start;
+                pairTime += paired - updated;
+                queryTime += queried - paired;
+            }
+        }
+
+        System.out.printf("    %-14s %8.3f ms per frame: %7.3f updating, %7.3f for the pairs, %7.3f for the " +
+                          "queries, %d pairs%n", name, (updateTime + pairTime + queryTime) / 1e6 / MEASURE_FRAMES,
+                updateTime / 1e6 / MEASURE_FRAMES, pairTime / 1e6 / MEASURE_FRAMES, queryTime / 1e6 / MEASURE_FRAMES,
+                pairs);
+
+        return new long[]{ pairs, visible, hits };
+    }
+
+    private static Vector3 randomPoint(Random random, float worldSize)
+    {
+        return new Vector3(random.nextFloat() * worldSize, random.nextFloat() * worldSize,
+                random.nextFloat() * worldSize);
+    }
+
+    private static void check(long[] expected, long[] counts)
+    {
+        check(counts[0] == expected[0], "The broadphases find " + counts[0] + " and " + expected[0] + " pairs");
+        check(counts[1] == expected[1], "The broadphases find " + counts[1] + " and " + expected[1] +
+                                        " visible entities");
+        check(counts[2] == expected[2], "The broadphases find " + counts[2] + " and " + expected[2] + " hits");
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
+import com.shc.silenceengine.collision.broadphase.DynamicTree2D;
+import com.shc.silenceengine.collision.broadphase.Grid;
+import com.shc.silenceengine.collision.broadphase.IBroadphase2D;
+import com.shc.silenceengine.collision.broadphase.QuadTree;
+import com.shc.silenceengine.collision.broadphase.SweepAndPrune2D;
+import com.shc.silenceengine.graphics.Sprite;
+import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.geom2d.Rectangle;
+import com.shc.silenceengine.scene.entity.Entity2D;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Compares the 2D broadphases on 1k, 10k and 50k moving entities. Every frame the entities move a little, the
+ * broadphase is brought up to date, and all the overlapping pairs are found. The Grid and the QuadTree are rebuilt
+ * every frame, the DynamicTree2D inserts the moved entities again when they leave their fat boxes, and the
+ * SweepAndPrune2D updates them in place and sweeps for the pairs. The pairs found are checked against a brute force
+ * search at 1k. The QuadTree can miss pairs across its quadrants, so its count differs. No window is needed.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class BroadphaseBenchmarkTest
+{
+    private static final int WARMUP_FRAMES  = 5;
+    private static final int MEASURE_FRAMES = 10;
+
+    public static void main(String[] args)
+    {
+        Sprite sprite = new Sprite(new Texture(1));
+
+        for (int numEntities : new int[]{ 1_000, 10_000, 50_000 })
+        {
+            // Keep the density the same, about one entity per 40x40 pixels
+            int worldSize = (int) (Math.sqrt(numEntities) * 40);
+
+            System.out.println(numEntities + " entities in " + worldSize + "x" + worldSize);
+
+            run("Grid", numEntities, worldSize, sprite, true, () -> new Grid(worldSize, worldSize, 64, 64));
+            run("QuadTree", numEntities, worldSize, sprite, true, () -> new QuadTree(worldSize, worldSize));
+            run("DynamicTree2D", numEntities, worldSize, sprite, false, DynamicTree2D::new);
+            run("SweepAndPrune2D", numEntities, worldSize, sprite, false, SweepAndPrune2D::new);
+        }
+
+        System.out.println("All checks passed");
+    }
+
+    private static void run(String name, int numEntities, int worldSize, Sprite sprite, boolean rebuild,
+                            Supplier<IBroadphase2D> supplier)
+    {
+        // The same entities and movements for every broadphase
+        Random random = new Random(numEntities);
+
+        Entity2D[] entities = new Entity2D[numEntities];
+        Vector2[] velocities = new Vector2[numEntities];
+
+        for (int i = 0; i < numEntities; i++)
+        {
+            Rectangle rectangle = new Rectangle(4 + random.nextInt(12), 4 + random.nextInt(12));
+
+            entities[i] = new Entity2D(sprite, rectangle);
+            entities[i].setPosition(new Vector2(random.nextFloat() * worldSize, random.nextFloat() * worldSize));
+
+            velocities[i] = new Vector2(random.nextFloat() * 4 - 2, random.nextFloat() * 4 - 2);
+        }
+
+        IBroadphase2D broadphase = supplier.get();
+
+        for (Entity2D entity : entities)
+            broadphase.insert(entity);
+
+        Vector2 position = new Vector2();
+        long time = 0;
+        long pairs = 0;
+
+        for (int frame = 0; frame < WARMUP_FRAMES + MEASURE_FRAMES; frame++)
+        {
+            for (int i = 0; i < numEntities; i++)
+            {
+                position.set(entities[i].getPosition()).addSelf(velocities[i]);
+
+                // Bounce off the edges of the world
+                if (position.x < 0 || position.x > worldSize)
+                    velocities[i].x = -velocities[i].x;
+                if (position.y < 0 || position.y > worldSize)
+                    velocities[i].y = -velocities[i].y;
+
+                entities[i].setPosition(position);
+            }
+
+            long start = System.nanoTime();
+
+            if (rebuild)
+            {
+                broadphase.clear();
+
+                for (Entity2D entity : entities)
+                    broadphase.insert(entity);
+            }
+            else
+                for (Entity2D entity : entities)
+                    broadphase.update(entity);
+
+            pairs = countPairs(broadphase, entities);
+
+            if (frame >= WARMUP_FRAMES)
+                time += System.nanoTime() - start;
+        }
+
+        if (numEntities == 1_000 && !rebuild)
+            check(pairs == bruteForcePairs(entities), name + " finds " + pairs + " pairs instead of " +
+                                                      bruteForcePairs(entities));
+
+        System.out.printf("    %-16s %8.3f ms per frame, %d pairs%n", name, time / 1e6 / MEASURE_FRAMES, pairs);
+    }
+
+    private static long countPairs(IBroadphase2D broadphase, Entity2D[] entities)
+    {
+        if (broadphase instanceof SweepAndPrune2D)
+            return ((SweepAndPrune2D) broadphase).computePairs();
+
+        // The other broadphases are queried once per entity, and every pair is found from both sides
+        long pairs = 0;
+
+        for (Entity2D entity : entities)
+        {
+            List<Entity2D> candidates = broadphase.retrieve(entity);
+
+            for (Entity2D other : candidates)
+                if (entity.getID() < other.getID() && overlaps(entity.getBounds(), other.getBounds()))
+                    pairs++;
+        }
+
+        return pairs;
+    }
+
+    private static long bruteForcePairs(Entity2D[] entities)
+    {
+        Set<Long> pairs = new HashSet<>();
+
+        for (int i = 0; i < entities.length; i++)
+            for (int j = i + 1; j < entities.length; j++)
+                if (overlaps(entities[i].getBounds(), entities[j].getBounds()))
+                    pairs.add(((long) i << 32) | j);
+
+        return pairs.size();
+    }
+
+    private static boolean overlaps(Rectangle a, Rectangle b)
+    {
+        return a.getX() <= b.getX() + b.getWidth() && b.getX() <= a.getX() + a.getWidth() &&
+               a.getY() <= b.getY() + b.getHeight() && b.getY() <= a.getY() + a.getHeight();
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
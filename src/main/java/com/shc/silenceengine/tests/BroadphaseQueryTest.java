@@ -0,0 +1,791 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
+import com.shc.silenceengine.collision.broadphase.BVH3D;
+import com.shc.silenceengine.collision.broadphase.DynamicTree2D;
+import com.shc.silenceengine.collision.broadphase.DynamicTree3D;
+import com.shc.silenceengine.collision.broadphase.Grid;
+import com.shc.silenceengine.collision.broadphase.IBroadphase2D;
+import com.shc.silenceengine.collision.broadphase.IBroadphase3D;
+import com.shc.silenceengine.collision.broadphase.LooseOctree;
+import com.shc.silenceengine.collision.broadphase.QuadTree;
+import com.shc.silenceengine.collision.broadphase.SweepAndPrune2D;
+import com.shc.silenceengine.graphics.Sprite;
+import com.shc.silenceengine.math.Frustum;
+import com.shc.silenceengine.math.Matrix4;
+import com.shc.silenceengine.math.Transforms;
+import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.Vector3;
+import com.shc.silenceengine.math.geom2d.Rectangle;
+import com.shc.silenceengine.math.geom3d.Cuboid;
+import com.shc.silenceengine.scene.entity.Entity2D;
+import com.shc.silenceengine.scene.entity.Entity3D;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Checks the pair, box, ray and nearest queries of the broadphases against brute force searches. The entities are
+ * scattered over a world and a little beyond it, and are moved a few times. For every broadphase all the overlapping
+ * pairs are found, and random boxes, rays and points are queried, and random frustums for the 3D ones. A box query is
+ * also made from inside the consumer of another one. The default pair query is checked with a broadphase that only
+ * implements retrieve, and the pairs of a list are checked to only contain the entities of the list. Then the bytes
+ * allocated by the callback based queries are measured, and should be zero. No window is needed.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class BroadphaseQueryTest
+{
+    private static final int NUM_ENTITIES = 1_500;
+    private static final int WORLD_SIZE   = 1_000;
+    private static final int NUM_QUERIES  = 300;
+
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+    // The callbacks of the allocation check are kept in fields, so that they are not created during the measurement
+    private static int count;
+
+    private static final IBroadphase2D.PairCallback COUNT_PAIRS = (a, b) -> count++;
+    private static final Consumer<Entity2D>         COUNT       = e -> count++;
+
+    private static final IBroadphase2D.RayCallback COUNT_HITS = (e, distance) ->
+    {
+        count++;
+        return distance;
+    };
+
+    private static final IBroadphase3D.PairCallback COUNT_PAIRS_3D = (a, b) -> count++;
+    private static final Consumer<Entity3D>         COUNT_3D       = e -> count++;
+
+    private static final IBroadphase3D.RayCallback COUNT_HITS_3D = (e, distance) ->
+    {
+        count++;
+        return distance;
+    };
+
+    public static void main(String[] args)
+    {
+        Sprite sprite = new Sprite(new Texture(1));
+        Random random = new Random(42);
+
+        Entity2D[] entities = new Entity2D[NUM_ENTITIES];
+
+        for (int i = 0; i < NUM_ENTITIES; i++)
+            entities[i] = new Entity2D(sprite, new Rectangle(4 + random.nextInt(30), 4 + random.nextInt(30)));
+
+        IBroadphase2D[] broadphases = {
+                new Grid(WORLD_SIZE, WORLD_SIZE, 50, 50),
+                new QuadTree(WORLD_SIZE, WORLD_SIZE),
+                new DynamicTree2D(),
+                new SweepAndPrune2D()
+        };
+
+        for (int round = 0; round < 3; round++)
+        {
+            // Some of the entities are outside the world
+            for (Entity2D entity : entities)
+                entity.setPosition(new Vector2(random.nextFloat() * (WORLD_SIZE + 100) - 50,
+                        random.nextFloat() * (WORLD_SIZE + 100) - 50));
+
+            for (IBroadphase2D broadphase : broadphases)
+            {
+                if (round == 0 || broadphase instanceof Grid || broadphase instanceof QuadTree)
+                {
+                    broadphase.clear();
+
+                    for (Entity2D entity : entities)
+                        broadphase.insert(entity);
+                }
+                else
+                    for (Entity2D entity : entities)
+                        broadphase.update(entity);
+
+                check2D(broadphase, entities, new Random(round));
+            }
+        }
+
+        checkDefaultPairs(broadphases[0], entities);
+
+        for (IBroadphase2D broadphase : broadphases)
+        {
+            long bytes = measureAllocations(broadphase);
+            System.out.printf("%-16s %d bytes allocated by the callback queries%n",
+                    broadphase.getClass().getSimpleName(), bytes);
+
+            check(bytes == 0, broadphase.getClass().getSimpleName() + " allocates in the callback queries");
+        }
+
+        // The octree only covers the middle of the world, the entities around it are kept in its root
+        IBroadphase3D[] broadphases3D = {
+                new DynamicTree3D(),
+                new LooseOctree(new Vector3(200, 200, 200), 256),
+                new BVH3D()
+        };
+
+        for (IBroadphase3D broadphase : broadphases3D)
+        {
+            check3D(broadphase, new Random(7));
+
+            long bytes = measureAllocations(broadphase);
+            System.out.printf("%-16s %d bytes allocated by the callback queries%n",
+                    broadphase.getClass().getSimpleName(), bytes);
+
+            check(bytes == 0, broadphase.getClass().getSimpleName() + " allocates in the callback queries");
+        }
+
+        System.out.println("All checks passed");
+    }
+
+    private static void check2D(IBroadphase2D broadphase, Entity2D[] entities, Random random)
+    {
+        String name = broadphase.getClass().getSimpleName();
+
+        Map<Entity2D, Integer> numbers = new IdentityHashMap<>();
+        for (int i = 0; i < entities.length; i++)
+            numbers.put(entities[i], i);
+
+        // Every overlapping pair once
+        Set<Long> pairs = new HashSet<>();
+
+        broadphase.forEachPair((a, b) ->
+        {
+            int i = Math.min(numbers.get(a), numbers.get(b));
+            int j = Math.max(numbers.get(a), numbers.get(b));
+
+            check(pairs.add(((long) i << 32) | j), name + " finds a pair twice");
+        });
+
+        Set<Long> expectedPairs = new HashSet<>();
+
+        for (int i = 0; i < entities.length; i++)
+            for (int j = i + 1; j < entities.length; j++)
+                if (overlaps(entities[i].getBounds(), entities[j].getBounds()))
+                    expectedPairs.add(((long) i << 32) | j);
+
+        check(pairs.equals(expectedPairs), name + " finds " + pairs.size() + " pairs instead of " +
+                                           expectedPairs.size());
+
+        for (int q = 0; q < NUM_QUERIES; q++)
+        {
+            // Boxes, with a box queried from inside the consumer of the other one
+            Rectangle rect = randomRectangle(random);
+            Rectangle nested = randomRectangle(random);
+
+            Set<Entity2D> found = newIdentitySet();
+            Set<Entity2D> foundNested = newIdentitySet();
+
+            broadphase.query(rect, e ->
+            {
+                check(found.add(e), name + " finds an entity twice in a box");
+
+                if (found.size() == 1)
+                    broadphase.query(nested, n -> check(foundNested.add(n), name + " finds an entity twice"));
+            });
+
+            check(found.equals(bruteForceQuery(entities, rect)), name + " finds the wrong entities in a box");
+
+            if (!found.isEmpty())
+                check(foundNested.equals(bruteForceQuery(entities, nested)),
+                        name + " finds the wrong entities in a nested query");
+
+            // Rays, which are not clipped by the callback
+            Vector2 origin = new Vector2(random.nextFloat() * 1400 - 200, random.nextFloat() * 1400 - 200);
+            Vector2 direction = new Vector2(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1);
+
+            if (q % 10 == 0)
+                direction.y = 0;
+
+            float maxDistance = q % 7 == 0 ? Float.POSITIVE_INFINITY : 50 + random.nextFloat() * 1000;
+            float length = direction.length();
+
+            Map<Entity2D, Float> hits = new IdentityHashMap<>();
+
+            broadphase.raycast(origin, direction, maxDistance, (e, distance) ->
+            {
+                check(hits.put(e, distance) == null, name + " hits an entity twice");
+                return maxDistance;
+            });
+
+            Map<Entity2D, Float> expectedHits = new IdentityHashMap<>();
+            Entity2D closest = null;
+
+            for (Entity2D entity : entities)
+            {
+                float distance = raycast(origin, direction.x / length, direction.y / length, maxDistance,
+                        entity.getBounds());
+
+                if (distance >= 0)
+                {
+                    expectedHits.put(entity, distance);
+
+                    if (closest == null || distance < expectedHits.get(closest))
+                        closest = entity;
+                }
+            }
+
+            // The identity maps compare the distances by reference, so they are compared here
+            check(hits.keySet().equals(expectedHits.keySet()), name + " hits " + hits.size() +
+                                                               " entities instead of " + expectedHits.size());
+
+            for (Entity2D entity : hits.keySet())
+                check(hits.get(entity).floatValue() == expectedHits.get(entity), name + " hits at a wrong distance");
+
+            Entity2D first = broadphase.raycast(origin, direction, maxDistance);
+
+            check(first == null ? closest == null :
+                  closest != null && expectedHits.get(first).floatValue() == expectedHits.get(closest),
+                    name + " doesn't find the closest hit");
+
+            // The nearest entities
+            Vector2 point = new Vector2(random.nextFloat() * 1400 - 200, random.nextFloat() * 1400 - 200);
+            float radius = q % 5 == 0 ? Float.POSITIVE_INFINITY : random.nextFloat() * 100;
+
+            Entity2D nearest = broadphase.nearest(point, radius);
+
+            float nearestDistance = radius * radius;
+            Entity2D expectedNearest = null;
+
+            for (Entity2D entity : entities)
+            {
+                float distance = distanceSquared(point, entity.getBounds());
+
+                if (distance <= nearestDistance)
+                {
+                    nearestDistance = distance;
+                    expectedNearest = entity;
+                }
+            }
+
+            check(nearest == null ? expectedNearest == null :
+                  expectedNearest != null && distanceSquared(point, nearest.getBounds()) == nearestDistance,
+                    name + " doesn't find the nearest entity");
+        }
+    }
+
+    private static void checkDefaultPairs(IBroadphase2D broadphase, Entity2D[] entities)
+    {
+        // A broadphase that only implements retrieve, like the ones outside of the engine
+        List<Entity2D> inserted = new ArrayList<>();
+
+        IBroadphase2D listBroadphase = new IBroadphase2D()
+        {
+            @Override
+            public void clear()
+            {
+                inserted.clear();
+            }
+
+            @Override
+            public void insert(Entity2D e)
+            {
+                inserted.add(e);
+            }
+
+            @Override
+            public void remove(Entity2D e)
+            {
+                inserted.remove(e);
+            }
+
+            @Override
+            public List<Entity2D> retrieve(Rectangle rect)
+            {
+                List<Entity2D> list = new ArrayList<>();
+
+                for (Entity2D entity : inserted)
+                    if (overlaps(entity.getBounds(), rect))
+                        list.add(entity);
+
+                return list;
+            }
+        };
+
+        for (Entity2D entity : entities)
+            listBroadphase.insert(entity);
+
+        Map<Entity2D, Integer> numbers = new IdentityHashMap<>();
+        for (int i = 0; i < entities.length; i++)
+            numbers.put(entities[i], i);
+
+        Set<Long> pairs = new HashSet<>();
+        Set<Long> expectedPairs = new HashSet<>();
+
+        listBroadphase.forEachPair((a, b) ->
+                check(pairs.add(pairKey(numbers, a, b)), "The default forEachPair finds a pair twice"));
+        broadphase.forEachPair((a, b) -> expectedPairs.add(pairKey(numbers, a, b)));
+
+        check(pairs.equals(expectedPairs), "The default forEachPair finds " + pairs.size() + " pairs instead of " +
+                                           expectedPairs.size());
+
+        // Only the pairs of two entities in the list are found
+        List<Entity2D> half = new ArrayList<>();
+        Set<Entity2D> members = newIdentitySet();
+
+        for (int i = 0; i < entities.length; i += 2)
+        {
+            half.add(entities[i]);
+            members.add(entities[i]);
+        }
+
+        Set<Long> listPairs = new HashSet<>();
+        Set<Long> expectedListPairs = new HashSet<>();
+
+        broadphase.forEachPair(half, (a, b) ->
+        {
+            check(members.contains(a) && members.contains(b), "forEachPair finds a pair outside of the list");
+            check(listPairs.add(pairKey(numbers, a, b)), "forEachPair finds a pair in the list twice");
+        });
+
+        for (int i = 0; i < half.size(); i++)
+            for (int j = i + 1; j < half.size(); j++)
+                if (half.get(i).canCollideWith(half.get(j)) &&
+                    overlaps(half.get(i).getBounds(), half.get(j).getBounds()))
+                    expectedListPairs.add(pairKey(numbers, half.get(i), half.get(j)));
+
+        check(listPairs.equals(expectedListPairs), "forEachPair finds " + listPairs.size() +
+                                                   " pairs in the list instead of " + expectedListPairs.size());
+    }
+
+    private static long pairKey(Map<Entity2D, Integer> numbers, Entity2D a, Entity2D b)
+    {
+        int i = Math.min(numbers.get(a), numbers.get(b));
+        int j = Math.max(numbers.get(a), numbers.get(b));
+
+        return ((long) i << 32) | j;
+    }
+
+    private static long measureAllocations(IBroadphase2D broadphase)
+    {
+        Random random = new Random(1);
+
+        Rectangle[] rects = new Rectangle[NUM_QUERIES];
+        Vector2[] points = new Vector2[NUM_QUERIES];
+        Vector2[] directions = new Vector2[NUM_QUERIES];
+
+        for (int i = 0; i < NUM_QUERIES; i++)
+        {
+            rects[i] = randomRectangle(random);
+            points[i] = new Vector2(random.nextFloat() * WORLD_SIZE, random.nextFloat() * WORLD_SIZE);
+            directions[i] = new Vector2(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1);
+        }
+
+        long bytes = 0;
+
+        for (int round = 0; round < 20; round++)
+        {
+            long start = allocatedBytes();
+
+            broadphase.forEachPair(COUNT_PAIRS);
+
+            for (int i = 0; i < NUM_QUERIES; i++)
+            {
+                broadphase.query(rects[i], COUNT);
+                broadphase.raycast(points[i], directions[i], 500, COUNT_HITS);
+                broadphase.nearest(points[i], 50);
+            }
+
+            // The first rounds warm up the code
+            bytes = allocatedBytes() - start;
+        }
+
+        return bytes;
+    }
+
+    private static void check3D(IBroadphase3D tree, Random random)
+    {
+        String name = tree.getClass().getSimpleName();
+        Entity3D[] entities = new Entity3D[500];
+
+        for (int i = 0; i < entities.length; i++)
+        {
+            entities[i] = new Entity3D(new Cuboid(new Vector3(), 4 + random.nextInt(30), 4 + random.nextInt(30),
+                    4 + random.nextInt(30)));
+
+            entities[i].setPosition(randomPoint3D(random));
+            tree.insert(entities[i]);
+        }
+
+        // Move them, so that some are inserted again
+        for (Entity3D entity : entities)
+        {
+            entity.setPosition(entity.getPosition().copy().addSelf(random.nextFloat() * 10 - 5,
+                    random.nextFloat() * 10 - 5, random.nextFloat() * 10 - 5));
+            tree.update(entity);
+        }
+
+        int expectedPairs = 0;
+
+        for (int i = 0; i < entities.length; i++)
+            for (int j = i + 1; j < entities.length; j++)
+                if (overlaps(entities[i], entities[j]))
+                    expectedPairs++;
+
+        Set<Long> found = new HashSet<>();
+        Map<Entity3D, Integer> numbers = new IdentityHashMap<>();
+
+        for (int i = 0; i < entities.length; i++)
+            numbers.put(entities[i], i);
+
+        tree.forEachPair((a, b) ->
+        {
+            check(overlaps(a, b), name + " finds a pair that doesn't overlap");
+            check(found.add(((long) Math.min(numbers.get(a), numbers.get(b)) << 32) |
+                            Math.max(numbers.get(a), numbers.get(b))), name + " finds a pair twice");
+        });
+
+        check(found.size() == expectedPairs, name + " finds " + found.size() + " pairs instead of " +
+                                             expectedPairs);
+
+        for (int q = 0; q < NUM_QUERIES; q++)
+        {
+            Entity3D box = new Entity3D(new Cuboid(randomPoint3D(random), random.nextInt(200), random.nextInt(200),
+                    random.nextInt(200)));
+
+            List<Entity3D> inBox = new ArrayList<>();
+            tree.query(box.getBounds(), inBox::add);
+
+            int expected = 0;
+            for (Entity3D entity : entities)
+                if (overlaps(box, entity))
+                    expected++;
+
+            check(inBox.size() == expected, name + " finds the wrong entities in a box");
+
+            Vector3 origin = randomPoint3D(random);
+            Vector3 direction = new Vector3(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1,
+                    random.nextFloat() * 2 - 1);
+
+            float length = direction.length();
+
+            Set<Entity3D> hits = Collections.newSetFromMap(new IdentityHashMap<>());
+            tree.raycast(origin, direction, 800, (e, distance) ->
+            {
+                check(hits.add(e), name + " hits an entity twice");
+                return 800;
+            });
+
+            int expectedHits = 0;
+
+            for (Entity3D entity : entities)
+                if (raycast(origin, direction.x / length, direction.y / length, direction.z / length, 800, entity) >= 0)
+                    expectedHits++;
+
+            check(hits.size() == expectedHits, name + " hits " + hits.size() + " entities instead of " +
+                                               expectedHits);
+
+            Vector3 point = randomPoint3D(random);
+            Entity3D nearest = tree.nearest(point, 100);
+
+            float nearestDistance = 100 * 100;
+            Entity3D expectedNearest = null;
+
+            for (Entity3D entity : entities)
+            {
+                float distance = distanceSquared(point, entity);
+
+                if (distance <= nearestDistance)
+                {
+                    nearestDistance = distance;
+                    expectedNearest = entity;
+                }
+            }
+
+            check(nearest == null ? expectedNearest == null :
+                  expectedNearest != null && distanceSquared(point, nearest) == nearestDistance,
+                    name + " doesn't find the nearest entity");
+
+            Frustum frustum = randomFrustum(random);
+
+            Set<Entity3D> visible = Collections.newSetFromMap(new IdentityHashMap<>());
+            tree.query(frustum, e -> check(visible.add(e), name + " finds an entity in a frustum twice"));
+
+            int expectedVisible = 0;
+
+            for (Entity3D entity : entities)
+            {
+                boolean intersects = frustum.intersects(entity.getPosition(), entity.getWidth(), entity.getHeight(),
+                        entity.getThickness());
+
+                check(intersects == visible.contains(entity), name + " finds the wrong entities in a frustum");
+
+                if (intersects)
+                    expectedVisible++;
+            }
+
+            check(visible.size() == expectedVisible, name + " finds the wrong entities in a frustum");
+        }
+
+        // Some of the entities are removed, and the rest are moved
+        for (int i = 0; i < entities.length; i += 3)
+            tree.remove(entities[i]);
+
+        for (int i = 0; i < entities.length; i++)
+        {
+            if (i % 3 == 0)
+                continue;
+
+            entities[i].setPosition(randomPoint3D(random));
+            tree.update(entities[i]);
+        }
+
+        int expectedRemaining = 0;
+
+        for (int i = 0; i < entities.length; i++)
+            for (int j = i + 1; j < entities.length; j++)
+                if (i % 3 != 0 && j % 3 != 0 && overlaps(entities[i], entities[j]))
+                    expectedRemaining++;
+
+        int[] remaining = new int[1];
+
+        tree.forEachPair((a, b) ->
+        {
+            check(numbers.get(a) % 3 != 0 && numbers.get(b) % 3 != 0, name + " finds a removed entity");
+            remaining[0]++;
+        });
+
+        check(remaining[0] == expectedRemaining, name + " finds " + remaining[0] + " pairs after the removals " +
+                                                 "instead of " + expectedRemaining);
+    }
+
+    private static long measureAllocations(IBroadphase3D broadphase)
+    {
+        Random random = new Random(1);
+
+        Cuboid[] boxes = new Cuboid[NUM_QUERIES];
+        Vector3[] points = new Vector3[NUM_QUERIES];
+        Vector3[] directions = new Vector3[NUM_QUERIES];
+        Frustum[] frustums = new Frustum[NUM_QUERIES];
+
+        for (int i = 0; i < NUM_QUERIES; i++)
+        {
+            boxes[i] = new Cuboid(randomPoint3D(random), random.nextInt(100), random.nextInt(100),
+                    random.nextInt(100));
+            points[i] = randomPoint3D(random);
+            directions[i] = new Vector3(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1,
+                    random.nextFloat() * 2 - 1);
+            frustums[i] = randomFrustum(random);
+        }
+
+        long bytes = 0;
+
+        for (int round = 0; round < 20; round++)
+        {
+            long start = allocatedBytes();
+
+            broadphase.forEachPair(COUNT_PAIRS_3D);
+
+            for (int i = 0; i < NUM_QUERIES; i++)
+            {
+                broadphase.query(boxes[i], COUNT_3D);
+                broadphase.query(frustums[i], COUNT_3D);
+                broadphase.raycast(points[i], directions[i], 500, COUNT_HITS_3D);
+                broadphase.nearest(points[i], 50);
+            }
+
+            // The first rounds warm up the code
+            bytes = allocatedBytes() - start;
+        }
+
+        return bytes;
+    }
+
+    private static Set<Entity2D> bruteForceQuery(Entity2D[] entities, Rectangle rect)
+    {
+        Set<Entity2D> found = newIdentitySet();
+
+        for (Entity2D entity : entities)
+            if (overlaps(rect, entity.getBounds()))
+                found.add(entity);
+
+        return found;
+    }
+
+    private static Set<Entity2D> newIdentitySet()
+    {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    private static Rectangle randomRectangle(Random random)
+    {
+        return new Rectangle(random.nextFloat() * 1200 - 100, random.nextFloat() * 1200 - 100,
+                random.nextFloat() * 150, random.nextFloat() * 150);
+    }
+
+    /**
+     * @return A frustum of a camera somewhere in the world, looking at a random point.
+     */
+    private static Frustum randomFrustum(Random random)
+    {
+        Vector3 eye = randomPoint3D(random);
+        Vector3 center = randomPoint3D(random);
+
+        float fov = 30 + random.nextFloat() * 60;
+
+        Matrix4 projection = Transforms.createPerspective(fov, 1.5f, 1, 100 + random.nextInt(300));
+        Matrix4 view = Transforms.createLookAtMatrix(eye, center, Vector3.AXIS_Y);
+
+        return new Frustum().update(projection, view);
+    }
+
+    private static Vector3 randomPoint3D(Random random)
+    {
+        return new Vector3(random.nextFloat() * 400, random.nextFloat() * 400, random.nextFloat() * 400);
+    }
+
+    private static boolean overlaps(Rectangle a, Rectangle b)
+    {
+        return a.getX() <= b.getX() + b.getWidth() && b.getX() <= a.getX() + a.getWidth() &&
+               a.getY() <= b.getY() + b.getHeight() && b.getY() <= a.getY() + a.getHeight();
+    }
+
+    private static boolean overlaps(Entity3D a, Entity3D b)
+    {
+        Vector3 p = a.getPosition();
+        Vector3 q = b.getPosition();
+
+        return Math.abs(p.x - q.x) * 2 <= a.getWidth() + b.getWidth() &&
+               Math.abs(p.y - q.y) * 2 <= a.getHeight() + b.getHeight() &&
+               Math.abs(p.z - q.z) * 2 <= a.getThickness() + b.getThickness();
+    }
+
+    /**
+     * The same slab test as the broadphases, so that the distances can be compared exactly.
+     */
+    private static float raycast(Vector2 origin, float dx, float dy, float maxDistance, Rectangle r)
+    {
+        float near = 0;
+        float far = maxDistance;
+
+        float[] o = { origin.x, origin.y };
+        float[] d = { dx, dy };
+        float[] min = { r.getX(), r.getY() };
+        float[] max = { r.getX() + r.getWidth(), r.getY() + r.getHeight() };
+
+        for (int axis = 0; axis < 2; axis++)
+        {
+            if (d[axis] == 0)
+            {
+                if (o[axis] < min[axis] || o[axis] > max[axis])
+                    return -1;
+            }
+            else
+            {
+                float t1 = (min[axis] - o[axis]) / d[axis];
+                float t2 = (max[axis] - o[axis]) / d[axis];
+
+                near = Math.max(near, Math.min(t1, t2));
+                far = Math.min(far, Math.max(t1, t2));
+            }
+        }
+
+        return near <= far ? near : -1;
+    }
+
+    private static float raycast(Vector3 origin, float dx, float dy, float dz, float maxDistance, Entity3D entity)
+    {
+        Vector3 p = entity.getPosition();
+
+        float halfWidth = entity.getWidth() / 2;
+        float halfHeight = entity.getHeight() / 2;
+        float halfThickness = entity.getThickness() / 2;
+
+        float near = 0;
+        float far = maxDistance;
+
+        float[] o = { origin.x, origin.y, origin.z };
+        float[] d = { dx, dy, dz };
+        float[] min = { p.x - halfWidth, p.y - halfHeight, p.z - halfThickness };
+        float[] max = { p.x + halfWidth, p.y + halfHeight, p.z + halfThickness };
+
+        for (int axis = 0; axis < 3; axis++)
+        {
+            if (d[axis] == 0)
+            {
+                if (o[axis] < min[axis] || o[axis] > max[axis])
+                    return -1;
+            }
+            else
+            {
+                float t1 = (min[axis] - o[axis]) / d[axis];
+                float t2 = (max[axis] - o[axis]) / d[axis];
+
+                near = Math.max(near, Math.min(t1, t2));
+                far = Math.min(far, Math.max(t1, t2));
+            }
+        }
+
+        return near <= far ? near : -1;
+    }
+
+    private static float distanceSquared(Vector2 p, Rectangle r)
+    {
+        float dx = Math.max(Math.max(r.getX() - p.x, p.x - (r.getX() + r.getWidth())), 0);
+        float dy = Math.max(Math.max(r.getY() - p.y, p.y - (r.getY() + r.getHeight())), 0);
+
+        return dx * dx + dy * dy;
+    }
+
+    private static float distanceSquared(Vector3 point, Entity3D entity)
+    {
+        Vector3 p = entity.getPosition();
+
+        float halfWidth = entity.getWidth() / 2;
+        float halfHeight = entity.getHeight() / 2;
+        float halfThickness = entity.getThickness() / 2;
+
+        float dx = Math.max(Math.max(p.x - halfWidth - point.x, point.x - (p.x + halfWidth)), 0);
+        float dy = Math.max(Math.max(p.y - halfHeight - point.y, point.y - (p.y + halfHeight)), 0);
+        float dz = Math.max(Math.max(p.z - halfThickness - point.z, point.z - (p.z + halfThickness)), 0);
+
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static long allocatedBytes()
+    {
+        // The bean is looked up once, looking it up allocates
+        if (THREAD_BEAN instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) THREAD_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId());
+
+        return 0;
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.collision.Collision2D;
+import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.geom2d.Circle;
+import com.shc.silenceengine.math.geom2d.Polygon;
+import com.shc.silenceengine.math.geom2d.Rectangle;
+
+import java.util.Random;
+
+/**
+ * Tests random pairs of circles, some of them scaled or translated, axis aligned rectangles, rotated rectangles and
+ * regular polygons with the tests that Collision2D picks for their kinds, and with the generic SAT. Both must agree on
+ * whether the shapes intersect and by how much, up to the error of the polygons that approximate the circles, and the
+ * minimum translation vectors of both must separate the shapes. The time of both is printed for every pair of kinds. No
+ * window is needed.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class CollisionFastPathTest
+{
+    private static final int NUM_PAIRS = 40_000;
+
+    // The error allowed for the polygons of 360 vertices that approximate the circles
+    private static final float TOLERANCE = 0.01f;
+
+    private static final String[] KINDS = { "Polygon", "Circle", "AABB", "OBB" };
+
+    public static void main(String[] args)
+    {
+        checkTransformedCircles();
+
+        Random random = new Random(42);
+
+        Collision2D.Response fast = new Collision2D.Response();
+        Collision2D.Response sat = new Collision2D.Response();
+
+        int[] intersecting = new int[KINDS.length * KINDS.length];
+        int[] tested = new int[KINDS.length * KINDS.length];
+
+        for (int i = 0; i < NUM_PAIRS; i++)
+        {
+            int kindA = random.nextInt(KINDS.length);
+            int kindB = random.nextInt(KINDS.length);
+
+            Polygon a = create(kindA, random);
+            Polygon b = create(kindB, random);
+
+            String name = KINDS[kindA] + " vs " + KINDS[kindB];
+
+            boolean fastResult = Collision2D.testPolygonCollision(a, b, fast.clear());
+            boolean satResult = Collision2D.testPolygonCollisionSAT(a, b, sat.clear());
+
+            tested[kindA * KINDS.length + kindB]++;
+
+            if (fastResult != satResult)
+            {
+                // Only the shapes that about touch may differ
+                float overlap = fastResult ? fast.getOverlapDistance() : sat.getOverlapDistance();
+                check(overlap < TOLERANCE, name + ": the tests disagree by an overlap of " + overlap);
+                continue;
+            }
+
+            if (!fastResult)
+                continue;
+
+            intersecting[kindA * KINDS.length + kindB]++;
+
+            check(Math.abs(fast.getOverlapDistance() - sat.getOverlapDistance()) < TOLERANCE,
+                    name + ": the overlaps are " + fast.getOverlapDistance() + " and " + sat.getOverlapDistance());
+
+            check(fast.getPolygonA() == a && fast.getPolygonB() == b, name + ": the polygons of the response are wrong");
+
+            // The polygons are tested with the same axes, so they are inside each other in the same way
+            if (kindA != 1 && kindB != 1)
+            {
+                check(fast.isAInsideB() == sat.isAInsideB() && fast.isBInsideA() == sat.isBInsideA(),
+                        name + ": the tests disagree on the shapes being inside each other");
+            }
+
+            checkSeparates(name, a, b, fast.getMinimumTranslationVector());
+            checkSeparates(name + " (SAT)", a, b, sat.getMinimumTranslationVector());
+        }
+
+        for (int kindA = 0; kindA < KINDS.length; kindA++)
+        {
+            for (int kindB = 0; kindB < KINDS.length; kindB++)
+            {
+                int index = kindA * KINDS.length + kindB;
+                check(intersecting[index] > 0, "No " + KINDS[kindA] + " vs " + KINDS[kindB] + " pair intersects");
+            }
+        }
+
+        System.out.println(NUM_PAIRS + " random pairs agree with the generic SAT");
+
+        benchmark(random);
+
+        System.out.println("All checks passed");
+    }
+
+    /**
+     * The circles that are scaled or translated after they are created, whose vertices no longer match the extent that
+     * was recorded when the vertices were added.
+     */
+    private static void checkTransformedCircles()
+    {
+        Circle scaled = new Circle(0, 0, 10);
+        scaled.scale(3);
+
+        checkAgrees("Scaled circle vs Circle", scaled, new Circle(45, 45, 10));
+        checkAgrees("Scaled circle vs AABB", scaled, new Rectangle(40, 0, 10, 10));
+        checkAgrees("AABB vs Scaled circle", new Rectangle(40, 0, 10, 10), scaled);
+
+        Circle translated = new Circle(0, 0, 10);
+        translated.translate(30, 0);
+
+        checkAgrees("Translated circle vs Circle", translated, new Circle(45, 10, 10));
+        checkAgrees("Translated circle vs AABB", translated, new Rectangle(38, 5, 10, 10));
+        checkAgrees("Circle vs Translated circle", new Circle(35, 5, 10), translated);
+
+        System.out.println("The scaled and translated circles agree with the generic SAT");
+    }
+
+    private static void checkAgrees(String name, Polygon a, Polygon b)
+    {
+        Collision2D.Response fast = new Collision2D.Response();
+        Collision2D.Response sat = new Collision2D.Response();
+
+        boolean fastResult = Collision2D.testPolygonCollision(a, b, fast);
+        boolean satResult = Collision2D.testPolygonCollisionSAT(a, b, sat);
+
+        check(fastResult && satResult, name + ": the shapes should intersect, the tests say " + fastResult +
+                                       " and " + satResult + " with the generic SAT");
+
+        check(Math.abs(fast.getOverlapDistance() - sat.getOverlapDistance()) < TOLERANCE,
+                name + ": the overlaps are " + fast.getOverlapDistance() + " and " + sat.getOverlapDistance());
+    }
+
+    /**
+     * Checks that moving the first shape back by the minimum translation vector leaves the shapes only touching.
+     */
+    private static void checkSeparates(String name, Polygon a, Polygon b, Vector2 translation)
+    {
+        Vector2 position = a.getPosition().copy();
+        a.setPosition(position.copy().subtractSelf(translation));
+
+        Collision2D.Response response = new Collision2D.Response();
+
+        if (Collision2D.testPolygonCollisionSAT(a, b, response))
+        {
+            check(response.getOverlapDistance() < TOLERANCE, name + ": the minimum translation vector " + translation +
+                                                             " leaves an overlap of " + response.getOverlapDistance());
+        }
+
+        a.setPosition(position);
+    }
+
+    private static void benchmark(Random random)
+    {
+        Collision2D.Response response = new Collision2D.Response();
+
+        for (int kind = 1; kind < KINDS.length; kind++)
+        {
+            Polygon[] shapes = new Polygon[100];
+            Polygon[] polygons = new Polygon[100];
+
+            for (int i = 0; i < shapes.length; i++)
+            {
+                shapes[i] = create(kind, random);
+                polygons[i] = create(0, random);
+            }
+
+            // Circles against polygons, and the others against their own kind
+            Polygon[] others = kind == 1 ? polygons : shapes;
+            String name = KINDS[kind] + " vs " + (kind == 1 ? "Polygon" : KINDS[kind]);
+
+            int iterations = kind == 1 ? 20_000 : 2_000_000;
+
+            long fast = 0;
+            long sat = 0;
+
+            for (int run = 0; run < 2; run++)
+            {
+                long start = System.nanoTime();
+
+                for (int i = 0; i < iterations; i++)
+                    Collision2D.testPolygonCollision(shapes[i % 100], others[(i * 7 + 1) % 100], response.clear());
+
+                fast = System.nanoTime() - start;
+                start = System.nanoTime();
+
+                for (int i = 0; i < iterations; i++)
+                    Collision2D.testPolygonCollisionSAT(shapes[i % 100], others[(i * 7 + 1) % 100], response.clear());
+
+                sat = System.nanoTime() - start;
+            }
+
+            System.out.printf("%-18s %8.1f ns, %10.1f ns with the generic SAT, %6.1fx%n", name + ":",
+                    fast / (double) iterations, sat / (double) iterations, sat / (double) fast);
+        }
+
+        // Circles against circles are slow with the generic SAT, 360 axes of 360 vertices each
+        Polygon[] circles = new Polygon[100];
+
+        for (int i = 0; i < circles.length; i++)
+            circles[i] = create(1, random);
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < 2_000_000; i++)
+            Collision2D.testPolygonCollision(circles[i % 100], circles[(i * 7 + 1) % 100], response.clear());
+
+        long fast = System.nanoTime() - start;
+        start = System.nanoTime();
+
+        for (int i = 0; i < 2_000; i++)
+            Collision2D.testPolygonCollisionSAT(circles[i % 100], circles[(i * 7 + 1) % 100], response.clear());
+
+        long sat = System.nanoTime() - start;
+
+        System.out.printf("%-18s %8.1f ns, %10.1f ns with the generic SAT, %6.1fx%n", "Circle vs Circle:",
+                fast / 2e6, sat / 2e3, (sat / 2e3) / (fast / 2e6));
+    }
+
+    private static Polygon create(int kind, Random random)
+    {
+        float x = random.nextFloat() * 60;
+        float y = random.nextFloat() * 60;
+
+        switch (kind)
+        {
+            case 1:
+                Circle circle = new Circle(x, y, 4 + random.nextFloat() * 16);
+
+                // Some circles are scaled or translated after they are created
+                switch (random.nextInt(3))
+                {
+                    case 1:
+                        circle.scale(0.5f + random.nextFloat());
+                        break;
+
+                    case 2:
+                        circle.translate(random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10);
+                        break;
+                }
+
+                return circle;
+
+            case 2:
+            case 3:
+                Rectangle rectangle = new Rectangle(x, y, 4 + random.nextFloat() * 30, 4 + random.nextFloat() * 30);
+
+                if (kind == 3)
+                    rectangle.rotate(1 + random.nextFloat() * 358);
+
+                return rectangle;
+
+            default:
+                int sides = 3 + random.nextInt(6);
+                float radius = 4 + random.nextFloat() * 16;
+
+                Polygon polygon = new Polygon();
+
+                for (int i = 0; i < sides; i++)
+                {
+                    double angle = 2 * Math.PI * i / sides;
+                    polygon.addVertex(radius + (float) Math.cos(angle) * radius,
+                            radius + (float) Math.sin(angle) * radius);
+                }
+
+                polygon.rotate(random.nextFloat() * 360);
+                polygon.setPosition(x, y);
+
+                return polygon;
+        }
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
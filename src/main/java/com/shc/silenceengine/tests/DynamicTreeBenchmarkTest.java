@@ -0,0 +1,207 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
+import com.shc.silenceengine.collision.broadphase.DynamicTree2D;
+import com.shc.silenceengine.graphics.Sprite;
+import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.geom2d.Rectangle;
+import com.shc.silenceengine.scene.entity.Entity2D;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Drifts 2k slowly moving entities for 10k frames through a DynamicTree2D with tight boxes, and through one with fat
+ * boxes. Every frame the moved entities are updated and the tree is queried once for every entity. The time of the
+ * updates and of the queries, the height of the tree and the number of entities that had to be inserted again are
+ * printed. The candidates are checked against a brute force search every 1000 frames, and the height is checked to
+ * stay logarithmic. The bytes allocated by the updates and the queries are measured after the first 1000 frames, and
+ * the fat tree should not allocate at all by then. No window is needed.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class DynamicTreeBenchmarkTest
+{
+    private static final int NUM_ENTITIES = 2_000;
+    private static final int NUM_FRAMES   = 10_000;
+    private static final int WORLD_SIZE   = 1_800;
+
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args)
+    {
+        Sprite sprite = new Sprite(new Texture(1));
+
+        Result tight = run("Tight boxes", sprite, new DynamicTree2D(0, 0));
+        Result fat = run("Fat boxes", sprite, new DynamicTree2D());
+
+        check(fat.allocated == 0, "The fat tree allocates " + fat.allocated + " bytes after the first 1000 frames");
+        check(fat.reinserts * 4 < tight.reinserts, "The fat boxes should save most of the reinserts");
+
+        System.out.println("All checks passed");
+    }
+
+    private static Result run(String name, Sprite sprite, DynamicTree2D tree)
+    {
+        // The same entities and movements for both the trees
+        Random random = new Random(14);
+
+        Entity2D[] entities = new Entity2D[NUM_ENTITIES];
+
+        for (int i = 0; i < NUM_ENTITIES; i++)
+        {
+            Rectangle rectangle = new Rectangle(4 + random.nextInt(16), 4 + random.nextInt(16));
+
+            entities[i] = new Entity2D(sprite, rectangle);
+            entities[i].setPosition(new Vector2(random.nextFloat() * WORLD_SIZE, random.nextFloat() * WORLD_SIZE));
+            entities[i].setVelocity(new Vector2(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f));
+        }
+
+        for (Entity2D entity : entities)
+            tree.insert(entity);
+
+        Vector2 position = new Vector2();
+        Vector2 velocity = new Vector2();
+
+        long updateTime = 0;
+        long queryTime = 0;
+        long candidates = 0;
+        long allocated = 0;
+        int maxHeight = 0;
+
+        for (int frame = 0; frame < NUM_FRAMES; frame++)
+        {
+            for (Entity2D entity : entities)
+            {
+                // Drift, turning a little now and then, and bounce off the edges of the world
+                velocity.set(entity.getVelocity());
+
+                if (random.nextInt(50) == 0)
+                    velocity.addSelf(random.nextFloat() * 0.2f - 0.1f, random.nextFloat() * 0.2f - 0.1f);
+
+                position.set(entity.getPosition()).addSelf(velocity);
+
+                if (position.x < 0 || position.x > WORLD_SIZE)
+                    velocity.x = -velocity.x;
+                if (position.y < 0 || position.y > WORLD_SIZE)
+                    velocity.y = -velocity.y;
+
+                entity.setVelocity(velocity);
+                entity.setPosition(position);
+            }
+
+            long startBytes = allocatedBytes();
+            long start = System.nanoTime();
+
+            for (Entity2D entity : entities)
+                tree.update(entity);
+
+            long middle = System.nanoTime();
+
+            for (Entity2D entity : entities)
+                candidates += tree.retrieve(entity).size();
+
+            long end = System.nanoTime();
+            long endBytes = allocatedBytes();
+
+            if (frame >= 1000)
+                allocated += endBytes - startBytes;
+
+            updateTime += middle - start;
+            queryTime += end - middle;
+            maxHeight = Math.max(maxHeight, tree.getHeight());
+
+            if (frame % 1000 == 999)
+                checkCandidates(name, tree, entities);
+        }
+
+        // An AVL tree is never higher than 1.44 log2(n), leave some room for the cost based insertion
+        int limit = (int) Math.ceil(2 * Math.log(NUM_ENTITIES) / Math.log(2));
+        check(maxHeight <= limit, name + ": the tree grew to a height of " + maxHeight);
+
+        System.out.println(name + ", " + NUM_ENTITIES + " entities, " + NUM_FRAMES + " frames");
+        System.out.printf("    Update:     %8.4f ms per frame%n", updateTime / 1e6 / NUM_FRAMES);
+        System.out.printf("    Query:      %8.4f ms per frame, %.1f candidates per entity%n",
+                queryTime / 1e6 / NUM_FRAMES, candidates / (double) NUM_FRAMES / NUM_ENTITIES);
+        System.out.printf("    Reinserts:  %8.1f per frame, %d of %d updates%n",
+                tree.getReinsertCount() / (double) NUM_FRAMES, tree.getReinsertCount(), tree.getUpdateCount());
+        System.out.printf("    Rotations:  %8.1f per frame%n", tree.getRotationCount() / (double) NUM_FRAMES);
+        System.out.println("    Height:     " + tree.getHeight() + " at the end, " + maxHeight + " at most");
+        System.out.printf("    Allocated:  %8.1f bytes per frame after 1000 frames%n",
+                allocated / (double) (NUM_FRAMES - 1000));
+
+        Result result = new Result();
+        result.reinserts = tree.getReinsertCount();
+        result.allocated = allocated;
+
+        return result;
+    }
+
+    /**
+     * Checks that every entity whose bounds overlap the bounds of an entity is among the candidates of that entity.
+     */
+    private static void checkCandidates(String name, DynamicTree2D tree, Entity2D[] entities)
+    {
+        for (Entity2D entity : entities)
+        {
+            List<Entity2D> candidates = tree.retrieve(entity);
+
+            for (Entity2D other : entities)
+                if (overlaps(entity.getBounds(), other.getBounds()))
+                    check(candidates.contains(other), name + ": an overlapping entity is not a candidate");
+        }
+    }
+
+    private static boolean overlaps(Rectangle a, Rectangle b)
+    {
+        return a.getX() <= b.getX() + b.getWidth() && b.getX() <= a.getX() + a.getWidth() &&
+               a.getY() <= b.getY() + b.getHeight() && b.getY() <= a.getY() + a.getHeight();
+    }
+
+    private static long allocatedBytes()
+    {
+        // The bean is looked up once, looking it up allocates
+        if (THREAD_BEAN instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) THREAD_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId());
+
+        return 0;
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    private static class Result
+    {
+        private int  reinserts;
+        private long allocated;
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.collision.Collision3D;
+import com.shc.silenceengine.math.Vector3;
+import com.shc.silenceengine.math.geom3d.Cuboid;
+import com.shc.silenceengine.math.geom3d.Polyhedron;
+import com.shc.silenceengine.math.geom3d.Sphere;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+/**
+ * Checks the GJK and EPA narrowphase of Collision3D against exact tests. The boxes, rotated or not, are checked with
+ * the SAT on all the fifteen axes of two boxes, which also gives the exact overlap. The spheres are checked against
+ * each other and against boxes with their distances. For hulls of a few hundred vertices, the minimum translation
+ * vector must separate the hulls, and a shorter one must not. Then the throughput is compared with the SAT on the face
+ * normals for hulls, spheres and boxes, and the tests should not allocate at all. No window is needed.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class GJKTest
+{
+    private static final int   NUM_CHECKS = 20_000;
+    private static final float TOLERANCE  = 0.01f;
+
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args)
+    {
+        Random random = new Random(11);
+        Collision3D.Response response = new Collision3D.Response();
+
+        checkBoxes(random, response);
+        checkSpheres(random, response);
+        checkHulls(random, response);
+
+        Polyhedron[] hulls = new Polyhedron[64];
+        Polyhedron[] spheres = new Polyhedron[64];
+        Polyhedron[] boxes = new Polyhedron[64];
+
+        for (int i = 0; i < hulls.length; i++)
+        {
+            hulls[i] = hull(random, 242);
+            hulls[i].setPosition(randomVector(random, 30));
+
+            spheres[i] = new Sphere(randomVector(random, 30), 4 + random.nextFloat() * 4);
+
+            boxes[i] = box(random);
+            boxes[i].rotate(random.nextFloat() * 90, random.nextFloat() * 90, random.nextFloat() * 90);
+        }
+
+        benchmark("Hull vs hull (242 vertices)", hulls, 20_000, 200);
+        benchmark("Sphere vs sphere", spheres, 200_000, 20);
+        benchmark("Rotated box vs box", boxes, 200_000, 50_000);
+
+        System.out.println("All checks passed");
+    }
+
+    private static void checkBoxes(Random random, Collision3D.Response response)
+    {
+        int hits = 0;
+
+        for (int i = 0; i < NUM_CHECKS; i++)
+        {
+            Cuboid a = box(random);
+            Cuboid b = box(random);
+
+            // A third of the pairs are rotated, and a third have one box rotated
+            if (i % 3 != 0)
+                a.rotate(random.nextFloat() * 90, random.nextFloat() * 90, random.nextFloat() * 90);
+
+            if (i % 3 == 1)
+                b.rotate(random.nextFloat() * 90, random.nextFloat() * 90, random.nextFloat() * 90);
+
+            float overlap = boxOverlap(a, b);
+            boolean result = a.intersects(b, response.clear());
+
+            // The pairs that nearly touch can go either way
+            if (Math.abs(overlap) < TOLERANCE)
+                continue;
+
+            check(result == overlap > 0, "Boxes: the result is not exact for the pair " + i);
+
+            if (!result)
+                continue;
+
+            hits++;
+
+            check(Math.abs(response.getOverlapDistance() - overlap) < TOLERANCE,
+                    "Boxes: the overlap is " + response.getOverlapDistance() + " instead of " + overlap);
+
+            checkSeparation(a, b, response, "Boxes");
+        }
+
+        System.out.println("Boxes: " + hits + " of " + NUM_CHECKS + " pairs intersect, the same as the SAT on 15 axes");
+    }
+
+    private static void checkSpheres(Random random, Collision3D.Response response)
+    {
+        int hits = 0;
+
+        for (int i = 0; i < NUM_CHECKS; i++)
+        {
+            Sphere a = new Sphere(randomVector(random, 20), 1 + random.nextFloat() * 5);
+
+            if (i % 2 == 0)
+            {
+                Sphere b = new Sphere(randomVector(random, 20), 1 + random.nextFloat() * 5);
+
+                float overlap = a.getRadius() + b.getRadius() - a.getPosition().distance(b.getPosition());
+                boolean result = a.intersects(b, response.clear());
+
+                if (Math.abs(overlap) < TOLERANCE)
+                    continue;
+
+                check(result == overlap > 0, "Spheres: the result is not exact for the pair " + i);
+
+                if (result)
+                {
+                    hits++;
+
+                    check(Math.abs(response.getOverlapDistance() - overlap) < TOLERANCE,
+                            "Spheres: the overlap is " + response.getOverlapDistance() + " instead of " + overlap);
+                }
+            }
+            else
+            {
+                Cuboid b = box(random);
+
+                // The distance from the center of the sphere to the box
+                Vector3 center = a.getPosition();
+                Vector3 position = b.getPosition();
+
+                float x = Math.max(Math.abs(center.x - position.x) - b.getWidth() / 2, 0);
+                float y = Math.max(Math.abs(center.y - position.y) - b.getHeight() / 2, 0);
+                float z = Math.max(Math.abs(center.z - position.z) - b.getThickness() / 2, 0);
+
+                float gap = (float) Math.sqrt(x * x + y * y + z * z) - a.getRadius();
+                boolean result = a.intersects(b, response.clear());
+
+                if (Math.abs(gap) < TOLERANCE)
+                    continue;
+
+                check(result == gap < 0, "Sphere and box: the result is not exact for the pair " + i);
+
+                if (result)
+                {
+                    hits++;
+
+                    // The overlap is only exact when the center is outside the box
+                    if (gap > -a.getRadius())
+                    {
+                        check(Math.abs(response.getOverlapDistance() + gap) < TOLERANCE,
+                                "Sphere and box: the overlap is " + response.getOverlapDistance() + " instead of " +
+                                -gap);
+                    }
+                }
+            }
+        }
+
+        System.out.println("Spheres: " + hits + " of " + NUM_CHECKS + " pairs intersect, the same as the distances");
+    }
+
+    private static void checkHulls(Random random, Collision3D.Response response)
+    {
+        int hits = 0;
+
+        for (int i = 0; i < NUM_CHECKS / 10; i++)
+        {
+            Polyhedron a = hull(random, 242);
+            Polyhedron b = i % 2 == 0 ? hull(random, 242) : box(random);
+
+            a.setPosition(randomVector(random, 12));
+            b.setPosition(randomVector(random, 12));
+
+            if (!a.intersects(b, response.clear()))
+                continue;
+
+            hits++;
+            checkSeparation(a, b, response, "Hulls");
+        }
+
+        System.out.println("Hulls: " + hits + " of " + NUM_CHECKS / 10 + " pairs intersect, and are separated by " +
+                           "their minimum translation vectors");
+    }
+
+    /**
+     * Checks that moving the first shape by the minimum translation vector, and a little more, separates the shapes,
+     * and that moving it a little less doesn't.
+     */
+    private static void checkSeparation(Polyhedron a, Polyhedron b, Collision3D.Response response, String name)
+    {
+        Vector3 mtv = new Vector3(response.getMinimumTranslationVector());
+        float overlap = response.getOverlapDistance();
+
+        Vector3 original = new Vector3(a.getPosition());
+        Collision3D.Response other = new Collision3D.Response();
+
+        a.setPosition(original.subtract(new Vector3(mtv).normalizeSelf().scaleSelf(overlap + TOLERANCE)));
+        check(!a.intersects(b, other.clear()), name + ": the minimum translation vector doesn't separate the shapes");
+
+        if (overlap > TOLERANCE * 2)
+        {
+            a.setPosition(original.subtract(new Vector3(mtv).normalizeSelf().scaleSelf(overlap - TOLERANCE)));
+            check(a.intersects(b, other.clear()), name + ": the minimum translation vector is too long");
+        }
+
+        a.setPosition(original);
+    }
+
+    private static void benchmark(String name, Polyhedron[] shapes, int gjkTests, int satTests)
+    {
+        Collision3D.Response response = new Collision3D.Response();
+
+        int hits = 0;
+
+        for (int i = 0; i < shapes.length * shapes.length; i++)
+        {
+            Polyhedron a = shapes[i % shapes.length];
+            Polyhedron b = shapes[i / shapes.length];
+
+            if (Collision3D.testPolyhedronCollision(a, b, response.clear()))
+                hits++;
+        }
+
+        for (int i = 0; i < gjkTests; i++)
+            Collision3D.testPolyhedronCollision(shapes[i % shapes.length], shapes[(i * 7 + 1) % shapes.length],
+                    response.clear());
+
+        // The first measurement and the first reading of the time allocate by themselves
+        allocatedBytes();
+        System.nanoTime();
+
+        long startBytes = allocatedBytes();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < gjkTests; i++)
+            Collision3D.testPolyhedronCollision(shapes[i % shapes.length], shapes[(i * 7 + 1) % shapes.length],
+                    response.clear());
+
+        long gjk = System.nanoTime() - start;
+        long allocated = allocatedBytes() - startBytes;
+
+        check(allocated == 0, name + ": the tests allocate " + allocated + " bytes");
+
+        start = System.nanoTime();
+
+        for (int i = 0; i < satTests; i++)
+            Collision3D.testPolyhedronCollisionSAT(shapes[i % shapes.length], shapes[(i * 7 + 1) % shapes.length],
+                    response.clear());
+
+        long sat = System.nanoTime() - start;
+
+        double gjkRate = gjkTests / (gjk / 1e9);
+        double satRate = satTests / (sat / 1e9);
+
+        System.out.println(name + ", " + hits * 100 / (shapes.length * shapes.length) + "% intersecting");
+        System.out.printf("    GJK and EPA:  %12.0f tests per second%n", gjkRate);
+        System.out.printf("    SAT:          %12.0f tests per second%n", satRate);
+        System.out.printf("    Speedup:      %12.2fx%n", gjkRate / satRate);
+    }
+
+    /**
+     * The overlap of two boxes on the fifteen axes of the SAT, the face normals of both and their crossed edges. It is
+     * negative when the boxes are apart.
+     */
+    private static float boxOverlap(Cuboid a, Cuboid b)
+    {
+        Vector3[] axes = new Vector3[15];
+
+        Vector3[] edgesA = edges(a);
+        Vector3[] edgesB = edges(b);
+
+        for (int i = 0; i < 3; i++)
+        {
+            axes[i] = edgesA[i];
+            axes[i + 3] = edgesB[i];
+
+            for (int j = 0; j < 3; j++)
+                axes[6 + i * 3 + j] = edgesA[i].cross(edgesB[j]);
+        }
+
+        float overlap = Float.POSITIVE_INFINITY;
+
+        for (Vector3 axis : axes)
+        {
+            if (axis.lengthSquared() < 1e-6f)
+                continue;
+
+            axis.normalizeSelf();
+
+            float[] rangeA = project(a, axis);
+            float[] rangeB = project(b, axis);
+
+            overlap = Math.min(overlap, Math.min(rangeA[1] - rangeB[0], rangeB[1] - rangeA[0]));
+        }
+
+        return overlap;
+    }
+
+    private static Vector3[] edges(Cuboid box)
+    {
+        // The first vertex is a corner, and the second, the third and the tenth are the corners next to it
+        Vector3 corner = box.getVertex(0);
+
+        return new Vector3[]{ box.getVertex(1).subtract(corner), box.getVertex(2).subtract(corner),
+                              box.getVertex(9).subtract(corner) };
+    }
+
+    private static float[] project(Polyhedron polyhedron, Vector3 axis)
+    {
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+
+        float offset = polyhedron.getPosition().dot(axis);
+
+        for (Vector3 v : polyhedron.getVertices())
+        {
+            min = Math.min(min, v.dot(axis) + offset);
+            max = Math.max(max, v.dot(axis) + offset);
+        }
+
+        return new float[]{ min, max };
+    }
+
+    private static Cuboid box(Random random)
+    {
+        return new Cuboid(randomVector(random, 20), 1 + random.nextFloat() * 8, 1 + random.nextFloat() * 8,
+                1 + random.nextFloat() * 8);
+    }
+
+    /**
+     * A convex hull of points on an ellipsoid, of which only the vertices are kept.
+     */
+    private static Polyhedron hull(Random random, int numVertices)
+    {
+        Polyhedron hull = new Polyhedron();
+
+        float radiusX = 2 + random.nextFloat() * 6;
+        float radiusY = 2 + random.nextFloat() * 6;
+        float radiusZ = 2 + random.nextFloat() * 6;
+
+        for (int i = 0; i < numVertices; i++)
+        {
+            Vector3 v = randomVector(random, 1).subtractSelf(0.5f, 0.5f, 0.5f).normalizeSelf();
+            hull.addVertex(v.x * radiusX, v.y * radiusY, v.z * radiusZ);
+        }
+
+        return hull;
+    }
+
+    private static Vector3 randomVector(Random random, float size)
+    {
+        return new Vector3(random.nextFloat() * size, random.nextFloat() * size, random.nextFloat() * size);
+    }
+
+    private static long allocatedBytes()
+    {
+        // The bean is looked up once, looking it up allocates
+        if (THREAD_BEAN instanceof com.sun.management.ThreadMXBean)
+        {
+            long id = Thread.currentThread().getId();
+            return ((com.sun.management.ThreadMXBean) THREAD_BEAN).getThreadAllocatedBytes(id);
+        }
+
+        return 0;
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
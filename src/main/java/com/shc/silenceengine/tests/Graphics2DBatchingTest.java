@@ -0,0 +1,129 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.backend.lwjgl3.opengl.GL3Context;
+import com.shc.silenceengine.backend.lwjgl3.opengl.Primitive;
+import com.shc.silenceengine.core.Game;
+import com.shc.silenceengine.core.SilenceEngine;
+import com.shc.silenceengine.graphics.AttributeMask;
+import com.shc.silenceengine.graphics.Batcher;
+import com.shc.silenceengine.graphics.Color;
+import com.shc.silenceengine.graphics.Graphics2D;
+import com.shc.silenceengine.graphics.RenderStats;
+import com.shc.silenceengine.graphics.RenderStats.Counter;
+import org.lwjgl.opengl.GL11;
+
+/**
+ * Draws a grid of translated rectangles with Graphics2D, and counts the draw calls in the RenderStats. With the uniform
+ * transform mode every rectangle needs a draw call of its own, with the CPU transform mode they should all be merged
+ * into one batch. The game ends after the first frame.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class Graphics2DBatchingTest extends Game
+{
+    private static final int RECTS = 500;
+
+    public static void main(String[] args)
+    {
+        new Graphics2DBatchingTest().start();
+    }
+
+    @Override
+    public void init()
+    {
+        RenderStats.setEnabled(true);
+    }
+
+    @Override
+    public void render(float delta, Batcher batcher)
+    {
+        Graphics2D g2d = SilenceEngine.graphics.getGraphics2D();
+
+        long uniformDraws = drawRects(g2d, batcher, Batcher.TransformMode.UNIFORM);
+        long cpuDraws = drawRects(g2d, batcher, Batcher.TransformMode.CPU);
+
+        System.out.println("UNIFORM: " + uniformDraws + " draw calls for " + RECTS + " rectangles");
+        System.out.println("CPU:     " + cpuDraws + " draw calls for " + RECTS + " rectangles");
+
+        check(uniformDraws == RECTS, "Every rectangle should be a draw call with the uniform transform");
+        check(cpuDraws == 1, "The rectangles should be merged into one draw call with the CPU transform");
+
+        // Beginning the batcher draws the open batch of Graphics2D first, and then the new one
+        long before = RenderStats.getCurrent(Counter.DRAW_CALLS);
+
+        g2d.fillRect(0, 0, 30, 30);
+
+        batcher.begin(Primitive.LINES, AttributeMask.COLOR);
+        {
+            batcher.vertex(0, 0);
+            batcher.color(Color.WHITE);
+            batcher.vertex(30, 30);
+            batcher.color(Color.WHITE);
+        }
+        batcher.end();
+
+        check(RenderStats.getCurrent(Counter.DRAW_CALLS) - before == 2, "The open batch should be drawn on begin");
+
+        // Changing the OpenGL state draws the open batch first, with the state it was collected with
+        before = RenderStats.getCurrent(Counter.DRAW_CALLS);
+
+        g2d.fillRect(0, 0, 30, 30);
+        GL3Context.blendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+
+        check(RenderStats.getCurrent(Counter.DRAW_CALLS) - before == 1, "The open batch should be drawn on blendFunc");
+
+        System.out.println("All checks passed");
+        Game.end();
+    }
+
+    private long drawRects(Graphics2D g2d, Batcher batcher, Batcher.TransformMode mode)
+    {
+        batcher.setTransformMode(mode);
+        long before = RenderStats.getCurrent(Counter.DRAW_CALLS);
+
+        g2d.setColor(Color.CORAL);
+
+        for (int i = 0; i < RECTS; i++)
+        {
+            g2d.resetTransform();
+            g2d.translate(i % 25 * 32, i / 25 * 32);
+            g2d.fillRect(0, 0, 30, 30);
+        }
+
+        g2d.flush();
+        g2d.resetTransform();
+
+        batcher.setTransformMode(Batcher.TransformMode.UNIFORM);
+
+        return RenderStats.getCurrent(Counter.DRAW_CALLS) - before;
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
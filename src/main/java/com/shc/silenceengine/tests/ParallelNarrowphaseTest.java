@@ -0,0 +1,235 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
+import com.shc.silenceengine.collision.broadphase.DynamicTree2D;
+import com.shc.silenceengine.collision.broadphase.DynamicTree3D;
+import com.shc.silenceengine.collision.colliders.SceneCollider2D;
+import com.shc.silenceengine.collision.colliders.SceneCollider3D;
+import com.shc.silenceengine.graphics.Sprite;
+import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.Vector3;
+import com.shc.silenceengine.math.geom2d.Polygon;
+import com.shc.silenceengine.math.geom2d.Rectangle;
+import com.shc.silenceengine.math.geom3d.Cuboid;
+import com.shc.silenceengine.scene.Scene2D;
+import com.shc.silenceengine.scene.Scene3D;
+import com.shc.silenceengine.scene.entity.Entity2D;
+import com.shc.silenceengine.scene.entity.Entity3D;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Plays a scene of 20k moving bodies with the narrowphase of the SceneCollider2D on the calling thread, and again with
+ * the narrowphase on a pool of four threads. The collision events must be exactly the same, in the same order, in
+ * every frame. The same is checked for a smaller scene with the SceneCollider3D. The time of the collision checks is
+ * printed, the speedup depends on the number of cores. No window is needed.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class ParallelNarrowphaseTest
+{
+    private static final int NUM_BODIES   = 20_000;
+    private static final int NUM_BODIES3D = 2_000;
+    private static final int NUM_FRAMES   = 30;
+
+    // The events of the current run, the numbers of the two bodies packed in a long
+    private static List<Long> events = new ArrayList<>();
+
+    public static void main(String[] args)
+    {
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        List<List<Long>> serial = record2D(null);
+        List<List<Long>> parallel = record2D(pool);
+
+        check(serial.equals(parallel), "The parallel narrowphase sends different events in 2D");
+
+        List<List<Long>> serial3D = record3D(null);
+        List<List<Long>> parallel3D = record3D(pool);
+
+        check(serial3D.equals(parallel3D), "The parallel narrowphase sends different events in 3D");
+
+        pool.shutdown();
+
+        System.out.println(countEvents(serial) + " events in 2D and " + countEvents(serial3D) +
+                           " events in 3D, the same in the same order");
+        System.out.println("All checks passed");
+    }
+
+    private static List<List<Long>> record2D(ForkJoinPool pool)
+    {
+        Random random = new Random(5);
+        Sprite sprite = new Sprite(new Texture(1));
+
+        Scene2D scene = new Scene2D();
+
+        // About one body per 30x30 pixels, with rectangles and triangles
+        int worldSize = (int) Math.sqrt(NUM_BODIES) * 30;
+
+        for (int i = 0; i < NUM_BODIES; i++)
+        {
+            Polygon shape;
+
+            if (i % 3 == 0)
+            {
+                shape = new Polygon();
+                shape.addVertex(0, 0);
+                shape.addVertex(8 + random.nextInt(16), random.nextInt(8));
+                shape.addVertex(random.nextInt(8), 8 + random.nextInt(16));
+            }
+            else
+                shape = new Rectangle(4 + random.nextInt(20), 4 + random.nextInt(20));
+
+            Body body = new Body(sprite, shape, i);
+            body.setPosition(new Vector2(random.nextFloat() * worldSize, random.nextFloat() * worldSize));
+            body.setVelocity(new Vector2(random.nextFloat() * 4 - 2, random.nextFloat() * 4 - 2));
+
+            scene.addChild(body);
+        }
+
+        SceneCollider2D collider = new SceneCollider2D(new DynamicTree2D());
+        collider.setScene(scene);
+        collider.setNarrowphasePool(pool);
+        collider.register(Body.class, Body.class);
+
+        List<List<Long>> frames = new ArrayList<>();
+        long time = 0;
+
+        for (int frame = 0; frame < NUM_FRAMES; frame++)
+        {
+            for (Entity2D entity : scene.getEntities())
+                entity.setPosition(entity.getPosition().add(entity.getVelocity()));
+
+            events.clear();
+
+            long start = System.nanoTime();
+            collider.checkCollisions();
+            time += System.nanoTime() - start;
+
+            frames.add(new ArrayList<>(events));
+        }
+
+        System.out.printf("SceneCollider2D, %s: %.3f ms per frame%n", pool == null ? "serial  " : "parallel",
+                time / 1e6 / NUM_FRAMES);
+
+        return frames;
+    }
+
+    private static List<List<Long>> record3D(ForkJoinPool pool)
+    {
+        Random random = new Random(6);
+
+        Scene3D scene = new Scene3D();
+
+        for (int i = 0; i < NUM_BODIES3D; i++)
+        {
+            Body3D body = new Body3D(new Cuboid(new Vector3(), 2 + random.nextInt(10), 2 + random.nextInt(10),
+                    2 + random.nextInt(10)), i);
+
+            body.setPosition(new Vector3(random.nextFloat() * 200, random.nextFloat() * 200,
+                    random.nextFloat() * 200));
+            body.setVelocity(new Vector3(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1,
+                    random.nextFloat() * 2 - 1));
+
+            scene.addChild(body);
+        }
+
+        SceneCollider3D collider = new SceneCollider3D(new DynamicTree3D());
+        collider.setScene(scene);
+        collider.setNarrowphasePool(pool);
+        collider.register(Body3D.class, Body3D.class);
+
+        List<List<Long>> frames = new ArrayList<>();
+
+        for (int frame = 0; frame < NUM_FRAMES; frame++)
+        {
+            for (Entity3D entity : scene.getEntities())
+                entity.setPosition(entity.getPosition().add(entity.getVelocity()));
+
+            events.clear();
+            collider.checkCollisions();
+
+            frames.add(new ArrayList<>(events));
+        }
+
+        return frames;
+    }
+
+    private static int countEvents(List<List<Long>> frames)
+    {
+        int count = 0;
+
+        for (List<Long> frame : frames)
+            count += frame.size();
+
+        return count;
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    private static class Body extends Entity2D
+    {
+        private int number;
+
+        Body(Sprite sprite, Polygon polygon, int number)
+        {
+            super(sprite, polygon);
+            this.number = number;
+        }
+
+        @Override
+        public void collision(Entity2D other)
+        {
+            events.add(((long) number << 32) | ((Body) other).number);
+        }
+    }
+
+    private static class Body3D extends Entity3D
+    {
+        private int number;
+
+        Body3D(Cuboid cuboid, int number)
+        {
+            super(cuboid);
+            this.number = number;
+        }
+
+        @Override
+        public void collision(Entity3D other)
+        {
+            events.add(((long) number << 32) | ((Body3D) other).number);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.backend.lwjgl3.opengl.Primitive;
+import com.shc.silenceengine.backend.lwjgl3.opengl.Program;
+import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
+import com.shc.silenceengine.graphics.BlendMode;
+import com.shc.silenceengine.graphics.Graphics2D;
+import com.shc.silenceengine.graphics.IRenderBackend;
+import com.shc.silenceengine.graphics.RenderQueue;
+import com.shc.silenceengine.graphics.Sprite;
+import com.shc.silenceengine.graphics.SpriteBatch;
+import com.shc.silenceengine.math.Vector2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Records a frame with map layers, sprites and particles into a RenderQueue in a scrambled order, and plays it back
+ * into a backend that only records the calls, without a GPU. Checks that the draws come out in the order of the layers
+ * and depths, that every state change is really a change, and that no vertex is lost.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class RenderQueueTest
+{
+    public static void main(String[] args)
+    {
+        Texture[] textures = { new Texture(3), new Texture(5), new Texture(9), new Texture(300) };
+
+        RenderQueue queue = new RenderQueue();
+        Random random = new Random(7);
+
+        int recordedVertices = 0;
+        int naiveStateChanges = 0;
+
+        // Commands on random layers and depths, the position of every vertex is its layer and depth, so that the order
+        // of the draws can be checked from the vertices alone
+        for (int i = 0; i < 500; i++)
+        {
+            int layer = random.nextInt(3);
+            int depth = random.nextInt(5) - 2;
+
+            Texture texture = random.nextInt(5) == 0 ? null : textures[random.nextInt(textures.length)];
+
+            queue.setLayer(layer);
+            queue.setDepth(depth);
+            queue.setBlendMode(random.nextInt(10) == 0 ? BlendMode.ADDITIVE : BlendMode.ALPHA);
+
+            queue.begin(i % 3 == 0 ? Primitive.TRIANGLE_FAN : Primitive.TRIANGLES, texture);
+
+            for (int v = 0; v < 6; v++)
+            {
+                queue.vertex(layer, depth);
+                queue.texCoord(v, i);
+            }
+
+            queue.end();
+
+            // A fan of six vertices makes four triangles
+            recordedVertices += i % 3 == 0 ? 12 : 6;
+
+            // Drawing this immediately would bind the texture and make a draw call
+            naiveStateChanges += 2;
+        }
+
+        // Sprites through the SpriteBatch on the top layer
+        Sprite[] sprites = { new Sprite(textures[0]), new Sprite(textures[1]) };
+
+        SpriteBatch batch = new SpriteBatch();
+        queue.setLayer(3);
+        queue.setBlendMode(BlendMode.ALPHA);
+
+        batch.begin();
+        {
+            for (int i = 0; i < 100; i++)
+            {
+                queue.setDepth(i % 2);
+                batch.addSprite(sprites[i % 2], new Vector2(1000 + i, i));
+                batch.flush(queue);
+            }
+        }
+        batch.end(queue);
+
+        recordedVertices += 100 * 6;
+        naiveStateChanges += 100 * 2;
+
+        check(queue.getVertexCount() == recordedVertices, "The vertices are not converted to lists correctly");
+
+        RecordingBackend backend = new RecordingBackend();
+        queue.play(backend);
+
+        check(backend.drawnVertices == recordedVertices, "Vertices were lost in the playback: " +
+                                                         backend.drawnVertices + " != " + recordedVertices);
+
+        check(backend.redundantChanges == 0, "The backend was asked to change to a state that was already set");
+        check(backend.draws == queue.getDrawCalls(), "The draw calls are not counted correctly");
+        check(backend.textureBinds == queue.getTextureBinds(), "The texture binds are not counted correctly");
+        check(backend.blendModeChanges == queue.getBlendModeChanges(), "The blend mode changes are not counted");
+
+        // The commands in layers 0 to 2 have their layer and depth in the position, check the order
+        float previousLayer = -1;
+        float previousDepth = Float.MAX_VALUE;
+
+        for (float[] vertex : backend.vertices)
+        {
+            if (vertex[0] > 2 || vertex[0] != (int) vertex[0])
+                break;
+
+            if (vertex[0] == previousLayer)
+                check(vertex[1] <= previousDepth, "The higher depths should be drawn first in a layer");
+            else
+                check(vertex[0] > previousLayer, "The lower layers should be drawn first");
+
+            previousLayer = vertex[0];
+            previousDepth = vertex[1];
+        }
+
+        // The commands with the same state in a layer and depth keep the order they are recorded in
+        check(isRecordedOrderKept(backend.vertices), "The commands with the same key are not in the recorded order");
+
+        // Playing the same queue again should give the same calls
+        RecordingBackend again = new RecordingBackend();
+        queue.play(again);
+        check(again.calls.equals(backend.calls), "Playing the queue twice gave different calls");
+
+        // A triangle strip keeps the winding of every triangle
+        queue.clear();
+        queue.begin(Primitive.TRIANGLE_STRIP, null);
+        for (int v = 0; v < 5; v++)
+            queue.vertex(v, 0);
+        queue.end();
+
+        RecordingBackend strip = new RecordingBackend();
+        queue.play(strip);
+
+        float[] expected = { 0, 1, 2, 2, 1, 3, 2, 3, 4 };
+        check(strip.vertices.size() == expected.length, "A strip of five vertices should make three triangles");
+
+        for (int i = 0; i < expected.length; i++)
+            check(strip.vertices.get(i)[0] == expected[i], "The strip is not converted with the right winding");
+
+        // Graphics2D records its shapes into the queue on the current layer, with the transform applied on the CPU
+        queue.clear();
+
+        Graphics2D g2d = Graphics2D.getInstance();
+        g2d.setRenderQueue(queue);
+        queue.setLayer(1);
+
+        for (int i = 0; i < 10; i++)
+        {
+            g2d.resetTransform();
+            g2d.translate(i * 100, 50);
+            g2d.fillRect(0, 0, 10, 10);
+        }
+
+        g2d.resetTransform();
+        g2d.setRenderQueue(null);
+
+        // Recorded after the shapes, but on a lower layer
+        queue.setLayer(0);
+        queue.begin(Primitive.TRIANGLES, textures[0]);
+        for (int v = 0; v < 3; v++)
+            queue.vertex(-1, -1);
+        queue.end();
+
+        RecordingBackend shapes = new RecordingBackend();
+        queue.play(shapes);
+
+        check(shapes.draws == 2, "The rectangles of Graphics2D should be merged into one draw call");
+        check(shapes.vertices.size() == 3 + 10 * 6, "Every rectangle should be recorded as two triangles");
+        check(shapes.vertices.get(0)[0] == -1, "The shapes of Graphics2D should be sorted by their layer");
+
+        for (int i = 0; i < 10; i++)
+        {
+            float[] corner = shapes.vertices.get(3 + i * 6);
+            check(corner[0] == i * 100 && corner[1] == 50, "The transform of Graphics2D is not applied to the shapes");
+        }
+
+        System.out.println("Commands: 600, vertices: " + recordedVertices);
+        System.out.println("Immediate: " + naiveStateChanges / 2 + " draw calls, " + naiveStateChanges / 2 +
+                           " texture binds");
+        System.out.println("Queued:    " + backend.draws + " draw calls, " + backend.textureBinds +
+                           " texture binds, " + backend.blendModeChanges + " blend mode changes");
+        System.out.println("All checks passed");
+    }
+
+    private static boolean isRecordedOrderKept(List<float[]> vertices)
+    {
+        // The v coordinate is the index of the command, and the texture ID and the blend mode are recorded after the
+        // vertex, so the index should never decrease in a run of vertices with the same state
+        for (int i = 1; i < vertices.size(); i++)
+        {
+            float[] previous = vertices.get(i - 1);
+            float[] current = vertices.get(i);
+
+            if (current[0] > 2)
+                break;
+
+            boolean sameState = true;
+
+            for (int c : new int[]{ 0, 1, RenderQueue.VERTEX_SIZE, RenderQueue.VERTEX_SIZE + 1 })
+                sameState &= previous[c] == current[c];
+
+            if (sameState && current[3] < previous[3])
+                return false;
+        }
+
+        return true;
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    /**
+     * A backend which records the calls instead of making them, and counts the state changes that are not changes.
+     */
+    private static class RecordingBackend implements IRenderBackend
+    {
+        private List<String>  calls    = new ArrayList<>();
+        private List<float[]> vertices = new ArrayList<>();
+
+        private int draws;
+        private int textureBinds;
+        private int blendModeChanges;
+        private int drawnVertices;
+        private int redundantChanges;
+
+        private boolean   started;
+        private Texture   texture;
+        private BlendMode blendMode;
+
+        @Override
+        public void begin()
+        {
+            calls.add("begin");
+        }
+
+        @Override
+        public void bindProgram(Program program)
+        {
+            calls.add("program " + program);
+        }
+
+        @Override
+        public void bindTexture(Texture texture)
+        {
+            if (started && (texture == null ? this.texture == null :
+                            this.texture != null && this.texture.getID() == texture.getID()))
+                redundantChanges++;
+
+            calls.add("texture " + (texture == null ? 0 : texture.getID()));
+
+            this.texture = texture;
+            started = true;
+            textureBinds++;
+        }
+
+        @Override
+        public void setBlendMode(BlendMode blendMode)
+        {
+            if (blendMode == this.blendMode)
+                redundantChanges++;
+
+            calls.add("blend " + blendMode);
+
+            this.blendMode = blendMode;
+            blendModeChanges++;
+        }
+
+        @Override
+        public void draw(Primitive primitive, float[] vertices, int vertexCount)
+        {
+            calls.add("draw " + primitive + " " + vertexCount);
+
+            for (int i = 0; i < vertexCount; i++)
+            {
+                float[] vertex = new float[RenderQueue.VERTEX_SIZE + 2];
+                System.arraycopy(vertices, i * RenderQueue.VERTEX_SIZE, vertex, 0, RenderQueue.VERTEX_SIZE);
+
+                vertex[RenderQueue.VERTEX_SIZE] = texture == null ? 0 : texture.getID();
+                vertex[RenderQueue.VERTEX_SIZE + 1] = blendMode.ordinal();
+
+                this.vertices.add(vertex);
+            }
+
+            drawnVertices += vertexCount;
+            draws++;
+        }
+
+        @Override
+        public void end()
+        {
+            calls.add("end");
+        }
+    }
+}
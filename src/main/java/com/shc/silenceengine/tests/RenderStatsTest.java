@@ -0,0 +1,79 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.graphics.RenderStats;
+import com.shc.silenceengine.graphics.RenderStats.Counter;
+
+/**
+ * Feeds made up frames into the RenderStats and checks the rolling minimum, average and maximum, and that nothing is
+ * counted while the stats are disabled. No window is needed.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class RenderStatsTest
+{
+    public static void main(String[] args)
+    {
+        // Nothing is counted while disabled
+        RenderStats.setEnabled(false);
+        RenderStats.count(Counter.DRAW_CALLS, 10);
+        RenderStats.endFrame();
+
+        check(RenderStats.getCurrent(Counter.DRAW_CALLS) == 0, "Counted while disabled");
+        check(RenderStats.getFrameCount() == 0, "A frame was ended while disabled");
+
+        // A window of four frames, fed with six frames of 1 to 6 draw calls. Only 3, 4, 5 and 6 should remain
+        RenderStats.setEnabled(true);
+        RenderStats.setWindowSize(4);
+
+        for (int frame = 1; frame <= 6; frame++)
+        {
+            for (int i = 0; i < frame; i++)
+                RenderStats.count(Counter.DRAW_CALLS);
+
+            RenderStats.count(Counter.VERTICES, frame * 100);
+            RenderStats.endFrame();
+        }
+
+        check(RenderStats.getFrameCount() == 4, "The window should be full");
+        check(RenderStats.getLast(Counter.DRAW_CALLS) == 6, "The last frame should have 6 draw calls");
+        check(RenderStats.getMin(Counter.DRAW_CALLS) == 3, "The minimum should be 3");
+        check(RenderStats.getMax(Counter.DRAW_CALLS) == 6, "The maximum should be 6");
+        check(RenderStats.getAverage(Counter.DRAW_CALLS) == 4.5f, "The average should be 4.5");
+        check(RenderStats.getAverage(Counter.VERTICES) == 450, "The average vertex count should be 450");
+        check(RenderStats.getMax(Counter.TEXTURE_BINDS) == 0, "Nothing was bound");
+
+        System.out.println(RenderStats.getSummary());
+
+        System.out.println("All checks passed");
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
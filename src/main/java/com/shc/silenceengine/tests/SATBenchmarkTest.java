@@ -0,0 +1,293 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.collision.Collision2D;
+import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.geom2d.Polygon;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the throughput of the SAT narrowphase of Collision2D for rotated boxes against rotated boxes and octagons
+ * against octagons, a little less than half of which intersect. The cached edge normals are compared with the SAT that
+ * computed the normals on every test and iterated the lists of vertices, which the narrowphase used before. The results
+ * are checked against an exact test of the convex polygons, the cached normals are checked to follow the rotations, and
+ * the tests should not allocate at all. No window is needed.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class SATBenchmarkTest
+{
+    private static final int NUM_POLYGONS  = 1_000;
+    private static final int WARMUP_TESTS  = 2_000_000;
+    private static final int MEASURE_TESTS = 5_000_000;
+
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args)
+    {
+        run("Box vs box", 4);
+        run("8-gon vs 8-gon", 8);
+
+        System.out.println("All checks passed");
+    }
+
+    private static void run(String name, int sides)
+    {
+        Random random = new Random(42);
+
+        Polygon[] polygons = new Polygon[NUM_POLYGONS];
+
+        for (int i = 0; i < NUM_POLYGONS; i++)
+        {
+            polygons[i] = regularPolygon(sides, 10 + random.nextFloat() * 10);
+            polygons[i].rotate(random.nextFloat() * 360);
+            polygons[i].setPosition(random.nextFloat() * 60, random.nextFloat() * 60);
+        }
+
+        Collision2D.Response response = new Collision2D.Response();
+
+        // Check the results, rotating a polygon now and then to check that the cached normals follow
+        int hits = 0;
+
+        for (int i = 0; i < NUM_POLYGONS * 20; i++)
+        {
+            Polygon a = polygons[random.nextInt(NUM_POLYGONS)];
+            Polygon b = polygons[random.nextInt(NUM_POLYGONS)];
+
+            if (i % 10 == 0)
+                a.rotate(random.nextFloat() * 90);
+
+            boolean result = Collision2D.testPolygonCollision(a, b, response.clear());
+
+            check(result == Legacy.test(a, b), name + ": the cached normals give a different result");
+            check(result == intersects(a, b), name + ": the result is not exact");
+
+            if (result)
+                hits++;
+        }
+
+        for (int i = 0; i < WARMUP_TESTS; i++)
+        {
+            Collision2D.testPolygonCollision(polygons[i % NUM_POLYGONS], polygons[(i * 7 + 1) % NUM_POLYGONS],
+                    response.clear());
+            Legacy.test(polygons[i % NUM_POLYGONS], polygons[(i * 7 + 1) % NUM_POLYGONS]);
+        }
+
+        // The first measurement and the first reading of the time allocate by themselves
+        allocatedBytes();
+        System.nanoTime();
+
+        int sink = 0;
+
+        long startBytes = allocatedBytes();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < MEASURE_TESTS; i++)
+        {
+            if (Collision2D.testPolygonCollision(polygons[i % NUM_POLYGONS], polygons[(i * 7 + 1) % NUM_POLYGONS],
+                    response.clear()))
+                sink++;
+        }
+
+        long cached = System.nanoTime() - start;
+        long allocated = allocatedBytes() - startBytes;
+
+        start = System.nanoTime();
+
+        for (int i = 0; i < MEASURE_TESTS; i++)
+        {
+            if (Legacy.test(polygons[i % NUM_POLYGONS], polygons[(i * 7 + 1) % NUM_POLYGONS]))
+                sink--;
+        }
+
+        long legacy = System.nanoTime() - start;
+
+        check(sink == 0, name + ": the cached normals give different results");
+        check(allocated == 0, name + ": the tests allocate " + allocated + " bytes");
+
+        System.out.println(name + ", " + hits * 100 / (NUM_POLYGONS * 20) + "% intersecting");
+        System.out.printf("    Cached normals:  %8.2f M tests per second%n", MEASURE_TESTS / (cached / 1e3));
+        System.out.printf("    Before:          %8.2f M tests per second%n", MEASURE_TESTS / (legacy / 1e3));
+        System.out.printf("    Speedup:         %8.2fx%n", legacy / (double) cached);
+    }
+
+    private static Polygon regularPolygon(int sides, float radius)
+    {
+        Polygon polygon = new Polygon();
+
+        for (int i = 0; i < sides; i++)
+        {
+            double angle = 2 * Math.PI * i / sides;
+            polygon.addVertex(radius + (float) Math.cos(angle) * radius, radius + (float) Math.sin(angle) * radius);
+        }
+
+        return polygon;
+    }
+
+    /**
+     * Whether two convex polygons intersect, tested with the edges crossing and the vertices being inside.
+     */
+    private static boolean intersects(Polygon a, Polygon b)
+    {
+        int countA = a.vertexCount();
+        int countB = b.vertexCount();
+
+        for (int i = 0; i < countA; i++)
+        {
+            for (int j = 0; j < countB; j++)
+            {
+                if (crosses(point(a, i), point(a, (i + 1) % countA), point(b, j), point(b, (j + 1) % countB)))
+                    return true;
+            }
+        }
+
+        return inside(point(a, 0), b) || inside(point(b, 0), a);
+    }
+
+    private static double[] point(Polygon polygon, int index)
+    {
+        Vector2 vertex = polygon.getVertex(index);
+        return new double[]{ vertex.x + polygon.getPosition().x, vertex.y + polygon.getPosition().y };
+    }
+
+    private static boolean crosses(double[] p1, double[] p2, double[] q1, double[] q2)
+    {
+        double d1 = cross(q1, q2, p1);
+        double d2 = cross(q1, q2, p2);
+        double d3 = cross(p1, p2, q1);
+        double d4 = cross(p1, p2, q2);
+
+        return d1 * d2 <= 0 && d3 * d4 <= 0;
+    }
+
+    private static boolean inside(double[] point, Polygon polygon)
+    {
+        int count = polygon.vertexCount();
+        int sign = 0;
+
+        for (int i = 0; i < count; i++)
+        {
+            double side = cross(point(polygon, i), point(polygon, (i + 1) % count), point);
+            int s = side > 0 ? 1 : side < 0 ? -1 : 0;
+
+            if (s != 0 && sign != 0 && s != sign)
+                return false;
+
+            if (s != 0)
+                sign = s;
+        }
+
+        return true;
+    }
+
+    private static double cross(double[] o, double[] a, double[] b)
+    {
+        return (a[0] - o[0]) * (b[1] - o[1]) - (a[1] - o[1]) * (b[0] - o[0]);
+    }
+
+    private static long allocatedBytes()
+    {
+        // The bean is looked up once, looking it up allocates
+        if (THREAD_BEAN instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) THREAD_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId());
+
+        return 0;
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    /**
+     * The SAT of Collision2D before the edge normals were cached, which found the normals of both the polygons on every
+     * test and iterated the lists of the vertices. Only the result is computed.
+     */
+    private static class Legacy
+    {
+        private static Vector2 normal = new Vector2();
+
+        static boolean test(Polygon a, Polygon b)
+        {
+            for (int i = 0; i < a.vertexCount(); i++)
+            {
+                normal.set(a.getVertex((i + 1) % a.vertexCount())).subtractSelf(a.getVertex(i));
+
+                if (isSeparatingAxis(a, b, normal.perpendicularSelf().normalizeSelf()))
+                    return false;
+            }
+
+            for (int i = 0; i < b.vertexCount(); i++)
+            {
+                normal.set(b.getVertex((i + 1) % b.vertexCount())).subtractSelf(b.getVertex(i));
+
+                if (isSeparatingAxis(a, b, normal.perpendicularSelf().normalizeSelf()))
+                    return false;
+            }
+
+            return true;
+        }
+
+        private static boolean isSeparatingAxis(Polygon a, Polygon b, Vector2 axis)
+        {
+            float projectedOffset = (b.getPosition().x - a.getPosition().x) * axis.x +
+                                    (b.getPosition().y - a.getPosition().y) * axis.y;
+
+            float minA = min(a.getVertices(), axis);
+            float maxA = max(a.getVertices(), axis);
+            float minB = min(b.getVertices(), axis) + projectedOffset;
+            float maxB = max(b.getVertices(), axis) + projectedOffset;
+
+            return minA > maxB || minB > maxA;
+        }
+
+        private static float min(List<Vector2> vertices, Vector2 axis)
+        {
+            float min = Float.MAX_VALUE;
+
+            for (Vector2 vertex : vertices)
+                min = Math.min(min, vertex.dot(axis));
+
+            return min;
+        }
+
+        private static float max(List<Vector2> vertices, Vector2 axis)
+        {
+            float max = -Float.MAX_VALUE;
+
+            for (Vector2 vertex : vertices)
+                max = Math.max(max, vertex.dot(axis));
+
+            return max;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
+import com.shc.silenceengine.collision.broadphase.DynamicTree2D;
+import com.shc.silenceengine.graphics.Sprite;
+import com.shc.silenceengine.math.Frustum;
+import com.shc.silenceengine.math.Matrix4;
+import com.shc.silenceengine.math.Transforms;
+import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.geom2d.Rectangle;
+import com.shc.silenceengine.scene.Scene2D;
+import com.shc.silenceengine.scene.entity.Entity2D;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that the Scene2D finds the visible children with its spatial index in the order they are rendered, the higher
+ * depths first and the children of the same depth in the order they were added, against testing and sorting all the
+ * children. The children are moved, change their depths, are removed and added between the checks, and only those
+ * that changed are refreshed in the index. Then the time to prepare a frame of a small view is compared with sorting
+ * the children and testing every one against the frustum, as the scene did before, for 10k and 100k static children.
+ * No window is needed.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class Scene2DVisibilityTest
+{
+    private static final int NUM_DEPTHS = 8;
+    private static final int NUM_FRAMES = 200;
+
+    private static final Sprite SPRITE = new Sprite(new Texture(1));
+
+    private static int visible;
+
+    public static void main(String[] args)
+    {
+        checkQueries();
+
+        for (int numEntities : new int[]{ 10_000, 100_000 })
+            measure(numEntities);
+
+        System.out.println("All checks passed");
+    }
+
+    private static void checkQueries()
+    {
+        Random random = new Random(25);
+        DynamicTree2D index = new DynamicTree2D();
+        Scene2D scene = new Scene2D(index);
+
+        List<Entity2D> added = new ArrayList<>();
+
+        for (int i = 0; i < 20_000; i++)
+            added.add(addEntity(scene, random, 5000));
+
+        check(scene.getEntities().size() == added.size(), "The scene has all the children");
+
+        scene.addChild(added.get(0));
+        check(scene.getEntities().size() == added.size(), "A child is not added twice");
+
+        checkViews(scene, random, 5000, "After adding");
+
+        // A static scene refreshes nothing
+        index.resetStats();
+        scene.update(1);
+        checkViews(scene, random, 5000, "After a static frame");
+        check(index.getUpdateCount() == 0,
+              "The index is refreshed " + index.getUpdateCount() + " times in a static frame");
+
+        // Some of the children move, some of them twice, and only those are refreshed
+        for (int i = 0; i < 1000; i++)
+            added.get(i).setPosition(randomPoint(random, 5000));
+
+        for (int i = 0; i < 500; i++)
+            added.get(i).setPosition(randomPoint(random, 5000));
+
+        checkViews(scene, random, 5000, "After moving");
+        check(index.getUpdateCount() == 1000,
+              "The index is refreshed " + index.getUpdateCount() + " times instead of 1000");
+
+        // Some of them move by their velocity, change their depths, are removed, destroyed and added
+        for (int i = 1000; i < 1500; i++)
+            added.get(i).setVelocity(new Vector2(random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10));
+
+        for (int i = 2000; i < 3000; i++)
+            added.get(i).setDepth(random.nextInt(NUM_DEPTHS + 2) - 1);
+
+        for (int i = 3000; i < 3300; i++)
+            scene.removeChild(added.get(i));
+
+        for (int i = 3300; i < 3400; i++)
+            added.get(i).destroy();
+
+        for (int i = 0; i < 300; i++)
+            added.add(addEntity(scene, random, 5000));
+
+        scene.update(1);
+        check(scene.getEntities().size() == 20_000 - 300 - 100 + 300, "The removed children are not in the scene");
+
+        checkViews(scene, random, 5000, "After the changes");
+
+        // The removed children are not notified, and the scene doesn't follow them
+        added.get(3000).setPosition(randomPoint(random, 5000));
+        added.get(3000).setDepth(3);
+        check(added.get(3000).getScene() == null, "A removed child is not in the scene");
+        checkViews(scene, random, 5000, "After moving a removed child");
+
+        // All the children are passed without a view
+        List<Entity2D> all = new ArrayList<>();
+        scene.query(null, all::add);
+        check(all.equals(expected(scene, null)), "All the children are passed in their order");
+
+        scene.destroy();
+        check(added.get(0).getScene() == null, "The children of a destroyed scene are not in it");
+
+        all.clear();
+        scene.query(null, all::add);
+        check(all.isEmpty(), "A destroyed scene has no children");
+    }
+
+    private static void checkViews(Scene2D scene, Random random, float worldSize, String message)
+    {
+        for (int i = 0; i < 20; i++)
+        {
+            Vector2 position = randomPoint(random, worldSize);
+            Rectangle view = new Rectangle(position.x, position.y, 400 + random.nextInt(800),
+                    300 + random.nextInt(600));
+
+            List<Entity2D> actual = new ArrayList<>();
+            scene.query(view, actual::add);
+
+            check(actual.equals(expected(scene, view)),
+                  message + ": the scene finds " + actual.size() + " visible children in a different order");
+        }
+    }
+
+    /**
+     * The children that overlap a view, by testing all of them, sorted the way the scene sorted them before.
+     */
+    private static List<Entity2D> expected(Scene2D scene, Rectangle view)
+    {
+        List<Entity2D> expected = new ArrayList<>();
+
+        for (Entity2D entity : scene.getEntities())
+            if (view == null || overlaps(view, entity.getBounds()))
+                expected.add(entity);
+
+        expected.sort((e1, e2) -> Integer.compare(e2.getDepth(), e1.getDepth()));
+
+        return expected;
+    }
+
+    /**
+     * Prepares frames of a static scene with a small view, with the spatial index and as the scene did before.
+     */
+    private static void measure(int numEntities)
+    {
+        Random random = new Random(numEntities);
+        Scene2D scene = new Scene2D();
+
+        // Keep the density the same, about one child per 30x30 pixels
+        float worldSize = (float) Math.sqrt(numEntities) * 30;
+
+        for (int i = 0; i < numEntities; i++)
+            addEntity(scene, random, worldSize);
+
+        List<Entity2D> entities = new ArrayList<>(scene.getEntities());
+
+        Frustum[] frustums = new Frustum[NUM_FRAMES];
+        Rectangle[] views = new Rectangle[NUM_FRAMES];
+
+        for (int i = 0; i < NUM_FRAMES; i++)
+        {
+            Vector2 position = randomPoint(random, worldSize - 800);
+
+            Matrix4 projection = Transforms.createOrtho2d(position.x, position.x + 800, position.y + 600, position.y,
+                    0, 100);
+
+            frustums[i] = new Frustum().update(projection, new Matrix4().initIdentity());
+            views[i] = new Rectangle(position.x, position.y, 800, 600);
+        }
+
+        long indexTime = Long.MAX_VALUE;
+        long oldTime = Long.MAX_VALUE;
+
+        long indexVisible = 0;
+        long oldVisible = 0;
+
+        for (int round = 0; round < 5; round++)
+        {
+            visible = 0;
+            long start = System.nanoTime();
+
+            for (int i = 0; i < NUM_FRAMES; i++)
+                scene.query(views[i], e -> visible++);
+
+            indexTime = Math.min(indexTime, System.nanoTime() - start);
+            indexVisible = visible;
+
+            visible = 0;
+            start = System.nanoTime();
+
+            for (int i = 0; i < NUM_FRAMES; i++)
+            {
+                entities.sort((e1, e2) -> Integer.compare(e2.getDepth(), e1.getDepth()));
+
+                for (Entity2D entity : entities)
+                    if (frustums[i].intersects(entity.getPolygon()))
+                        visible++;
+            }
+
+            oldTime = Math.min(oldTime, System.nanoTime() - start);
+            oldVisible = visible;
+        }
+
+        // The frustum test also takes the children that only touch the view, so the counts are close but not equal
+        check(Math.abs(indexVisible - oldVisible) <= oldVisible / 20,
+              "The scene finds " + indexVisible + " visible children instead of " + oldVisible);
+
+        System.out.printf("%6d children: %8.3f ms per frame with the spatial index, %8.3f ms testing all of them, " +
+                          "%.1fx, %d visible per frame%n", numEntities, indexTime / 1e6 / NUM_FRAMES,
+                oldTime / 1e6 / NUM_FRAMES, (double) oldTime / indexTime, indexVisible / NUM_FRAMES);
+    }
+
+    private static Entity2D addEntity(Scene2D scene, Random random, float worldSize)
+    {
+        Entity2D entity = new Entity2D(SPRITE, new Rectangle(2 + random.nextInt(16), 2 + random.nextInt(16)));
+        entity.setPosition(randomPoint(random, worldSize));
+        entity.setDepth(random.nextInt(NUM_DEPTHS));
+
+        scene.addChild(entity);
+
+        return entity;
+    }
+
+    private static Vector2 randomPoint(Random random, float worldSize)
+    {
+        return new Vector2(random.nextFloat() * worldSize, random.nextFloat() * worldSize);
+    }
+
+    private static boolean overlaps(Rectangle a, Rectangle b)
+    {
+        return a.getX() <= b.getX() + b.getWidth() && b.getX() <= a.getX() + a.getWidth() &&
+               a.getY() <= b.getY() + b.getHeight() && b.getY() <= a.getY() + a.getHeight();
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
+import com.shc.silenceengine.collision.broadphase.BVH3D;
+import com.shc.silenceengine.collision.broadphase.DynamicTree2D;
+import com.shc.silenceengine.collision.broadphase.DynamicTree3D;
+import com.shc.silenceengine.collision.broadphase.Grid;
+import com.shc.silenceengine.collision.broadphase.IBroadphase2D;
+import com.shc.silenceengine.collision.broadphase.IBroadphase3D;
+import com.shc.silenceengine.collision.broadphase.LooseOctree;
+import com.shc.silenceengine.collision.broadphase.QuadTree;
+import com.shc.silenceengine.collision.broadphase.SweepAndPrune2D;
+import com.shc.silenceengine.collision.colliders.SceneCollider2D;
+import com.shc.silenceengine.collision.colliders.SceneCollider3D;
+import com.shc.silenceengine.graphics.Sprite;
+import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.Vector3;
+import com.shc.silenceengine.math.geom2d.Rectangle;
+import com.shc.silenceengine.math.geom3d.Cuboid;
+import com.shc.silenceengine.scene.Scene2D;
+import com.shc.silenceengine.scene.Scene3D;
+import com.shc.silenceengine.scene.entity.Entity2D;
+import com.shc.silenceengine.scene.entity.Entity3D;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Plays a scene where bodies are added, removed, destroyed, teleported and rotated every frame, without any of them
+ * having a velocity, and checks that the events of the SceneCollider2D are the same as those found by testing every
+ * pair of the children of the scene. Some bodies are added and removed again in the same frame, so the number of the
+ * children doesn't change, and must never be reported. The same is checked with the SceneCollider3D on every 3D
+ * broadphase. No window is needed.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class SceneChurnTest
+{
+    private static final int NUM_BODIES = 400;
+    private static final int NUM_FRAMES = 60;
+    private static final int WORLD_SIZE = 600;
+
+    private static List<Long> events = new ArrayList<>();
+
+    public static void main(String[] args)
+    {
+        for (Supplier<IBroadphase2D> broadphase : Arrays.<Supplier<IBroadphase2D>>asList(
+                DynamicTree2D::new,
+                () -> new Grid(WORLD_SIZE + 50, WORLD_SIZE + 50, 50, 50),
+                SweepAndPrune2D::new,
+                () -> new QuadTree(WORLD_SIZE + 50, WORLD_SIZE + 50)))
+        {
+            IBroadphase2D instance = broadphase.get();
+            int total = play2D(instance);
+
+            System.out.println(instance.getClass().getSimpleName() + ": " + total + " events in " + NUM_FRAMES +
+                               " frames, the same as testing every pair");
+        }
+
+        for (IBroadphase3D broadphase : new IBroadphase3D[]{
+                new DynamicTree3D(),
+                new LooseOctree(new Vector3(50, 50, 50), 128),
+                new BVH3D() })
+        {
+            System.out.println(broadphase.getClass().getSimpleName() + ": " + play3D(broadphase) + " events in " +
+                               NUM_FRAMES + " frames, the same as testing every pair");
+        }
+
+        System.out.println("All checks passed");
+    }
+
+    private static int play2D(IBroadphase2D broadphase)
+    {
+        Random random = new Random(7);
+        Sprite sprite = new Sprite(new Texture(1));
+
+        Scene2D scene = new Scene2D();
+        SceneCollider2D collider = new SceneCollider2D(broadphase);
+
+        // Half of the bodies are in the scene before the collider is given the scene
+        int number = 0;
+
+        for (; number < NUM_BODIES / 2; number++)
+            scene.addChild(newBody(sprite, random, number));
+
+        collider.setScene(scene);
+        collider.register(Body.class, Body.class);
+
+        for (; number < NUM_BODIES; number++)
+            scene.addChild(newBody(sprite, random, number));
+
+        int total = 0;
+
+        for (int frame = 0; frame < NUM_FRAMES; frame++)
+        {
+            List<Entity2D> children = scene.getEntities();
+
+            // Teleport and rotate some of the bodies, none of them have a velocity
+            for (Entity2D child : children)
+            {
+                int action = random.nextInt(10);
+
+                if (action == 0)
+                    child.setPosition(new Vector2(random.nextFloat() * WORLD_SIZE, random.nextFloat() * WORLD_SIZE));
+                else if (action == 1)
+                    child.rotate(random.nextFloat() * 90);
+                else if (action == 2)
+                    child.setX(child.getX() + random.nextFloat() * 10 - 5);
+            }
+
+            // Remove a few bodies, and add as many new ones, so that the number of the children doesn't change
+            for (int i = 0; i < 5; i++)
+            {
+                scene.removeChild(children.get(random.nextInt(children.size())));
+                scene.addChild(newBody(sprite, random, number++));
+            }
+
+            // Add a body and remove it again, which must never be reported
+            Body ghost = newBody(sprite, random, -1);
+            scene.addChild(ghost);
+            scene.removeChild(ghost);
+
+            // Destroy a body, which the scene removes when it is updated
+            children.get(random.nextInt(children.size())).destroy();
+            scene.update(0);
+            scene.addChild(newBody(sprite, random, number++));
+
+            events.clear();
+            collider.checkCollisions();
+
+            List<Long> expected = new ArrayList<>();
+
+            for (int i = 0; i < children.size(); i++)
+            {
+                for (int j = i + 1; j < children.size(); j++)
+                {
+                    Body a = (Body) children.get(i);
+                    Body b = (Body) children.get(j);
+
+                    if (a.getPolygon().intersects(b.getPolygon()))
+                    {
+                        expected.add(pack(a.number, b.number));
+                        expected.add(pack(b.number, a.number));
+                    }
+                }
+            }
+
+            Collections.sort(expected);
+            Collections.sort(events);
+
+            check(expected.equals(events), broadphase.getClass().getSimpleName() + " sends different events in frame "
+                                           + frame);
+
+            total += events.size();
+        }
+
+        return total;
+    }
+
+    private static int play3D(IBroadphase3D broadphase)
+    {
+        Random random = new Random(8);
+
+        Scene3D scene = new Scene3D();
+        SceneCollider3D collider = new SceneCollider3D(broadphase);
+        collider.setScene(scene);
+        collider.register(Body3D.class, Body3D.class);
+
+        int number = 0;
+
+        for (; number < NUM_BODIES; number++)
+            scene.addChild(newBody3D(random, number));
+
+        int total = 0;
+
+        for (int frame = 0; frame < NUM_FRAMES; frame++)
+        {
+            List<Entity3D> children = scene.getEntities();
+
+            for (Entity3D child : children)
+            {
+                int action = random.nextInt(10);
+
+                if (action == 0)
+                    child.setPosition(new Vector3(random.nextFloat() * 100, random.nextFloat() * 100,
+                            random.nextFloat() * 100));
+                else if (action == 1)
+                    child.setZ(child.getZ() + random.nextFloat() * 4 - 2);
+            }
+
+            for (int i = 0; i < 5; i++)
+            {
+                scene.removeChild(children.get(random.nextInt(children.size())));
+                scene.addChild(newBody3D(random, number++));
+            }
+
+            Body3D ghost = newBody3D(random, -1);
+            scene.addChild(ghost);
+            scene.removeChild(ghost);
+
+            events.clear();
+            collider.checkCollisions();
+
+            List<Long> expected = new ArrayList<>();
+
+            for (int i = 0; i < children.size(); i++)
+            {
+                for (int j = i + 1; j < children.size(); j++)
+                {
+                    Body3D a = (Body3D) children.get(i);
+                    Body3D b = (Body3D) children.get(j);
+
+                    if (a.getPolyhedron().intersects(b.getPolyhedron()))
+                    {
+                        expected.add(pack(a.number, b.number));
+                        expected.add(pack(b.number, a.number));
+                    }
+                }
+            }
+
+            Collections.sort(expected);
+            Collections.sort(events);
+
+            check(expected.equals(events), broadphase.getClass().getSimpleName() + " sends different events in frame " +
+                                                frame);
+
+            total += events.size();
+        }
+
+        return total;
+    }
+
+    private static Body newBody(Sprite sprite, Random random, int number)
+    {
+        Body body = new Body(sprite, new Rectangle(4 + random.nextInt(30), 4 + random.nextInt(30)), number);
+        body.setPosition(new Vector2(random.nextFloat() * WORLD_SIZE, random.nextFloat() * WORLD_SIZE));
+
+        return body;
+    }
+
+    private static Body3D newBody3D(Random random, int number)
+    {
+        Body3D body = new Body3D(new Cuboid(new Vector3(), 2 + random.nextInt(8), 2 + random.nextInt(8),
+                2 + random.nextInt(8)), number);
+        body.setPosition(new Vector3(random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 100));
+
+        return body;
+    }
+
+    private static long pack(int a, int b)
+    {
+        return ((long) a << 32) | (b & 0xFFFFFFFFL);
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    private static class Body extends Entity2D
+    {
+        private int number;
+
+        Body(Sprite sprite, Rectangle rectangle, int number)
+        {
+            super(sprite, rectangle);
+            this.number = number;
+        }
+
+        @Override
+        public void collision(Entity2D other)
+        {
+            events.add(pack(number, ((Body) other).number));
+        }
+    }
+
+    private static class Body3D extends Entity3D
+    {
+        private int number;
+
+        Body3D(Cuboid cuboid, int number)
+        {
+            super(cuboid);
+            this.number = number;
+        }
+
+        @Override
+        public void collision(Entity3D other)
+        {
+            events.add(pack(number, ((Body3D) other).number));
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
+import com.shc.silenceengine.collision.broadphase.DynamicTree2D;
+import com.shc.silenceengine.collision.broadphase.Grid;
+import com.shc.silenceengine.collision.broadphase.IBroadphase2D;
+import com.shc.silenceengine.collision.broadphase.QuadTree;
+import com.shc.silenceengine.collision.broadphase.SweepAndPrune2D;
+import com.shc.silenceengine.collision.colliders.SceneCollider2D;
+import com.shc.silenceengine.graphics.Sprite;
+import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.geom2d.Rectangle;
+import com.shc.silenceengine.scene.Scene2D;
+import com.shc.silenceengine.scene.entity.Entity2D;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Records the collision events of a scene of players, enemies and bullets over a number of frames, and checks that the
+ * SceneCollider2D sends exactly the same events as the collider did before it was changed to check pairs, which is
+ * kept here as a reference. Some of the entities also get collision layers that change while the scene is played, and
+ * the reference checks those by testing every pair. The order of the events within a frame is not compared. No window
+ * is needed.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class SceneCollider2DPairTest
+{
+    private static final int NUM_FRAMES = 60;
+
+    private static List<String> events = new ArrayList<>();
+
+    public static void main(String[] args)
+    {
+        List<List<String>> expected = record(null);
+
+        for (Supplier<IBroadphase2D> broadphase : Arrays.<Supplier<IBroadphase2D>>asList(
+                DynamicTree2D::new,
+                () -> new Grid(1000, 1000, 50, 50),
+                SweepAndPrune2D::new,
+                () -> new QuadTree(1000, 1000)))
+        {
+            List<List<String>> actual = record(broadphase);
+            int total = 0;
+
+            for (int frame = 0; frame < NUM_FRAMES; frame++)
+            {
+                check(expected.get(frame).equals(actual.get(frame)), "The events differ in frame " + frame);
+                total += actual.get(frame).size();
+            }
+
+            System.out.println(broadphase.get().getClass().getSimpleName() + ": " + total + " events in " +
+                               NUM_FRAMES + " frames, same as before");
+        }
+
+        System.out.println("All checks passed");
+    }
+
+    /**
+     * Plays the scenario and records the events of every frame, sorted.
+     *
+     * @param broadphase The broadphase to use with the SceneCollider2D, or null to use the reference collider.
+     */
+    private static List<List<String>> record(Supplier<IBroadphase2D> broadphase)
+    {
+        Random random = new Random(11);
+        Sprite sprite = new Sprite(new Texture(1));
+
+        Scene2D scene = new Scene2D();
+
+        for (int i = 0; i < 300; i++)
+        {
+            Rectangle shape = new Rectangle(5 + random.nextInt(20), 5 + random.nextInt(20));
+            Entity2D entity;
+
+            switch (i % 5)
+            {
+                case 0: entity = new Player(sprite, shape); break;
+                case 1: entity = new Enemy(sprite, shape); break;
+                case 2: entity = new Bullet(sprite, shape); break;
+                case 3: entity = new EnemyBullet(sprite, shape); break;
+                default: entity = new Wall(sprite, shape);
+            }
+
+            entity.setPosition(new Vector2(random.nextFloat() * 1000, random.nextFloat() * 1000));
+
+            // Runtime roles in the low bits, that are not tied to the types
+            if (random.nextInt(7) == 0)
+                entity.setCollisionCategory(1);
+
+            if (random.nextInt(5) == 0)
+                entity.setCollisionMask(1 | 2);
+
+            if (random.nextInt(9) == 0)
+                entity.setCollisionCategory(entity.getCollisionCategory() | 2);
+
+            if (!(entity instanceof Wall))
+                entity.setVelocity(new Vector2(random.nextFloat() * 6 - 3, random.nextFloat() * 6 - 3));
+
+            scene.addChild(entity);
+        }
+
+        // Give the entities numbers that are the same in every run, the IDs differ
+        Map<Entity2D, Integer> numbers = new IdentityHashMap<>();
+
+        for (Entity2D entity : scene.getEntities())
+            numbers.put(entity, numbers.size());
+
+        Recorder.numbers = numbers;
+
+        SceneCollider2D collider = null;
+        ReferenceCollider reference = null;
+
+        if (broadphase != null)
+        {
+            collider = new SceneCollider2D(broadphase.get());
+            collider.setScene(scene);
+        }
+        else
+        {
+            reference = new ReferenceCollider();
+            reference.scene = scene;
+        }
+
+        for (Object registry : new Object[]{ collider, reference })
+        {
+            if (registry == null)
+                continue;
+
+            register(registry, Player.class, Enemy.class);
+            register(registry, Player.class, EnemyBullet.class);
+            register(registry, Enemy.class, Bullet.class);
+            register(registry, Enemy.class, Enemy.class);
+            register(registry, Bullet.class, Wall.class);
+            register(registry, Wall.class, Entity2D.class);
+            register(registry, Player.class, Enemy.class);
+        }
+
+        List<List<String>> frames = new ArrayList<>();
+
+        for (int frame = 0; frame < NUM_FRAMES; frame++)
+        {
+            for (Entity2D entity : scene.getEntities())
+                entity.setPosition(entity.getPosition().add(entity.getVelocity()));
+
+            // Half way through, some of the entities change their roles
+            if (frame == NUM_FRAMES / 2)
+                for (Entity2D entity : scene.getEntities())
+                {
+                    int number = numbers.get(entity);
+
+                    if (number % 4 == 0)
+                        entity.setCollisionCategory(entity.getCollisionCategory() ^ 1);
+
+                    if (number % 6 == 0)
+                        entity.setCollisionMask(entity.getCollisionMask() & ~2);
+                }
+
+            events.clear();
+
+            if (collider != null)
+            {
+                List<Entity2D> entities = scene.getEntities();
+                int[] layers = new int[entities.size() * 2];
+
+                for (int i = 0; i < entities.size(); i++)
+                {
+                    layers[i * 2] = entities.get(i).getCollisionCategory();
+                    layers[i * 2 + 1] = entities.get(i).getCollisionMask();
+                }
+
+                collider.checkCollisions();
+
+                // The layers of the registered types are only combined with those of the entities in the collider
+                for (int i = 0; i < entities.size(); i++)
+                    check(entities.get(i).getCollisionCategory() == layers[i * 2] &&
+                          entities.get(i).getCollisionMask() == layers[i * 2 + 1],
+                            "The collider changed the collision layers of an entity in frame " + frame);
+            }
+            else
+                reference.checkCollisions();
+
+            List<String> frameEvents = new ArrayList<>(events);
+            Collections.sort(frameEvents);
+            frames.add(frameEvents);
+        }
+
+        return frames;
+    }
+
+    private static void register(Object registry, Class<? extends Entity2D> type1, Class<? extends Entity2D> type2)
+    {
+        if (registry instanceof SceneCollider2D)
+            ((SceneCollider2D) registry).register(type1, type2);
+        else
+            ((ReferenceCollider) registry).register(type1, type2);
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    /**
+     * The SceneCollider2D as it was before the pairs, which queried the broadphase for every entity of every registered
+     * type. A DynamicTree2D is rebuilt every frame, since it doesn't return the same entity twice. The collision layers
+     * of the entities are checked for every pair of entities.
+     */
+    private static class ReferenceCollider
+    {
+        private Map<Class<? extends Entity2D>, List<Class<? extends Entity2D>>> collisionMap = new HashMap<>();
+        private Scene2D scene;
+
+        private void register(Class<? extends Entity2D> type1, Class<? extends Entity2D> type2)
+        {
+            if (!collisionMap.containsKey(type1))
+                collisionMap.put(type1, new ArrayList<>());
+
+            collisionMap.get(type1).add(type2);
+        }
+
+        private void checkCollisions()
+        {
+            IBroadphase2D broadphase = new DynamicTree2D();
+            List<Entity2D> entities = scene.getEntities();
+
+            entities.forEach(broadphase::insert);
+
+            for (Class<? extends Entity2D> class1 : collisionMap.keySet())
+                entities.stream().filter(class1::isInstance).forEach(entity ->
+                {
+                    List<Entity2D> collidables = broadphase.retrieve(entity);
+
+                    for (Entity2D entity2 : collidables)
+                        collisionMap.get(class1).stream()
+                                .filter(class2 -> class2.isInstance(entity2) && entity != entity2)
+                                .filter(class2 -> entity.getPolygon().intersects(entity2.getPolygon()))
+                                .forEach(class2 -> entity.collision(entity2));
+                });
+
+            // The collision layers set on the entities, one event when the mask has a bit of the other category
+            for (int i = 0; i < entities.size(); i++)
+                for (int j = i + 1; j < entities.size(); j++)
+                {
+                    Entity2D entity1 = entities.get(i);
+                    Entity2D entity2 = entities.get(j);
+
+                    if (!entity1.getPolygon().intersects(entity2.getPolygon()))
+                        continue;
+
+                    if ((entity1.getCollisionMask() & entity2.getCollisionCategory()) != 0)
+                        entity1.collision(entity2);
+
+                    if ((entity2.getCollisionMask() & entity1.getCollisionCategory()) != 0)
+                        entity2.collision(entity1);
+                }
+        }
+    }
+
+    private static class Recorder
+    {
+        private static Map<Entity2D, Integer> numbers;
+
+        private static void record(Entity2D entity, Entity2D other)
+        {
+            events.add(numbers.get(entity) + " -> " + numbers.get(other));
+        }
+    }
+
+    private static class Player extends Entity2D
+    {
+        Player(Sprite sprite, Rectangle shape)
+        {
+            super(sprite, shape);
+        }
+
+        @Override
+        public void collision(Entity2D other)
+        {
+            Recorder.record(this, other);
+        }
+    }
+
+    private static class Enemy extends Player
+    {
+        Enemy(Sprite sprite, Rectangle shape)
+        {
+            super(sprite, shape);
+        }
+    }
+
+    private static class Bullet extends Player
+    {
+        Bullet(Sprite sprite, Rectangle shape)
+        {
+            super(sprite, shape);
+        }
+    }
+
+    private static class EnemyBullet extends Bullet
+    {
+        EnemyBullet(Sprite sprite, Rectangle shape)
+        {
+            super(sprite, shape);
+        }
+    }
+
+    private static class Wall extends Player
+    {
+        Wall(Sprite sprite, Rectangle shape)
+        {
+            super(sprite, shape);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.collision.Collision2D;
+import com.shc.silenceengine.collision.Collision3D;
+import com.shc.silenceengine.math.Matrix4;
+import com.shc.silenceengine.math.Quaternion;
+import com.shc.silenceengine.math.Transform;
+import com.shc.silenceengine.math.Transforms;
+import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.Vector3;
+import com.shc.silenceengine.math.geom2d.Polygon;
+import com.shc.silenceengine.math.geom3d.Cuboid;
+import com.shc.silenceengine.utils.Scratch;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs the collision tests and the transform math of the engine on eight threads at once, which all take their
+ * temporaries from the Scratch arenas. Every thread must get exactly the same results as a single thread does, and
+ * must have no scratch scopes left open. The nesting of the scopes is also checked. No window is needed.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class ScratchStressTest
+{
+    private static final int NUM_THREADS    = 8;
+    private static final int NUM_ITERATIONS = 20_000;
+
+    // The number of results that every iteration records
+    private static final int NUM_RESULTS = 16;
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        checkScopes();
+
+        float[] expected = run();
+
+        float[][] results = new float[NUM_THREADS][];
+        Throwable[] errors = new Throwable[NUM_THREADS];
+
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[NUM_THREADS];
+
+        for (int i = 0; i < NUM_THREADS; i++)
+        {
+            final int index = i;
+
+            threads[i] = new Thread(() ->
+            {
+                try
+                {
+                    start.await();
+                    results[index] = run();
+
+                    try (Scratch scratch = Scratch.open())
+                    {
+                        check(scratch.getDepth() == 1, "A scratch scope is left open on a thread");
+                    }
+                }
+                catch (Throwable e)
+                {
+                    errors[index] = e;
+                }
+            });
+
+            threads[i].start();
+        }
+
+        long time = System.nanoTime();
+        start.countDown();
+
+        for (Thread thread : threads)
+            thread.join();
+
+        time = System.nanoTime() - time;
+
+        for (int i = 0; i < NUM_THREADS; i++)
+        {
+            if (errors[i] != null)
+                throw new AssertionError("Thread " + i + " failed", errors[i]);
+
+            check(Arrays.equals(expected, results[i]), "Thread " + i + " got different results");
+        }
+
+        System.out.printf("%d threads ran %d iterations each in %.1f ms%n", NUM_THREADS, NUM_ITERATIONS, time / 1e6);
+        System.out.println("All the checks passed");
+    }
+
+    private static void checkScopes()
+    {
+        try (Scratch outer = Scratch.open())
+        {
+            Vector3 a = outer.vector3();
+
+            Vector3 b;
+
+            try (Scratch inner = Scratch.open())
+            {
+                check(inner.getDepth() == 2, "The scopes are not nested");
+
+                b = inner.vector3();
+                check(a != b, "A temporary is handed out twice in the same scope");
+            }
+
+            check(outer.vector3() == b, "Closing a scope doesn't give back its temporaries");
+            check(outer.vector3() != a, "A temporary of an open scope is handed out again");
+        }
+
+        boolean thrown = false;
+
+        try
+        {
+            Scratch scratch = Scratch.open();
+            check(scratch.getDepth() == 1, "A scratch scope is left open");
+
+            scratch.close();
+            scratch.close();
+        }
+        catch (IllegalStateException e)
+        {
+            thrown = true;
+        }
+
+        check(thrown, "Closing a scope that is not open doesn't throw");
+    }
+
+    private static float[] run()
+    {
+        float[] results = new float[NUM_ITERATIONS * NUM_RESULTS];
+        Random random = new Random(42);
+
+        Collision2D.Response response2D = new Collision2D.Response();
+        Collision3D.Response response3D = new Collision3D.Response();
+
+        Matrix4 matrix = new Matrix4();
+        Vector3 vector = new Vector3();
+        Quaternion quaternion = new Quaternion();
+
+        for (int i = 0; i < NUM_ITERATIONS; i++)
+        {
+            int r = i * NUM_RESULTS;
+
+            // Two polygons near each other
+            Polygon a = triangle(random);
+            Polygon b = triangle(random);
+            b.rotate(random.nextFloat() * 360);
+
+            results[r] = a.intersects(b, response2D.clear()) ? 1 : 0;
+            results[r + 1] = response2D.getOverlapDistance();
+            results[r + 2] = response2D.getMinimumTranslationVector().x;
+            results[r + 3] = a.contains(new Vector2(random.nextFloat() * 24, random.nextFloat() * 24)) ? 1 : 0;
+
+            // Two boxes near each other
+            Cuboid c = new Cuboid(new Vector3(random.nextFloat() * 8, random.nextFloat() * 8, random.nextFloat() * 8),
+                    1 + random.nextInt(6), 1 + random.nextInt(6), 1 + random.nextInt(6));
+            Cuboid d = new Cuboid(new Vector3(random.nextFloat() * 8, random.nextFloat() * 8, random.nextFloat() * 8),
+                    1 + random.nextInt(6), 1 + random.nextInt(6), 1 + random.nextInt(6));
+            d.rotate(random.nextFloat() * 90, random.nextFloat() * 90, random.nextFloat() * 90);
+
+            results[r + 4] = c.intersects(d, response3D.clear()) ? 1 : 0;
+            results[r + 5] = response3D.getOverlapDistance();
+            results[r + 6] = response3D.getMinimumTranslationVector().z;
+
+            // The transforms and the quaternions
+            Vector3 axis = new Vector3(random.nextFloat(), random.nextFloat(), 1).normalizeSelf();
+            float angle = random.nextFloat() * 360;
+
+            Transform transform = new Transform()
+                    .rotateSelf(axis, angle)
+                    .translateSelf(new Vector3(random.nextFloat(), random.nextFloat(), random.nextFloat()))
+                    .scaleSelf(new Vector3(1 + random.nextFloat(), 1 + random.nextFloat(), 1));
+
+            matrix.set(transform.getMatrix()).invertSelf();
+
+            results[r + 7] = matrix.get(0, 0);
+            results[r + 8] = matrix.get(1, 2);
+            results[r + 9] = matrix.get(3, 0);
+
+            quaternion.set(axis, angle).multiply(vector.set(1, 2, 3), vector);
+
+            results[r + 10] = vector.x;
+            results[r + 11] = vector.y;
+
+            quaternion.slerpSelf(new Quaternion().set(Vector3.AXIS_Y, angle / 2), random.nextFloat());
+
+            results[r + 12] = quaternion.getW();
+
+            Transforms.createLookAtMatrix(vector, Vector3.ZERO, Vector3.AXIS_Y, matrix);
+
+            results[r + 13] = matrix.get(2, 1);
+            results[r + 14] = vector.set(axis).rotateSelf(Vector3.AXIS_Z, angle).x;
+            results[r + 15] = Transforms.createLookAtQuaternion(vector, Vector3.ZERO, Vector3.AXIS_Y, quaternion).getX();
+        }
+
+        return results;
+    }
+
+    private static Polygon triangle(Random random)
+    {
+        Polygon polygon = new Polygon();
+        polygon.addVertex(0, 0);
+        polygon.addVertex(8 + random.nextInt(16), random.nextInt(8));
+        polygon.addVertex(random.nextInt(8), 8 + random.nextInt(16));
+        polygon.setPosition(random.nextInt(16), random.nextInt(16));
+
+        return polygon;
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
+import com.shc.silenceengine.graphics.Sprite;
+import com.shc.silenceengine.graphics.SpriteQueue;
+import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.utils.Scratch;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the cost of submitting sprites and sorting them by texture, the CPU side of a SpriteBatch frame, at 10k,
+ * 100k and 1M sprites. The SpriteQueue is compared with the lists of boxed indices that the SpriteBatch used before,
+ * and the memory allocated per frame is measured. No window is needed, the textures are just IDs.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class SpriteQueueBenchmarkTest
+{
+    private static final int NUM_TEXTURES   = 200;
+    private static final int WARMUP_FRAMES  = 20;
+    private static final int MEASURE_FRAMES = 20;
+
+    public static void main(String[] args)
+    {
+        Random random = new Random(42);
+
+        Sprite[] sprites = new Sprite[NUM_TEXTURES];
+
+        for (int i = 0; i < NUM_TEXTURES; i++)
+            sprites[i] = new Sprite(new Texture(i + 1));
+
+        for (int numSprites : new int[]{ 10_000, 100_000, 1_000_000 })
+        {
+            Sprite[] frame = new Sprite[numSprites];
+            Vector2[] positions = new Vector2[numSprites];
+
+            for (int i = 0; i < numSprites; i++)
+            {
+                frame[i] = sprites[random.nextInt(NUM_TEXTURES)];
+                positions[i] = new Vector2(random.nextFloat() * 800, random.nextFloat() * 600);
+            }
+
+            SpriteQueue queue = new SpriteQueue();
+            Legacy legacy = new Legacy();
+
+            for (int i = 0; i < WARMUP_FRAMES; i++)
+            {
+                submit(queue, frame, positions);
+                legacy.submit(frame, positions);
+            }
+
+            checkSorted(queue, frame, positions);
+
+            long queueAllocated = allocatedBytes();
+            long queueTime = System.nanoTime();
+
+            for (int i = 0; i < MEASURE_FRAMES; i++)
+                submit(queue, frame, positions);
+
+            queueTime = (System.nanoTime() - queueTime) / MEASURE_FRAMES;
+            queueAllocated = (allocatedBytes() - queueAllocated) / MEASURE_FRAMES;
+
+            long legacyAllocated = allocatedBytes();
+            long legacyTime = System.nanoTime();
+
+            for (int i = 0; i < MEASURE_FRAMES; i++)
+                legacy.submit(frame, positions);
+
+            legacyTime = (System.nanoTime() - legacyTime) / MEASURE_FRAMES;
+            legacyAllocated = (allocatedBytes() - legacyAllocated) / MEASURE_FRAMES;
+
+            legacy.dispose();
+
+            System.out.printf("%,9d sprites: queue %7.3f ms %,12d bytes/frame | lists %7.3f ms %,12d bytes/frame%n",
+                    numSprites, queueTime / 1e6, queueAllocated, legacyTime / 1e6, legacyAllocated);
+        }
+    }
+
+    private static void submit(SpriteQueue queue, Sprite[] frame, Vector2[] positions)
+    {
+        queue.clear();
+
+        for (int i = 0; i < frame.length; i++)
+            queue.add(frame[i], positions[i].getX(), positions[i].getY());
+
+        queue.sort();
+    }
+
+    private static void checkSorted(SpriteQueue queue, Sprite[] frame, Vector2[] positions)
+    {
+        for (int n = 1; n < queue.size(); n++)
+        {
+            int previous = queue.getIndex(n - 1);
+            int current = queue.getIndex(n);
+
+            int previousId = queue.getTextureID(previous);
+            int currentId = queue.getTextureID(current);
+
+            if (previousId > currentId || (previousId == currentId && previous > current))
+                throw new AssertionError("The sprites are not in a stable order by texture at " + n);
+
+            if (queue.getTexture(current) != frame[current].getTexture() ||
+                queue.getX(current) != positions[current].getX())
+                throw new AssertionError("The state of sprite " + current + " is not retained");
+        }
+    }
+
+    private static long allocatedBytes()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+
+        return 0;
+    }
+
+    /**
+     * The submission queue of the SpriteBatch before it used the SpriteQueue.
+     */
+    private static class Legacy
+    {
+        private List<Sprite>  sprites   = new ArrayList<>();
+        private List<Integer> indices   = new ArrayList<>();
+        private List<Vector2> positions = new ArrayList<>();
+
+        // The scope the positions of the last frame were taken from, they are given back when the next frame starts
+        private Scratch scratch;
+
+        void submit(Sprite[] frame, Vector2[] framePositions)
+        {
+            sprites.clear();
+            indices.clear();
+
+            if (scratch != null)
+                scratch.close();
+
+            scratch = Scratch.open();
+            positions.clear();
+
+            for (int i = 0; i < frame.length; i++)
+            {
+                sprites.add(frame[i]);
+                positions.add(scratch.vector2().set(framePositions[i]));
+                indices.add(sprites.size() - 1);
+            }
+
+            indices.sort((i, j) -> sprites.get(i).getTexture().getID() - sprites.get(j).getTexture().getID());
+        }
+
+        void dispose()
+        {
+            scratch.close();
+            scratch = null;
+        }
+    }
+}
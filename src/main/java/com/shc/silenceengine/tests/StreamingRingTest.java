@@ -0,0 +1,192 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.graphics.IFenceProvider;
+import com.shc.silenceengine.graphics.StreamingRing;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Exercises the bookkeeping of the StreamingRing with a fake fence provider, without needing a GPU. The fake GPU
+ * completes a fence only after a number of newer fences are created, so we can check that the ring never reuses a
+ * section that is still being read from, and that it only blocks when the GPU lags behind by more than the ring.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class StreamingRingTest
+{
+    public static void main(String[] args)
+    {
+        FakeFenceProvider fences = new FakeFenceProvider(2);
+        StreamingRing ring = new StreamingRing(3, 1024, fences);
+
+        // The first batches go one after the other in the first section
+        check(!ring.ensureRemaining(400), "The first batch should fit in the first section");
+        check(ring.getWriteOffset() == 0, "The first batch should start at offset 0");
+        ring.commit(400);
+
+        check(!ring.ensureRemaining(400), "The second batch should fit in the first section");
+        check(ring.getWriteOffset() == 400, "The second batch should start after the first one");
+        ring.commit(400);
+
+        // The third one overflows, and moves to the second section fencing the first one
+        check(ring.ensureRemaining(400), "The third batch should move to the next section");
+        check(ring.getSection() == 1 && ring.getWriteOffset() == 1024, "The third batch should be in section 1");
+        check(ring.isPending(0), "The first section should be guarded by a fence");
+        ring.commit(400);
+
+        ring.reset();
+        check(fences.getLiveFences() == 0, "All the fences should be deleted on reset");
+
+        // A GPU that is at most two sections behind never makes a ring of three sections wait
+        ring = simulate(new FakeFenceProvider(2));
+        check(ring.getWaitCount() == 0, "The ring should not wait when the GPU keeps up with it");
+
+        // A GPU that is three sections behind is still reading from the section the ring wraps around to
+        ring = simulate(new FakeFenceProvider(3));
+        check(ring.getWaitCount() > 0, "The ring should wait on the fences when the GPU lags behind");
+
+        System.out.println("All checks passed");
+    }
+
+    private static StreamingRing simulate(FakeFenceProvider fences)
+    {
+        StreamingRing ring = new StreamingRing(3, 1024, fences);
+        Set<Integer> usedOffsets = new HashSet<>();
+
+        // Simulate a lot of frames of batches with different sizes
+        for (int frame = 0; frame < 1000; frame++)
+        {
+            for (int batch = 0; batch < 5; batch++)
+            {
+                int size = 100 + (frame * 31 + batch * 17) % 900;
+
+                ring.ensureRemaining(size);
+
+                int offset = ring.getWriteOffset();
+                int section = offset / ring.getSectionSize();
+
+                check(offset + size <= (section + 1) * ring.getSectionSize(), "A batch crosses a section boundary");
+                check(!ring.isPending(section), "A section is written while it is still guarded by a fence");
+
+                usedOffsets.add(offset);
+                ring.commit(size);
+            }
+        }
+
+        check(ring.getWrapCount() > 0, "The ring should have wrapped around");
+        check(usedOffsets.size() > 3, "The ring should use different offsets");
+
+        ring.reset();
+        check(fences.getLiveFences() == 0, "All the fences should be deleted on reset");
+
+        System.out.println("Lag: " + fences.getLag() + ", wraps: " + ring.getWrapCount() + ", waits: " +
+                           ring.getWaitCount() + ", fences created: " + fences.getCreatedFences());
+
+        return ring;
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    /**
+     * A fake GPU which completes a fence once a number of newer fences have been created, that is, it lags behind the
+     * ring by that many sections. Waiting on a fence that is not complete yet completes it, like the real GPU would do
+     * eventually.
+     */
+    private static class FakeFenceProvider implements IFenceProvider
+    {
+        private int lag;
+
+        private long next = 1;
+        private int  created;
+
+        // The fences that are not yet deleted, and the ones that were completed by waiting on them
+        private Set<Long> live     = new HashSet<>();
+        private Set<Long> complete = new HashSet<>();
+
+        public FakeFenceProvider(int lag)
+        {
+            this.lag = lag;
+        }
+
+        @Override
+        public long createFence()
+        {
+            created++;
+
+            live.add(next);
+            return next++;
+        }
+
+        @Override
+        public boolean isSignaled(long fence)
+        {
+            if (!live.contains(fence))
+                throw new AssertionError("Checking a deleted fence");
+
+            // The number of fences created after this one
+            return complete.contains(fence) || next - 1 - fence >= lag;
+        }
+
+        @Override
+        public void waitFence(long fence)
+        {
+            if (!live.contains(fence))
+                throw new AssertionError("Waiting on a deleted fence");
+
+            complete.add(fence);
+        }
+
+        @Override
+        public void deleteFence(long fence)
+        {
+            if (!live.remove(fence))
+                throw new AssertionError("Deleting an unknown fence");
+
+            complete.remove(fence);
+        }
+
+        public int getLag()
+        {
+            return lag;
+        }
+
+        public int getLiveFences()
+        {
+            return live.size();
+        }
+
+        public int getCreatedFences()
+        {
+            return created;
+        }
+    }
+}
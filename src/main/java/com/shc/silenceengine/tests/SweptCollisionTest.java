@@ -0,0 +1,368 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.backend.lwjgl3.opengl.Texture;
+import com.shc.silenceengine.collision.Collision2D;
+import com.shc.silenceengine.collision.broadphase.DynamicTree2D;
+import com.shc.silenceengine.collision.broadphase.Grid;
+import com.shc.silenceengine.collision.broadphase.IBroadphase2D;
+import com.shc.silenceengine.collision.broadphase.QuadTree;
+import com.shc.silenceengine.collision.broadphase.SweepAndPrune2D;
+import com.shc.silenceengine.collision.colliders.SceneCollider2D;
+import com.shc.silenceengine.graphics.Sprite;
+import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.geom2d.Circle;
+import com.shc.silenceengine.math.geom2d.Polygon;
+import com.shc.silenceengine.math.geom2d.Rectangle;
+import com.shc.silenceengine.scene.Scene2D;
+import com.shc.silenceengine.scene.entity.Entity2D;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Checks the swept collisions of the fast entities. The times of impact of Collision2D are checked on a few cases that
+ * are worked out by hand, and on random pairs of shapes against the first time at which the shapes intersect when the
+ * motions are stepped finely. Then bullets that move 40 pixels in a frame are fired at walls that are one pixel thick,
+ * and land between the walls at the end of every frame. They pass through the walls unless they are continuous, and
+ * then every bullet hits every wall exactly once, in the frame it crosses it, with the broadphases that are updated
+ * incrementally and with the parallel narrowphase. No window is needed.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class SweptCollisionTest
+{
+    private static final int NUM_FRAMES = 10;
+    private static final int SPEED      = 40;
+
+    // The walls are placed so that no bullet is ever on one at the end of a frame
+    private static final int[] WALLS = { 110, 170, 230, 290, 350 };
+
+    private static final Sprite SPRITE = new Sprite(new Texture(1));
+
+    private static int frame;
+
+    public static void main(String[] args)
+    {
+        checkCases();
+        checkRandom();
+
+        for (Supplier<IBroadphase2D> broadphase : Arrays.<Supplier<IBroadphase2D>>asList(
+                DynamicTree2D::new,
+                () -> new Grid(512, 512, 32, 32),
+                SweepAndPrune2D::new,
+                () -> new QuadTree(512, 512)))
+        {
+            for (ForkJoinPool pool : new ForkJoinPool[]{ null, ForkJoinPool.commonPool() })
+            {
+                String name = broadphase.get().getClass().getSimpleName() + (pool == null ? "" : " in parallel");
+
+                check(fire(broadphase.get(), pool, false) == 0, name + ": the bullets don't pass through the walls");
+                int hits = fire(broadphase.get(), pool, true);
+
+                System.out.println(name + ": " + hits + " hits of the continuous bullets");
+            }
+        }
+
+        System.out.println("All checks passed");
+    }
+
+    /**
+     * The cases that are worked out by hand.
+     */
+    private static void checkCases()
+    {
+        Rectangle wall = new Rectangle(50, 0, 1, 100);
+        Vector2 still = new Vector2();
+
+        // A box moving right through the wall touches it after moving 46 of the 100 pixels
+        Rectangle box = new Rectangle(0, 48, 4, 4);
+        checkTime(Collision2D.timeOfImpact(box, new Vector2(100, 0), wall, still), 0.46f, "The box hits the wall");
+        check(!box.intersects(wall), "The box is not on the wall at the start");
+
+        box.setPosition(100, 48);
+        check(!box.intersects(wall), "The box is not on the wall at the end");
+
+        // Moving away, passing above, and not moving at all
+        check(Collision2D.timeOfImpact(box, new Vector2(100, 0), wall, still) == -1, "The box moves away");
+
+        box.setPosition(0, 120);
+        check(Collision2D.timeOfImpact(box, new Vector2(100, 0), wall, still) == -1, "The box passes above");
+        check(Collision2D.timeOfImpact(box, still, wall, still) == -1, "The box doesn't move");
+
+        // The same box swept from other positions, without moving it
+        checkTime(Collision2D.timeOfImpact(box, new Vector2(0, 48), new Vector2(100, 0), wall, wall.getPosition(),
+                still), 0.46f, "The box hits the wall from where it started");
+
+        // A box on the wall hits it at the start, and two boxes moving towards each other meet half way
+        box.setPosition(49, 48);
+        check(Collision2D.timeOfImpact(box, new Vector2(100, 0), wall, still) == 0, "The box starts on the wall");
+
+        Rectangle other = new Rectangle(100, 0, 10, 10);
+        box.setPosition(0, 0);
+        checkTime(Collision2D.timeOfImpact(box, new Vector2(48, 0), other, new Vector2(-48, 0)), 1,
+                "The boxes meet at the end");
+        checkTime(Collision2D.timeOfImpact(box, new Vector2(96, 0), other, new Vector2(-96, 0)), 0.5f,
+                "The boxes meet half way");
+
+        // A circle of radius 2 touches the wall when its center is 2 pixels away from it
+        Circle circle = new Circle(10, 50, 2);
+        checkTime(Collision2D.timeOfImpact(circle, new Vector2(100, 0), wall, still), 0.38f,
+                "The circle hits the wall");
+        checkTime(Collision2D.timeOfImpact(wall, still, circle, new Vector2(100, 0)), 0.38f,
+                "The wall is hit by the circle");
+
+        // A circle that passes the corner of the wall diagonally touches the corner itself, later than the grown box
+        circle = new Circle(40, -10, 2);
+        float time = Collision2D.timeOfImpact(circle, new Vector2(20, 20), wall, still);
+        float expected = cornerTime(40, -10, 20, 20, 50, 0, 2);
+        checkTime(time, expected, "The circle hits the corner");
+
+        circle.setCenter(new Vector2(30, -30));
+        check(Collision2D.timeOfImpact(circle, new Vector2(20, 27), wall, still) == -1,
+                "The circle passes by the corner");
+
+        // Two circles of radius 2 and 3 meet when their centers are 5 pixels apart
+        Circle circle1 = new Circle(0, 0, 2);
+        Circle circle2 = new Circle(20, 0, 3);
+        checkTime(Collision2D.timeOfImpact(circle1, new Vector2(30, 0), circle2, still), 0.5f, "The circles meet");
+        check(Collision2D.timeOfImpact(circle1, new Vector2(0, 30), circle2, still) == -1, "The circles miss");
+
+        // A rotated wall is hit on its slanted side
+        Rectangle rotated = new Rectangle(50, 0, 1, 100);
+        rotated.setCenter(new Vector2(50, 50));
+        rotated.rotate(45);
+
+        Rectangle bullet = new Rectangle(0, 49, 2, 2);
+        time = Collision2D.timeOfImpact(bullet, new Vector2(100, 0), rotated, still);
+        check(time > 0 && time < 1, "The bullet hits the rotated wall");
+
+        bullet.setPosition(100 * time - 0.01f, 49);
+        check(!bullet.intersects(rotated), "The bullet is not on the rotated wall just before the impact");
+        bullet.setPosition(100 * time + 0.01f, 49);
+        check(bullet.intersects(rotated), "The bullet is on the rotated wall just after the impact");
+    }
+
+    /**
+     * Checks the times of impact of random shapes against the first time they intersect when the motions are stepped.
+     */
+    private static void checkRandom()
+    {
+        final int steps = 2000;
+
+        Random random = new Random(24);
+        Vector2 position = new Vector2();
+
+        int hits = 0;
+
+        for (int i = 0; i < 500; i++)
+        {
+            Polygon a = randomShape(random);
+            Polygon b = randomShape(random);
+
+            Vector2 startA = new Vector2(random.nextFloat() * 100, random.nextFloat() * 100);
+            Vector2 startB = new Vector2(random.nextFloat() * 100, random.nextFloat() * 100);
+            Vector2 motionA = new Vector2(random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100);
+            Vector2 motionB = new Vector2(random.nextFloat() * 40 - 20, random.nextFloat() * 40 - 20);
+
+            a.setPosition(startA);
+            b.setPosition(startB);
+
+            float time = Collision2D.timeOfImpact(a, motionA, b, motionB);
+
+            // The first step at which the shapes intersect
+            int first = -1;
+
+            for (int step = 0; step <= steps && first < 0; step++)
+            {
+                float t = step / (float) steps;
+
+                a.setPosition(position.set(motionA).scaleSelf(t).addSelf(startA));
+                b.setPosition(position.set(motionB).scaleSelf(t).addSelf(startB));
+
+                if (a.intersects(b))
+                    first = step;
+            }
+
+            if (first < 0)
+                continue;
+
+            hits++;
+
+            float firstTime = first / (float) steps;
+
+            check(time >= 0 && time <= firstTime + 1e-4f && time >= firstTime - 1f / steps - 1e-3f,
+                  "Case " + i + ": the time of impact is " + time + ", the shapes intersect at " + firstTime);
+        }
+
+        check(hits > 50, "Only " + hits + " of the random shapes hit each other");
+    }
+
+    private static Polygon randomShape(Random random)
+    {
+        switch (random.nextInt(4))
+        {
+            case 0:
+                return new Rectangle(1 + random.nextInt(20), 1 + random.nextInt(20));
+
+            case 1:
+                Rectangle rectangle = new Rectangle(1 + random.nextInt(20), 1 + random.nextInt(20));
+                rectangle.rotate(random.nextInt(360));
+                return rectangle;
+
+            case 2:
+                return new Circle(1 + random.nextInt(10));
+
+            default:
+                // A convex polygon with vertices on a circle
+                Polygon polygon = new Polygon();
+                float radius = 2 + random.nextInt(10);
+                int count = 3 + random.nextInt(5);
+
+                for (int i = 0; i < count; i++)
+                {
+                    double angle = Math.PI * 2 * i / count;
+                    polygon.addVertex(radius + (float) Math.cos(angle) * radius,
+                            radius + (float) Math.sin(angle) * radius);
+                }
+
+                return polygon;
+        }
+    }
+
+    /**
+     * The time at which a circle moving from a point comes within its radius of a corner.
+     */
+    private static float cornerTime(float x, float y, float motionX, float motionY, float cornerX, float cornerY,
+                                    float radius)
+    {
+        double distanceX = x - cornerX;
+        double distanceY = y - cornerY;
+
+        double a = motionX * motionX + motionY * motionY;
+        double b = 2 * (distanceX * motionX + distanceY * motionY);
+        double c = distanceX * distanceX + distanceY * distanceY - radius * radius;
+
+        return (float) ((-b - Math.sqrt(b * b - 4 * a * c)) / (2 * a));
+    }
+
+    /**
+     * Fires bullets at the walls for a number of frames.
+     *
+     * @return The number of hits of the bullets.
+     */
+    private static int fire(IBroadphase2D broadphase, ForkJoinPool pool, boolean continuous)
+    {
+        Scene2D scene = new Scene2D();
+        List<Bullet> bullets = new ArrayList<>();
+
+        for (int wall : WALLS)
+            scene.addChild(new Wall(new Rectangle(wall, 0, 1, 400)));
+
+        for (int i = 0; i < 20; i++)
+        {
+            Polygon shape = i % 2 == 0 ? new Rectangle(2, 2) : new Circle(1);
+            Bullet bullet = new Bullet(shape);
+
+            // Some of the bullets pass above the walls, and never hit them
+            bullet.setPosition(new Vector2(0, i < 16 ? 10 + i * 20 : 420 + i));
+            bullet.setVelocity(new Vector2(SPEED, i % 3 == 0 ? 3 : 0));
+            bullet.setContinuous(continuous);
+
+            bullets.add(bullet);
+            scene.addChild(bullet);
+        }
+
+        SceneCollider2D collider = new SceneCollider2D(broadphase);
+        collider.setNarrowphasePool(pool);
+        collider.setScene(scene);
+        collider.register(Bullet.class, Wall.class);
+
+        for (frame = 1; frame <= NUM_FRAMES; frame++)
+        {
+            scene.update(1);
+            collider.checkCollisions();
+        }
+
+        int hits = 0;
+
+        for (int i = 0; i < bullets.size(); i++)
+        {
+            List<String> expected = new ArrayList<>();
+
+            // A bullet crosses a wall in the frame it moves past the left side of it
+            if (continuous && i < 16)
+                for (int wall : WALLS)
+                    expected.add("Wall at " + wall + " in frame " + ((wall + 1) / SPEED + 1));
+
+            check(bullets.get(i).hits.equals(expected),
+                  "Bullet " + i + " hits " + bullets.get(i).hits + " instead of " + expected);
+
+            hits += expected.size();
+        }
+
+        return hits;
+    }
+
+    private static void checkTime(float time, float expected, String message)
+    {
+        check(Math.abs(time - expected) < 1e-4f, message + " at " + time + " instead of " + expected);
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    private static class Bullet extends Entity2D
+    {
+        private List<String> hits = new ArrayList<>();
+
+        Bullet(Polygon polygon)
+        {
+            super(SPRITE, polygon);
+        }
+
+        @Override
+        public void collision(Entity2D other)
+        {
+            hits.add("Wall at " + (int) other.getX() + " in frame " + frame);
+        }
+    }
+
+    private static class Wall extends Entity2D
+    {
+        Wall(Polygon polygon)
+        {
+            super(SPRITE, polygon);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.graphics.TessellationCache;
+import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.geom2d.Polygon;
+import com.shc.silenceengine.utils.MathUtils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the TessellationCache that Graphics2D draws circles and polygons with: the unit circle tables, the
+ * triangulation of concave polygons, the reuse of the triangles when a polygon moves and their invalidation when its
+ * vertices change, the removal of the dropped polygons, and the eviction under a memory budget. Then measures a HUD
+ * frame of 500 circles of random sizes against computing sin and cos for every point. No window is needed.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class TessellationCacheTest
+{
+    public static void main(String[] args)
+    {
+        TessellationCache cache = new TessellationCache();
+
+        // The table matches sin and cos
+        float[] table = cache.getUnitCircle(360);
+
+        for (int i = 0; i < 360; i++)
+            check(Math.abs(table[2 * i] - MathUtils.cos(i)) < 1e-5f &&
+                  Math.abs(table[2 * i + 1] - MathUtils.sin(i)) < 1e-5f, "The unit circle table is wrong");
+
+        check(cache.getUnitCircle(360) == table, "The table should be cached");
+        check(cache.getCircleSegments(5) == cache.getCircleSegments(7), "Similar radii should share a bucket");
+        check(cache.getCircleSegments(0.5f) == TessellationCache.MIN_CIRCLE_SEGMENTS, "Tiny circles use the minimum");
+        check(cache.getCircleSegments(1e6f) == TessellationCache.MAX_CIRCLE_SEGMENTS, "Huge circles use the maximum");
+
+        // A concave L shape, in both windings, should be covered exactly by its triangles
+        Polygon shape = new Polygon();
+        float[][] outline = { { 0, 0 }, { 40, 0 }, { 40, 10 }, { 10, 10 }, { 10, 40 }, { 0, 40 } };
+
+        for (float[] v : outline)
+            shape.addVertex(v[0], v[1]);
+
+        checkTriangulation(cache.getTriangles(shape), shape.getVertices(), 700);
+
+        Polygon reversed = new Polygon();
+
+        for (int i = outline.length - 1; i >= 0; i--)
+            reversed.addVertex(outline[i][0], outline[i][1]);
+
+        checkTriangulation(cache.getTriangles(reversed), reversed.getVertices(), 700);
+
+        // A star, concave at every other vertex
+        Polygon star = new Polygon();
+
+        for (int i = 0; i < 10; i++)
+        {
+            float radius = i % 2 == 0 ? 50 : 20;
+            star.addVertex(MathUtils.cos(i * 36) * radius, MathUtils.sin(i * 36) * radius);
+        }
+
+        checkTriangulation(cache.getTriangles(star), star.getVertices(), area(star.getVertices()));
+
+        // The triangles are cached per topology of the polygon, moving it every frame reuses them
+        int[] triangles = cache.getTriangles(shape);
+        check(cache.getTriangles(shape) == triangles, "The triangulation should be cached");
+
+        int misses = cache.getMisses();
+
+        for (int frame = 0; frame < 60; frame++)
+        {
+            shape.translate(3, -2);
+            shape.rotate(5);
+            check(cache.getTriangles(shape) == triangles, "A moved polygon should not be triangulated again");
+        }
+
+        shape.scale(2);
+        check(cache.getTriangles(shape) == triangles, "A scaled polygon should not be triangulated again");
+        checkTriangulation(cache.getTriangles(shape), shape.getVertices(), 2800);
+        check(cache.getMisses() == misses, "Transforming a polygon should not miss the cache");
+
+        Polygon grown = new Polygon();
+
+        for (float[] v : outline)
+            grown.addVertex(v[0], v[1]);
+
+        int[] grownTriangles = cache.getTriangles(grown);
+        grown.addVertex(-10, 20);
+        check(cache.getTriangles(grown) != grownTriangles, "A polygon with a new vertex should be triangulated again");
+        checkTriangulation(cache.getTriangles(grown), grown.getVertices(), area(grown.getVertices()));
+
+        grown.getVertices().get(6).set(-20, 20);
+        grown.invalidate();
+
+        int grownMisses = cache.getMisses();
+        cache.getTriangles(grown);
+        check(cache.getMisses() == grownMisses + 1, "An invalidated polygon should be triangulated again");
+
+        // The polygons are weakly referenced, the entries of the dropped ones are removed
+        int size = cache.size();
+        grown = null;
+
+        for (int i = 0; i < 50 && cache.size() == size; i++)
+        {
+            System.gc();
+            sleep();
+        }
+
+        check(cache.size() == size - 1, "The entry of a dropped polygon should be removed");
+
+        // Evicting with a tight budget keeps the most recently used entries
+        cache.setMemoryBudget(cache.getMemoryUsed() / 2);
+        check(cache.getMemoryUsed() <= cache.getMemoryBudget(), "The budget is exceeded");
+        check(cache.getEvictions() > 0, "Nothing was evicted");
+
+        misses = cache.getMisses();
+        cache.getTriangles(shape);
+        check(cache.getMisses() == misses, "The most recently used entry should not be evicted");
+
+        cache.setMemoryBudget(TessellationCache.DEFAULT_MEMORY_BUDGET);
+        cache.clear();
+
+        // A HUD frame of 500 circles, the points of each computed with sin and cos, or looked up in the cache
+        Random random = new Random(1);
+        float[] radii = new float[500];
+
+        for (int i = 0; i < radii.length; i++)
+            radii[i] = 2 + random.nextFloat() * 150;
+
+        float sink = 0;
+
+        for (int round = 0; round < 2; round++)
+        {
+            long start = System.nanoTime();
+
+            for (int frame = 0; frame < 100; frame++)
+                for (float radius : radii)
+                    for (int i = 0; i < 360; i++)
+                        sink += MathUtils.cos(i) * radius + MathUtils.sin(i) * radius;
+
+            long trigTime = System.nanoTime() - start;
+
+            long allocated = allocatedBytes();
+            start = System.nanoTime();
+
+            for (int frame = 0; frame < 100; frame++)
+                for (float radius : radii)
+                {
+                    int segments = cache.getCircleSegments(radius);
+                    float[] unitCircle = cache.getUnitCircle(segments);
+
+                    for (int i = 0; i < segments; i++)
+                        sink += unitCircle[2 * i] * radius + unitCircle[2 * i + 1] * radius;
+                }
+
+            long cachedTime = System.nanoTime() - start;
+            allocated = allocatedBytes() - allocated;
+
+            if (round == 1)
+            {
+                System.out.printf("500 circles per frame: sin/cos %.3f ms, cached %.3f ms, %d bytes allocated in 100 " +
+                                  "frames%n", trigTime / 100 / 1e6, cachedTime / 100 / 1e6, allocated);
+
+                check(allocated < 1024, "Looking up cached circles should not allocate");
+            }
+        }
+
+        check(sink != 0, "The circles were not computed");
+
+        System.out.println("Hits: " + cache.getHits() + ", misses: " + cache.getMisses() + ", memory: " +
+                           cache.getMemoryUsed() + " bytes");
+        System.out.println("All checks passed");
+    }
+
+    private static void checkTriangulation(int[] triangles, List<Vector2> vertices, float expectedArea)
+    {
+        check(triangles.length == (vertices.size() - 2) * 3, "A polygon of n vertices should make n - 2 triangles");
+
+        float total = 0;
+
+        for (int i = 0; i < triangles.length; i += 3)
+        {
+            Vector2 a = vertices.get(triangles[i]);
+            Vector2 b = vertices.get(triangles[i + 1]);
+            Vector2 c = vertices.get(triangles[i + 2]);
+
+            // Every triangle lies inside the polygon, so the sum of their areas is the area of the polygon
+            total += Math.abs((b.x - a.x) * (c.y - a.y) - (b.y - a.y) * (c.x - a.x)) / 2;
+        }
+
+        check(Math.abs(total - expectedArea) < 0.01f * expectedArea,
+                "The triangles cover " + total + " instead of " + expectedArea);
+    }
+
+    private static float area(List<Vector2> vertices)
+    {
+        float area = 0;
+
+        for (int i = 0, j = vertices.size() - 1; i < vertices.size(); j = i++)
+            area += vertices.get(j).x * vertices.get(i).y - vertices.get(i).x * vertices.get(j).y;
+
+        return Math.abs(area) / 2;
+    }
+
+    private static void sleep()
+    {
+        try
+        {
+            Thread.sleep(10);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long allocatedBytes()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+
+        return 0;
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.graphics.TexturePacker;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Packs 200 small images of random sizes with the TexturePacker, without needing a GPU, and checks that the regions
+ * stay inside their pages, never overlap, keep the padding and are the same every time.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class TexturePackerTest
+{
+    public static void main(String[] args)
+    {
+        final int numImages = 200;
+        final int padding = 2;
+
+        Random random = new Random(42);
+
+        int[] widths = new int[numImages];
+        int[] heights = new int[numImages];
+
+        for (int i = 0; i < numImages; i++)
+        {
+            widths[i] = 8 + random.nextInt(57);
+            heights[i] = 8 + random.nextInt(57);
+        }
+
+        TexturePacker packer = new TexturePacker(1024, 1024, padding);
+        List<TexturePacker.Region> regions = packer.pack(widths, heights);
+
+        check(regions.size() == numImages, "There should be a region for every image");
+
+        for (int i = 0; i < numImages; i++)
+        {
+            TexturePacker.Region region = regions.get(i);
+
+            check(region.getWidth() == widths[i] && region.getHeight() == heights[i],
+                    "Region " + i + " doesn't have the size of its image");
+
+            check(region.getPage() >= 0 && region.getPage() < packer.getNumPages(),
+                    "Region " + i + " is in a page that doesn't exist");
+
+            check(region.getX() >= padding && region.getY() >= padding &&
+                  region.getX() + region.getWidth() + padding <= packer.getPageWidth() &&
+                  region.getY() + region.getHeight() + padding <= packer.getPageHeight(),
+                    "Region " + i + " is outside its page: " + region);
+
+            for (int j = i + 1; j < numImages; j++)
+                check(!region.intersects(regions.get(j), padding),
+                        "Regions " + i + " and " + j + " overlap: " + region + ", " + regions.get(j));
+        }
+
+        // The occupancy should be the area of the images over the area of the pages
+        long totalArea = 0;
+
+        for (int i = 0; i < numImages; i++)
+            totalArea += widths[i] * heights[i];
+
+        float occupancy = 0;
+
+        for (int page = 0; page < packer.getNumPages(); page++)
+            occupancy += packer.getOccupancy(page);
+
+        check(Math.abs(occupancy - totalArea / (1024f * 1024f)) < 1e-4f, "The occupancy doesn't add up");
+
+        // Packing again should give exactly the same result
+        check(regions.equals(new TexturePacker(1024, 1024, padding).pack(widths, heights)),
+                "Packing the same images twice gave different results");
+
+        check(regions.equals(packer.pack(widths, heights)), "Reusing the packer gave different results");
+
+        // Small pages should spill over to more pages
+        TexturePacker small = new TexturePacker(256, 256, padding);
+        List<TexturePacker.Region> spilled = small.pack(widths, heights);
+
+        for (int i = 0; i < numImages; i++)
+            for (int j = i + 1; j < numImages; j++)
+                check(!spilled.get(i).intersects(spilled.get(j), padding), "Regions overlap in the small pages");
+
+        int smallPages = small.getNumPages();
+        check(smallPages > 1, "The images should not fit in a single small page");
+
+        try
+        {
+            small.pack(new int[]{ 300 }, new int[]{ 10 });
+            check(false, "An image larger than a page should be rejected");
+        }
+        catch (IllegalArgumentException ignored)
+        {
+        }
+
+        System.out.println(numImages + " images in " + packer.getNumPages() + " page(s) of 1024x1024, occupancy " +
+                           (int) (packer.getOccupancy(0) * 100) + "% (" + numImages + " texture switches before, " +
+                           packer.getNumPages() + " after)");
+
+        System.out.println(numImages + " images in " + smallPages + " pages of 256x256");
+        System.out.println("All checks passed");
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
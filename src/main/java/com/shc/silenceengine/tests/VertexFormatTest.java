@@ -0,0 +1,62 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.graphics.VertexFormat;
+
+/**
+ * A headless comparison of the number of bytes that have to be streamed to the GPU every frame to render a lot of
+ * sprites, using the default vertex format and the compact 2D sprite format.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class VertexFormatTest
+{
+    private static final int NUM_SPRITES       = 100_000;
+    private static final int VERTICES_PER_QUAD = 6;
+
+    public static void main(String[] args)
+    {
+        long numVertices = (long) NUM_SPRITES * VERTICES_PER_QUAD;
+
+        long defaultBytes = VertexFormat.DEFAULT.getSizeInBytes(numVertices);
+        long spriteBytes = VertexFormat.SPRITE_2D.getSizeInBytes(numVertices);
+
+        System.out.println("Sprites: " + NUM_SPRITES + " (" + numVertices + " vertices)");
+        System.out.println();
+
+        print("DEFAULT", VertexFormat.DEFAULT, defaultBytes);
+        print("SPRITE_2D", VertexFormat.SPRITE_2D, spriteBytes);
+
+        System.out.println();
+        System.out.printf("Bandwidth saved: %.1f%%%n", 100.0 * (defaultBytes - spriteBytes) / defaultBytes);
+    }
+
+    private static void print(String name, VertexFormat format, long bytes)
+    {
+        System.out.printf("%-10s %3d bytes/vertex %12d bytes/frame (%.2f MB)%n", name, format.getStride(), bytes,
+                bytes / (1024.0 * 1024.0));
+    }
+}
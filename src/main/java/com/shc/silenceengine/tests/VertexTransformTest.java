@@ -0,0 +1,214 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.tests;
+
+import com.shc.silenceengine.graphics.VertexTransform;
+import com.shc.silenceengine.math.Matrix4;
+import com.shc.silenceengine.math.Transform;
+import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.Vector3;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+/**
+ * Checks that the vertices transformed on the CPU by the Batcher come out the same as the vertex shader would compute
+ * them from the transform uniform. The uniform path is emulated from the column major matrix that is uploaded to the
+ * shader, so no window is needed. A frame of 500 translated and rotated UI widgets is transformed both ways.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class VertexTransformTest
+{
+    private static final float EPSILON = 1e-3f;
+
+    public static void main(String[] args)
+    {
+        Random random = new Random(3);
+        VertexTransform vertexTransform = new VertexTransform();
+
+        check(vertexTransform.isIdentity(), "A new transform should be an identity");
+
+        // The widgets, each a quad of four vertices with its own transform, like Graphics2D.translate and rotate do
+        int numVertices = 0;
+
+        for (int widget = 0; widget < 500; widget++)
+        {
+            Transform transform = new Transform()
+                    .rotateSelf(Vector3.AXIS_Z, random.nextFloat() * 360)
+                    .translateSelf(new Vector2(random.nextFloat() * 800, random.nextFloat() * 600));
+
+            if (widget % 5 == 0)
+                transform.scaleSelf(new Vector3(0.5f + random.nextFloat(), 0.5f + random.nextFloat(), 1));
+
+            vertexTransform.set(transform.getMatrix());
+
+            check(vertexTransform.fits(2), "A 2D transform should fit in a 2D vertex format");
+
+            float w = 20 + random.nextInt(100);
+            float h = 10 + random.nextInt(40);
+
+            for (float[] corner : new float[][]{ { 0, 0 }, { w, 0 }, { 0, h }, { w, h } })
+            {
+                checkPosition(vertexTransform, transform.getMatrix(), corner[0], corner[1], 0, 1);
+                numVertices++;
+            }
+        }
+
+        // 3D transforms with normals, as the lighting programs use them
+        for (int i = 0; i < 200; i++)
+        {
+            Vector3 scale = new Vector3(0.5f + random.nextFloat(), 0.5f + random.nextFloat(), 0.5f + random.nextFloat());
+            Vector3 translation = new Vector3(random.nextFloat(), random.nextFloat(), random.nextFloat()).scale(10);
+
+            Transform transform = new Transform()
+                    .scaleSelf(scale)
+                    .rotateSelf(random.nextFloat() * 360, random.nextFloat() * 360, random.nextFloat() * 360)
+                    .translateSelf(translation);
+
+            vertexTransform.set(transform.getMatrix());
+
+            float x = random.nextFloat() * 4 - 2;
+            float y = random.nextFloat() * 4 - 2;
+            float z = random.nextFloat() * 4 - 2;
+
+            checkPosition(vertexTransform, transform.getMatrix(), x, y, z, 1);
+            checkNormal(vertexTransform, transform.getMatrix(), x, y, z);
+            numVertices++;
+        }
+
+        // A rotation out of the XY plane gives a z, which a 2D vertex format cannot store
+        vertexTransform.set(new Transform().rotateSelf(Vector3.AXIS_X, 30).getMatrix());
+        check(!vertexTransform.fits(2), "A rotation around X should not fit in a 2D format");
+        check(vertexTransform.fits(3), "A rotation around X should fit in a 3D format");
+
+        Matrix4 projective = new Matrix4();
+        projective.set(2, 3, -1);
+        vertexTransform.set(projective);
+        check(!vertexTransform.fits(3), "A projection changes w and should only fit in a 4D format");
+        check(vertexTransform.fits(4), "Everything fits in a 4D format");
+
+        System.out.println(numVertices + " vertices match the uniform path");
+        System.out.println("All checks passed");
+    }
+
+    private static void checkPosition(VertexTransform t, Matrix4 m, float x, float y, float z, float w)
+    {
+        // What the shader computes, mTransform * pos with the matrix uploaded in column major order
+        FloatBuffer uniform = m.getAsFloatBuffer();
+        float[] pos = { x, y, z, w };
+        float[] expected = new float[4];
+
+        for (int row = 0; row < 4; row++)
+            for (int column = 0; column < 4; column++)
+                expected[row] += uniform.get(column * 4 + row) * pos[column];
+
+        check(near(t.getX(x, y, z, w), expected[0]) && near(t.getY(x, y, z, w), expected[1]) &&
+              near(t.getZ(x, y, z, w), expected[2]) && near(t.getW(x, y, z, w), expected[3]),
+                "The position differs from the uniform path");
+    }
+
+    private static void checkNormal(VertexTransform t, Matrix4 m, float x, float y, float z)
+    {
+        // What the lighting shaders compute, transpose(inverse(mat3(mTransform))) * normal
+        FloatBuffer uniform = m.getAsFloatBuffer();
+        double[][] a = new double[3][3];
+
+        for (int row = 0; row < 3; row++)
+            for (int column = 0; column < 3; column++)
+                a[row][column] = uniform.get(column * 4 + row);
+
+        double[][] inverse = invert(a);
+        double[] normal = { x, y, z };
+        double[] expected = new double[3];
+
+        // The transpose of the inverse, so the rows and columns of the inverse are swapped
+        for (int row = 0; row < 3; row++)
+            for (int column = 0; column < 3; column++)
+                expected[row] += inverse[column][row] * normal[column];
+
+        check(near(t.getNormalX(x, y, z), (float) expected[0]) && near(t.getNormalY(x, y, z), (float) expected[1]) &&
+              near(t.getNormalZ(x, y, z), (float) expected[2]), "The normal differs from the uniform path");
+    }
+
+    private static double[][] invert(double[][] a)
+    {
+        // Gauss-Jordan elimination with partial pivoting, on an augmented copy
+        double[][] m = new double[3][6];
+
+        for (int i = 0; i < 3; i++)
+        {
+            System.arraycopy(a[i], 0, m[i], 0, 3);
+            m[i][3 + i] = 1;
+        }
+
+        for (int column = 0; column < 3; column++)
+        {
+            int pivot = column;
+
+            for (int row = column + 1; row < 3; row++)
+                if (Math.abs(m[row][column]) > Math.abs(m[pivot][column]))
+                    pivot = row;
+
+            double[] swap = m[pivot];
+            m[pivot] = m[column];
+            m[column] = swap;
+
+            double divisor = m[column][column];
+
+            for (int i = 0; i < 6; i++)
+                m[column][i] /= divisor;
+
+            for (int row = 0; row < 3; row++)
+            {
+                if (row == column)
+                    continue;
+
+                double factor = m[row][column];
+
+                for (int i = 0; i < 6; i++)
+                    m[row][i] -= factor * m[column][i];
+            }
+        }
+
+        double[][] inverse = new double[3][3];
+
+        for (int i = 0; i < 3; i++)
+            System.arraycopy(m[i], 3, inverse[i], 0, 3);
+
+        return inverse;
+    }
+
+    private static boolean near(float a, float b)
+    {
+        return Math.abs(a - b) <= EPSILON * Math.max(1, Math.abs(b));
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
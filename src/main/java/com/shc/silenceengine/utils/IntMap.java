@@ -0,0 +1,205 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.utils;
+
+import java.util.Arrays;
+
+/**
+ * A map from int keys to int values that doesn't box the keys or the values, and doesn't allocate unless it has to
+ * grow. The entries are kept in open addressed arrays with linear probing.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public final class IntMap
+{
+    // The value returned for the keys that are not in the map
+    private final int missingValue;
+
+    private int[]     keys;
+    private int[]     values;
+    private boolean[] used;
+
+    private int size;
+    private int mask;
+
+    public IntMap()
+    {
+        this(16, -1);
+    }
+
+    /**
+     * Creates an IntMap.
+     *
+     * @param capacity     The number of entries to make room for.
+     * @param missingValue The value returned for the keys that are not in the map.
+     */
+    public IntMap(int capacity, int missingValue)
+    {
+        this.missingValue = missingValue;
+
+        int length = 16;
+
+        while (length < capacity * 2)
+            length *= 2;
+
+        allocate(length);
+    }
+
+    private void allocate(int length)
+    {
+        keys = new int[length];
+        values = new int[length];
+        used = new boolean[length];
+
+        mask = length - 1;
+    }
+
+    private static int hash(int key)
+    {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return The value of the key, or the missing value if the key is not in the map.
+     */
+    public int get(int key)
+    {
+        for (int i = hash(key) & mask; used[i]; i = (i + 1) & mask)
+            if (keys[i] == key)
+                return values[i];
+
+        return missingValue;
+    }
+
+    public boolean containsKey(int key)
+    {
+        for (int i = hash(key) & mask; used[i]; i = (i + 1) & mask)
+            if (keys[i] == key)
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Puts a value for a key, replacing the previous value if there was one.
+     *
+     * @return The previous value of the key, or the missing value if the key was not in the map.
+     */
+    public int put(int key, int value)
+    {
+        int i = hash(key) & mask;
+
+        for (; used[i]; i = (i + 1) & mask)
+            if (keys[i] == key)
+            {
+                int previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+
+        used[i] = true;
+        keys[i] = key;
+        values[i] = value;
+
+        // Keep the map at most half full, the probes stay short
+        if (++size * 2 > keys.length)
+            grow();
+
+        return missingValue;
+    }
+
+    /**
+     * Removes a key from the map.
+     *
+     * @return The value of the key, or the missing value if the key was not in the map.
+     */
+    public int remove(int key)
+    {
+        int i = hash(key) & mask;
+
+        while (used[i] && keys[i] != key)
+            i = (i + 1) & mask;
+
+        if (!used[i])
+            return missingValue;
+
+        int value = values[i];
+
+        // Move the entries after the removed one back, so that no probe sequence is broken by the hole
+        int hole = i;
+
+        for (int j = (i + 1) & mask; used[j]; j = (j + 1) & mask)
+        {
+            int home = hash(keys[j]) & mask;
+
+            // The entry can fill the hole if its home is not between the hole and it
+            if (((j - home) & mask) >= ((j - hole) & mask))
+            {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+
+        used[hole] = false;
+        size--;
+
+        return value;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    private void grow()
+    {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+
+        allocate(keys.length * 2);
+
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldUsed[i])
+            {
+                int j = hash(oldKeys[i]) & mask;
+
+                while (used[j])
+                    j = (j + 1) & mask;
+
+                used[j] = true;
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+    }
+}
@@ -53,20 +53,21 @@ public static void tracePolygon(Batcher b, Polygon polygon, Color color)
 
     public static void tracePolygon(Batcher b, Polygon polygon, Vector2 position, Color color)
     {
-        Vector2 tempVec2 = Vector2.REUSABLE_STACK.pop();
-
-        b.begin(Primitive.LINE_LOOP);
+        try (Scratch scratch = Scratch.open())
         {
-            for (Vector2 vertex : polygon.getVertices())
+            Vector2 tempVec2 = scratch.vector2();
+
+            b.begin(Primitive.LINE_LOOP);
             {
-                b.vertex(tempVec2.set(vertex).addSelf(polygon.getPosition()).addSelf(position));
-                b.color(color);
-                b.normal(Vector3.AXIS_Z);
+                for (Vector2 vertex : polygon.getVertices())
+                {
+                    b.vertex(tempVec2.set(vertex).addSelf(polygon.getPosition()).addSelf(position));
+                    b.color(color);
+                    b.normal(Vector3.AXIS_Z);
+                }
             }
+            b.end();
         }
-        b.end();
-
-        Vector2.REUSABLE_STACK.push(tempVec2);
     }
 
     public static void fillPolygon(Batcher b, Polygon polygon)
@@ -81,20 +82,21 @@ public static void fillPolygon(Batcher b, Polygon polygon, Color color)
 
     public static void fillPolygon(Batcher b, Polygon polygon, Vector2 position, Color color)
     {
-        Vector2 tempVec2 = Vector2.REUSABLE_STACK.pop();
-
-        b.begin(Primitive.TRIANGLE_FAN);
+        try (Scratch scratch = Scratch.open())
         {
-            for (Vector2 vertex : polygon.getVertices())
+            Vector2 tempVec2 = scratch.vector2();
+
+            b.begin(Primitive.TRIANGLE_FAN);
             {
-                b.vertex(tempVec2.set(vertex).addSelf(polygon.getPosition()).addSelf(position));
-                b.color(color);
-                b.normal(Vector3.AXIS_Z);
+                for (Vector2 vertex : polygon.getVertices())
+                {
+                    b.vertex(tempVec2.set(vertex).addSelf(polygon.getPosition()).addSelf(position));
+                    b.color(color);
+                    b.normal(Vector3.AXIS_Z);
+                }
             }
+            b.end();
         }
-        b.end();
-
-        Vector2.REUSABLE_STACK.push(tempVec2);
     }
 
     public static void tracePolyhedron(Batcher b, Polyhedron Polyhedron)
@@ -109,75 +111,70 @@ public static void tracePolyhedron(Batcher b, Polyhedron Polyhedron, Color color
 
     public static void tracePolyhedron(Batcher b, Polyhedron polyhedron, Vector3 position, Color color)
     {
-        Vector3 tempVec31 = Vector3.REUSABLE_STACK.pop();
-        Vector3 tempVec32 = Vector3.REUSABLE_STACK.pop();
-        Vector3 tempVec33 = Vector3.REUSABLE_STACK.pop();
-
-        // For the normals!
-        Vector3 tempVec34 = Vector3.REUSABLE_STACK.pop();
-        Vector3 tempVec35 = Vector3.REUSABLE_STACK.pop();
-        Vector3 tempVec36 = Vector3.REUSABLE_STACK.pop();
-
-        b.begin(Primitive.LINE_STRIP);
+        try (Scratch scratch = Scratch.open())
         {
-            Vector3 v1;
-            Vector3 v2;
-            Vector3 v3;
+            Vector3 tempVec31 = scratch.vector3();
+            Vector3 tempVec32 = scratch.vector3();
+            Vector3 tempVec33 = scratch.vector3();
+
+            // For the normals!
+            Vector3 tempVec34 = scratch.vector3();
+            Vector3 tempVec35 = scratch.vector3();
+            Vector3 tempVec36 = scratch.vector3();
 
-            // Convert Triangle Strip vertices to Triangles
-            for (int v = 0; v < polyhedron.vertexCount() - 2; v++)
+            b.begin(Primitive.LINE_STRIP);
             {
-                if ((v & 1) != 0)
-                {
-                    // The Clock-Wise order
-                    v1 = polyhedron.getVertex(v);
-                    v2 = polyhedron.getVertex(v + 1);
-                    v3 = polyhedron.getVertex(v + 2);
-                }
-                else
+                Vector3 v1;
+                Vector3 v2;
+                Vector3 v3;
+
+                // Convert Triangle Strip vertices to Triangles
+                for (int v = 0; v < polyhedron.vertexCount() - 2; v++)
                 {
-                    // The Counter-Clock-Wise order
-                    v1 = polyhedron.getVertex(v);
-                    v2 = polyhedron.getVertex(v + 2);
-                    v3 = polyhedron.getVertex(v + 1);
+                    if ((v & 1) != 0)
+                    {
+                        // The Clock-Wise order
+                        v1 = polyhedron.getVertex(v);
+                        v2 = polyhedron.getVertex(v + 1);
+                        v3 = polyhedron.getVertex(v + 2);
+                    }
+                    else
+                    {
+                        // The Counter-Clock-Wise order
+                        v1 = polyhedron.getVertex(v);
+                        v2 = polyhedron.getVertex(v + 2);
+                        v3 = polyhedron.getVertex(v + 1);
+                    }
+
+                    // Set the position of the vertices
+                    v1 = tempVec31.set(v1).addSelf(polyhedron.getPosition()).addSelf(position);
+                    v2 = tempVec32.set(v2).addSelf(polyhedron.getPosition()).addSelf(position);
+                    v3 = tempVec33.set(v3).addSelf(polyhedron.getPosition()).addSelf(position);
+
+                    // Compute the edges of the triangle
+                    tempVec34.set(v3).subtractSelf(v1);
+                    tempVec35.set(v2).subtractSelf(v1);
+
+                    // The normal will be the cross of the edges
+                    Vector3 normal = tempVec36.set(tempVec34).crossSelf(tempVec35);
+                    normal.addSelf(tempVec34.crossSelf(tempVec35));
+
+                    // Draw the triangle as a line strip
+                    b.vertex(v1);
+                    b.color(color);
+                    b.normal(normal);
+
+                    b.vertex(v2);
+                    b.color(color);
+                    b.normal(normal);
+
+                    b.vertex(v3);
+                    b.color(color);
+                    b.normal(normal);
                 }
-
-                // Set the position of the vertices
-                v1 = tempVec31.set(v1).addSelf(polyhedron.getPosition()).addSelf(position);
-                v2 = tempVec32.set(v2).addSelf(polyhedron.getPosition()).addSelf(position);
-                v3 = tempVec33.set(v3).addSelf(polyhedron.getPosition()).addSelf(position);
-
-                // Compute the edges of the triangle
-                tempVec34.set(v3).subtractSelf(v1);
-                tempVec35.set(v2).subtractSelf(v1);
-
-                // The normal will be the cross of the edges
-                Vector3 normal = tempVec36.set(tempVec34).crossSelf(tempVec35);
-                normal.addSelf(tempVec34.crossSelf(tempVec35));
-
-                // Draw the triangle as a line strip
-                b.vertex(v1);
-                b.color(color);
-                b.normal(normal);
-
-                b.vertex(v2);
-                b.color(color);
-                b.normal(normal);
-
-                b.vertex(v3);
-                b.color(color);
-                b.normal(normal);
             }
+            b.end();
         }
-        b.end();
-
-        Vector3.REUSABLE_STACK.push(tempVec31);
-        Vector3.REUSABLE_STACK.push(tempVec32);
-        Vector3.REUSABLE_STACK.push(tempVec33);
-
-        Vector3.REUSABLE_STACK.push(tempVec34);
-        Vector3.REUSABLE_STACK.push(tempVec35);
-        Vector3.REUSABLE_STACK.push(tempVec36);
     }
 
     public static void fillPolyhedron(Batcher b, Polyhedron polyhedron)
@@ -192,74 +189,69 @@ public static void fillPolyhedron(Batcher b, Polyhedron polyhedron, Color color)
 
     public static void fillPolyhedron(Batcher b, Polyhedron polyhedron, Vector3 position, Color color)
     {
-        Vector3 tempVec31 = Vector3.REUSABLE_STACK.pop();
-        Vector3 tempVec32 = Vector3.REUSABLE_STACK.pop();
-        Vector3 tempVec33 = Vector3.REUSABLE_STACK.pop();
-
-        // For the normals!
-        Vector3 tempVec34 = Vector3.REUSABLE_STACK.pop();
-        Vector3 tempVec35 = Vector3.REUSABLE_STACK.pop();
-        Vector3 tempVec36 = Vector3.REUSABLE_STACK.pop();
-
-        b.begin(Primitive.TRIANGLES);
+        try (Scratch scratch = Scratch.open())
         {
-            Vector3 v1;
-            Vector3 v2;
-            Vector3 v3;
+            Vector3 tempVec31 = scratch.vector3();
+            Vector3 tempVec32 = scratch.vector3();
+            Vector3 tempVec33 = scratch.vector3();
+
+            // For the normals!
+            Vector3 tempVec34 = scratch.vector3();
+            Vector3 tempVec35 = scratch.vector3();
+            Vector3 tempVec36 = scratch.vector3();
 
-            // Convert Triangle Strip vertices to Triangles
-            for (int v = 0; v < polyhedron.vertexCount() - 2; v++)
+            b.begin(Primitive.TRIANGLES);
             {
-                if ((v & 1) != 0)
-                {
-                    // The Clock-Wise order
-                    v1 = polyhedron.getVertex(v);
-                    v2 = polyhedron.getVertex(v + 1);
-                    v3 = polyhedron.getVertex(v + 2);
-                }
-                else
+                Vector3 v1;
+                Vector3 v2;
+                Vector3 v3;
+
+                // Convert Triangle Strip vertices to Triangles
+                for (int v = 0; v < polyhedron.vertexCount() - 2; v++)
                 {
-                    // The Counter-Clock-Wise order
-                    v1 = polyhedron.getVertex(v);
-                    v2 = polyhedron.getVertex(v + 2);
-                    v3 = polyhedron.getVertex(v + 1);
+                    if ((v & 1) != 0)
+                    {
+                        // The Clock-Wise order
+                        v1 = polyhedron.getVertex(v);
+                        v2 = polyhedron.getVertex(v + 1);
+                        v3 = polyhedron.getVertex(v + 2);
+                    }
+                    else
+                    {
+                        // The Counter-Clock-Wise order
+                        v1 = polyhedron.getVertex(v);
+                        v2 = polyhedron.getVertex(v + 2);
+                        v3 = polyhedron.getVertex(v + 1);
+                    }
+
+                    // Set the position of the vertices
+                    v1 = tempVec31.set(v1).addSelf(polyhedron.getPosition()).addSelf(position);
+                    v2 = tempVec32.set(v2).addSelf(polyhedron.getPosition()).addSelf(position);
+                    v3 = tempVec33.set(v3).addSelf(polyhedron.getPosition()).addSelf(position);
+
+                    // Compute the edges of the triangle
+                    tempVec34.set(v3).subtractSelf(v1);
+                    tempVec35.set(v2).subtractSelf(v1);
+
+                    // The normal will be the cross of the edges
+                    Vector3 normal = tempVec36.set(tempVec34).crossSelf(tempVec35);
+                    normal.addSelf(tempVec34.crossSelf(tempVec35));
+
+                    // Draw the triangle on the screen
+                    b.vertex(v1);
+                    b.color(color);
+                    b.normal(normal);
+
+                    b.vertex(v2);
+                    b.color(color);
+                    b.normal(normal);
+
+                    b.vertex(v3);
+                    b.color(color);
+                    b.normal(normal);
                 }
-
-                // Set the position of the vertices
-                v1 = tempVec31.set(v1).addSelf(polyhedron.getPosition()).addSelf(position);
-                v2 = tempVec32.set(v2).addSelf(polyhedron.getPosition()).addSelf(position);
-                v3 = tempVec33.set(v3).addSelf(polyhedron.getPosition()).addSelf(position);
-
-                // Compute the edges of the triangle
-                tempVec34.set(v3).subtractSelf(v1);
-                tempVec35.set(v2).subtractSelf(v1);
-
-                // The normal will be the cross of the edges
-                Vector3 normal = tempVec36.set(tempVec34).crossSelf(tempVec35);
-                normal.addSelf(tempVec34.crossSelf(tempVec35));
-
-                // Draw the triangle on the screen
-                b.vertex(v1);
-                b.color(color);
-                b.normal(normal);
-
-                b.vertex(v2);
-                b.color(color);
-                b.normal(normal);
-
-                b.vertex(v3);
-                b.color(color);
-                b.normal(normal);
             }
+            b.end();
         }
-        b.end();
-
-        Vector3.REUSABLE_STACK.push(tempVec31);
-        Vector3.REUSABLE_STACK.push(tempVec32);
-        Vector3.REUSABLE_STACK.push(tempVec33);
-
-        Vector3.REUSABLE_STACK.push(tempVec34);
-        Vector3.REUSABLE_STACK.push(tempVec35);
-        Vector3.REUSABLE_STACK.push(tempVec36);
     }
 }
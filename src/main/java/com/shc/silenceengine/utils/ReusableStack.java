@@ -30,6 +30,10 @@
 import java.util.Deque;
 
 /**
+ * A stack of reusable objects, to avoid creating temporary objects in the methods that are called often. Every thread
+ * has its own stack, so that the methods using it can run on many threads at once. The thread that uses the stack
+ * first owns the main stack, which is used without a lookup, the other threads get their stacks from a ThreadLocal.
+ *
  * @param <T> Any typed parameter.
  *
  * @author Sri Harsha Chilakapati
@@ -38,16 +42,24 @@
 {
     private Deque<T> stack;
 
+    // The thread that owns the main stack, and the stacks of the other threads
+    private volatile Thread        owner;
+    private ThreadLocal<Deque<T>> threadStacks;
+
     private ObjectProvider<T> objectProvider;
 
     public ReusableStack(ObjectProvider<T> objectProvider)
     {
         stack = new ArrayDeque<>();
+        threadStacks = ThreadLocal.withInitial(ArrayDeque::new);
+
         this.objectProvider = objectProvider;
     }
 
     public T pop()
     {
+        Deque<T> stack = getStack();
+
         if (stack.size() == 0)
             try
             {
@@ -63,7 +75,29 @@ public T pop()
 
     public void push(T value)
     {
-        stack.push(value);
+        getStack().push(value);
+    }
+
+    private Deque<T> getStack()
+    {
+        Thread thread = Thread.currentThread();
+
+        if (thread == owner)
+            return stack;
+
+        if (owner == null)
+        {
+            synchronized (this)
+            {
+                if (owner == null)
+                {
+                    owner = thread;
+                    return stack;
+                }
+            }
+        }
+
+        return threadStacks.get();
     }
 
     public interface ObjectProvider<T>
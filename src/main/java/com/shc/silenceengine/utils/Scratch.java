@@ -0,0 +1,199 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.shc.silenceengine.utils;
+
+import com.shc.silenceengine.graphics.Color;
+import com.shc.silenceengine.math.Matrix3;
+import com.shc.silenceengine.math.Matrix4;
+import com.shc.silenceengine.math.Quaternion;
+import com.shc.silenceengine.math.Transform;
+import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.Vector3;
+import com.shc.silenceengine.math.Vector4;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * <p> A per thread arena of temporary math objects, to avoid creating them in the methods that are called often. A
+ * scope is opened with {@link #open()}, the temporaries are handed out from the arena by bumping an index, and all of
+ * them are given back at once when the scope is closed. </p>
+ *
+ * <pre>
+ *     try (Scratch scratch = Scratch.open())
+ *     {
+ *         Vector3 temp = scratch.vector3().set(a).subtractSelf(b);
+ *         ...
+ *     }
+ * </pre>
+ *
+ * <p> Every thread has its own arena, so the scopes can be opened on many threads at once. The scopes can be nested,
+ * closing a scope only gives back the temporaries handed out in it. The temporaries are not reset, and must not be used
+ * after their scope is closed. </p>
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public final class Scratch implements AutoCloseable
+{
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private Pool<Vector2>    vector2s    = new Pool<>(Vector2::new);
+    private Pool<Vector3>    vector3s    = new Pool<>(Vector3::new);
+    private Pool<Vector4>    vector4s    = new Pool<>(Vector4::new);
+    private Pool<Color>      colors      = new Pool<>(Color::new);
+    private Pool<Matrix3>    matrix3s    = new Pool<>(Matrix3::new);
+    private Pool<Matrix4>    matrix4s    = new Pool<>(Matrix4::new);
+    private Pool<Quaternion> quaternions = new Pool<>(Quaternion::new);
+    private Pool<Transform>  transforms  = new Pool<>(Transform::new);
+
+    private Pool<?>[] pools = { vector2s, vector3s, vector4s, colors, matrix3s, matrix4s, quaternions, transforms };
+
+    // The number of objects used from every pool when the open scopes were opened
+    private int[] marks = new int[pools.length * 8];
+    private int   depth;
+
+    private Scratch()
+    {
+    }
+
+    /**
+     * Opens a scope on the arena of the current thread.
+     *
+     * @return The arena, which is closed to end the scope.
+     */
+    public static Scratch open()
+    {
+        Scratch scratch = SCRATCH.get();
+
+        if ((scratch.depth + 1) * scratch.pools.length > scratch.marks.length)
+            scratch.marks = Arrays.copyOf(scratch.marks, scratch.marks.length * 2);
+
+        int mark = scratch.depth * scratch.pools.length;
+
+        for (int i = 0; i < scratch.pools.length; i++)
+            scratch.marks[mark + i] = scratch.pools[i].used;
+
+        scratch.depth++;
+
+        return scratch;
+    }
+
+    /**
+     * Closes the innermost open scope, and gives back the temporaries handed out in it.
+     */
+    @Override
+    public void close()
+    {
+        if (depth == 0)
+            throw new IllegalStateException("No scratch scope is open");
+
+        depth--;
+
+        int mark = depth * pools.length;
+
+        for (int i = 0; i < pools.length; i++)
+            pools[i].used = marks[mark + i];
+    }
+
+    public Vector2 vector2()
+    {
+        return vector2s.next();
+    }
+
+    public Vector3 vector3()
+    {
+        return vector3s.next();
+    }
+
+    public Vector4 vector4()
+    {
+        return vector4s.next();
+    }
+
+    public Color color()
+    {
+        return colors.next();
+    }
+
+    public Matrix3 matrix3()
+    {
+        return matrix3s.next();
+    }
+
+    public Matrix4 matrix4()
+    {
+        return matrix4s.next();
+    }
+
+    public Quaternion quaternion()
+    {
+        return quaternions.next();
+    }
+
+    public Transform transform()
+    {
+        return transforms.next();
+    }
+
+    /**
+     * @return The number of scopes open on this arena.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * The objects of a single type, the first ones are in use and the rest are free.
+     */
+    private static final class Pool<T>
+    {
+        private Object[]    objects = new Object[16];
+        private int         used;
+        private Supplier<T> provider;
+
+        Pool(Supplier<T> provider)
+        {
+            this.provider = provider;
+        }
+
+        @SuppressWarnings("unchecked")
+        T next()
+        {
+            if (used == objects.length)
+                objects = Arrays.copyOf(objects, objects.length * 2);
+
+            Object object = objects[used];
+
+            if (object == null)
+                objects[used] = object = provider.get();
+
+            used++;
+
+            return (T) object;
+        }
+    }
+}